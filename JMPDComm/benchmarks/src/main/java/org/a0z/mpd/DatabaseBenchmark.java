@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd;
+
+import org.a0z.mpd.exception.MPDException;
+import org.a0z.mpd.fake.FakeLibrary;
+import org.a0z.mpd.fake.FakeServer;
+import org.a0z.mpd.item.Album;
+import org.a0z.mpd.item.Music;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.List;
+
+/**
+ * Benchmarks the database queries end to end, through a connection to a {@link FakeServer} on
+ * the loopback interface, so the protocol round trips and the response parsing are measured
+ * together.
+ */
+@State(Scope.Benchmark)
+public class DatabaseBenchmark {
+
+    /** The number of tracks of the database. */
+    @Param({"1000", "20000"})
+    public int tracks;
+
+    private MPD mMPD;
+
+    private FakeServer mServer;
+
+    @Setup
+    public void setUp() throws IOException, MPDException {
+        mServer = new FakeServer(new FakeLibrary(tracks));
+        mServer.start();
+
+        mMPD = new MPD();
+        mMPD.connect(InetAddress.getLoopbackAddress(), mServer.getPort(), null);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException, InterruptedException {
+        mMPD.disconnect();
+        mServer.close();
+        mServer.awaitTermination(1000L);
+    }
+
+    /**
+     * Lists the albums with their artists, a single grouped {@code list} command.
+     *
+     * @return The albums.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    @Benchmark
+    public List<Album> listAllAlbumsGrouped() throws IOException, MPDException {
+        return mMPD.listAllAlbumsGrouped(false);
+    }
+
+    /**
+     * Retrieves the whole database with a single {@code listallinfo} command.
+     *
+     * @return The music entries.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    @Benchmark
+    public List<Music> listAllInfo() throws IOException, MPDException {
+        return mMPD.listAllInfo();
+    }
+
+    /**
+     * Walks the whole database one directory at a time, with an {@code lsinfo} command each.
+     *
+     * @return The number of music entries.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    @Benchmark
+    public int walkDatabase() throws IOException, MPDException {
+        final int[] count = new int[1];
+
+        mMPD.walkDatabase(new DatabaseVisitor() {
+            @Override
+            public boolean onDirectory(final String path, final String lastModified) {
+                return true;
+            }
+
+            @Override
+            public void onMusic(final Music music) {
+                count[0]++;
+            }
+        });
+
+        return count[0];
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd;
+
+import org.a0z.mpd.item.Music;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Benchmarks the upkeep of the local playlist copy and the queueing of playlist commands. */
+@State(Scope.Benchmark)
+public class PlaylistBenchmark {
+
+    /** One in this many tracks changes in a {@code plchanges} response. */
+    private static final int CHANGE_INTERVAL = 100;
+
+    /** The number of tracks of the playlist. */
+    @Param({"1000", "50000", "250000"})
+    public int tracks;
+
+    /** A playlist {@code plchanges} response, a small share of the playlist. */
+    private List<Music> mChanges;
+
+    /** The playlist which receives the changes. */
+    private MusicList mMusicList;
+
+    /** An entire playlist, as received from {@code playlistinfo}. */
+    private List<Music> mPlaylist;
+
+    @Setup
+    public void setUp() {
+        mPlaylist = Music.getMusicFromList(ProtocolFixtures.tracks(tracks, true), false);
+        mChanges = new ArrayList<>(tracks / CHANGE_INTERVAL + 1);
+        for (int i = 0; i < tracks; i += CHANGE_INTERVAL) {
+            mChanges.add(mPlaylist.get(i));
+        }
+
+        mMusicList = new MusicList();
+        mMusicList.manipulate(mPlaylist, tracks, 0);
+    }
+
+    /**
+     * Queues the addition of every track of the playlist, then serializes the queue.
+     *
+     * @return The serialized command queue.
+     */
+    @Benchmark
+    public String commandQueue() {
+        final CommandQueue commandQueue = new CommandQueue(tracks);
+
+        for (final Music music : mPlaylist) {
+            commandQueue.add(MPDPlaylist.MPD_CMD_PLAYLIST_ADD, music.getFullPath());
+        }
+
+        return commandQueue.toString();
+    }
+
+    /**
+     * Looks up the last track of the playlist by its song ID.
+     *
+     * @return The track.
+     */
+    @Benchmark
+    public Music getById() {
+        return mMusicList.getById(tracks);
+    }
+
+    /**
+     * Applies changes to a small share of the playlist, the common case.
+     *
+     * @return The playlist size.
+     */
+    @Benchmark
+    public int manipulateChanges() {
+        mMusicList.manipulate(mChanges, tracks, 1);
+
+        return mMusicList.size();
+    }
+
+    /**
+     * Fills an empty playlist, as upon connection.
+     *
+     * @return The playlist size.
+     */
+    @Benchmark
+    public int manipulateFull() {
+        final MusicList musicList = new MusicList();
+
+        musicList.manipulate(mPlaylist, tracks, 0);
+
+        return musicList.size();
+    }
+}
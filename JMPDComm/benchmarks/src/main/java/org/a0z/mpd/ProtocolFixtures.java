@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class generates media server protocol responses for the benchmarks. The responses are
+ * shaped like those of a real library: albums of about ten tracks, artists of a few albums, most
+ * tags set, some album artists, and natural ordering pitfalls such as numbered titles. The same
+ * seed always generates the same responses, so results are comparable between runs.
+ */
+public final class ProtocolFixtures {
+
+    /** The genres tracks are spread over. */
+    private static final String[] GENRES = {"Rock", "Jazz", "Classical", "Electronic", "Folk",
+            "Hip-Hop", "Soundtrack", "Ambient"};
+
+    /** The seed of every generated response. */
+    private static final long SEED = 0x4D5044L;
+
+    /** The average number of tracks per album. */
+    private static final int TRACKS_PER_ALBUM = 10;
+
+    /** The average number of albums per artist. */
+    private static final int ALBUMS_PER_ARTIST = 4;
+
+    private ProtocolFixtures() {
+        super();
+    }
+
+    /**
+     * Generates a sorted list of artist names, such as the response to {@code list artist} or
+     * {@code list albumartist} after parsing.
+     *
+     * @param count  The number of artists.
+     * @param offset The number of the first artist, overlapping ranges generate common names.
+     * @return The artist names, in natural order.
+     */
+    public static List<String> artists(final int count, final int offset) {
+        final List<String> artists = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            artists.add(artist(offset + i));
+        }
+        Collections.sort(artists);
+
+        return artists;
+    }
+
+    private static String artist(final int number) {
+        return "Artist " + number;
+    }
+
+    /**
+     * Generates titles which only sort correctly when embedded numbers are compared by value.
+     *
+     * @param count The number of titles.
+     * @return The titles, shuffled.
+     */
+    public static List<String> naturalTitles(final int count) {
+        final Random random = new Random(SEED);
+        final List<String> titles = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+            titles.add("Disc " + random.nextInt(4) + " - Track " + random.nextInt(count) +
+                    " (Take " + random.nextInt(12) + ')');
+        }
+
+        return titles;
+    }
+
+    /**
+     * Generates the response to a {@code status} command, while playing.
+     *
+     * @return The response lines.
+     */
+    public static List<String> status() {
+        final List<String> response = new ArrayList<>(22);
+
+        response.add("volume: 72");
+        response.add("repeat: 0");
+        response.add("random: 1");
+        response.add("single: 0");
+        response.add("consume: 0");
+        response.add("playlist: 5812");
+        response.add("playlistlength: 2480");
+        response.add("mixrampdb: 0.000000");
+        response.add("state: play");
+        response.add("song: 1024");
+        response.add("songid: 1031");
+        response.add("time: 97:241");
+        response.add("elapsed: 97.214");
+        response.add("bitrate: 905");
+        response.add("audio: 44100:16:2");
+        response.add("nextsong: 1025");
+        response.add("nextsongid: 1032");
+        response.add("xfade: 5");
+        response.add("updating_db: 12");
+        response.add("error: Failed to open \"Output\"");
+
+        return response;
+    }
+
+    /**
+     * Generates a track list response, such as the response to {@code listallinfo} or
+     * {@code playlistinfo}.
+     *
+     * @param count      The number of tracks.
+     * @param inPlaylist Whether to include the playlist position and song id of each track.
+     * @return The response lines.
+     */
+    public static List<String> tracks(final int count, final boolean inPlaylist) {
+        final Random random = new Random(SEED);
+        final List<String> response = new ArrayList<>(count * 13);
+        int album = 0;
+        int track = 0;
+        int albumTracks = 0;
+
+        for (int i = 0; i < count; i++) {
+            if (track == albumTracks) {
+                album++;
+                track = 0;
+                albumTracks = TRACKS_PER_ALBUM / 2 + random.nextInt(TRACKS_PER_ALBUM);
+            }
+            track++;
+
+            final String artist = artist(album / ALBUMS_PER_ARTIST);
+            final String albumName = "Album " + album;
+
+            response.add("file: " + artist + '/' + albumName + '/' + track + " - Title " + i +
+                    ".flac");
+            response.add("Last-Modified: 2014-0" + (1 + album % 9) + "-1" + album % 10 +
+                    "T12:34:56Z");
+            response.add("Time: " + (120 + random.nextInt(300)));
+            response.add("Artist: " + artist);
+            if (album % 5 == 0) {
+                response.add("AlbumArtist: Various Artists");
+            }
+            response.add("Album: " + albumName);
+            response.add("Title: Title " + i);
+            response.add("Track: " + track + '/' + albumTracks);
+            response.add("Date: " + (1960 + album % 55));
+            response.add("Genre: " + GENRES[album % GENRES.length]);
+            response.add("Disc: 1/1");
+            if (inPlaylist) {
+                response.add("Pos: " + i);
+                response.add("Id: " + (i + 1));
+            }
+        }
+
+        return response;
+    }
+}
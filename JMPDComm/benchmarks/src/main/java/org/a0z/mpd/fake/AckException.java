@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd.fake;
+
+/** This exception is the {@code ACK} response to a command the fake server could not run. */
+final class AckException extends Exception {
+
+    /** The argument error code. */
+    static final int ACK_ERROR_ARG = 2;
+
+    /** The no such object error code. */
+    static final int ACK_ERROR_NO_EXIST = 50;
+
+    /** The unknown command error code. */
+    static final int ACK_ERROR_UNKNOWN = 5;
+
+    private static final long serialVersionUID = -1735224409362722862L;
+
+    /** The MPD protocol error code. */
+    private final int mErrorCode;
+
+    /**
+     * Sole constructor.
+     *
+     * @param errorCode The MPD protocol error code.
+     * @param message   The error message sent to the client.
+     */
+    AckException(final int errorCode, final String message) {
+        super(message);
+
+        mErrorCode = errorCode;
+    }
+
+    /**
+     * Formats this error as a response line.
+     *
+     * @param listIndex The index of the failed command in its command list, 0 outside of lists.
+     * @param command   The failed command.
+     * @return The {@code ACK} response line.
+     */
+    String toResponse(final int listIndex, final String command) {
+        return "ACK [" + mErrorCode + '@' + listIndex + "] {" + command + "} " + getMessage() +
+                '\n';
+    }
+}
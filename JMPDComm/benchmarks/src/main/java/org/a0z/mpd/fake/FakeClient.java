@@ -0,0 +1,871 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd.fake;
+
+import org.a0z.mpd.fake.FakeLibrary.Directory;
+import org.a0z.mpd.fake.FakeLibrary.Track;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/** This class serves one connection of the {@link FakeServer}. */
+final class FakeClient implements Runnable {
+
+    /** The commands which are served, sent in response to {@code commands}. */
+    private static final String[] COMMANDS = {"add", "addid", "clear", "close", "commands",
+            "consume", "count", "currentsong", "delete", "deleteid", "find", "findadd", "idle",
+            "list", "listall", "listallinfo", "lsinfo", "move", "next", "noidle", "notcommands",
+            "outputs", "password", "pause", "ping", "play", "playid", "playlistid", "playlistinfo",
+            "plchanges", "plchangesposid", "previous", "random", "repeat", "search", "setvol",
+            "shuffle", "single", "stats", "status", "sticker", "stop", "tagtypes", "update",
+            "urlhandlers"};
+
+    /** How long {@code idle} waits for changes between checks for {@code noidle}. */
+    private static final long IDLE_POLL_MILLIS = 5L;
+
+    private static final String IDLE = "idle";
+
+    private static final String LIST_BEGIN = "command_list_begin";
+
+    private static final String LIST_END = "command_list_end";
+
+    private static final String LIST_OK_BEGIN = "command_list_ok_begin";
+
+    private static final String NOIDLE = "noidle";
+
+    /** The protocol version sent upon connection. */
+    private static final String PROTOCOL_VERSION = "0.19.0";
+
+    /** The response tag names, by lower case tag name. */
+    private static final Map<String, String> TAG_NAMES = new HashMap<>();
+
+    /** The number of writes per second when the bandwidth is limited. */
+    private static final int THROTTLE_STEPS_PER_SECOND = 50;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Orders {@code list} results by value, then by group values. */
+    private static final Comparator<List<String>> VALUES_COMPARATOR =
+            new Comparator<List<String>>() {
+                @Override
+                public int compare(final List<String> lhs, final List<String> rhs) {
+                    int result = 0;
+
+                    for (int i = 0; i < lhs.size() && result == 0; i++) {
+                        result = lhs.get(i).compareTo(rhs.get(i));
+                    }
+
+                    return result;
+                }
+            };
+
+    static {
+        for (final String tag : new String[]{"Album", "AlbumArtist", "Artist", "Composer",
+                "Date", "Disc", "Genre", "Name", "Performer", "Title", "Track"}) {
+            TAG_NAMES.put(tag.toLowerCase(Locale.US), tag);
+        }
+        TAG_NAMES.put(FakeLibrary.KEY_FILE, FakeLibrary.KEY_FILE);
+    }
+
+    /** The subsystems changed since the last {@code idle} response. */
+    private final Set<String> mChanges = new LinkedHashSet<>();
+
+    private final InputStream mInput;
+
+    private final FakeLibrary mLibrary;
+
+    /** The line read so far, kept across read timeouts. */
+    private final ByteArrayOutputStream mLine = new ByteArrayOutputStream();
+
+    private final OutputStream mOutput;
+
+    private final FakePlayer mPlayer;
+
+    private final FakeServer mServer;
+
+    private final Socket mSocket;
+
+    /** Set once the connection is to be closed. */
+    private boolean mClosing;
+
+    FakeClient(final FakeServer server, final Socket socket) throws IOException {
+        super();
+
+        mServer = server;
+        mLibrary = server.getLibrary();
+        mPlayer = server.getPlayer();
+        mSocket = socket;
+        mInput = new BufferedInputStream(socket.getInputStream());
+        mOutput = new BufferedOutputStream(socket.getOutputStream());
+    }
+
+    private static void appendTrack(final StringBuilder response, final Track track) {
+        for (final String line : track.mLines) {
+            response.append(line).append('\n');
+        }
+    }
+
+    private static String getArgument(final String[] command, final int index)
+            throws AckException {
+        if (index >= command.length) {
+            throw new AckException(AckException.ACK_ERROR_ARG, "too few arguments for \"" +
+                    command[0] + '"');
+        }
+
+        return command[index];
+    }
+
+    private static String getTagName(final String type) {
+        String name = TAG_NAMES.get(type);
+
+        if (name == null) {
+            name = Character.toUpperCase(type.charAt(0)) + type.substring(1);
+        }
+
+        return name;
+    }
+
+    private static String getTagValue(final Track track, final String type) {
+        final String value;
+
+        if (FakeLibrary.KEY_FILE.equals(type)) {
+            value = track.mFile;
+        } else {
+            final String tag = track.mTags.get(type);
+            value = tag == null ? "" : tag;
+        }
+
+        return value;
+    }
+
+    private static boolean parseBoolean(final String value) throws AckException {
+        final boolean result;
+
+        if ("1".equals(value)) {
+            result = true;
+        } else if ("0".equals(value)) {
+            result = false;
+        } else {
+            throw new AckException(AckException.ACK_ERROR_ARG, "Boolean (0/1) expected: " +
+                    value);
+        }
+
+        return result;
+    }
+
+    /**
+     * Parses filter arguments, type and value pairs.
+     *
+     * @param command The command.
+     * @param start   The index of the first filter argument.
+     * @param end     The index following the last filter argument.
+     * @return The filters, with lower case types.
+     * @throws AckException Thrown if an argument has no pair.
+     */
+    private static List<String[]> parseFilters(final String[] command, final int start,
+            final int end) throws AckException {
+        final List<String[]> filters = new ArrayList<>((end - start) / 2);
+
+        if ((end - start) % 2 != 0) {
+            throw new AckException(AckException.ACK_ERROR_ARG,
+                    "Incorrect number of filter arguments");
+        }
+        for (int i = start; i < end; i += 2) {
+            filters.add(new String[]{command[i].toLowerCase(Locale.US), command[i + 1]});
+        }
+
+        return filters;
+    }
+
+    private static int parseInt(final String value) throws AckException {
+        try {
+            return Integer.parseInt(value);
+        } catch (final NumberFormatException ignored) {
+            throw new AckException(AckException.ACK_ERROR_ARG, "Integer expected: " + value);
+        }
+    }
+
+    /**
+     * Splits a command line into the command and its arguments, quoted arguments may hold
+     * spaces, and escape quotes and backslashes.
+     *
+     * @param line The command line.
+     * @return The command, then its arguments.
+     * @throws AckException Thrown if a quoted argument is not closed.
+     */
+    static String[] tokenize(final String line) throws AckException {
+        final List<String> tokens = new ArrayList<>();
+        final int length = line.length();
+        int i = 0;
+
+        while (i < length) {
+            final char c = line.charAt(i);
+
+            if (c == ' ' || c == '\t') {
+                i++;
+            } else if (c == '"') {
+                final StringBuilder token = new StringBuilder();
+                boolean closed = false;
+
+                i++;
+                while (i < length && !closed) {
+                    final char quoted = line.charAt(i++);
+
+                    if (quoted == '\\' && i < length) {
+                        token.append(line.charAt(i++));
+                    } else if (quoted == '"') {
+                        closed = true;
+                    } else {
+                        token.append(quoted);
+                    }
+                }
+                if (!closed) {
+                    throw new AckException(AckException.ACK_ERROR_ARG, "Missing closing '\"'");
+                }
+                tokens.add(token.toString());
+            } else {
+                final int start = i;
+
+                while (i < length && line.charAt(i) != ' ' && line.charAt(i) != '\t') {
+                    i++;
+                }
+                tokens.add(line.substring(start, i));
+            }
+        }
+
+        return tokens.toArray(new String[tokens.size()]);
+    }
+
+    private void add(final String uri, final StringBuilder response, final boolean withId)
+            throws AckException {
+        final Track track = mLibrary.getTrack(uri);
+        final int id;
+
+        if (track != null) {
+            id = mPlayer.add(Arrays.asList(track));
+        } else if (!withId && mLibrary.findDirectory(uri) != null) {
+            id = mPlayer.add(mLibrary.getTracks(uri));
+        } else {
+            throw new AckException(AckException.ACK_ERROR_NO_EXIST, "No such directory");
+        }
+        if (withId) {
+            response.append("Id: ").append(id).append('\n');
+        }
+        mServer.notifyIdle("playlist");
+    }
+
+    private void appendDirectory(final StringBuilder response, final Directory directory,
+            final boolean recursive, final boolean info) {
+        for (final String path : directory.mDirectories) {
+            final Directory subdirectory = mLibrary.findDirectory(path);
+
+            response.append("directory: ").append(path).append('\n');
+            if (info) {
+                response.append(FakeLibrary.KEY_LAST_MODIFIED).append(": ")
+                        .append(subdirectory.mLastModifiedText).append('\n');
+            }
+            if (recursive) {
+                appendDirectory(response, subdirectory, true, info);
+            }
+        }
+        for (final Track track : directory.mTracks) {
+            if (info) {
+                appendTrack(response, track);
+            } else {
+                response.append("file: ").append(track.mFile).append('\n');
+            }
+        }
+    }
+
+    /** Closes the connection. */
+    void close() {
+        mClosing = true;
+        try {
+            mSocket.close();
+        } catch (final IOException ignored) {
+            /** Closed already. */
+        }
+    }
+
+    /**
+     * Delays the response of a command by its configured latency.
+     *
+     * @param command The command.
+     * @throws InterruptedIOException Thrown if the server is closed while waiting.
+     */
+    private void delay(final String command) throws InterruptedIOException {
+        final long latency = mServer.getLatency(command);
+
+        if (latency > 0L) {
+            try {
+                Thread.sleep(latency);
+            } catch (final InterruptedException ignored) {
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+    /**
+     * Runs a command.
+     *
+     * @param command  The command, then its arguments.
+     * @param response The response to append to.
+     * @throws AckException Thrown if the command failed.
+     */
+    private void execute(final String[] command, final StringBuilder response)
+            throws AckException {
+        switch (command[0]) {
+            case "add":
+                add(getArgument(command, 1), response, false);
+                break;
+            case "addid":
+                add(getArgument(command, 1), response, true);
+                break;
+            case "clear":
+                mPlayer.clear();
+                mServer.notifyIdle("playlist", "player");
+                break;
+            case "close":
+                mClosing = true;
+                break;
+            case "commands":
+                for (final String name : COMMANDS) {
+                    response.append("command: ").append(name).append('\n');
+                }
+                break;
+            case "consume":
+            case "random":
+            case "repeat":
+            case "single":
+                mPlayer.setOption(command[0], parseBoolean(getArgument(command, 1)));
+                mServer.notifyIdle("options");
+                break;
+            case "count":
+                final Collection<Track> counted =
+                        mLibrary.find(parseFilters(command, 1, command.length), true);
+                response.append("songs: ").append(counted.size()).append('\n');
+                response.append("playtime: ").append(FakeLibrary.getPlaytime(counted))
+                        .append('\n');
+                break;
+            case "currentsong":
+                mPlayer.appendCurrent(response);
+                break;
+            case "delete":
+                mPlayer.delete(parseInt(getArgument(command, 1)));
+                mServer.notifyIdle("playlist", "player");
+                break;
+            case "deleteid":
+                mPlayer.delete(mPlayer.getPosition(parseInt(getArgument(command, 1))));
+                mServer.notifyIdle("playlist", "player");
+                break;
+            case "find":
+            case "search":
+                for (final Track track : mLibrary.find(parseFilters(command, 1,
+                        command.length), "find".equals(command[0]))) {
+                    appendTrack(response, track);
+                }
+                break;
+            case "findadd":
+                mPlayer.add(mLibrary.find(parseFilters(command, 1, command.length), true));
+                mServer.notifyIdle("playlist");
+                break;
+            case "list":
+                list(command, response);
+                break;
+            case "listall":
+            case "listallinfo":
+            case "lsinfo":
+                listDirectory(command, response);
+                break;
+            case "move":
+                mPlayer.move(parseInt(getArgument(command, 1)),
+                        parseInt(getArgument(command, 2)));
+                mServer.notifyIdle("playlist");
+                break;
+            case "next":
+                mPlayer.skip(1);
+                mServer.notifyIdle("player");
+                break;
+            case "noidle":
+            case "notcommands":
+            case "password":
+            case "ping":
+            case "urlhandlers":
+                break;
+            case "outputs":
+                response.append("outputid: 0\noutputname: Fake output\noutputenabled: 1\n");
+                break;
+            case "pause":
+                mPlayer.pause(parseBoolean(getArgument(command, 1)));
+                mServer.notifyIdle("player");
+                break;
+            case "play":
+                mPlayer.play(command.length > 1 ? parseInt(command[1]) : -1);
+                mServer.notifyIdle("player");
+                break;
+            case "playid":
+                mPlayer.play(command.length > 1 ?
+                        mPlayer.getPosition(parseInt(command[1])) : -1);
+                mServer.notifyIdle("player");
+                break;
+            case "playlistid":
+                mPlayer.appendPlaylist(response, command.length > 1 ?
+                        mPlayer.getPosition(parseInt(command[1])) : -1);
+                break;
+            case "playlistinfo":
+                mPlayer.appendPlaylist(response,
+                        command.length > 1 ? parseInt(command[1]) : -1);
+                break;
+            case "plchanges":
+            case "plchangesposid":
+                mPlayer.appendChanges(response, parseInt(getArgument(command, 1)),
+                        "plchangesposid".equals(command[0]));
+                break;
+            case "previous":
+                mPlayer.skip(-1);
+                mServer.notifyIdle("player");
+                break;
+            case "setvol":
+                mPlayer.setVolume(parseInt(getArgument(command, 1)));
+                mServer.notifyIdle("mixer");
+                break;
+            case "shuffle":
+                mPlayer.shuffle();
+                mServer.notifyIdle("playlist");
+                break;
+            case "stats":
+                mPlayer.appendStatistics(response);
+                break;
+            case "status":
+                mPlayer.appendStatus(response);
+                break;
+            case "sticker":
+                sticker(command, response);
+                break;
+            case "stop":
+                mPlayer.stop();
+                mServer.notifyIdle("player");
+                break;
+            case "tagtypes":
+                for (final String tag : TAG_NAMES.values()) {
+                    if (!FakeLibrary.KEY_FILE.equals(tag)) {
+                        response.append("tagtype: ").append(tag).append('\n');
+                    }
+                }
+                break;
+            case "update":
+                response.append("updating_db: ").append(mPlayer.update()).append('\n');
+                mServer.notifyIdle("update", "database");
+                break;
+            default:
+                throw new AckException(AckException.ACK_ERROR_UNKNOWN, "unknown command \"" +
+                        command[0] + '"');
+        }
+    }
+
+    /**
+     * Waits for changes of the requested subsystems, or for {@code noidle}.
+     *
+     * @param command The {@code idle} command, then the requested subsystems, none for all.
+     * @throws IOException Thrown upon a communication error, or if a command other than
+     *                     {@code noidle} is received while idle.
+     */
+    private void idle(final String[] command) throws IOException {
+        final Set<String> subsystems =
+                new HashSet<>(Arrays.asList(command).subList(1, command.length));
+        final StringBuilder response = new StringBuilder();
+        boolean idle = true;
+
+        while (idle) {
+            synchronized (mChanges) {
+                takeChanges(subsystems, response);
+                if (response.length() == 0) {
+                    try {
+                        mChanges.wait(IDLE_POLL_MILLIS);
+                    } catch (final InterruptedException ignored) {
+                        throw new InterruptedIOException();
+                    }
+                    takeChanges(subsystems, response);
+                }
+            }
+
+            idle = response.length() == 0 && !readNoidle();
+        }
+
+        response.append("OK\n");
+        write(response);
+    }
+
+    private void list(final String[] command, final StringBuilder response)
+            throws AckException {
+        final String type = getArgument(command, 1).toLowerCase(Locale.US);
+        final List<String> groups = new ArrayList<>();
+        int filtersEnd = 2;
+
+        while (filtersEnd < command.length && !"group".equals(command[filtersEnd])) {
+            filtersEnd++;
+        }
+        for (int i = filtersEnd; i < command.length; i += 2) {
+            groups.add(getArgument(command, i + 1).toLowerCase(Locale.US));
+        }
+
+        final List<String[]> filters;
+        if (filtersEnd == 3) {
+            /** The legacy syntax: list album ARTIST */
+            if (!"album".equals(type)) {
+                throw new AckException(AckException.ACK_ERROR_ARG,
+                        "should be \"Album\" for 3 arguments");
+            }
+            filters = new ArrayList<>(1);
+            filters.add(new String[]{"artist", command[2]});
+        } else {
+            filters = parseFilters(command, 2, filtersEnd);
+        }
+
+        final Set<List<String>> results = new TreeSet<>(VALUES_COMPARATOR);
+        for (final Track track : mLibrary.find(filters, true)) {
+            final List<String> values = new ArrayList<>(groups.size() + 1);
+
+            values.add(getTagValue(track, type));
+            for (final String group : groups) {
+                values.add(getTagValue(track, group));
+            }
+            results.add(values);
+        }
+
+        for (final List<String> values : results) {
+            response.append(getTagName(type)).append(": ").append(values.get(0)).append('\n');
+            for (int i = 0; i < groups.size(); i++) {
+                /** Like MPD, missing group tags are left out. */
+                if (!values.get(i + 1).isEmpty()) {
+                    response.append(getTagName(groups.get(i))).append(": ")
+                            .append(values.get(i + 1)).append('\n');
+                }
+            }
+        }
+    }
+
+    private void listDirectory(final String[] command, final StringBuilder response)
+            throws AckException {
+        final String uri = command.length > 1 ? command[1] : "";
+        final Directory directory = mLibrary.findDirectory(uri);
+        final boolean lsinfo = "lsinfo".equals(command[0]);
+
+        if (directory != null) {
+            appendDirectory(response, directory, !lsinfo, !"listall".equals(command[0]));
+        } else if (mLibrary.getTrack(uri) != null) {
+            appendTrack(response, mLibrary.getTrack(uri));
+        } else {
+            throw new AckException(AckException.ACK_ERROR_NO_EXIST, "No such directory");
+        }
+    }
+
+    /**
+     * Reports subsystem changes, to be sent in response to {@code idle}.
+     *
+     * @param subsystems The changed subsystems.
+     */
+    void onIdle(final String... subsystems) {
+        synchronized (mChanges) {
+            mChanges.addAll(Arrays.asList(subsystems));
+            mChanges.notifyAll();
+        }
+    }
+
+    /**
+     * Reads a line, the part read before a read timeout is kept for the next call.
+     *
+     * @return The line, null at the end of the stream.
+     * @throws IOException Thrown upon a communication error, or a read timeout.
+     */
+    private String readLine() throws IOException {
+        String line = null;
+        int read = 0;
+
+        while (line == null && read != -1) {
+            read = mInput.read();
+            if (read == '\n') {
+                line = new String(mLine.toByteArray(), UTF_8);
+                mLine.reset();
+            } else if (read != -1) {
+                mLine.write(read);
+            }
+        }
+
+        return line;
+    }
+
+    /**
+     * Checks for {@code noidle} without blocking.
+     *
+     * @return True if {@code noidle} was received.
+     * @throws IOException Thrown upon a communication error, or if another command was
+     *                     received.
+     */
+    private boolean readNoidle() throws IOException {
+        boolean noidle = false;
+
+        mSocket.setSoTimeout(1);
+        try {
+            final String line = readLine();
+
+            if (line == null) {
+                throw new EOFException();
+            } else if (!NOIDLE.equals(line)) {
+                throw new IOException("Command received while idle: " + line);
+            }
+            noidle = true;
+        } catch (final SocketTimeoutException ignored) {
+            /** Still idle. */
+        } finally {
+            mSocket.setSoTimeout(0);
+        }
+
+        return noidle;
+    }
+
+    @Override
+    public void run() {
+        try {
+            mSocket.setTcpNoDelay(true);
+            write("OK MPD " + PROTOCOL_VERSION + '\n');
+
+            String line = readLine();
+            while (!mClosing && line != null) {
+                if (LIST_BEGIN.equals(line) || LIST_OK_BEGIN.equals(line)) {
+                    runCommandList(LIST_OK_BEGIN.equals(line));
+                } else {
+                    runCommand(line);
+                }
+                if (!mClosing) {
+                    line = readLine();
+                }
+            }
+        } catch (final IOException ignored) {
+            /** The connection was closed. */
+        } finally {
+            close();
+            mServer.removeClient(this);
+        }
+    }
+
+    private void runCommand(final String line) throws IOException {
+        final StringBuilder response = new StringBuilder();
+        String name = "";
+
+        try {
+            final String[] command = tokenize(line);
+
+            if (command.length == 0) {
+                throw new AckException(AckException.ACK_ERROR_UNKNOWN, "No command given");
+            }
+            name = command[0];
+            if (IDLE.equals(name)) {
+                idle(command);
+            } else {
+                delay(name);
+                execute(command, response);
+                response.append("OK\n");
+            }
+        } catch (final AckException e) {
+            response.setLength(0);
+            response.append(e.toResponse(0, name));
+        }
+
+        if (!mClosing && response.length() != 0) {
+            write(response);
+        }
+    }
+
+    private void runCommandList(final boolean listOk) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        final StringBuilder response = new StringBuilder();
+        int index = 0;
+        String name = "";
+
+        for (String line = readLine(); !LIST_END.equals(line); line = readLine()) {
+            if (line == null) {
+                throw new EOFException();
+            }
+            lines.add(line);
+        }
+
+        try {
+            for (final String line : lines) {
+                final String[] command = tokenize(line);
+
+                name = command.length == 0 ? "" : command[0];
+                if (command.length == 0 || IDLE.equals(name) || NOIDLE.equals(name)) {
+                    throw new AckException(AckException.ACK_ERROR_UNKNOWN,
+                            "not allowed in a command list");
+                }
+                delay(name);
+                execute(command, response);
+                if (listOk) {
+                    response.append("list_OK\n");
+                }
+                index++;
+            }
+            response.append("OK\n");
+        } catch (final AckException e) {
+            response.append(e.toResponse(index, name));
+        }
+
+        if (!mClosing) {
+            write(response);
+        }
+    }
+
+    private void sticker(final String[] command, final StringBuilder response)
+            throws AckException {
+        final String action = getArgument(command, 1);
+        final String uri = getArgument(command, 3);
+
+        if (!"song".equals(getArgument(command, 2))) {
+            throw new AckException(AckException.ACK_ERROR_ARG, "unknown sticker domain");
+        }
+        if (!"find".equals(action) && mLibrary.getTrack(uri) == null) {
+            throw new AckException(AckException.ACK_ERROR_NO_EXIST, "no such song");
+        }
+
+        switch (action) {
+            case "delete":
+                mPlayer.deleteSticker(uri, command.length > 4 ? command[4] : null);
+                mServer.notifyIdle("sticker");
+                break;
+            case "find":
+                if (mLibrary.findDirectory(uri) == null && mLibrary.getTrack(uri) == null) {
+                    throw new AckException(AckException.ACK_ERROR_NO_EXIST, "no such directory");
+                }
+                mPlayer.appendStickers(response, mLibrary.getTracks(uri),
+                        getArgument(command, 4));
+                break;
+            case "get":
+                final String name = getArgument(command, 4);
+                response.append("sticker: ").append(name).append('=')
+                        .append(mPlayer.getSticker(uri, name)).append('\n');
+                break;
+            case "list":
+                mPlayer.appendStickers(response, uri);
+                break;
+            case "set":
+                mPlayer.setSticker(uri, getArgument(command, 4), getArgument(command, 5));
+                mServer.notifyIdle("sticker");
+                break;
+            default:
+                throw new AckException(AckException.ACK_ERROR_ARG, "bad request");
+        }
+    }
+
+    /**
+     * Takes the changes of the requested subsystems into an {@code idle} response.
+     *
+     * @param subsystems The requested subsystems, empty for all.
+     * @param response   The response to append to.
+     */
+    private void takeChanges(final Set<String> subsystems, final StringBuilder response) {
+        final Iterator<String> iterator = mChanges.iterator();
+
+        while (iterator.hasNext()) {
+            final String subsystem = iterator.next();
+
+            if (subsystems.isEmpty() || subsystems.contains(subsystem)) {
+                response.append("changed: ").append(subsystem).append('\n');
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Writes a response, within the bandwidth limit. A response larger than the output buffer
+     * size is cut, then the connection is closed.
+     *
+     * @param response The response.
+     * @throws IOException Thrown upon a communication error.
+     */
+    private void write(final CharSequence response) throws IOException {
+        final byte[] bytes = response.toString().getBytes(UTF_8);
+        final int maxOutputBufferSize = mServer.getMaxOutputBufferSize();
+        final int bandwidth = mServer.getBandwidth();
+        int length = bytes.length;
+
+        if (maxOutputBufferSize > 0 && length > maxOutputBufferSize) {
+            length = maxOutputBufferSize;
+            mClosing = true;
+        }
+
+        if (bandwidth > 0) {
+            final int step = Math.max(bandwidth / THROTTLE_STEPS_PER_SECOND, 1);
+            final long start = System.nanoTime();
+
+            for (int offset = 0; offset < length; offset += step) {
+                final int count = Math.min(step, length - offset);
+                final long due = start +
+                        TimeUnit.SECONDS.toNanos(offset + count) / (long) bandwidth;
+
+                mOutput.write(bytes, offset, count);
+                mOutput.flush();
+                try {
+                    TimeUnit.NANOSECONDS.sleep(due - System.nanoTime());
+                } catch (final InterruptedException ignored) {
+                    throw new InterruptedIOException();
+                }
+            }
+        } else {
+            mOutput.write(bytes, 0, length);
+        }
+        mOutput.flush();
+
+        if (mClosing) {
+            close();
+        }
+    }
+}
@@ -0,0 +1,462 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd.fake;
+
+import org.a0z.mpd.ProtocolFixtures;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The read-only music database of the fake server, built from a track list response. Tracks
+ * are laid out in directories following their paths.
+ */
+public final class FakeLibrary {
+
+    /** The filter type matching any tag. */
+    static final String FILTER_ANY = "any";
+
+    /** The filter type matching a directory and its subdirectories. */
+    static final String FILTER_BASE = "base";
+
+    /** The filter type matching the path of the track. */
+    static final String FILTER_FILE = "file";
+
+    /** The filter type matching tracks modified since a time. */
+    static final String FILTER_MODIFIED_SINCE = "modified-since";
+
+    /** The response key of a track path. */
+    static final String KEY_FILE = "file";
+
+    /** The response key of a modification time. */
+    static final String KEY_LAST_MODIFIED = "Last-Modified";
+
+    /** The response key of a track duration, in seconds. */
+    private static final String KEY_TIME = "Time";
+
+    /** The protocol format of a modification time. */
+    private static final String TIME_FORMAT = "yyyy-MM-dd'T'HH:mm:ss'Z'";
+
+    /** The directories, by path, the root directory path being empty. */
+    private final Map<String, Directory> mDirectories;
+
+    /** The time of the latest modification, in milliseconds. */
+    private final long mLastModified;
+
+    /** The tracks, in response order. */
+    private final List<Track> mTracks;
+
+    /** The tracks, by path. */
+    private final Map<String, Track> mTracksByFile;
+
+    /**
+     * Builds a library of generated tracks.
+     *
+     * @param tracks The number of tracks.
+     * @see ProtocolFixtures#tracks(int, boolean)
+     */
+    public FakeLibrary(final int tracks) {
+        this(ProtocolFixtures.tracks(tracks, false));
+    }
+
+    /**
+     * Builds a library from a track list response, such as a {@code listallinfo} response.
+     *
+     * @param response The response lines.
+     */
+    public FakeLibrary(final Iterable<String> response) {
+        super();
+
+        final SimpleDateFormat format = createTimeFormat();
+        long lastModified = 0L;
+        Track track = null;
+
+        mTracks = new ArrayList<>();
+        mTracksByFile = new HashMap<>();
+        mDirectories = new HashMap<>();
+        for (final String line : response) {
+            final int delimiterIndex = line.indexOf(": ");
+            final String key = line.substring(0, delimiterIndex);
+            final String value = line.substring(delimiterIndex + 2);
+
+            if (KEY_FILE.equals(key)) {
+                track = new Track(value);
+                mTracks.add(track);
+                mTracksByFile.put(value, track);
+            } else if (track == null) {
+                continue;
+            }
+
+            track.mLines.add(line);
+            track.mTags.put(key.toLowerCase(Locale.US), value);
+            if (KEY_TIME.equals(key)) {
+                track.mTime = Integer.parseInt(value);
+            } else if (KEY_LAST_MODIFIED.equals(key)) {
+                try {
+                    track.mLastModified = format.parse(value).getTime();
+                } catch (final ParseException e) {
+                    throw new IllegalArgumentException("Invalid time: " + value, e);
+                }
+                lastModified = Math.max(lastModified, track.mLastModified);
+            }
+        }
+        mLastModified = lastModified;
+
+        getDirectory("").mLastModified = lastModified;
+        for (final Track each : mTracks) {
+            getDirectory(getParentPath(each.mFile)).mTracks.add(each);
+            addLastModified(getParentPath(each.mFile), each.mLastModified);
+        }
+        for (final Directory directory : mDirectories.values()) {
+            directory.mLastModifiedText = format.format(new Date(directory.mLastModified));
+        }
+    }
+
+    /**
+     * Creates a formatter of the protocol modification time format.
+     *
+     * @return A new formatter, formatters are not thread safe.
+     */
+    static SimpleDateFormat createTimeFormat() {
+        final SimpleDateFormat format = new SimpleDateFormat(TIME_FORMAT, Locale.US);
+
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format;
+    }
+
+    private static String getParentPath(final String path) {
+        final int index = path.lastIndexOf('/');
+
+        return index == -1 ? "" : path.substring(0, index);
+    }
+
+    /**
+     * Retrieves the total duration of a list of tracks.
+     *
+     * @param tracks The tracks.
+     * @return The total duration, in seconds.
+     */
+    static long getPlaytime(final Iterable<Track> tracks) {
+        long playtime = 0L;
+
+        for (final Track track : tracks) {
+            playtime += (long) track.mTime;
+        }
+
+        return playtime;
+    }
+
+    /**
+     * Checks whether a track matches a filter.
+     *
+     * @param track The track.
+     * @param type  The lower case filter type, a tag name or a special filter type.
+     * @param value The filter value.
+     * @param exact True for exact matches, as {@code find}, false for case insensitive substring
+     *              matches, as {@code search}.
+     * @return True if the track matches.
+     * @throws AckException Thrown if the filter value is invalid.
+     */
+    private static boolean matches(final Track track, final String type, final String value,
+            final boolean exact) throws AckException {
+        final boolean result;
+
+        switch (type) {
+            case FILTER_ANY:
+                boolean any = false;
+                for (final String tag : track.mTags.values()) {
+                    if (matches(tag, value, exact)) {
+                        any = true;
+                        break;
+                    }
+                }
+                result = any;
+                break;
+            case FILTER_BASE:
+                result = value.isEmpty() || track.mFile.startsWith(value + '/');
+                break;
+            case FILTER_FILE:
+                result = matches(track.mFile, value, exact);
+                break;
+            case FILTER_MODIFIED_SINCE:
+                result = track.mLastModified >= parseTime(value);
+                break;
+            default:
+                final String tag = track.mTags.get(type);
+                result = matches(tag == null ? "" : tag, value, exact);
+                break;
+        }
+
+        return result;
+    }
+
+    private static boolean matches(final String tag, final String value, final boolean exact) {
+        final boolean result;
+
+        if (exact) {
+            result = tag.equals(value);
+        } else {
+            result = tag.toLowerCase(Locale.US).contains(value.toLowerCase(Locale.US));
+        }
+
+        return result;
+    }
+
+    /**
+     * Parses a {@code modified-since} value, a UNIX time or a protocol time.
+     *
+     * @param value The value.
+     * @return The time, in milliseconds.
+     * @throws AckException Thrown if the value is not a time.
+     */
+    private static long parseTime(final String value) throws AckException {
+        long result;
+
+        try {
+            result = TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+        } catch (final NumberFormatException ignored) {
+            try {
+                result = createTimeFormat().parse(value).getTime();
+            } catch (final ParseException ignored2) {
+                throw new AckException(AckException.ACK_ERROR_ARG, "Invalid time: " + value);
+            }
+        }
+
+        return result;
+    }
+
+    private void addLastModified(final String path, final long lastModified) {
+        final Directory directory = mDirectories.get(path);
+
+        if (directory.mLastModified < lastModified) {
+            directory.mLastModified = lastModified;
+            if (!path.isEmpty()) {
+                addLastModified(getParentPath(path), lastModified);
+            }
+        }
+    }
+
+    /**
+     * Finds the tracks matching every filter.
+     *
+     * @param filters The filters, lower case type and value pairs.
+     * @param exact   True for exact matches, as {@code find}, false for case insensitive
+     *                substring matches, as {@code search}.
+     * @return The matching tracks, in library order.
+     * @throws AckException Thrown if a filter value is invalid.
+     */
+    List<Track> find(final List<String[]> filters, final boolean exact) throws AckException {
+        final List<Track> result = new ArrayList<>();
+
+        for (final Track track : mTracks) {
+            boolean matches = true;
+
+            for (final String[] filter : filters) {
+                if (!matches(track, filter[0], filter[1], exact)) {
+                    matches = false;
+                    break;
+                }
+            }
+            if (matches) {
+                result.add(track);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Retrieves the number of distinct values of a tag.
+     *
+     * @param type The lower case tag name.
+     * @return The number of distinct values, the missing value included.
+     */
+    int getCount(final String type) {
+        final Set<String> values = new HashSet<>();
+
+        for (final Track track : mTracks) {
+            values.add(track.mTags.get(type));
+        }
+
+        return values.size();
+    }
+
+    /**
+     * Retrieves a directory.
+     *
+     * @param path The directory path, empty for the root directory.
+     * @return The directory, null if not found.
+     */
+    Directory findDirectory(final String path) {
+        return mDirectories.get(path);
+    }
+
+    private Directory getDirectory(final String path) {
+        Directory directory = mDirectories.get(path);
+
+        if (directory == null) {
+            directory = new Directory(path);
+            mDirectories.put(path, directory);
+            if (!path.isEmpty()) {
+                getDirectory(getParentPath(path)).mDirectories.add(path);
+            }
+        }
+
+        return directory;
+    }
+
+    /**
+     * Retrieves the time of the latest modification of the library.
+     *
+     * @return The time, in milliseconds.
+     */
+    long getLastModified() {
+        return mLastModified;
+    }
+
+    /**
+     * Retrieves a track.
+     *
+     * @param file The track path.
+     * @return The track, null if not found.
+     */
+    Track getTrack(final String file) {
+        return mTracksByFile.get(file);
+    }
+
+    /**
+     * Retrieves every track.
+     *
+     * @return The tracks, in library order.
+     */
+    List<Track> getTracks() {
+        return Collections.unmodifiableList(mTracks);
+    }
+
+    /**
+     * Retrieves the tracks of a path, a track or a directory and its subdirectories.
+     *
+     * @param uri The path, empty for the whole library.
+     * @return The tracks, empty if the path is not found.
+     */
+    Collection<Track> getTracks(final String uri) {
+        final Collection<Track> result;
+        final Track track = mTracksByFile.get(uri);
+
+        if (track != null) {
+            result = Collections.singletonList(track);
+        } else if (mDirectories.containsKey(uri)) {
+            result = new ArrayList<>();
+            addTracks(mDirectories.get(uri), result);
+        } else {
+            result = Collections.emptyList();
+        }
+
+        return result;
+    }
+
+    private void addTracks(final Directory directory, final Collection<Track> tracks) {
+        for (final String path : directory.mDirectories) {
+            addTracks(mDirectories.get(path), tracks);
+        }
+        tracks.addAll(directory.mTracks);
+    }
+
+    /**
+     * Retrieves the number of tracks.
+     *
+     * @return The number of tracks.
+     */
+    public int size() {
+        return mTracks.size();
+    }
+
+    /** A directory of the library. */
+    static final class Directory {
+
+        /** The subdirectory paths, sorted. */
+        final Set<String> mDirectories = new TreeSet<>();
+
+        /** The time of the latest modification within this directory, in milliseconds. */
+        long mLastModified;
+
+        /** The time of the latest modification within this directory, in protocol format. */
+        String mLastModifiedText;
+
+        /** The directory path. */
+        final String mPath;
+
+        /** The tracks directly within this directory. */
+        final List<Track> mTracks = new ArrayList<>();
+
+        Directory(final String path) {
+            super();
+
+            mPath = path;
+        }
+    }
+
+    /** A track of the library. */
+    static final class Track {
+
+        /** The track path. */
+        final String mFile;
+
+        /** The track modification time, in milliseconds. */
+        long mLastModified;
+
+        /** The response lines describing this track. */
+        final List<String> mLines = new ArrayList<>();
+
+        /** The track tags, by lower case tag name. */
+        final Map<String, String> mTags = new LinkedHashMap<>();
+
+        /** The track duration, in seconds. */
+        int mTime;
+
+        Track(final String file) {
+            super();
+
+            mFile = file;
+        }
+    }
+}
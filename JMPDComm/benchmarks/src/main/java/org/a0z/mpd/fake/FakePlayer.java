@@ -0,0 +1,554 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd.fake;
+
+import org.a0z.mpd.fake.FakeLibrary.Track;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The player state of the fake server: the playlist, the playback and the stickers, shared by
+ * every connection. Every method is synchronized.
+ */
+final class FakePlayer {
+
+    private static final String STATE_PAUSE = "pause";
+
+    private static final String STATE_PLAY = "play";
+
+    private static final String STATE_STOP = "stop";
+
+    /** The position of the current track, -1 if none. */
+    private int mCurrent = -1;
+
+    /** The database update time, in seconds. */
+    private long mDbUpdate;
+
+    /** The playback time of the current track before the last play, in milliseconds. */
+    private long mElapsed;
+
+    private final FakeLibrary mLibrary;
+
+    /** The id of the next added track. */
+    private int mNextId = 1;
+
+    /** The options, such as {@code random}, by name. */
+    private final Map<String, Boolean> mOptions = new TreeMap<>();
+
+    /** The time of the last play, as {@link System#nanoTime()}. */
+    private long mPlayStarted;
+
+    private final List<Entry> mPlaylist = new ArrayList<>();
+
+    /** The shuffle order source, seeded so runs are reproducible. */
+    private final Random mRandom = new Random(1L);
+
+    private final long mStarted = System.nanoTime();
+
+    private String mState = STATE_STOP;
+
+    /** The stickers, by track path, then by name. */
+    private final Map<String, Map<String, String>> mStickers = new HashMap<>();
+
+    /** The number of the last database update job. */
+    private int mUpdateJob;
+
+    /** The playlist version, incremented upon every playlist change. */
+    private int mVersion = 1;
+
+    private int mVolume = 100;
+
+    FakePlayer(final FakeLibrary library) {
+        super();
+
+        mLibrary = library;
+        mDbUpdate = TimeUnit.MILLISECONDS.toSeconds(library.getLastModified());
+        mOptions.put("consume", Boolean.FALSE);
+        mOptions.put("random", Boolean.FALSE);
+        mOptions.put("repeat", Boolean.FALSE);
+        mOptions.put("single", Boolean.FALSE);
+    }
+
+    private static void appendEntry(final StringBuilder response, final Entry entry,
+            final int position) {
+        for (final String line : entry.mTrack.mLines) {
+            response.append(line).append('\n');
+        }
+        response.append("Pos: ").append(position).append('\n');
+        response.append("Id: ").append(entry.mId).append('\n');
+    }
+
+    /**
+     * Adds tracks at the end of the playlist.
+     *
+     * @param tracks The tracks to add.
+     * @return The id of the first added track, -1 if none was added.
+     */
+    synchronized int add(final Collection<Track> tracks) {
+        final int firstId = tracks.isEmpty() ? -1 : mNextId;
+
+        mVersion++;
+        for (final Track track : tracks) {
+            mPlaylist.add(new Entry(track, mNextId++, mVersion));
+        }
+
+        return firstId;
+    }
+
+    /**
+     * Appends the playlist changes since a playlist version, as {@code plchanges} and
+     * {@code plchangesposid}.
+     *
+     * @param response The response to append to.
+     * @param version  The playlist version known by the client.
+     * @param posIdOnly Whether to only include the position and id of the changed tracks.
+     */
+    synchronized void appendChanges(final StringBuilder response, final int version,
+            final boolean posIdOnly) {
+        for (int i = 0; i < mPlaylist.size(); i++) {
+            final Entry entry = mPlaylist.get(i);
+
+            if (entry.mVersion > version) {
+                if (posIdOnly) {
+                    response.append("cpos: ").append(i).append('\n');
+                    response.append("Id: ").append(entry.mId).append('\n');
+                } else {
+                    appendEntry(response, entry, i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends the current track, as {@code currentsong}.
+     *
+     * @param response The response to append to.
+     */
+    synchronized void appendCurrent(final StringBuilder response) {
+        if (mCurrent != -1) {
+            appendEntry(response, mPlaylist.get(mCurrent), mCurrent);
+        }
+    }
+
+    /**
+     * Appends the playlist, or one of its tracks, as {@code playlistinfo}.
+     *
+     * @param response The response to append to.
+     * @param position The position of the track, -1 for the whole playlist.
+     * @throws AckException Thrown if the position is out of the playlist.
+     */
+    synchronized void appendPlaylist(final StringBuilder response, final int position)
+            throws AckException {
+        if (position == -1) {
+            for (int i = 0; i < mPlaylist.size(); i++) {
+                appendEntry(response, mPlaylist.get(i), i);
+            }
+        } else {
+            checkPosition(position);
+            appendEntry(response, mPlaylist.get(position), position);
+        }
+    }
+
+    /**
+     * Appends the statistics, as {@code stats}.
+     *
+     * @param response The response to append to.
+     */
+    synchronized void appendStatistics(final StringBuilder response) {
+        final long uptime = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - mStarted);
+
+        response.append("artists: ").append(mLibrary.getCount("artist")).append('\n');
+        response.append("albums: ").append(mLibrary.getCount("album")).append('\n');
+        response.append("songs: ").append(mLibrary.size()).append('\n');
+        response.append("uptime: ").append(uptime).append('\n');
+        response.append("db_playtime: ").append(FakeLibrary.getPlaytime(mLibrary.getTracks()))
+                .append('\n');
+        response.append("db_update: ").append(mDbUpdate).append('\n');
+        response.append("playtime: ").append(uptime).append('\n');
+    }
+
+    /**
+     * Appends the player status, as {@code status}.
+     *
+     * @param response The response to append to.
+     */
+    synchronized void appendStatus(final StringBuilder response) {
+        response.append("volume: ").append(mVolume).append('\n');
+        for (final Map.Entry<String, Boolean> option : mOptions.entrySet()) {
+            response.append(option.getKey()).append(": ")
+                    .append(option.getValue().booleanValue() ? '1' : '0').append('\n');
+        }
+        response.append("playlist: ").append(mVersion).append('\n');
+        response.append("playlistlength: ").append(mPlaylist.size()).append('\n');
+        response.append("mixrampdb: 0.000000\n");
+        response.append("state: ").append(mState).append('\n');
+        if (mCurrent != -1) {
+            final Entry current = mPlaylist.get(mCurrent);
+            final long elapsed = getElapsed();
+
+            response.append("song: ").append(mCurrent).append('\n');
+            response.append("songid: ").append(current.mId).append('\n');
+            response.append("time: ").append(TimeUnit.MILLISECONDS.toSeconds(elapsed))
+                    .append(':').append(current.mTrack.mTime).append('\n');
+            response.append("elapsed: ").append(elapsed / 1000L).append('.')
+                    .append(String.format("%03d", elapsed % 1000L)).append('\n');
+            response.append("bitrate: 905\n");
+            response.append("audio: 44100:16:2\n");
+            if (mCurrent + 1 < mPlaylist.size()) {
+                response.append("nextsong: ").append(mCurrent + 1).append('\n');
+                response.append("nextsongid: ").append(mPlaylist.get(mCurrent + 1).mId)
+                        .append('\n');
+            }
+        }
+    }
+
+    /**
+     * Appends the stickers of a track, as {@code sticker list}.
+     *
+     * @param response The response to append to.
+     * @param file     The track path.
+     */
+    synchronized void appendStickers(final StringBuilder response, final String file) {
+        final Map<String, String> stickers = mStickers.get(file);
+
+        if (stickers != null) {
+            for (final Map.Entry<String, String> sticker : stickers.entrySet()) {
+                response.append("sticker: ").append(sticker.getKey()).append('=')
+                        .append(sticker.getValue()).append('\n');
+            }
+        }
+    }
+
+    /**
+     * Appends the tracks which have a sticker, as {@code sticker find}.
+     *
+     * @param response The response to append to.
+     * @param tracks   The tracks to look into.
+     * @param name     The sticker name.
+     */
+    synchronized void appendStickers(final StringBuilder response,
+            final Iterable<Track> tracks, final String name) {
+        for (final Track track : tracks) {
+            final Map<String, String> stickers = mStickers.get(track.mFile);
+
+            if (stickers != null && stickers.containsKey(name)) {
+                response.append("file: ").append(track.mFile).append('\n');
+                response.append("sticker: ").append(name).append('=')
+                        .append(stickers.get(name)).append('\n');
+            }
+        }
+    }
+
+    private void checkPosition(final int position) throws AckException {
+        if (position < 0 || position >= mPlaylist.size()) {
+            throw new AckException(AckException.ACK_ERROR_ARG, "Bad song index");
+        }
+    }
+
+    /** Clears the playlist, and stops the playback. */
+    synchronized void clear() {
+        mPlaylist.clear();
+        mVersion++;
+        stop();
+    }
+
+    /**
+     * Removes a track from the playlist.
+     *
+     * @param position The track position.
+     * @throws AckException Thrown if the position is out of the playlist.
+     */
+    synchronized void delete(final int position) throws AckException {
+        checkPosition(position);
+
+        mPlaylist.remove(position);
+        mVersion++;
+        /** The following tracks moved. */
+        for (int i = position; i < mPlaylist.size(); i++) {
+            mPlaylist.get(i).mVersion = mVersion;
+        }
+        if (mCurrent == position) {
+            stop();
+        } else if (mCurrent > position) {
+            mCurrent--;
+        }
+    }
+
+    /**
+     * Removes a sticker, or every sticker, of a track.
+     *
+     * @param file The track path.
+     * @param name The sticker name, null for every sticker.
+     * @throws AckException Thrown if no such sticker exists.
+     */
+    synchronized void deleteSticker(final String file, final String name) throws AckException {
+        final Map<String, String> stickers = mStickers.get(file);
+
+        if (stickers == null || name != null && stickers.remove(name) == null) {
+            throw new AckException(AckException.ACK_ERROR_NO_EXIST, "no such sticker");
+        }
+        if (name == null || stickers.isEmpty()) {
+            mStickers.remove(file);
+        }
+    }
+
+    private long getElapsed() {
+        long elapsed = mElapsed;
+
+        if (STATE_PLAY.equals(mState)) {
+            elapsed += TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mPlayStarted);
+        }
+
+        return elapsed;
+    }
+
+    /**
+     * Retrieves the position of a track.
+     *
+     * @param id The track id.
+     * @return The track position.
+     * @throws AckException Thrown if no track has this id.
+     */
+    synchronized int getPosition(final int id) throws AckException {
+        for (int i = 0; i < mPlaylist.size(); i++) {
+            if (mPlaylist.get(i).mId == id) {
+                return i;
+            }
+        }
+
+        throw new AckException(AckException.ACK_ERROR_NO_EXIST, "No such song");
+    }
+
+    /**
+     * Retrieves a sticker of a track.
+     *
+     * @param file The track path.
+     * @param name The sticker name.
+     * @return The sticker value.
+     * @throws AckException Thrown if no such sticker exists.
+     */
+    synchronized String getSticker(final String file, final String name) throws AckException {
+        final Map<String, String> stickers = mStickers.get(file);
+
+        if (stickers == null || !stickers.containsKey(name)) {
+            throw new AckException(AckException.ACK_ERROR_NO_EXIST, "no such sticker");
+        }
+
+        return stickers.get(name);
+    }
+
+    /**
+     * Marks the entries in a range of positions as changed by the current playlist version, and
+     * follows the current track to its new position.
+     *
+     * @param from    The first changed position.
+     * @param to      The position following the last changed position.
+     * @param current The current entry, null if none.
+     */
+    private void markChanged(final int from, final int to, final Entry current) {
+        for (int i = from; i < to; i++) {
+            mPlaylist.get(i).mVersion = mVersion;
+        }
+        if (current != null) {
+            mCurrent = mPlaylist.indexOf(current);
+        }
+    }
+
+    /**
+     * Moves a track to another position of the playlist.
+     *
+     * @param from The track position.
+     * @param to   The new track position.
+     * @throws AckException Thrown if either position is out of the playlist.
+     */
+    synchronized void move(final int from, final int to) throws AckException {
+        checkPosition(from);
+        checkPosition(to);
+
+        final Entry current = mCurrent == -1 ? null : mPlaylist.get(mCurrent);
+
+        mPlaylist.add(to, mPlaylist.remove(from));
+        mVersion++;
+        markChanged(Math.min(from, to), Math.max(from, to) + 1, current);
+    }
+
+    /**
+     * Pauses or resumes the playback.
+     *
+     * @param pause True to pause, false to resume.
+     */
+    synchronized void pause(final boolean pause) {
+        if (pause && STATE_PLAY.equals(mState)) {
+            mElapsed = getElapsed();
+            mState = STATE_PAUSE;
+        } else if (!pause && STATE_PAUSE.equals(mState)) {
+            mPlayStarted = System.nanoTime();
+            mState = STATE_PLAY;
+        }
+    }
+
+    /**
+     * Starts the playback of a track.
+     *
+     * @param position The track position, -1 for the current track, or the first.
+     * @throws AckException Thrown if the position is out of the playlist.
+     */
+    synchronized void play(final int position) throws AckException {
+        if (position == -1 && mCurrent != -1) {
+            if (STATE_PAUSE.equals(mState)) {
+                pause(false);
+            } else if (STATE_STOP.equals(mState)) {
+                play(mCurrent);
+            }
+        } else {
+            final int target = position == -1 ? 0 : position;
+
+            checkPosition(target);
+            mCurrent = target;
+            mElapsed = 0L;
+            mPlayStarted = System.nanoTime();
+            mState = STATE_PLAY;
+        }
+    }
+
+    /**
+     * Sets an option, such as {@code random}.
+     *
+     * @param name  The option name.
+     * @param value The option value.
+     */
+    synchronized void setOption(final String name, final boolean value) {
+        mOptions.put(name, Boolean.valueOf(value));
+    }
+
+    /**
+     * Sets a sticker of a track.
+     *
+     * @param file  The track path.
+     * @param name  The sticker name.
+     * @param value The sticker value.
+     */
+    synchronized void setSticker(final String file, final String name, final String value) {
+        Map<String, String> stickers = mStickers.get(file);
+
+        if (stickers == null) {
+            stickers = new TreeMap<>();
+            mStickers.put(file, stickers);
+        }
+        stickers.put(name, value);
+    }
+
+    /**
+     * Sets the volume.
+     *
+     * @param volume The volume, 0 to 100.
+     * @throws AckException Thrown if the volume is out of range.
+     */
+    synchronized void setVolume(final int volume) throws AckException {
+        if (volume < 0 || volume > 100) {
+            throw new AckException(AckException.ACK_ERROR_ARG, "Invalid volume value");
+        }
+        mVolume = volume;
+    }
+
+    /** Shuffles the whole playlist. */
+    synchronized void shuffle() {
+        final Entry current = mCurrent == -1 ? null : mPlaylist.get(mCurrent);
+
+        Collections.shuffle(mPlaylist, mRandom);
+        mVersion++;
+        markChanged(0, mPlaylist.size(), current);
+    }
+
+    /**
+     * Moves the playback to another track.
+     *
+     * @param offset The offset of the track from the current track.
+     */
+    synchronized void skip(final int offset) {
+        if (mCurrent != -1 && !STATE_STOP.equals(mState)) {
+            final int target = mCurrent + offset;
+
+            if (target >= 0 && target < mPlaylist.size()) {
+                mCurrent = target;
+                mElapsed = 0L;
+                mPlayStarted = System.nanoTime();
+            } else {
+                stop();
+            }
+        }
+    }
+
+    /** Stops the playback. */
+    synchronized void stop() {
+        mState = STATE_STOP;
+        mElapsed = 0L;
+        if (mCurrent >= mPlaylist.size()) {
+            mCurrent = -1;
+        }
+    }
+
+    /**
+     * Runs a database update, which completes at once as the library does not change.
+     *
+     * @return The update job number.
+     */
+    synchronized int update() {
+        mDbUpdate = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+
+        return ++mUpdateJob;
+    }
+
+    /** A playlist entry. */
+    private static final class Entry {
+
+        /** The entry id. */
+        final int mId;
+
+        final Track mTrack;
+
+        /** The playlist version of the last change of this entry. */
+        int mVersion;
+
+        Entry(final Track track, final int id, final int version) {
+            super();
+
+            mTrack = track;
+            mId = id;
+            mVersion = version;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd.fake;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An in-process fake MPD protocol server for tests and benchmarks, serving a {@link FakeLibrary}
+ * on the loopback interface. It supports the commands this library uses: status and
+ * statistics, {@code idle}, playlist changes, database queries, database walks, command lists
+ * and stickers. To load test the client reproducibly, it can delay responses per command, limit
+ * its bandwidth and close connections whose response exceeds an output buffer size, as the
+ * {@code max_output_buffer_size} setting of MPD does.
+ *
+ * <pre>
+ * final FakeServer server = new FakeServer(new FakeLibrary(50000));
+ * server.setLatency("listallinfo", 20L);
+ * server.start();
+ * mpd.connect(InetAddress.getLoopbackAddress(), server.getPort(), null);
+ * </pre>
+ */
+public class FakeServer implements Closeable {
+
+    /** The connections currently open. */
+    private final Set<FakeClient> mClients = new CopyOnWriteArraySet<>();
+
+    /** The executor running the accept loop and every connection. */
+    private final ExecutorService mExecutor;
+
+    /** The per-command response latencies, in milliseconds. */
+    private final Map<String, Long> mLatencies = new ConcurrentHashMap<>();
+
+    private final FakeLibrary mLibrary;
+
+    private final FakePlayer mPlayer;
+
+    /** The output rate limit, in bytes per second, 0 if unlimited. */
+    private volatile int mBandwidth;
+
+    /** The response latency of commands without their own latency, in milliseconds. */
+    private volatile long mDefaultLatency;
+
+    /** The response size which closes the connection, in bytes, 0 if unlimited. */
+    private volatile int mMaxOutputBufferSize;
+
+    private ServerSocket mServerSocket;
+
+    /**
+     * Sole constructor.
+     *
+     * @param library The library to serve.
+     */
+    public FakeServer(final FakeLibrary library) {
+        super();
+
+        mLibrary = library;
+        mPlayer = new FakePlayer(library);
+        mExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "FakeServer");
+
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Waits for every connection to be closed, after {@link #close()}.
+     *
+     * @param timeout The maximum time to wait, in milliseconds.
+     * @return True if every connection was closed, false upon timeout.
+     * @throws InterruptedException Thrown if the current thread was interrupted.
+     */
+    public boolean awaitTermination(final long timeout) throws InterruptedException {
+        return mExecutor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /** Stops accepting connections, and closes every open connection. */
+    @Override
+    public void close() throws IOException {
+        if (mServerSocket != null) {
+            mServerSocket.close();
+        }
+        for (final FakeClient client : mClients) {
+            client.close();
+        }
+        mExecutor.shutdownNow();
+    }
+
+    int getBandwidth() {
+        return mBandwidth;
+    }
+
+    /**
+     * Retrieves the response latency of a command.
+     *
+     * @param command The command.
+     * @return The latency, in milliseconds.
+     */
+    long getLatency(final String command) {
+        final Long latency = mLatencies.get(command);
+
+        return latency == null ? mDefaultLatency : latency.longValue();
+    }
+
+    FakeLibrary getLibrary() {
+        return mLibrary;
+    }
+
+    int getMaxOutputBufferSize() {
+        return mMaxOutputBufferSize;
+    }
+
+    FakePlayer getPlayer() {
+        return mPlayer;
+    }
+
+    /**
+     * Retrieves the port the server listens to.
+     *
+     * @return The port, on the loopback interface.
+     */
+    public int getPort() {
+        return mServerSocket.getLocalPort();
+    }
+
+    /**
+     * Reports subsystem changes to every connection, which are then sent in response to
+     * {@code idle}. Changes made through the protocol are reported by the server itself.
+     *
+     * @param subsystems The changed subsystems, such as {@code player}.
+     */
+    public void notifyIdle(final String... subsystems) {
+        for (final FakeClient client : mClients) {
+            client.onIdle(subsystems);
+        }
+    }
+
+    void removeClient(final FakeClient client) {
+        mClients.remove(client);
+    }
+
+    /**
+     * Limits the output rate of every connection.
+     *
+     * @param bytesPerSecond The rate limit, in bytes per second, 0 if unlimited.
+     */
+    public void setBandwidth(final int bytesPerSecond) {
+        mBandwidth = bytesPerSecond;
+    }
+
+    /**
+     * Delays the response of every command without a latency of its own.
+     *
+     * @param latency The latency, in milliseconds.
+     */
+    public void setDefaultLatency(final long latency) {
+        mDefaultLatency = latency;
+    }
+
+    /**
+     * Delays the response of a command.
+     *
+     * @param command The command, such as {@code status}.
+     * @param latency The latency, in milliseconds.
+     */
+    public void setLatency(final String command, final long latency) {
+        mLatencies.put(command, Long.valueOf(latency));
+    }
+
+    /**
+     * Sets the response size which closes the connection instead of being sent whole, the
+     * response is cut at this size first.
+     *
+     * @param size The size, in bytes, 0 if unlimited.
+     */
+    public void setMaxOutputBufferSize(final int size) {
+        mMaxOutputBufferSize = size;
+    }
+
+    /**
+     * Starts accepting connections, on an ephemeral port of the loopback interface.
+     *
+     * @throws IOException Thrown if the server socket could not be bound.
+     * @see #getPort()
+     */
+    public void start() throws IOException {
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (!mServerSocket.isClosed()) {
+                        final FakeClient client = new FakeClient(FakeServer.this,
+                                mServerSocket.accept());
+
+                        mClients.add(client);
+                        mExecutor.execute(client);
+                    }
+                } catch (final IOException ignored) {
+                    /** The server socket was closed. */
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd.item;
+
+import org.a0z.mpd.ProtocolFixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Benchmarks the joins of artist and album artist lists, comparing {@link ItemJoins} to the
+ * nested loops they replaced.
+ */
+@State(Scope.Benchmark)
+public class ItemJoinsBenchmark {
+
+    /** The number of albums of the library, an artist has about four of them. */
+    @Param({"1000", "20000"})
+    public int albums;
+
+    private List<Album> mAlbumArtistAlbums;
+
+    private List<Artist> mAlbumArtists;
+
+    private List<Album> mArtistAlbums;
+
+    private List<Artist> mArtists;
+
+    /**
+     * Generates the albums of a range of artists, like the grouped album list of MPD 0.19.
+     *
+     * @param artists        The artists.
+     * @param hasAlbumArtist Whether the artists are album artists.
+     * @return The sorted albums.
+     */
+    private static List<Album> toAlbums(final List<Artist> artists,
+            final boolean hasAlbumArtist) {
+        final List<Album> albums = new ArrayList<>(artists.size() * 4);
+
+        for (final Artist artist : artists) {
+            for (int i = 0; i < 4; i++) {
+                albums.add(new Album("Album " + i + " of " + artist.getName(), artist,
+                        hasAlbumArtist));
+            }
+        }
+        ItemSorter.sort(albums);
+
+        return albums;
+    }
+
+    private static List<Artist> toArtists(final List<String> names) {
+        final List<Artist> artists = new ArrayList<>(names.size());
+
+        for (final String name : names) {
+            artists.add(new Artist(name));
+        }
+        ItemSorter.sort(artists);
+
+        return artists;
+    }
+
+    /**
+     * Marks the album artist albums which are artist albums too, with a hash join.
+     *
+     * @return The album artist albums.
+     */
+    @Benchmark
+    public List<Album> markAlbumArtists() {
+        final Map<Object, Album> index = ItemJoins.indexByName(mAlbumArtistAlbums);
+
+        for (final Album artistAlbum : mArtistAlbums) {
+            final Album albumArtistAlbum = index.get(ItemJoins.nameKey(artistAlbum));
+
+            if (albumArtistAlbum != null) {
+                albumArtistAlbum.setHasAlbumArtist(false);
+            }
+        }
+
+        return mAlbumArtistAlbums;
+    }
+
+    /**
+     * Marks the album artist albums which are artist albums too, as listAllAlbumsGrouped() did
+     * before.
+     *
+     * @return The album artist albums.
+     */
+    @Benchmark
+    public List<Album> markAlbumArtistsNestedLoop() {
+        for (final Album artistAlbum : mArtistAlbums) {
+            for (final Album albumArtistAlbum : mAlbumArtistAlbums) {
+                if (artistAlbum.doesNameExist(albumArtistAlbum)) {
+                    albumArtistAlbum.setHasAlbumArtist(false);
+                    break;
+                }
+            }
+        }
+
+        return mAlbumArtistAlbums;
+    }
+
+    @Benchmark
+    public List<Artist> merged() {
+        return Item.merged(mAlbumArtists, mArtists);
+    }
+
+    /**
+     * Merges album artists into artists as Item.merged() did before, the copies are part of
+     * the measurement as the merge modifies its arguments.
+     *
+     * @return The merged list.
+     */
+    @Benchmark
+    public List<Artist> mergedNestedLoop() {
+        final List<Artist> albumArtists = new ArrayList<>(mAlbumArtists);
+        final List<Artist> artists = new ArrayList<>(mArtists);
+        int jStart = albumArtists.size() - 1;
+
+        for (int i = artists.size() - 1; i >= 0; i--) {
+            for (int j = jStart; j >= 0; j--) {
+                if (albumArtists.get(j).doesNameExist(artists.get(i))) {
+                    jStart = j;
+                    artists.remove(i);
+                    break;
+                }
+            }
+        }
+        artists.addAll(albumArtists);
+        Collections.sort(artists);
+
+        return artists;
+    }
+
+    @Setup
+    public void setUp() {
+        final List<String> names = ProtocolFixtures.artists(Math.max(albums / 4, 1), 0);
+        final List<String> artistNames = new ArrayList<>(names.size());
+        final List<String> albumArtistNames = new ArrayList<>(names.size() / 4 + 1);
+
+        /** Album artists are spread among the artists, and a few are not artists. */
+        for (int i = 0; i < names.size(); i++) {
+            if (i % 9 != 0) {
+                artistNames.add(names.get(i));
+            }
+            if (i % 4 == 0) {
+                albumArtistNames.add(names.get(i));
+            }
+        }
+
+        mArtists = toArtists(artistNames);
+        mAlbumArtists = toArtists(albumArtistNames);
+        mArtistAlbums = toAlbums(mArtists, false);
+        mAlbumArtistAlbums = toAlbums(mAlbumArtists, true);
+    }
+}
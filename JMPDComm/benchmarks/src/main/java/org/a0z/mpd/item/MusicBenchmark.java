@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd.item;
+
+import org.a0z.mpd.ProtocolFixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/** Benchmarks the building of {@code Music} items from a track list response. */
+@State(Scope.Benchmark)
+public class MusicBenchmark {
+
+    /** The number of tracks of the response. */
+    @Param({"1000", "50000", "250000"})
+    public int tracks;
+
+    private List<String> mResponse;
+
+    /** The response of a single track. */
+    private List<String> mTrack;
+
+    @Setup
+    public void setUp() {
+        mResponse = ProtocolFixtures.tracks(tracks, true);
+        mTrack = ProtocolFixtures.tracks(1, true);
+    }
+
+    @Benchmark
+    public Music build() {
+        return AbstractMusic.build(mTrack);
+    }
+
+    @Benchmark
+    public List<Music> getMusicFromList() {
+        return Music.getMusicFromList(mResponse, false);
+    }
+
+    @Benchmark
+    public List<Music> getMusicFromListSorted() {
+        return Music.getMusicFromList(mResponse, true);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd.item;
+
+import org.a0z.mpd.ProtocolFixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/** Benchmarks the natural ordering of names and items. */
+@State(Scope.Benchmark)
+public class SortingBenchmark {
+
+    /** Compares items by their names, as items compared before using sort keys. */
+    private static final Comparator<Item> COLLATOR_COMPARATOR = new Comparator<Item>() {
+        @Override
+        public int compare(final Item lhs, final Item rhs) {
+            return Collator.getInstance().compare(lhs.sortText(), rhs.sortText());
+        }
+    };
+
+    private static final Comparator<String> NATURAL_COMPARATOR = new Comparator<String>() {
+        @Override
+        public int compare(final String lhs, final String rhs) {
+            return StringComparators.compareNatural(lhs, rhs);
+        }
+    };
+
+    /** The number of tracks of the library, an artist has about forty of them. */
+    @Param({"1000", "50000", "250000"})
+    public int tracks;
+
+    /** The artist names, shuffled. */
+    private List<String> mArtistNames;
+
+    /** A track list response, for the music sort. */
+    private List<String> mResponse;
+
+    private List<String> mTitles;
+
+    private static List<Artist> toArtists(final List<String> names) {
+        final List<Artist> artists = new ArrayList<>(names.size());
+
+        for (final String name : names) {
+            artists.add(new Artist(name));
+        }
+
+        return artists;
+    }
+
+    @Setup
+    public void setUp() {
+        final int artists = Math.max(tracks / 40, 1);
+
+        mResponse = ProtocolFixtures.tracks(tracks, false);
+        mTitles = ProtocolFixtures.naturalTitles(tracks);
+        mArtistNames = ProtocolFixtures.artists(artists, 0);
+        Collections.shuffle(mArtistNames, new Random(0L));
+    }
+
+    @Benchmark
+    public List<String> sortNatural() {
+        final List<String> titles = new ArrayList<>(mTitles);
+
+        Collections.sort(titles, NATURAL_COMPARATOR);
+
+        return titles;
+    }
+
+    /**
+     * Sorts new artists by comparing their names with a collator, the sort keys are not used.
+     *
+     * @return The sorted artists.
+     */
+    @Benchmark
+    public List<Artist> sortCollated() {
+        final List<Artist> artists = toArtists(mArtistNames);
+
+        Collections.sort(artists, COLLATOR_COMPARATOR);
+
+        return artists;
+    }
+
+    /**
+     * Sorts new artists, building their sort keys is part of the measurement.
+     *
+     * @return The sorted artists.
+     */
+    @Benchmark
+    public List<Artist> sortItems() {
+        final List<Artist> artists = toArtists(mArtistNames);
+
+        ItemSorter.sort(artists);
+
+        return artists;
+    }
+
+    /**
+     * Sorts new tracks by title, building their sort keys is part of the measurement.
+     *
+     * @return The sorted tracks.
+     */
+    @Benchmark
+    public List<Music> sortMusic() {
+        final List<Music> music = Music.getMusicFromList(mResponse, false);
+
+        ItemSorter.sort(music);
+
+        return music;
+    }
+}
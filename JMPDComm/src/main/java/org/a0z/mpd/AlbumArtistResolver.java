@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd;
+
+import org.a0z.mpd.connection.MPDConnection;
+import org.a0z.mpd.exception.MPDException;
+import org.a0z.mpd.item.Album;
+import org.a0z.mpd.item.Artist;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.a0z.mpd.Tools.KEY;
+import static org.a0z.mpd.Tools.VALUE;
+
+/**
+ * This class resolves the album artists of albums from a single grouped {@code list} command,
+ * available since MPD protocol 0.19, rather than one command per album. Both the 0.19 and the
+ * 0.21 layouts of the grouped response are understood. The album artists are
+ * kept until the database changes.
+ */
+final class AlbumArtistResolver {
+
+    private static final String RESPONSE_ALBUM = "Album";
+
+    private static final String RESPONSE_ALBUM_ARTIST = "AlbumArtist";
+
+    private static final String RESPONSE_ARTIST = "Artist";
+
+    /** The connection to the server. */
+    private final MPDConnection mConnection;
+
+    /** Incremented upon every invalidation, so album artists loaded meanwhile are not kept. */
+    private final AtomicInteger mGeneration = new AtomicInteger();
+
+    /**
+     * The album artists by album and artist names, with a null artist name for the album
+     * artists of all the artists of an album, null until loaded.
+     */
+    private volatile Map<List<String>, Set<String>> mAlbumArtists;
+
+    AlbumArtistResolver(final MPDConnection connection) {
+        super();
+
+        mConnection = connection;
+    }
+
+    /**
+     * Adds an album artist name to a set of the album artists.
+     *
+     * @param albumArtists The album artists by album and artist names.
+     * @param key          The album and artist names.
+     * @param albumArtist  The album artist name.
+     */
+    private static void add(final Map<List<String>, Set<String>> albumArtists,
+            final List<String> key, final String albumArtist) {
+        Set<String> names = albumArtists.get(key);
+
+        if (names == null) {
+            names = new HashSet<>(2);
+            albumArtists.put(key, names);
+        }
+        names.add(albumArtist);
+    }
+
+    /**
+     * Adds the album artist of a group of tracks to the album artists of their album.
+     *
+     * @param albumArtists The album artists by album and artist names.
+     * @param album        The album name of the tracks.
+     * @param artist       The artist name of the tracks.
+     * @param albumArtist  The album artist name of the tracks, empty if they have none.
+     */
+    private static void add(final Map<List<String>, Set<String>> albumArtists,
+            final String album, final String artist, final String albumArtist) {
+        add(albumArtists, Arrays.asList(album, artist), albumArtist);
+        add(albumArtists, Arrays.asList(album, null), albumArtist);
+    }
+
+    /**
+     * Parses a grouped {@code list} response as sent since MPD protocol 0.21, where the group
+     * tags precede the albums and are only sent when their value changes.
+     *
+     * @param response The grouped response.
+     * @return The album artists by album and artist names.
+     */
+    private static Map<List<String>, Set<String>> parseLeadingGroups(
+            final List<String> response) {
+        final Map<List<String>, Set<String>> albumArtists = new HashMap<>(response.size());
+        String albumArtist = "";
+        String artist = "";
+
+        for (final String[] pair : Tools.splitResponse(response)) {
+            if (RESPONSE_ALBUM.equals(pair[KEY])) {
+                add(albumArtists, pair[VALUE], artist, albumArtist);
+            } else if (RESPONSE_ALBUM_ARTIST.equals(pair[KEY])) {
+                albumArtist = pair[VALUE];
+            } else if (RESPONSE_ARTIST.equals(pair[KEY])) {
+                artist = pair[VALUE];
+            }
+        }
+
+        return albumArtists;
+    }
+
+    /**
+     * Parses a grouped {@code list} response as sent by MPD protocol 0.19 and 0.20, where each
+     * album is followed by the group tags its tracks have.
+     *
+     * @param response The grouped response.
+     * @return The album artists by album and artist names.
+     */
+    private static Map<List<String>, Set<String>> parseTrailingGroups(
+            final List<String> response) {
+        final Map<List<String>, Set<String>> albumArtists = new HashMap<>(response.size());
+        String album = null;
+        String albumArtist = "";
+        String artist = "";
+
+        for (final String[] pair : Tools.splitResponse(response)) {
+            if (RESPONSE_ALBUM.equals(pair[KEY])) {
+                if (album != null) {
+                    add(albumArtists, album, artist, albumArtist);
+                }
+                album = pair[VALUE];
+                albumArtist = "";
+                artist = "";
+            } else if (RESPONSE_ALBUM_ARTIST.equals(pair[KEY])) {
+                albumArtist = pair[VALUE];
+            } else if (RESPONSE_ARTIST.equals(pair[KEY])) {
+                artist = pair[VALUE];
+            }
+        }
+        if (album != null) {
+            add(albumArtists, album, artist, albumArtist);
+        }
+
+        return albumArtists;
+    }
+
+    /**
+     * Resolves the album artists of albums, like {@link MPD#listAlbumArtists(List)}, from memory
+     * once loaded.
+     *
+     * @param albums The albums, an album without artist resolves to the album artists of all
+     *               its artists.
+     * @return The album artist names of each album, in order, which include an empty name if
+     * some of its tracks have no album artist, or null if the server does not support grouping.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    List<String[]> getAlbumArtists(final List<Album> albums) throws IOException, MPDException {
+        List<String[]> result = null;
+
+        if (mConnection.isProtocolVersionSupported(0, 19)) {
+            final Map<List<String>, Set<String>> albumArtists = load();
+
+            result = new ArrayList<>(albums.size());
+            for (final Album album : albums) {
+                final Artist artist = album.getArtist();
+                String artistName = null;
+
+                if (artist != null) {
+                    artistName = artist.getName();
+                }
+
+                final Set<String> names =
+                        albumArtists.get(Arrays.asList(album.getName(), artistName));
+
+                if (names == null) {
+                    result.add(new String[0]);
+                } else {
+                    result.add(names.toArray(new String[names.size()]));
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Drops the album artists, which are loaded again once next resolved. This is called upon
+     * every database change, and upon reconnection.
+     */
+    void invalidate() {
+        mGeneration.incrementAndGet();
+        mAlbumArtists = null;
+    }
+
+    /**
+     * Retrieves the album artists, loading them if they were invalidated.
+     *
+     * @return The album artists by album and artist names.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    private Map<List<String>, Set<String>> load() throws IOException, MPDException {
+        Map<List<String>, Set<String>> albumArtists = mAlbumArtists;
+
+        if (albumArtists == null) {
+            final int generation = mGeneration.get();
+            final List<String> response = mConnection.sendCommand(MPDCommand.MPD_CMD_LIST_TAG,
+                    MPDCommand.MPD_TAG_ALBUM, MPDCommand.MPD_CMD_GROUP,
+                    MPDCommand.MPD_TAG_ALBUM_ARTIST, MPDCommand.MPD_CMD_GROUP,
+                    MPDCommand.MPD_TAG_ARTIST);
+
+            if (mConnection.isProtocolVersionSupported(0, 21)) {
+                albumArtists = parseLeadingGroups(response);
+            } else {
+                albumArtists = parseTrailingGroups(response);
+            }
+
+            /** Keep the album artists unless the database changed while they were loaded. */
+            if (mGeneration.get() == generation) {
+                mAlbumArtists = albumArtists;
+            }
+        }
+
+        return albumArtists;
+    }
+}
@@ -35,12 +35,24 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
-/** A class to generate and send a command queue. */
+/**
+ * A class to generate and send a command queue. Queues longer than {@link #MAX_CHUNK_LENGTH} are
+ * split in evenly sized command lists, which are pipelined.
+ */
 public class CommandQueue implements Iterable<MPDCommand> {
 
     private static final boolean DEBUG = false;
 
+    /**
+     * The maximum length of a command list sent at once, well below the default MPD
+     * {@code max_command_list_size} of 2048 KiB, so the media server is never blocked parsing a
+     * command list for long.
+     */
+    private static final int MAX_CHUNK_LENGTH = 64 * 1024;
+
     private static final String MPD_CMD_BULK_SEP = "list_OK";
 
     private static final String MPD_CMD_END_BULK = "command_list_end";
@@ -69,6 +81,63 @@ public class CommandQueue implements Iterable<MPDCommand> {
         mCommandQueueStringLength = getStartLength();
     }
 
+    /**
+     * Appends the command list beginning command to a command list.
+     *
+     * @param commandString The command list to append to.
+     * @param separated     Whether the results should be separated.
+     */
+    private static void appendStart(final StringBuilder commandString, final boolean separated) {
+        if (separated) {
+            commandString.append(MPD_CMD_START_BULK_OK);
+        } else {
+            commandString.append(MPD_CMD_START_BULK);
+        }
+        commandString.append(MPDCommand.MPD_CMD_NEWLINE);
+    }
+
+    /**
+     * Waits for the response to a command list chunk, reporting the position of a failed command
+     * in the whole command queue.
+     *
+     * @param response   The pending response to the chunk.
+     * @param chunk      The index of the chunk.
+     * @param chunkCount The number of chunks the command queue was split in.
+     * @param position   The position of the first command of the chunk in the command queue.
+     * @return The response to the chunk.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    private static List<String> getChunkResponse(final Future<List<String>> response,
+            final int chunk, final int chunkCount, final int position)
+            throws IOException, MPDException {
+        try {
+            return response.get();
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof MPDException) {
+                final MPDException exception = (MPDException) e.getCause();
+                final String message;
+
+                if (exception.mCommandQueuePosition < 0) {
+                    message = exception.getMessage();
+                } else {
+                    message = "ACK [" + exception.mErrorCode + '@' +
+                            (position + exception.mCommandQueuePosition) + "] {" +
+                            exception.mCommand + "} " + exception.mErrorMessage;
+                }
+
+                /** The prefix holds no ACK delimiter, the fields are parsed from the ACK. */
+                throw new MPDException("Command list chunk " + (chunk + 1) + " of " +
+                        chunkCount + " failed: " + message, exception);
+            } else if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } catch (final InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+
     private static int getStartLength() {
         return MPD_CMD_START_BULK_OK.length() + MPD_CMD_END_BULK.length() + 5;
     }
@@ -85,10 +154,9 @@ public class CommandQueue implements Iterable<MPDCommand> {
 
         for (final String line : lines) {
             if (line.equals(MPD_CMD_BULK_SEP)) { // new part
-                if (!lineCache.isEmpty()) {
-                    result.add(lineCache.toArray(new String[lineCache.size()]));
-                    lineCache.clear();
-                }
+                /** Keep empty results too, so results match their commands by index. */
+                result.add(lineCache.toArray(new String[lineCache.size()]));
+                lineCache.clear();
             } else {
                 lineCache.add(line);
             }
@@ -197,24 +265,97 @@ public class CommandQueue implements Iterable<MPDCommand> {
      */
     private List<String> send(final MPDConnection mpdConnection, final boolean separated)
             throws IOException, MPDException {
-        final MPDCommand mpdCommand;
-
         if (mCommandQueue.isEmpty()) {
             throw new IllegalStateException("Cannot send an empty command queue.");
         }
 
+        if (DEBUG) {
+            Log.debug(TAG, toString(separated));
+        }
+
+        final List<String> result;
         if (mCommandQueue.size() == 1) {
             /** OK, it's not really a command queue. Send it anyhow. */
-            mpdCommand = mCommandQueue.get(0);
+            result = mpdConnection.sendCommand(mCommandQueue.get(0));
+        } else if (mCommandQueueStringLength <= MAX_CHUNK_LENGTH) {
+            result = mpdConnection.sendCommand(new MPDCommand(toString(separated)));
         } else {
-            mpdCommand = new MPDCommand(toString(separated));
+            result = sendChunked(mpdConnection, separated);
         }
 
-        if (DEBUG) {
-            Log.debug(TAG, toString(separated));
+        return result;
+    }
+
+    /**
+     * Sends the commands which were {@code add}ed to the queue as several pipelined command lists,
+     * evenly sized from the length of the command queue. Each command list is processed by the
+     * media server on its own: upon failure, every command list is still awaited, and the failure
+     * of the first failed command list is thrown, giving the position of the failed command in
+     * the whole command queue.
+     *
+     * @param mpdConnection The connection to send the queued commands to.
+     * @param separated     Whether the results should be separated.
+     * @return The results of from the media server, in order.
+     * @throws IOException  Thrown upon a communication error with the server, for the first
+     *                      failed command list.
+     * @throws MPDException Thrown if an error occurs as a result of command execution, for the
+     *                      first failed command list.
+     */
+    private List<String> sendChunked(final MPDConnection mpdConnection, final boolean separated)
+            throws IOException, MPDException {
+        final int chunkCount = mCommandQueueStringLength / MAX_CHUNK_LENGTH + 1;
+        final int chunkLength = mCommandQueueStringLength / chunkCount;
+        final List<Future<List<String>>> responses = new ArrayList<>(chunkCount + 1);
+        final List<Integer> positions = new ArrayList<>(chunkCount + 1);
+        final StringBuilder commandString = new StringBuilder(chunkLength + getStartLength());
+        final int size = mCommandQueue.size();
+        int position = 0;
+
+        appendStart(commandString, separated);
+        for (int i = 0; i < size; i++) {
+            final String command = mCommandQueue.get(i).toString();
+
+            /** A command longer than a chunk is sent in a command list of its own. */
+            if (i > position && commandString.length() + command.length() > chunkLength) {
+                commandString.append(MPD_CMD_END_BULK);
+                responses.add(mpdConnection.sendCommandAsync(
+                        new MPDCommand(commandString.toString())));
+                positions.add(Integer.valueOf(position));
+
+                commandString.setLength(0);
+                appendStart(commandString, separated);
+                position = i;
+            }
+
+            commandString.append(command);
+        }
+        commandString.append(MPD_CMD_END_BULK);
+        responses.add(mpdConnection.sendCommandAsync(new MPDCommand(commandString.toString())));
+        positions.add(Integer.valueOf(position));
+
+        final int chunks = responses.size();
+        final List<String> result = new ArrayList<>();
+        Exception exception = null;
+
+        /** Wait for every command list, so no command list is still pending upon return. */
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            try {
+                result.addAll(getChunkResponse(responses.get(chunk), chunk, chunks,
+                        positions.get(chunk).intValue()));
+            } catch (final IOException | MPDException e) {
+                if (exception == null) {
+                    exception = e;
+                }
+            }
+        }
+
+        if (exception instanceof IOException) {
+            throw (IOException) exception;
+        } else if (exception != null) {
+            throw (MPDException) exception;
         }
 
-        return mpdConnection.sendCommand(mpdCommand);
+        return result;
     }
 
     /**
@@ -253,12 +394,7 @@ public class CommandQueue implements Iterable<MPDCommand> {
     private String toString(final boolean separated) {
         final StringBuilder commandString = new StringBuilder(mCommandQueueStringLength);
 
-        if (separated) {
-            commandString.append(MPD_CMD_START_BULK_OK);
-        } else {
-            commandString.append(MPD_CMD_START_BULK);
-        }
-        commandString.append(MPDCommand.MPD_CMD_NEWLINE);
+        appendStart(commandString, separated);
 
         for (final MPDCommand command : mCommandQueue) {
             commandString.append(command);
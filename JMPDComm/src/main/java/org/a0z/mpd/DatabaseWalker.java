@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.a0z.mpd;
+
+import org.a0z.mpd.connection.MPDConnection;
+import org.a0z.mpd.connection.ResponseHandler;
+import org.a0z.mpd.exception.MPDException;
+import org.a0z.mpd.item.Music;
+import org.a0z.mpd.item.MusicBuilder;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * This class walks the media server database one directory at a time with the {@code lsinfo}
+ * command. Unlike {@code listallinfo}, no response is larger than the largest directory, so the
+ * walk works with the default media server {@code max_output_buffer_size}, and memory use is
+ * bounded by the largest directory rather than the database size.
+ */
+final class DatabaseWalker implements ResponseHandler {
+
+    private static final String RESPONSE_DIRECTORY = "directory";
+
+    private static final String RESPONSE_FILE = "file";
+
+    private static final String RESPONSE_LAST_MODIFIED = "Last-Modified";
+
+    private static final String RESPONSE_PLAYLIST = "playlist";
+
+    /** Builds the music entries of the current directory. */
+    private final MusicBuilder mBuilder = new MusicBuilder();
+
+    /**
+     * The subdirectories of the current directory. These, like the music entries, are only
+     * handed to the visitor once the directory has been entirely read, as the response may be
+     * restarted if the command is retried.
+     */
+    private final List<String[]> mDirectories = new ArrayList<>();
+
+    /** The directories left to walk. */
+    private final Deque<String> mPending = new ArrayDeque<>();
+
+    private final DatabaseVisitor mVisitor;
+
+    /** The path of the directory entry currently read, null if not reading a directory entry. */
+    private String mDirectory;
+
+    /** The {@code Last-Modified} time of the directory entry currently read. */
+    private String mDirectoryLastModified;
+
+    /** Whether the pairs read belong to an entry other than music, and should not be built. */
+    private boolean mIsSkipping;
+
+    DatabaseWalker(final DatabaseVisitor visitor) {
+        super();
+
+        mVisitor = visitor;
+    }
+
+    /**
+     * Ends the directory entry currently read, if any.
+     */
+    private void endDirectory() {
+        if (mDirectory != null) {
+            mDirectories.add(new String[]{mDirectory, mDirectoryLastModified});
+            mDirectory = null;
+            mDirectoryLastModified = null;
+        }
+    }
+
+    @Override
+    public void onEnd() {
+        endDirectory();
+        mBuilder.onEnd();
+    }
+
+    @Override
+    public void onPair(final String key, final String value) {
+        switch (key) {
+            case RESPONSE_DIRECTORY:
+                endDirectory();
+                mDirectory = value;
+                mIsSkipping = true;
+                break;
+            case RESPONSE_PLAYLIST:
+                endDirectory();
+                mIsSkipping = true;
+                break;
+            case RESPONSE_FILE:
+                endDirectory();
+                mIsSkipping = false;
+                mBuilder.onPair(key, value);
+                break;
+            case RESPONSE_LAST_MODIFIED:
+                if (mDirectory != null) {
+                    mDirectoryLastModified = value;
+                } else if (!mIsSkipping) {
+                    /** Music entries have a Last-Modified time, too. */
+                    mBuilder.onPair(key, value);
+                }
+                break;
+            default:
+                if (!mIsSkipping) {
+                    mBuilder.onPair(key, value);
+                }
+                break;
+        }
+    }
+
+    @Override
+    public void onStart() {
+        mBuilder.onStart();
+        mDirectories.clear();
+        mDirectory = null;
+        mDirectoryLastModified = null;
+        mIsSkipping = false;
+    }
+
+    /**
+     * Walks the directory, then, depth first, every subdirectory the visitor accepts.
+     *
+     * @param connection The connection to walk the database with.
+     * @param path       The path of the directory to walk, an empty string for the root.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    void walk(final MPDConnection connection, final String path)
+            throws IOException, MPDException {
+        mPending.push(path);
+
+        while (!mPending.isEmpty()) {
+            final String directory = mPending.pop();
+
+            connection.sendCommand(new MPDCommand(MPDCommand.MPD_CMD_LSDIR, directory), this);
+
+            for (final Music music : mBuilder.getMusic()) {
+                mVisitor.onMusic(music);
+            }
+
+            final Deque<String> accepted = new ArrayDeque<>(mDirectories.size());
+            for (final String[] subdirectory : mDirectories) {
+                if (mVisitor.onDirectory(subdirectory[0], subdirectory[1])) {
+                    accepted.push(subdirectory[0]);
+                }
+            }
+
+            /** Accepted is in reverse, so subdirectories are walked in media server order. */
+            for (final String subdirectory : accepted) {
+                mPending.push(subdirectory);
+            }
+        }
+    }
+}
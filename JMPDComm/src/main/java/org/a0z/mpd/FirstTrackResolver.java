@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd;
+
+import org.a0z.mpd.connection.MPDConnection;
+import org.a0z.mpd.exception.MPDException;
+import org.a0z.mpd.item.Album;
+import org.a0z.mpd.item.Music;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class resolves the first track of albums, which gives their year and path, for a whole
+ * album list with a single command list rather than a few commands per album. The first tracks
+ * are kept until the database changes, so an album is only looked up once.
+ */
+final class FirstTrackResolver {
+
+    private static final String TAG = "FirstTrackResolver";
+
+    /** The connection to the server. */
+    private final MPDConnection mConnection;
+
+    /** The first track of each album by album find arguments, guarded by itself. */
+    private final Map<List<String>, Music> mFirstTracks = new HashMap<>();
+
+    /** Incremented upon every invalidation, so tracks found meanwhile are not kept. */
+    private final AtomicInteger mGeneration = new AtomicInteger();
+
+    FirstTrackResolver(final MPDConnection connection) {
+        super();
+
+        mConnection = connection;
+    }
+
+    /**
+     * Compares two numbers, of which undefined (negative) ones come last.
+     *
+     * @param lhs The first number.
+     * @param rhs The second number.
+     * @return A negative integer, zero, or a positive integer as the first number comes before,
+     * with, or after the second.
+     */
+    private static int compareNumbers(final int lhs, final int rhs) {
+        final int result;
+
+        if (lhs < 0 || rhs < 0) {
+            result = Integer.compare(rhs, lhs);
+        } else {
+            result = Integer.compare(lhs, rhs);
+        }
+
+        return result;
+    }
+
+    /**
+     * Finds the first track of an album, the lowest disc and track numbers, tracks without them
+     * coming last.
+     *
+     * @param tracks The tracks of the album.
+     * @return The first track, or null if there is none.
+     */
+    private static Music getFirstTrack(final Iterable<Music> tracks) {
+        Music firstTrack = null;
+
+        for (final Music track : tracks) {
+            if (firstTrack == null || isBefore(track, firstTrack)) {
+                firstTrack = track;
+            }
+        }
+
+        return firstTrack;
+    }
+
+    private static boolean isBefore(final Music track, final Music other) {
+        int compare = compareNumbers(track.getDisc(), other.getDisc());
+
+        if (compare == 0) {
+            compare = compareNumbers(track.getTrack(), other.getTrack());
+        }
+
+        if (compare == 0) {
+            compare = track.compareTo(other);
+        }
+
+        return compare < 0;
+    }
+
+    /**
+     * Resolves the first track of each album, sending one {@code find} command for each album
+     * not resolved yet, all in a single command list.
+     *
+     * @param albums The albums.
+     * @return The first track of each album, in order, null for albums without tracks.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    List<Music> getFirstTracks(final List<Album> albums) throws IOException, MPDException {
+        final int size = albums.size();
+        final int generation = mGeneration.get();
+        final List<Music> result = new ArrayList<>(Collections.<Music>nCopies(size, null));
+        final List<List<String>> keys = new ArrayList<>(size);
+        final List<Integer> unresolved = new ArrayList<>();
+        final CommandQueue commandQueue = new CommandQueue();
+
+        synchronized (mFirstTracks) {
+            for (int i = 0; i < size; i++) {
+                final Album album = albums.get(i);
+                final String[] artistPair = MPD.getAlbumArtistPair(album);
+                final List<String> key = Arrays.asList(artistPair[0], artistPair[1],
+                        album.getName());
+                final Music firstTrack = mFirstTracks.get(key);
+
+                keys.add(key);
+                if (firstTrack == null) {
+                    unresolved.add(Integer.valueOf(i));
+                    commandQueue.add(MPDCommand.MPD_CMD_FIND, MPDCommand.MPD_TAG_ALBUM,
+                            album.getName(), artistPair[0], artistPair[1]);
+                } else {
+                    result.set(i, firstTrack);
+                }
+            }
+        }
+
+        if (!unresolved.isEmpty()) {
+            final List<String[]> responses = commandQueue.sendSeparated(mConnection);
+
+            if (responses.size() == unresolved.size()) {
+                for (int i = 0; i < responses.size(); i++) {
+                    final int index = unresolved.get(i).intValue();
+                    final Music firstTrack = getFirstTrack(
+                            Music.getMusicFromList(Arrays.asList(responses.get(i)), false));
+
+                    result.set(index, firstTrack);
+                    if (firstTrack != null) {
+                        synchronized (mFirstTracks) {
+                            /** Keep the track unless the database changed meanwhile. */
+                            if (mGeneration.get() == generation) {
+                                mFirstTracks.put(keys.get(index), firstTrack);
+                            }
+                        }
+                    }
+                }
+            } else {
+                Log.warning(TAG, "Response and album size differ when finding first tracks.");
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Drops the first tracks, which are looked up again once next resolved. This is called upon
+     * every database change, and upon reconnection.
+     */
+    void invalidate() {
+        synchronized (mFirstTracks) {
+            mGeneration.incrementAndGet();
+            mFirstTracks.clear();
+        }
+    }
+}
@@ -30,6 +30,9 @@ package org.a0z.mpd;
 import org.a0z.mpd.connection.MPDConnection;
 import org.a0z.mpd.connection.MPDConnectionMonoSocket;
 import org.a0z.mpd.connection.MPDConnectionMultiSocket;
+import org.a0z.mpd.connection.MPDConnectionNioSocket;
+import org.a0z.mpd.connection.ResponseCache;
+import org.a0z.mpd.connection.ResponseHandler;
 import org.a0z.mpd.exception.MPDException;
 import org.a0z.mpd.item.Album;
 import org.a0z.mpd.item.Artist;
@@ -37,7 +40,10 @@ import org.a0z.mpd.item.Directory;
 import org.a0z.mpd.item.FilesystemTreeEntry;
 import org.a0z.mpd.item.Genre;
 import org.a0z.mpd.item.Item;
+import org.a0z.mpd.item.ItemJoins;
+import org.a0z.mpd.item.ItemSorter;
 import org.a0z.mpd.item.Music;
+import org.a0z.mpd.item.MusicBuilder;
 import org.a0z.mpd.item.PlaylistFile;
 import org.a0z.mpd.item.Stream;
 import org.a0z.mpd.subsystem.Sticker;
@@ -48,8 +54,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import static org.a0z.mpd.Tools.KEY;
 import static org.a0z.mpd.Tools.VALUE;
@@ -65,25 +77,60 @@ public class MPD {
 
     protected final MPDPlaylist mPlaylist;
 
+    /** Resolves the album artists of albums, from memory on MPD 0.19 and later. */
+    private final AlbumArtistResolver mAlbumArtistResolver;
+
+    /** Resolves the first track of albums, for their year and path. */
+    private final FirstTrackResolver mFirstTrackResolver;
+
     private final MPDConnection mConnection;
 
     private final MPDConnection mIdleConnection;
 
+    private final PlaybackClock mPlaybackClock;
+
+    private final SearchIndex mSearchIndex;
+
     private final MPDStatistics mStatistics;
 
     private final MPDStatus mStatus;
 
+    private final Sticker mStickerManager;
+
+    /** Whether a running {@link MPDStatusMonitor} keeps the response cache up to date. */
+    private boolean mIsResponseCacheEnabled;
+
+    /** The response cache, only used while enabled, see {@link #setResponseCache}. */
+    private ResponseCache mResponseCache;
+
     /**
      * Constructs a new MPD server controller without connection.
      */
     public MPD() {
+        this(new MPDConnectionMultiSocket(5000, 2), new MPDConnectionMonoSocket(0));
+    }
+
+    /**
+     * Constructs a new MPD server controller without connection, using the given connections.
+     * This can be used to pick another transport, such as the {@link MPDConnectionNioSocket},
+     * which shares one I/O thread between any number of media server controllers.
+     *
+     * @param connection     The connection used to send commands.
+     * @param idleConnection The connection dedicated to the idle command, with no read timeout.
+     */
+    protected MPD(final MPDConnection connection, final MPDConnection idleConnection) {
         super();
-        mConnection = new MPDConnectionMultiSocket(5000, 2);
-        mIdleConnection = new MPDConnectionMonoSocket(0);
+        mConnection = connection;
+        mIdleConnection = idleConnection;
         mStatistics = new MPDStatistics();
 
+        mAlbumArtistResolver = new AlbumArtistResolver(mConnection);
+        mFirstTrackResolver = new FirstTrackResolver(mConnection);
         mPlaylist = new MPDPlaylist(mConnection);
+        mPlaybackClock = new PlaybackClock();
+        mSearchIndex = new SearchIndex();
         mStatus = new MPDStatus();
+        mStickerManager = new Sticker(mConnection);
     }
 
     /**
@@ -114,7 +161,7 @@ public class MPD {
         connect(server, port, password);
     }
 
-    private static String[] getAlbumArtistPair(final Album album) {
+    static String[] getAlbumArtistPair(final Album album) {
         final Artist artist = album.getArtist();
         final String[] artistPair;
 
@@ -410,10 +457,13 @@ public class MPD {
 
     protected void addAlbumPaths(final List<Album> albums) throws IOException, MPDException {
         if (albums != null && !albums.isEmpty()) {
-            for (final Album album : albums) {
-                final List<Music> songs = getFirstTrack(album);
-                if (!songs.isEmpty()) {
-                    album.setPath(songs.get(0).getPath());
+            final List<Music> firstTracks = mFirstTrackResolver.getFirstTracks(albums);
+
+            for (int i = 0; i < firstTracks.size(); i++) {
+                final Music firstTrack = firstTracks.get(i);
+
+                if (firstTrack != null) {
+                    albums.get(i).setPath(firstTrack.getPath());
                 }
             }
         }
@@ -524,6 +574,9 @@ public class MPD {
     public final synchronized void connect(final InetAddress server, final int port,
             final String password) throws IOException, MPDException {
         if (!isConnected()) {
+            mAlbumArtistResolver.invalidate();
+            mFirstTrackResolver.invalidate();
+            mSearchIndex.setServer(server, port);
             mConnection.connect(server, port, password);
             mIdleConnection.connect(server, port, password);
         }
@@ -633,7 +686,11 @@ public class MPD {
         if (albums != null && !albums.isEmpty()) {
             List<String[]> albumArtists = null;
             try {
-                albumArtists = listAlbumArtists(albums);
+                albumArtists = mAlbumArtistResolver.getAlbumArtists(albums);
+                if (albumArtists == null) {
+                    /** The server can't group album lists, query each album. */
+                    albumArtists = listAlbumArtists(albums);
+                }
             } catch (final IOException | MPDException e) {
                 Log.error(TAG, "Failed to fix album artists.", e);
             }
@@ -709,12 +766,17 @@ public class MPD {
                         a.setDuration(Long.parseLong(pair[VALUE]));
                     }
                 }
+            }
 
-                if (findYear) {
-                    final List<Music> songs = getFirstTrack(a);
-                    if (null != songs && !songs.isEmpty()) {
-                        a.setYear(songs.get(0).getDate());
-                        a.setPath(songs.get(0).getPath());
+            if (findYear && !albums.isEmpty()) {
+                final List<Music> firstTracks = mFirstTrackResolver.getFirstTracks(albums);
+
+                for (int i = 0; i < firstTracks.size(); i++) {
+                    final Music firstTrack = firstTracks.get(i);
+
+                    if (firstTrack != null) {
+                        albums.get(i).setYear(firstTrack.getDate());
+                        albums.get(i).setPath(firstTrack.getPath());
                     }
                 }
             }
@@ -763,7 +825,7 @@ public class MPD {
                     addAlbumPaths(albums);
                 }
 
-                Collections.sort(albums);
+                ItemSorter.sort(albums);
             }
         }
 
@@ -796,7 +858,7 @@ public class MPD {
             }
         }
 
-        Collections.sort(albums);
+        ItemSorter.sort(albums);
         return albums;
     }
 
@@ -820,7 +882,7 @@ public class MPD {
                 artists.add(new Artist(artist));
             }
         }
-        Collections.sort(artists);
+        ItemSorter.sort(artists);
         return artists;
     }
 
@@ -845,45 +907,53 @@ public class MPD {
                 artists.add(new Artist(artist));
             }
         }
-        Collections.sort(artists);
+        ItemSorter.sort(artists);
         return artists;
     }
 
-    protected List<Music> getFirstTrack(final Album album) throws IOException, MPDException {
-        final Artist artist = album.getArtist();
-        final String[] args = new String[6];
+    /**
+     * Counts the songs of directories of the media server database, subdirectories included,
+     * with one {@code count base} command per directory. Only the counts are transferred, which
+     * allows checking a database copy for removed or moved songs, which
+     * {@link #listModifiedDirectories(Date)} does not report, one directory level at a time.
+     * This requires MPD protocol 0.21.
+     *
+     * @param directories The paths of the directories to count the songs of.
+     * @return The number of songs of each directory, by directory path, null if not supported by
+     * the media server.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    public Map<String, Long> getDirectorySongCounts(final Collection<String> directories)
+            throws IOException, MPDException {
+        Map<String, Long> result = null;
 
-        if (artist == null) {
-            args[0] = "";
-            args[1] = "";
-        } else if (album.hasAlbumArtist()) {
-            args[0] = MPDCommand.MPD_TAG_ALBUM_ARTIST;
-        } else {
-            args[0] = MPDCommand.MPD_TAG_ARTIST;
-        }
+        if (mConnection.isProtocolVersionSupported(0, 21)) {
+            final List<String> paths = new ArrayList<>(directories);
+            final CommandQueue commandQueue = new CommandQueue(paths.size());
 
-        if (artist != null) {
-            args[1] = artist.getName();
-        }
+            for (final String path : paths) {
+                commandQueue.add(MPDCommand.MPD_CMD_COUNT, MPDCommand.MPD_SEARCH_BASE, path);
+            }
 
-        args[2] = MPDCommand.MPD_TAG_ALBUM;
-        args[3] = album.getName();
-        args[4] = "track";
-        args[5] = "1";
-        List<Music> songs = find(args);
-        if (null == songs || songs.isEmpty()) {
-            args[5] = "01";
-            songs = find(args);
-        }
-        if (null == songs || songs.isEmpty()) {
-            args[5] = "1";
-            songs = search(args);
-        }
-        if (null == songs || songs.isEmpty()) {
-            final String[] args2 = Arrays.copyOf(args, 4); // find all tracks
-            songs = find(args2);
+            result = new HashMap<>(paths.size());
+            if (!commandQueue.isEmpty()) {
+                final List<String[]> responses = commandQueue.sendSeparated(mConnection);
+
+                for (int i = 0; i < paths.size(); i++) {
+                    long songs = 0L;
+
+                    for (final String[] pair : Tools.splitResponse(responses.get(i))) {
+                        if ("songs".equals(pair[KEY])) {
+                            songs = Long.parseLong(pair[VALUE]);
+                        }
+                    }
+                    result.put(paths.get(i), Long.valueOf(songs));
+                }
+            }
         }
-        return songs;
+
+        return result;
     }
 
     public List<Genre> getGenres() throws IOException, MPDException {
@@ -897,7 +967,7 @@ public class MPD {
             }
         }
         if (null != genres) {
-            Collections.sort(genres);
+            ItemSorter.sort(genres);
         }
         return genres;
     }
@@ -961,6 +1031,16 @@ public class MPD {
         return result;
     }
 
+    /**
+     * Retrieves the clock extrapolating the elapsed time of the current track, synchronized upon
+     * every status update.
+     *
+     * @return The playback clock.
+     */
+    public PlaybackClock getPlaybackClock() {
+        return mPlaybackClock;
+    }
+
     /**
      * Retrieves {@code playlist}.
      *
@@ -1006,7 +1086,7 @@ public class MPD {
             }
         }
         if (sort) {
-            Collections.sort(result);
+            ItemSorter.sort(result);
         }
 
         return result;
@@ -1051,7 +1131,7 @@ public class MPD {
             }
         }
         if (null != songs) {
-            Collections.sort(songs);
+            ItemSorter.sort(songs);
         }
         return songs;
     }
@@ -1065,6 +1145,17 @@ public class MPD {
         return songs;
     }
 
+    /**
+     * Retrieves the local search index of the media server database. The index is built upon the
+     * first {@link SearchIndex#refresh(MPD)}, and updated upon the following refreshes after a
+     * database change.
+     *
+     * @return The search index.
+     */
+    public SearchIndex getSearchIndex() {
+        return mSearchIndex;
+    }
+
     /**
      * Retrieves the current statistics for the connected server.
      *
@@ -1084,7 +1175,7 @@ public class MPD {
     }
 
     public Sticker getStickerManager() {
-        return new Sticker(mConnection);
+        return mStickerManager;
     }
 
     /*
@@ -1116,6 +1207,40 @@ public class MPD {
         return !response.isEmpty();
     }
 
+    /**
+     * Removes every response from the response cache, if any, the sticker index, the album
+     * artists and first tracks, and marks the search index as outdated.
+     *
+     * @see #setResponseCache(ResponseCache)
+     */
+    void invalidateResponses() {
+        mConnection.invalidateResponses();
+        mAlbumArtistResolver.invalidate();
+        mFirstTrackResolver.invalidate();
+        mStickerManager.invalidateIndex();
+        mSearchIndex.invalidate();
+    }
+
+    /**
+     * Removes the responses depending on a changed idle subsystem from the response cache, if
+     * any, and the sticker index upon sticker changes by other clients. The album artists and
+     * first tracks are removed and the search index is marked as outdated upon database changes.
+     *
+     * @param subsystem The changed idle subsystem, see the IDLE fields of
+     *                  {@link MPDStatusMonitor}.
+     * @see #setResponseCache(ResponseCache)
+     */
+    void invalidateResponses(final String subsystem) {
+        mConnection.invalidateResponses(subsystem);
+        if (MPDStatusMonitor.IDLE_STICKER.equals(subsystem)) {
+            mStickerManager.onStickerChanged();
+        } else if (MPDStatusMonitor.IDLE_DATABASE.equals(subsystem)) {
+            mAlbumArtistResolver.invalidate();
+            mFirstTrackResolver.invalidate();
+            mSearchIndex.invalidate();
+        }
+    }
+
     /**
      * Checks for command validity against a list of available commands generated on connection.
      *
@@ -1262,12 +1387,15 @@ public class MPD {
         final List<Album> artistAlbums = listAllAlbumsGrouped(false, includeUnknownAlbum);
         final List<Album> albumArtistAlbums = listAllAlbumsGrouped(true, includeUnknownAlbum);
 
+        final Map<Object, Album> albumArtistIndex = ItemJoins.indexByName(albumArtistAlbums);
+
         for (final Album artistAlbum : artistAlbums) {
-            for (final Album albumArtistAlbum : albumArtistAlbums) {
-                if (artistAlbum.getArtist() != null && artistAlbum
-                        .doesNameExist(albumArtistAlbum)) {
+            if (artistAlbum.getArtist() != null) {
+                final Album albumArtistAlbum =
+                        albumArtistIndex.get(ItemJoins.nameKey(artistAlbum));
+
+                if (albumArtistAlbum != null) {
                     albumArtistAlbum.setHasAlbumArtist(false);
-                    break;
                 }
             }
         }
@@ -1322,7 +1450,7 @@ public class MPD {
             }
         }
 
-        Collections.sort(result);
+        ItemSorter.sort(result);
 
         return result;
     }
@@ -1335,10 +1463,27 @@ public class MPD {
      * @return List of all available music information.
      * @throws IOException  Thrown upon a communication error with the server.
      * @throws MPDException Thrown if an error occurs as a result of command execution.
+     * @see #walkDatabase(DatabaseVisitor) Walks the database without this limitation.
      */
     public List<Music> listAllInfo() throws IOException, MPDException {
-        final List<String> allInfo = mConnection.sendCommand(MPDCommand.MPD_CMD_LISTALLINFO);
-        return Music.getMusicFromList(allInfo, false);
+        final MusicBuilder builder = new MusicBuilder();
+
+        listAllInfo(builder);
+        return builder.getMusic();
+    }
+
+    /**
+     * Streams the listallinfo response from the media server to a handler, as it is read. Unlike
+     * {@link #listAllInfo()}, the response is never held in memory as a whole if the handler does
+     * not hold it, such as a {@link MusicBuilder} overriding
+     * {@link MusicBuilder#onMusic(Music)}.
+     *
+     * @param handler The handler to stream the response to.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    public void listAllInfo(final ResponseHandler handler) throws IOException, MPDException {
+        mConnection.sendCommand(new MPDCommand(MPDCommand.MPD_CMD_LISTALLINFO), handler);
     }
 
     /**
@@ -1410,7 +1555,11 @@ public class MPD {
                     albumResult.add(name);
                 }
 
-                result.add(albumResult.toArray(new String[albumResult.size()]));
+                if (albumResult == null) {
+                    result.add(new String[0]);
+                } else {
+                    result.add(albumResult.toArray(new String[albumResult.size()]));
+                }
             }
         }
 
@@ -1498,6 +1647,39 @@ public class MPD {
         return Tools.parseResponse(response, "Genre", sortInsensitive);
     }
 
+    /**
+     * Retrieves the directories holding music modified since a time, such as the time of a
+     * previous database update. Removed music is not reported, but the directory it was removed
+     * from has a new {@code Last-Modified} time. This requires MPD protocol 0.19.
+     *
+     * @param since The time to retrieve modifications since, in media server time.
+     * @return The directories holding music modified since {@code since}, null if not supported
+     * by the media server.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    public Set<String> listModifiedDirectories(final Date since)
+            throws IOException, MPDException {
+        Set<String> result = null;
+
+        if (mConnection.isProtocolVersionSupported(0, 19)) {
+            final Set<String> directories = new HashSet<>();
+            final MusicBuilder builder = new MusicBuilder() {
+                @Override
+                protected void onMusic(final Music music) {
+                    directories.add(music.getPath());
+                }
+            };
+
+            mConnection.sendCommand(new MPDCommand(MPDCommand.MPD_CMD_FIND,
+                    MPDCommand.MPD_SEARCH_MODIFIED_SINCE,
+                    Long.toString(TimeUnit.MILLISECONDS.toSeconds(since.getTime()))), builder);
+            result = directories;
+        }
+
+        return result;
+    }
+
     public void movePlaylistSong(final String playlistName, final int from, final int to)
             throws IOException, MPDException {
         mConnection.sendCommand(MPDCommand.MPD_CMD_PLAYLIST_MOVE, playlistName,
@@ -1712,6 +1894,42 @@ public class MPD {
         mConnection.sendCommand(MPDCommand.MPD_CMD_REPEAT, MPDCommand.booleanValue(repeat));
     }
 
+    /**
+     * Sets the cache of responses to the queries sent to the media server, such as
+     * {@link org.a0z.mpd.connection.LruResponseCache}. The cached responses are invalidated as a
+     * running {@link MPDStatusMonitor} is notified of changes, it should subscribe to the
+     * {@link MPDStatusMonitor#IDLE_DATABASE}, {@link MPDStatusMonitor#IDLE_STORED_PLAYLIST} and
+     * {@link MPDStatusMonitor#IDLE_STICKER} subsystems. Without a running monitor, changes by
+     * other clients would go unnoticed, so the cache is only used while a monitor runs.
+     *
+     * @param responseCache The response cache, null to disable caching.
+     */
+    public synchronized void setResponseCache(final ResponseCache responseCache) {
+        mResponseCache = responseCache;
+        if (mIsResponseCacheEnabled) {
+            mConnection.setResponseCache(responseCache);
+        }
+    }
+
+    /**
+     * Starts or stops using the response cache, if any. This is called by the
+     * {@link MPDStatusMonitor} as it starts and stops monitoring changes, the cache is emptied
+     * either way, as changes were not monitored before, and will not be after.
+     *
+     * @param isEnabled True if a monitor keeps the response cache up to date, false otherwise.
+     */
+    synchronized void setResponseCacheEnabled(final boolean isEnabled) {
+        mIsResponseCacheEnabled = isEnabled;
+        if (mResponseCache != null) {
+            mResponseCache.clear();
+        }
+        if (isEnabled) {
+            mConnection.setResponseCache(mResponseCache);
+        } else {
+            mConnection.setResponseCache(null);
+        }
+    }
+
     /**
      * Enabled or disable single mode.
      *
@@ -1799,17 +2017,46 @@ public class MPD {
      * absolutely know what you are doing. If a long running application needs a status update, use
      * the {@code MPDStatusMonitor} instead.
      *
+     * @return True if the playback position did not follow the {@link PlaybackClock}, such as upon
+     * seek, track or state change, false otherwise.
      * @throws IOException  Thrown upon a communication error with the server.
      * @throws MPDException Thrown if an error occurs as a result of command execution.
      * @see MPDStatusMonitor
      */
-    void updateStatus() throws IOException, MPDException {
-        final List<String> response = mConnection.sendCommand(MPDCommand.MPD_CMD_STATUS);
+    boolean updateStatus() throws IOException, MPDException {
+        mConnection.sendCommand(new MPDCommand(MPDCommand.MPD_CMD_STATUS),
+                mStatus.getResponseHandler());
 
-        if (response == null) {
-            Log.error(TAG, "No status response from the MPD server.");
-        } else {
-            mStatus.updateStatus(response);
-        }
+        return mPlaybackClock.sync(mStatus);
+    }
+
+    /**
+     * Walks the entire media server database, directory by directory.
+     *
+     * @param visitor The visitor to hand the database entries to.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     * @see #walkDatabase(String, DatabaseVisitor)
+     */
+    public void walkDatabase(final DatabaseVisitor visitor) throws IOException, MPDException {
+        walkDatabase("", visitor);
+    }
+
+    /**
+     * Walks the media server database from a directory, directory by directory with the
+     * {@code lsinfo} command, handing music entries to the visitor as each directory is read.
+     * This retrieves the same music as {@link #listAllInfo()}, but no single response is larger
+     * than one directory, so this works with the default {@code max_output_buffer_size}, and
+     * memory use is bounded by the largest directory rather than the database size.
+     *
+     * @param path    The path of the directory to walk from, an empty string for the root.
+     * @param visitor The visitor to hand the database entries to, which also selects the
+     *                subdirectories to walk.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    public void walkDatabase(final String path, final DatabaseVisitor visitor)
+            throws IOException, MPDException {
+        new DatabaseWalker(visitor).walk(mConnection, path);
     }
 }
@@ -140,10 +140,16 @@ public class MPDCommand {
 
     public static final String MPD_SEARCH_ARTIST = "artist";
 
+    /** Added in MPD protocol 0.21.0. */
+    public static final String MPD_SEARCH_BASE = "base";
+
     public static final String MPD_SEARCH_FILENAME = "filename";
 
     public static final String MPD_SEARCH_GENRE = "genre";
 
+    /** Added in MPD protocol 0.19.0. */
+    public static final String MPD_SEARCH_MODIFIED_SINCE = "modified-since";
+
     public static final String MPD_SEARCH_TITLE = "title";
 
     public static final String MPD_TAG_ALBUM = "album";
@@ -160,6 +166,18 @@ public class MPDCommand {
 
     private static final Pattern QUOTATION_DELIMITER = Pattern.compile("\"");
 
+    /**
+     * Commands which do not modify the media server state, their responses may be shared between
+     * identical commands sent concurrently.
+     */
+    private static final List<String> READ_ONLY_COMMANDS = Arrays.asList(MPD_CMD_COUNT,
+            MPD_CMD_FIND, MPD_CMD_LISTALL, MPD_CMD_LISTALLINFO, MPD_CMD_LISTPLAYLISTS,
+            MPD_CMD_LIST_TAG, MPD_CMD_LSDIR, MPD_CMD_OUTPUTS, MPD_CMD_PING,
+            MPD_CMD_PLAYLIST_INFO, MPD_CMD_SEARCH, MPD_CMD_STATISTICS, MPD_CMD_STATUS,
+            "commands", "currentsong", "listplaylist", "playlistid", "playlistinfo", "plchanges",
+            "plchangesposid", "sticker find", "sticker get", "sticker list", "tagtypes",
+            "urlhandlers");
+
     private static final String TAG = "MPDCommand";
 
     private final String[] mArgs;
@@ -217,6 +235,16 @@ public class MPDCommand {
         return result;
     }
 
+    /**
+     * Checks whether a command leaves the media server state unchanged.
+     *
+     * @param command The MPD protocol command.
+     * @return True if the command only reads the media server state, false otherwise.
+     */
+    public static boolean isReadOnly(final String command) {
+        return READ_ONLY_COMMANDS.contains(command);
+    }
+
     public static boolean isRetryable(final String command) {
         return !NON_RETRYABLE_COMMANDS.contains(command);
     }
@@ -31,12 +31,17 @@ import org.a0z.mpd.connection.MPDConnection;
 import org.a0z.mpd.exception.MPDException;
 import org.a0z.mpd.item.FilesystemTreeEntry;
 import org.a0z.mpd.item.Music;
+import org.a0z.mpd.item.MusicBuilder;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
+import static org.a0z.mpd.Tools.KEY;
+import static org.a0z.mpd.Tools.VALUE;
+
 /**
  * MPD Playlist controller.
  */
@@ -46,6 +51,8 @@ public class MPDPlaylist {
 
     public static final String MPD_CMD_PLAYLIST_CHANGES = "plchanges";
 
+    public static final String MPD_CMD_PLAYLIST_CHANGES_POSITIONS = "plchangesposid";
+
     public static final String MPD_CMD_PLAYLIST_CLEAR = "clear";
 
     public static final String MPD_CMD_PLAYLIST_DELETE = "rm";
@@ -188,6 +195,17 @@ public class MPDPlaylist {
         mConnection.sendCommand(clearCommand());
     }
 
+    /**
+     * Retrieves music by its song ID in playlist. Operates on local copy of playlist, may not
+     * reflect server's current playlist.
+     *
+     * @param songId The song ID.
+     * @return music with the song ID, null if not found.
+     */
+    public Music getById(final int songId) {
+        return mList.getById(songId);
+    }
+
     /**
      * Retrieves music at position index in playlist. Operates on local copy of
      * playlist, may not reflect server's current playlist.
@@ -207,18 +225,89 @@ public class MPDPlaylist {
      * @throws MPDException Thrown if an error occurs as a result of command execution.
      */
     private Collection<Music> getFullPlaylist() throws IOException, MPDException {
-        final List<String> response = mConnection.sendCommand(MPD_CMD_PLAYLIST_LIST);
-        return Music.getMusicFromList(response, false);
+        final MusicBuilder builder = new MusicBuilder();
+
+        mConnection.sendCommand(new MPDCommand(MPD_CMD_PLAYLIST_LIST), builder);
+        return builder.getMusic();
     }
 
     /**
      * Retrieves all songs as an {@code List} of {@code Music}.
      *
-     * @return all songs as an {@code List} of {@code Music}.
+     * @return all songs as an immutable {@code List} of {@code Music}.
      * @see Music
+     * @see #getSnapshot()
      */
     public List<Music> getMusicList() {
-        return mList.getMusic();
+        return mList.getSnapshot();
+    }
+
+    /**
+     * Retrieves the latest immutable snapshot of the play queue. The snapshot is consistent with
+     * the playlist version it is tagged with and may be read without locking while the playlist
+     * is refreshed.
+     *
+     * @return The latest play queue snapshot.
+     */
+    public QueueSnapshot getSnapshot() {
+        return mList.getSnapshot();
+    }
+
+    /**
+     * Retrieves the playlist changes since the last refresh. The positions and song IDs of the
+     * changes are retrieved first: the {@code Music} of songs already in the playlist is reused,
+     * only songs never seen and streams, whose title changes while playing, are retrieved in
+     * full. This way, reordering the playlist only transfers the new song positions. If most
+     * changes are retrieved in full anyway, such as after loading a playlist, the changes are
+     * retrieved in full at once instead.
+     *
+     * @return The changed songs, with their new positions.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    private Collection<Music> getPlaylistChanges() throws IOException, MPDException {
+        final List<String> response = mConnection.sendCommand(
+                MPD_CMD_PLAYLIST_CHANGES_POSITIONS, Integer.toString(mLastPlaylistVersion));
+        final List<Music> changes = new ArrayList<>(response.size() / 2);
+        final CommandQueue unseen = new CommandQueue();
+        int songPos = -1;
+
+        for (final String[] pair : Tools.splitResponse(response)) {
+            switch (pair[KEY]) {
+                case "cpos":
+                    songPos = Integer.parseInt(pair[VALUE]);
+                    break;
+                case "Id":
+                    final Music music = mList.getById(Integer.parseInt(pair[VALUE]));
+
+                    if (music == null || music.isStream()) {
+                        unseen.add(MPD_CMD_PLAYLIST_LIST, pair[VALUE]);
+                    } else if (music.getPos() == songPos) {
+                        changes.add(music);
+                    } else {
+                        changes.add(MusicBuilder.build(music, songPos));
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        final Collection<Music> result;
+        if (unseen.size() > changes.size()) {
+            final MusicBuilder builder = new MusicBuilder();
+
+            mConnection.sendCommand(new MPDCommand(MPD_CMD_PLAYLIST_CHANGES,
+                    Integer.toString(mLastPlaylistVersion)), builder);
+            result = builder.getMusic();
+        } else {
+            if (!unseen.isEmpty()) {
+                changes.addAll(Music.getMusicFromList(unseen.send(mConnection), false));
+            }
+            result = changes;
+        }
+
+        return result;
     }
 
     /**
@@ -295,18 +384,14 @@ public class MPDPlaylist {
             final int newPlaylistVersion = mpdStatus.getPlaylistVersion();
 
             if (mLastPlaylistVersion == -1 || mList.size() == 0) {
-                mList.replace(getFullPlaylist());
+                mList.replace(getFullPlaylist(), newPlaylistVersion);
             } else if (mLastPlaylistVersion != newPlaylistVersion) {
-                final List<String> response =
-                        mConnection.sendCommand(MPD_CMD_PLAYLIST_CHANGES,
-                                Integer.toString(mLastPlaylistVersion));
-                final Collection<Music> changes = Music.getMusicFromList(response, false);
-
                 try {
-                    mList.manipulate(changes, mpdStatus.getPlaylistLength());
-                } catch (final IllegalStateException e) {
+                    mList.manipulate(getPlaylistChanges(), mpdStatus.getPlaylistLength(),
+                            newPlaylistVersion);
+                } catch (final IllegalStateException | MPDException e) {
                     Log.error(TAG, "Partial update failed, running full update.", e);
-                    mList.replace(getFullPlaylist());
+                    mList.replace(getFullPlaylist(), newPlaylistVersion);
                 }
             }
 
@@ -329,18 +414,14 @@ public class MPDPlaylist {
         int num = 0;
         boolean usingAlbumArtist = true;
 
-        synchronized (mList) {
-            for (final Music song : mList) {
-                if (song.getSongId() == songId) {
-                    artist = song.getAlbumArtist();
-                    if (artist == null || artist.isEmpty()) {
-                        usingAlbumArtist = false;
-                        artist = song.getArtist();
-                    }
-                    album = song.getAlbum();
-                    break;
-                }
+        final Music song = mList.getById(songId);
+        if (song != null) {
+            artist = song.getAlbumArtist();
+            if (artist == null || artist.isEmpty()) {
+                usingAlbumArtist = false;
+                artist = song.getArtist();
             }
+            album = song.getAlbum();
         }
 
         if (artist != null && album != null) {
@@ -349,20 +430,18 @@ public class MPDPlaylist {
             }
             final CommandQueue commandQueue = new CommandQueue();
 
-            /** Don't allow the list to change before we've computed the CommandList. */
-            synchronized (mList) {
-                for (final Music track : mList) {
-                    if (album.equals(track.getAlbum())) {
-                        final boolean songIsAlbumArtist =
-                                usingAlbumArtist && artist.equals(track.getAlbumArtist());
-                        final boolean songIsArtist =
-                                !usingAlbumArtist && artist.equals(track.getArtist());
-
-                        if (songIsArtist || songIsAlbumArtist) {
-                            final String songID = Integer.toString(track.getSongId());
-                            commandQueue.add(MPD_CMD_PLAYLIST_REMOVE_ID, songID);
-                            num++;
-                        }
+            /** Compute the CommandList from a single snapshot, the list may change meanwhile. */
+            for (final Music track : mList.getSnapshot()) {
+                if (album.equals(track.getAlbum())) {
+                    final boolean songIsAlbumArtist =
+                            usingAlbumArtist && artist.equals(track.getAlbumArtist());
+                    final boolean songIsArtist =
+                            !usingAlbumArtist && artist.equals(track.getArtist());
+
+                    if (songIsArtist || songIsAlbumArtist) {
+                        final String songID = Integer.toString(track.getSongId());
+                        commandQueue.add(MPD_CMD_PLAYLIST_REMOVE_ID, songID);
+                        num++;
                     }
                 }
             }
@@ -501,11 +580,9 @@ public class MPDPlaylist {
      */
     public String toString() {
         final StringBuilder stringBuilder = new StringBuilder();
-        synchronized (mList) {
-            for (final Music music : mList) {
-                stringBuilder.append(music);
-                stringBuilder.append(MPDCommand.MPD_CMD_NEWLINE);
-            }
+        for (final Music music : mList.getSnapshot()) {
+            stringBuilder.append(music);
+            stringBuilder.append(MPDCommand.MPD_CMD_NEWLINE);
         }
         return stringBuilder.toString();
     }
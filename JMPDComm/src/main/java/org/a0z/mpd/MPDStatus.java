@@ -27,8 +27,10 @@
 
 package org.a0z.mpd;
 
+import org.a0z.mpd.connection.ResponseHandler;
+
 import java.util.Collection;
-import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 import static org.a0z.mpd.Tools.KEY;
 import static org.a0z.mpd.Tools.VALUE;
@@ -70,6 +72,36 @@ public class MPDStatus {
 
     private static final String TAG = "MPDStatus";
 
+    /**
+     * Updates this status from a status response streamed by the connection. The response is
+     * parsed into a scratch status, copied over this status once read, so readers never see a
+     * partially read status.
+     */
+    private final ResponseHandler mResponseHandler = new ResponseHandler() {
+        /** The status the response is parsed into. */
+        private MPDStatus mUpdate;
+
+        @Override
+        public void onEnd() {
+            synchronized (MPDStatus.this) {
+                set(mUpdate);
+            }
+            //noinspection AssignmentToNull
+            mUpdate = null;
+        }
+
+        @Override
+        public void onPair(final String key, final String value) {
+            mUpdate.update(key, value);
+        }
+
+        @Override
+        public void onStart() {
+            mUpdate = new MPDStatus(MPDStatus.this);
+            mUpdate.resetValues();
+        }
+    };
+
     private long mBitRate;
 
     private int mBitsPerSample;
@@ -138,6 +170,20 @@ public class MPDStatus {
         mVolume = 0;
     }
 
+    /**
+     * Constructs a copy of a status, such as a snapshot for listeners running on another thread
+     * than the one updating the status.
+     *
+     * @param status The status to copy.
+     */
+    MPDStatus(final MPDStatus status) {
+        super();
+
+        synchronized (status) {
+            set(status);
+        }
+    }
+
     /**
      * Retrieves current track bitrate.
      *
@@ -185,7 +231,8 @@ public class MPDStatus {
 
         if (isState(STATE_PLAYING)) {
             /** We can't expect to always update right before this is called. */
-            final long sinceUpdated = (new Date().getTime() - mUpdateTime) / 1000;
+            final long sinceUpdated =
+                    TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - mUpdateTime);
 
             result = sinceUpdated + mElapsedTime;
         } else {
@@ -247,6 +294,16 @@ public class MPDStatus {
         return mPlaylistVersion;
     }
 
+    /**
+     * Retrieves the handler which updates this status from a streamed status response.
+     *
+     * @return The status response handler.
+     * @see org.a0z.mpd.connection.MPDConnection#sendCommand(MPDCommand, ResponseHandler)
+     */
+    final ResponseHandler getResponseHandler() {
+        return mResponseHandler;
+    }
+
     /**
      * Retrieves sample rate from playing song.
      *
@@ -390,6 +447,40 @@ public class MPDStatus {
         mVolume = 0;
     }
 
+    /**
+     * Copies every value of another status to this status.
+     *
+     * @param status The status to copy.
+     */
+    private void set(final MPDStatus status) {
+        mBitRate = status.mBitRate;
+        mBitsPerSample = status.mBitsPerSample;
+        mChannels = status.mChannels;
+        mConsume = status.mConsume;
+        mCrossFade = status.mCrossFade;
+        mElapsedTime = status.mElapsedTime;
+        mElapsedTimeHighResolution = status.mElapsedTimeHighResolution;
+        mError = status.mError;
+        mMixRampDB = status.mMixRampDB;
+        mMixRampDelay = status.mMixRampDelay;
+        mMixRampDisabled = status.mMixRampDisabled;
+        mNextSong = status.mNextSong;
+        mNextSongId = status.mNextSongId;
+        mPlaylistLength = status.mPlaylistLength;
+        mPlaylistVersion = status.mPlaylistVersion;
+        mRandom = status.mRandom;
+        mRepeat = status.mRepeat;
+        mSampleRate = status.mSampleRate;
+        mSingle = status.mSingle;
+        mSong = status.mSong;
+        mSongId = status.mSongId;
+        mState = status.mState;
+        mTotalTime = status.mTotalTime;
+        mUpdateTime = status.mUpdateTime;
+        mUpdating = status.mUpdating;
+        mVolume = status.mVolume;
+    }
+
     /**
      * Retrieves a string representation of the object.
      *
@@ -423,130 +514,138 @@ public class MPDStatus {
                 ", volume: " + mVolume;
     }
 
+    /**
+     * Updates the state of the MPD Server with one key/value pair of a status response.
+     *
+     * @param key   The status response key.
+     * @param value The value for the {@code key}.
+     */
+    private void update(final String key, final String value) {
+        switch (key) {
+            case "audio":
+                final int delimiterIndex = value.indexOf(':');
+                final String tmp = value.substring(delimiterIndex + 1);
+                final int secondIndex = tmp.indexOf(':');
+
+                try {
+                    mSampleRate = Integer.parseInt(value.substring(0, delimiterIndex));
+                    mBitsPerSample = Integer.parseInt(tmp.substring(0, secondIndex));
+                    mChannels = Integer.parseInt(tmp.substring(secondIndex + 1));
+                } catch (final NumberFormatException ignored) {
+                    // Sometimes mpd sends "?" as a sampleRate or
+                    // bitsPerSample, etc ... hotfix for a bugreport I had.
+                }
+                break;
+            case "bitrate":
+                mBitRate = Long.parseLong(value);
+                break;
+            case "consume":
+                mConsume = "1".equals(value);
+                break;
+            case "elapsed":
+                mElapsedTimeHighResolution = Float.parseFloat(value);
+                break;
+            case "error":
+                mError = value;
+                break;
+            case "mixrampdb":
+                try {
+                    mMixRampDB = Float.parseFloat(value);
+                } catch (final NumberFormatException e) {
+                    if ("nan".equals(value)) {
+                        mMixRampDisabled = true;
+                    } else {
+                        Log.error(TAG, "Unexpected value from mixrampdb.", e);
+                    }
+                }
+                break;
+            case "mixrampdelay":
+                try {
+                    mMixRampDelay = Float.parseFloat(value);
+                } catch (final NumberFormatException e) {
+                    if ("nan".equals(value)) {
+                        mMixRampDisabled = true;
+                    } else {
+                        Log.error(TAG, "Unexpected value from mixrampdelay", e);
+                    }
+                }
+                break;
+            case "nextsong":
+                mNextSong = Integer.parseInt(value);
+                break;
+            case "nextsongid":
+                mNextSongId = Integer.parseInt(value);
+                break;
+            case "playlist":
+                mPlaylistVersion = Integer.parseInt(value);
+                break;
+            case "playlistlength":
+                mPlaylistLength = Integer.parseInt(value);
+                break;
+            case "random":
+                mRandom = "1".equals(value);
+                break;
+            case "repeat":
+                mRepeat = "1".equals(value);
+                break;
+            case "single":
+                mSingle = "1".equals(value);
+                break;
+            case "song":
+                mSong = Integer.parseInt(value);
+                break;
+            case "songid":
+                mSongId = Integer.parseInt(value);
+                break;
+            case "state":
+                switch (value) {
+                    case MPD_STATE_PLAYING:
+                        mState = STATE_PLAYING;
+                        break;
+                    case MPD_STATE_PAUSED:
+                        mState = STATE_PAUSED;
+                        break;
+                    case MPD_STATE_STOPPED:
+                        mState = STATE_STOPPED;
+                        break;
+                    case MPD_STATE_UNKNOWN:
+                    default:
+                        mState = STATE_UNKNOWN;
+                        break;
+                }
+                break;
+            case "time":
+                final int timeIndex = value.indexOf(':');
+
+                mElapsedTime = Long.parseLong(value.substring(0, timeIndex));
+                mTotalTime = Long.parseLong(value.substring(timeIndex + 1));
+                mUpdateTime = System.nanoTime();
+                break;
+            case "volume":
+                mVolume = Integer.parseInt(value);
+                break;
+            case "xfade":
+                mCrossFade = Integer.parseInt(value);
+                break;
+            case "updating_db":
+                mUpdating = true;
+                break;
+            default:
+                Log.debug(TAG, "Status was sent an unknown response: key: " + key + " value: " +
+                        value);
+        }
+    }
+
     /**
      * Updates the state of the MPD Server...
      *
      * @param response The response from the server.
      */
-    public final void updateStatus(final Collection<String> response) {
+    public final synchronized void updateStatus(final Collection<String> response) {
         resetValues();
 
         for (final String[] pair : Tools.splitResponse(response)) {
-
-            switch (pair[KEY]) {
-                case "audio":
-                    final int delimiterIndex = pair[VALUE].indexOf(':');
-                    final String tmp = pair[VALUE].substring(delimiterIndex + 1);
-                    final int secondIndex = tmp.indexOf(':');
-
-                    try {
-                        mSampleRate = Integer.parseInt(pair[VALUE].substring(0, delimiterIndex));
-                        mBitsPerSample = Integer.parseInt(tmp.substring(0, secondIndex));
-                        mChannels = Integer.parseInt(tmp.substring(secondIndex + 1));
-                    } catch (final NumberFormatException ignored) {
-                        // Sometimes mpd sends "?" as a sampleRate or
-                        // bitsPerSample, etc ... hotfix for a bugreport I had.
-                    }
-                    break;
-                case "bitrate":
-                    mBitRate = Long.parseLong(pair[VALUE]);
-                    break;
-                case "consume":
-                    mConsume = "1".equals(pair[VALUE]);
-                    break;
-                case "elapsed":
-                    mElapsedTimeHighResolution = Float.parseFloat(pair[VALUE]);
-                    break;
-                case "error":
-                    mError = pair[VALUE];
-                    break;
-                case "mixrampdb":
-                    try {
-                        mMixRampDB = Float.parseFloat(pair[VALUE]);
-                    } catch (final NumberFormatException e) {
-                        if ("nan".equals(pair[VALUE])) {
-                            mMixRampDisabled = true;
-                        } else {
-                            Log.error(TAG, "Unexpected value from mixrampdb.", e);
-                        }
-                    }
-                    break;
-                case "mixrampdelay":
-                    try {
-                        mMixRampDelay = Float.parseFloat(pair[VALUE]);
-                    } catch (final NumberFormatException e) {
-                        if ("nan".equals(pair[VALUE])) {
-                            mMixRampDisabled = true;
-                        } else {
-                            Log.error(TAG, "Unexpected value from mixrampdelay", e);
-                        }
-                    }
-                    break;
-                case "nextsong":
-                    mNextSong = Integer.parseInt(pair[VALUE]);
-                    break;
-                case "nextsongid":
-                    mNextSongId = Integer.parseInt(pair[VALUE]);
-                    break;
-                case "playlist":
-                    mPlaylistVersion = Integer.parseInt(pair[VALUE]);
-                    break;
-                case "playlistlength":
-                    mPlaylistLength = Integer.parseInt(pair[VALUE]);
-                    break;
-                case "random":
-                    mRandom = "1".equals(pair[VALUE]);
-                    break;
-                case "repeat":
-                    mRepeat = "1".equals(pair[VALUE]);
-                    break;
-                case "single":
-                    mSingle = "1".equals(pair[VALUE]);
-                    break;
-                case "song":
-                    mSong = Integer.parseInt(pair[VALUE]);
-                    break;
-                case "songid":
-                    mSongId = Integer.parseInt(pair[VALUE]);
-                    break;
-                case "state":
-                    switch (pair[VALUE]) {
-                        case MPD_STATE_PLAYING:
-                            mState = STATE_PLAYING;
-                            break;
-                        case MPD_STATE_PAUSED:
-                            mState = STATE_PAUSED;
-                            break;
-                        case MPD_STATE_STOPPED:
-                            mState = STATE_STOPPED;
-                            break;
-                        case MPD_STATE_UNKNOWN:
-                        default:
-                            mState = STATE_UNKNOWN;
-                            break;
-                    }
-                    break;
-                case "time":
-                    final int timeIndex = pair[VALUE].indexOf(':');
-
-                    mElapsedTime = Long.parseLong(pair[VALUE].substring(0, timeIndex));
-                    mTotalTime = Long.parseLong(pair[VALUE].substring(timeIndex + 1));
-                    mUpdateTime = new Date().getTime();
-                    break;
-                case "volume":
-                    mVolume = Integer.parseInt(pair[VALUE]);
-                    break;
-                case "xfade":
-                    mCrossFade = Integer.parseInt(pair[VALUE]);
-                    break;
-                case "updating_db":
-                    mUpdating = true;
-                    break;
-                default:
-                    Log.debug(TAG,
-                            "Status was sent an unknown response: key: " + pair[KEY] + " value: "
-                                    + pair[VALUE]);
-            }
+            update(pair[KEY], pair[VALUE]);
         }
     }
 }
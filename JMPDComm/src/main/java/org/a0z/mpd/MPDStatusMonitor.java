@@ -33,9 +33,10 @@ import org.a0z.mpd.event.TrackPositionListener;
 import org.a0z.mpd.exception.MPDException;
 
 import java.io.IOException;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 
 /**
  * Monitors MPD Server and sends events on status changes.
@@ -81,6 +82,9 @@ public class MPDStatusMonitor extends Thread {
 
     private final long mDelay;
 
+    /** Dispatches the events to the listeners. */
+    private final StatusDispatcher mDispatcher;
+
     private final MPD mMPD;
 
     private final Queue<StatusChangeListener> mStatusChangeListeners;
@@ -92,21 +96,39 @@ public class MPDStatusMonitor extends Thread {
     private volatile boolean mGiveup;
 
     /**
-     * Constructs a MPDStatusMonitor.
+     * Constructs a MPDStatusMonitor, calling the listeners on the monitor thread.
      *
      * @param mpd                 MPD server to monitor.
      * @param delay               status query interval.
      * @param supportedSubsystems Idle subsystems to support, see IDLE fields in this class.
      */
     public MPDStatusMonitor(final MPD mpd, final long delay, final String[] supportedSubsystems) {
+        this(mpd, delay, supportedSubsystems, null);
+    }
+
+    /**
+     * Constructs a MPDStatusMonitor, calling the listeners on an executor. Events found while a
+     * previous dispatch is pending are coalesced with it, so the listeners are called once per
+     * kind of event, and slow listeners never delay the monitor.
+     *
+     * @param mpd                 MPD server to monitor.
+     * @param delay               status query interval.
+     * @param supportedSubsystems Idle subsystems to support, see IDLE fields in this class.
+     * @param dispatchExecutor    The executor to call the listeners on, null to call them on the
+     *                            monitor thread. Listeners are called by one task at a time.
+     */
+    public MPDStatusMonitor(final MPD mpd, final long delay, final String[] supportedSubsystems,
+            final Executor dispatchExecutor) {
         super("MPDStatusMonitor");
 
         mMPD = mpd;
         mDelay = delay;
         mGiveup = false;
-        mStatusChangeListeners = new LinkedList<>();
-        mTrackPositionListeners = new LinkedList<>();
+        mStatusChangeListeners = new ConcurrentLinkedQueue<>();
+        mTrackPositionListeners = new ConcurrentLinkedQueue<>();
         mSupportedSubsystems = supportedSubsystems.clone();
+        mDispatcher = new StatusDispatcher(dispatchExecutor, mStatusChangeListeners,
+                mTrackPositionListeners);
     }
 
     /**
@@ -147,7 +169,6 @@ public class MPDStatusMonitor extends Thread {
         int oldSong = -1;
         int oldSongId = -1;
         int oldPlaylistVersion = -1;
-        long oldElapsedTime = -1L;
         int oldState = MPDStatus.STATE_UNKNOWN;
         int oldVolume = -1;
         boolean oldUpdating = false;
@@ -160,15 +181,18 @@ public class MPDStatusMonitor extends Thread {
         final MPDStatus status = mMPD.getStatus();
         final MPDPlaylist playlist = mMPD.getPlaylist();
 
+        /** The cached responses are only kept up to date while changes are monitored. */
+        mMPD.setResponseCacheEnabled(true);
+
         while (!mGiveup) {
             Boolean connectionState = Boolean.valueOf(mMPD.isConnected());
             boolean connectionStateChanged = false;
 
             if (connectionLost || oldConnectionState != connectionState) {
-                for (final StatusChangeListener listener : mStatusChangeListeners) {
-                    listener.connectionStateChanged(connectionState.booleanValue(), connectionLost);
-                }
+                mDispatcher.connectionStateChanged(connectionState.booleanValue(), connectionLost);
 
+                /** Changes may have been missed while disconnected. */
+                mMPD.invalidateResponses();
                 if (mMPD.isConnected()) {
                     try {
                         mMPD.updateStatistics();
@@ -190,13 +214,17 @@ public class MPDStatusMonitor extends Thread {
                     boolean dbChanged = false;
                     boolean statusChanged = false;
                     boolean stickerChanged = false;
+                    boolean positionJumped = false;
 
                     if (connectionStateChanged) {
                         dbChanged = statusChanged = true;
                     } else {
                         final List<String> changes = waitForChanges();
 
-                        mMPD.updateStatus();
+                        for (final String change : changes) {
+                            mMPD.invalidateResponses(change.substring("changed: ".length()));
+                        }
+                        positionJumped = mMPD.updateStatus();
 
                         for (final String change : changes) {
                             switch (change.substring("changed: ".length())) {
@@ -222,16 +250,20 @@ public class MPDStatusMonitor extends Thread {
                         }
                     }
 
+                    /**
+                     * The listeners may run on another thread, while this thread updates the
+                     * status: they get a snapshot of it.
+                     */
+                    final MPDStatus snapshot = new MPDStatus(status);
+
                     if (statusChanged) {
                         // playlist
                         if (connectionStateChanged
-                                || (oldPlaylistVersion != status.getPlaylistVersion() && status
-                                .getPlaylistVersion() != -1)) {
-                            playlist.refresh(status);
-                            for (final StatusChangeListener listener : mStatusChangeListeners) {
-                                listener.playlistChanged(status, oldPlaylistVersion);
-                            }
-                            oldPlaylistVersion = status.getPlaylistVersion();
+                                || (oldPlaylistVersion != snapshot.getPlaylistVersion()
+                                && snapshot.getPlaylistVersion() != -1)) {
+                            playlist.refresh(snapshot);
+                            mDispatcher.playlistChanged(snapshot, oldPlaylistVersion);
+                            oldPlaylistVersion = snapshot.getPlaylistVersion();
                         }
 
                         // song
@@ -240,60 +272,48 @@ public class MPDStatusMonitor extends Thread {
                          * would never iterate without manual user playlist queue intervention and
                          * trackChanged() would never be called.
                          */
-                        if (connectionStateChanged || oldSongId != status.getSongId()) {
-                            for (final StatusChangeListener listener : mStatusChangeListeners) {
-                                listener.trackChanged(status, oldSong);
-                            }
-                            oldSong = status.getSongPos();
-                            oldSongId = status.getSongId();
+                        if (connectionStateChanged || oldSongId != snapshot.getSongId()) {
+                            mDispatcher.trackChanged(snapshot, oldSong);
+                            oldSong = snapshot.getSongPos();
+                            oldSongId = snapshot.getSongId();
                         }
 
-                        // time
-                        if (connectionStateChanged || oldElapsedTime != status.getElapsedTime()) {
-                            for (final TrackPositionListener listener : mTrackPositionListeners) {
-                                listener.trackPositionChanged(status);
-                            }
-                            oldElapsedTime = status.getElapsedTime();
+                        /**
+                         * time, only upon seek, track or state change, the position otherwise
+                         * follows the {@link PlaybackClock}.
+                         */
+                        if (connectionStateChanged || positionJumped) {
+                            mDispatcher.trackPositionChanged(snapshot);
                         }
 
                         // state
-                        if (connectionStateChanged || !status.isState(oldState)) {
-                            for (final StatusChangeListener listener : mStatusChangeListeners) {
-                                listener.stateChanged(status, oldState);
-                            }
-                            oldState = status.getState();
+                        if (connectionStateChanged || !snapshot.isState(oldState)) {
+                            mDispatcher.stateChanged(snapshot, oldState);
+                            oldState = snapshot.getState();
                         }
 
                         // volume
-                        if (connectionStateChanged || oldVolume != status.getVolume()) {
-                            for (final StatusChangeListener listener : mStatusChangeListeners) {
-                                listener.volumeChanged(status, oldVolume);
-                            }
-                            oldVolume = status.getVolume();
+                        if (connectionStateChanged || oldVolume != snapshot.getVolume()) {
+                            mDispatcher.volumeChanged(snapshot, oldVolume);
+                            oldVolume = snapshot.getVolume();
                         }
 
                         // repeat
-                        if (connectionStateChanged || oldRepeat != status.isRepeat()) {
-                            for (final StatusChangeListener listener : mStatusChangeListeners) {
-                                listener.repeatChanged(status.isRepeat());
-                            }
-                            oldRepeat = status.isRepeat();
+                        if (connectionStateChanged || oldRepeat != snapshot.isRepeat()) {
+                            mDispatcher.repeatChanged(snapshot.isRepeat());
+                            oldRepeat = snapshot.isRepeat();
                         }
 
                         // volume
-                        if (connectionStateChanged || oldRandom != status.isRandom()) {
-                            for (final StatusChangeListener listener : mStatusChangeListeners) {
-                                listener.randomChanged(status.isRandom());
-                            }
-                            oldRandom = status.isRandom();
+                        if (connectionStateChanged || oldRandom != snapshot.isRandom()) {
+                            mDispatcher.randomChanged(snapshot.isRandom());
+                            oldRandom = snapshot.isRandom();
                         }
 
                         // update database
-                        if (connectionStateChanged || oldUpdating != status.isUpdating()) {
-                            for (final StatusChangeListener listener : mStatusChangeListeners) {
-                                listener.libraryStateChanged(status.isUpdating(), dbChanged);
-                            }
-                            oldUpdating = status.isUpdating();
+                        if (connectionStateChanged || oldUpdating != snapshot.isUpdating()) {
+                            mDispatcher.libraryStateChanged(snapshot.isUpdating(), dbChanged);
+                            oldUpdating = snapshot.isUpdating();
                         }
                     }
 
@@ -301,9 +321,7 @@ public class MPDStatusMonitor extends Thread {
                         if (DEBUG) {
                             Log.debug(TAG, "Sticker changed");
                         }
-                        for (final StatusChangeListener listener : mStatusChangeListeners) {
-                            listener.stickerChanged(status);
-                        }
+                        mDispatcher.stickerChanged(snapshot);
                     }
                 } catch (final IOException e) {
                     // connection lost
@@ -328,6 +346,9 @@ public class MPDStatusMonitor extends Thread {
             }
         }
 
+        /** Changes will not be monitored anymore, the cached responses may become stale. */
+        mMPD.setResponseCacheEnabled(false);
+        mMPD.invalidateResponses();
     }
 
     /**
@@ -29,83 +29,102 @@ package org.a0z.mpd;
 
 import org.a0z.mpd.item.Music;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Iterator;
-import java.util.List;
 
 /**
  * @author Felipe Gustavo de Almeida, Stefan Agner
  */
 
 /**
- * These lists store the internal structure store of the playlist. All modifications are
- * synchronized, iterating over the list will still require manual locking.
+ * These lists store the internal structure store of the playlist. The playlist is stored in
+ * columns: the {@code Music} as an immutable {@link QueueSnapshot} and the song IDs in positional
+ * order, in a plain array, and an index of the positions by song ID, so a song ID lookup takes
+ * constant time and allocates nothing. Modifications are synchronized on this object and publish
+ * a new snapshot; reading and iterating need no locking, as they see the latest snapshot.
  */
 final class MusicList implements Iterable<Music> {
 
     /** The debug flag, change to true for debugging log output. */
     private static final boolean DEBUG = false;
 
+    /** The initial capacity of the stores. */
+    private static final int INITIAL_CAPACITY = 16;
+
     /** The debug log identifier. */
     private static final String TAG = "MusicList";
 
-    /** The playlist store in positional order. */
-    private final List<Music> mList;
+    /** The songID of a position the playlist changes have not filled. */
+    private static final int UNDEFINED_SONG_ID = -1;
+
+    /** The song positions by songID. */
+    private final IdIndex mIndex;
+
+    /** A list of songIDs in songPos order, the songs past the playlist size are undefined. */
+    private int[] mSongID;
 
-    /** A list of songIDs in songPos order. */
-    private final List<Integer> mSongID;
+    /** The playlist store in positional order, replaced upon every modification. */
+    private volatile QueueSnapshot mSnapshot;
 
     MusicList() {
         super();
 
-        mList = Collections.synchronizedList(new ArrayList<Music>());
-        mSongID = Collections.synchronizedList(new ArrayList<Integer>());
+        mIndex = new IdIndex(INITIAL_CAPACITY);
+        mSnapshot = QueueSnapshot.EMPTY;
+        mSongID = new int[INITIAL_CAPACITY];
     }
 
     /**
      * Adds music to {@code MusicList}.
      *
+     * @param next  The next snapshot.
      * @param music music to be added.
      */
-    private void add(final Music music) {
-        synchronized (mList) {
-            final int songPos = music.getPos();
+    private void add(final QueueSnapshot.Builder next, final Music music) {
+        final int songPos = music.getPos();
+        final int size = next.size();
 
-            if (DEBUG) {
-                Log.debug(TAG, "listSize: " + mList.size() + " songPos: " + songPos);
-            }
-            if (mList.size() == songPos) {
-                if (DEBUG) {
-                    Log.debug(TAG, "Adding music to the end");
-                }
-                mList.add(music);
-                mSongID.add(music.getSongId());
-            } else {
-                if (DEBUG) {
-                    Log.debug(TAG,
-                            "Adding beyond the end, or setting within the current playlist.");
-                }
-                /**
-                 * Grow the list to the size of the songPos, THEN set it to the position necessary.
-                 * The while loop shouldn't be necessary at all, unless, the result response is out
-                 * of positional order.
-                 */
-                while (mList.size() <= songPos) {
-                    mList.add(null);
-                    mSongID.add(null);
-                }
+        if (DEBUG) {
+            Log.debug(TAG, "listSize: " + size + " songPos: " + songPos);
+        }
 
-                if (songPos == -1) {
-                    throw new IllegalStateException("Media server protocol error: songPos not " +
-                            "included with the playlist changes included with the following " +
-                            "music. Path:" + music.getFullPath() + " Name: " + music.getName());
-                }
+        if (songPos == -1) {
+            throw new IllegalStateException("Media server protocol error: songPos not " +
+                    "included with the playlist changes included with the following " +
+                    "music. Path:" + music.getFullPath() + " Name: " + music.getName());
+        }
 
-                mList.set(songPos, music);
-                mSongID.set(songPos, music.getSongId());
+        /**
+         * Grow the list to the size of the songPos, THEN set it to the position necessary.
+         * This shouldn't be necessary at all, unless, the result response is out of positional
+         * order.
+         */
+        if (songPos >= size) {
+            if (DEBUG && songPos > size) {
+                Log.debug(TAG, "Adding beyond the end.");
             }
+            ensureCapacity(songPos + 1);
+            Arrays.fill(mSongID, size, songPos + 1, UNDEFINED_SONG_ID);
+        } else {
+            removeFromIndex(songPos);
+        }
+
+        next.set(songPos, music);
+        mSongID[songPos] = music.getSongId();
+        mIndex.put(music.getSongId(), songPos);
+    }
+
+    /**
+     * Grows the songID store to hold at least {@code capacity} songs.
+     *
+     * @param capacity The required capacity.
+     */
+    private void ensureCapacity(final int capacity) {
+        if (capacity > mSongID.length) {
+            final int newCapacity = Math.max(capacity, mSongID.length + (mSongID.length >> 1));
+
+            mSongID = Arrays.copyOf(mSongID, newCapacity);
         }
     }
 
@@ -116,10 +135,15 @@ final class MusicList implements Iterable<Music> {
      * @return a Music with given songId or {@code null} if it is not
      * present on this {@code MusicList}.
      */
-    Music getById(final int songId) {
-        final int songPos = Integer.valueOf(mSongID.indexOf(songId));
+    synchronized Music getById(final int songId) {
+        final int songPos = mIndex.get(songId);
+        Music result = null;
 
-        return mList.get(songPos);
+        if (songPos != -1) {
+            result = mSnapshot.get(songPos);
+        }
+
+        return result;
     }
 
     /**
@@ -130,32 +154,34 @@ final class MusicList implements Iterable<Music> {
      * present on this {@code MusicList}.
      */
     Music getByIndex(final int index) {
+        final QueueSnapshot snapshot = mSnapshot;
         Music result = null;
 
-        if (index >= 0 && mList.size() > index) {
-            result = mList.get(index);
+        if (index >= 0 && snapshot.size() > index) {
+            result = snapshot.get(index);
         }
 
         return result;
     }
 
     /**
-     * Retrieves a List containing all {@code Music} objects from this {@code MusicList}.
+     * Retrieves the latest snapshot of this {@code MusicList}.
      *
-     * @return Retrieves a List containing all {@code Music} objects from this {@code MusicList}.
+     * @return An immutable snapshot containing all {@code Music} objects from this
+     * {@code MusicList}, as of this call.
      */
-    List<Music> getMusic() {
-        return Collections.unmodifiableList(mList);
+    QueueSnapshot getSnapshot() {
+        return mSnapshot;
     }
 
     /**
-     * Returns an {@link java.util.Iterator} for the music list.
+     * Returns an {@link java.util.Iterator} for the latest snapshot of the music list.
      *
      * @return An {@code Iterator} instance.
      */
     @Override
     public Iterator<Music> iterator() {
-        return mList.iterator();
+        return mSnapshot.iterator();
     }
 
     /**
@@ -164,34 +190,47 @@ final class MusicList implements Iterable<Music> {
      *
      * @param musicList    The changes to make to the backing stores.
      * @param listCapacity The size of the resulting list.
+     * @param version      The playlist version after the changes.
      */
-    void manipulate(final Iterable<Music> musicList, final int listCapacity) {
+    synchronized void manipulate(final Iterable<Music> musicList, final int listCapacity,
+            final int version) {
+        final QueueSnapshot.Builder next = mSnapshot.edit();
+
         for (final Music music : musicList) {
             /**
              * Do not remove from either list. it will be removed by range.
              */
-            add(music);
+            add(next, music);
         }
 
         /**
          * Consistency checks and cleanups.
          */
-        synchronized (mList) {
-            final int listSize = mList.size();
-            final int songIDSize = mSongID.size();
-            if (listSize < listCapacity) {
-                throw new IllegalStateException(
-                        "List store: " + listSize + " and playlistLength: " + listCapacity +
-                                " size differs.");
-            }
+        final int size = next.size();
+        if (size < listCapacity) {
+            throw new IllegalStateException(
+                    "List store: " + size + " and playlistLength: " + listCapacity +
+                            " size differs.");
+        }
 
-            mList.subList(listCapacity, listSize).clear();
-            mSongID.subList(listCapacity, songIDSize).clear();
+        for (int i = listCapacity; i < size; i++) {
+            removeFromIndex(i);
+        }
+        next.setSize(listCapacity);
+        mSnapshot = next.build(version);
+    }
 
-            if (songIDSize != listSize) {
-                throw new IllegalStateException("List store: " + listSize +
-                        " and SongID: " + songIDSize + " size differs.");
-            }
+    /**
+     * Removes the song at a position from the songID index, unless its songID was indexed to
+     * another position since.
+     *
+     * @param songPos The song position.
+     */
+    private void removeFromIndex(final int songPos) {
+        final int songId = mSongID[songPos];
+
+        if (mIndex.get(songId) == songPos) {
+            mIndex.remove(songId);
         }
     }
 
@@ -199,18 +238,21 @@ final class MusicList implements Iterable<Music> {
      * Replace all elements in this object.
      *
      * @param collection The {@code Music} collection to replace the {@code MusicList} with.
+     * @param version    The playlist version of the collection.
      */
-    void replace(final Collection<Music> collection) {
-
-        synchronized (mList) {
-            mList.clear();
-            mList.addAll(collection);
+    synchronized void replace(final Collection<Music> collection, final int version) {
+        final QueueSnapshot.Builder next = QueueSnapshot.EMPTY.edit();
+        int songPos = 0;
 
-            mSongID.clear();
-            for (final Music track : collection) {
-                mSongID.add(track.getSongId());
-            }
+        ensureCapacity(collection.size());
+        mIndex.clear(collection.size());
+        for (final Music track : collection) {
+            next.set(songPos, track);
+            mSongID[songPos] = track.getSongId();
+            mIndex.put(track.getSongId(), songPos);
+            songPos++;
         }
+        mSnapshot = next.build(version);
     }
 
     /**
@@ -219,6 +261,164 @@ final class MusicList implements Iterable<Music> {
      * @return {@code MusicList} size.
      */
     int size() {
-        return mList.size();
+        return mSnapshot.size();
+    }
+
+    /**
+     * An open addressing, linear probing, hash map of song positions by songID, with neither
+     * boxing nor allocation upon lookup. Negative songIDs, which are undefined, are not indexed.
+     */
+    private static final class IdIndex {
+
+        /** The key of an empty slot. */
+        private static final int EMPTY = -1;
+
+        /** The maximum share of used slots, in eighths, before the table grows. */
+        private static final int LOAD_FACTOR_EIGHTHS = 5;
+
+        /** The songIDs, {@link #EMPTY} for an empty slot. */
+        private int[] mKeys;
+
+        /** The number of used slots. */
+        private int mSize;
+
+        /** The song positions, in the slot of their songID. */
+        private int[] mValues;
+
+        IdIndex(final int expectedSize) {
+            super();
+
+            allocate(expectedSize);
+        }
+
+        private static int hash(final int key) {
+            final int hash = key * 0x9E3779B9;
+
+            return hash ^ hash >>> 16;
+        }
+
+        private void allocate(final int expectedSize) {
+            int capacity = INITIAL_CAPACITY;
+
+            while (capacity * LOAD_FACTOR_EIGHTHS / 8 <= expectedSize) {
+                capacity <<= 1;
+            }
+
+            mKeys = new int[capacity];
+            Arrays.fill(mKeys, EMPTY);
+            mValues = new int[capacity];
+            mSize = 0;
+        }
+
+        /**
+         * Removes every entry.
+         *
+         * @param expectedSize The number of entries expected to be put next.
+         */
+        void clear(final int expectedSize) {
+            allocate(expectedSize);
+        }
+
+        /**
+         * Retrieves the song position of a songID.
+         *
+         * @param key The songID.
+         * @return The song position, -1 if not found.
+         */
+        int get(final int key) {
+            final int mask = mKeys.length - 1;
+            int result = -1;
+
+            if (key >= 0) {
+                for (int slot = hash(key) & mask; mKeys[slot] != EMPTY; slot = slot + 1 & mask) {
+                    if (mKeys[slot] == key) {
+                        result = mValues[slot];
+                        break;
+                    }
+                }
+            }
+
+            return result;
+        }
+
+        /**
+         * Indexes the song position of a songID, replacing any previous position.
+         *
+         * @param key   The songID.
+         * @param value The song position.
+         */
+        void put(final int key, final int value) {
+            if (key >= 0) {
+                if ((mSize + 1) * 8 > mKeys.length * LOAD_FACTOR_EIGHTHS) {
+                    rehash();
+                }
+
+                final int mask = mKeys.length - 1;
+                int slot = hash(key) & mask;
+
+                while (mKeys[slot] != EMPTY && mKeys[slot] != key) {
+                    slot = slot + 1 & mask;
+                }
+                if (mKeys[slot] == EMPTY) {
+                    mKeys[slot] = key;
+                    mSize++;
+                }
+                mValues[slot] = value;
+            }
+        }
+
+        private void rehash() {
+            final int[] keys = mKeys;
+            final int[] values = mValues;
+            final int mask;
+
+            mKeys = new int[keys.length << 1];
+            Arrays.fill(mKeys, EMPTY);
+            mValues = new int[mKeys.length];
+            mask = mKeys.length - 1;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != EMPTY) {
+                    int slot = hash(keys[i]) & mask;
+
+                    while (mKeys[slot] != EMPTY) {
+                        slot = slot + 1 & mask;
+                    }
+                    mKeys[slot] = keys[i];
+                    mValues[slot] = values[i];
+                }
+            }
+        }
+
+        /**
+         * Removes a songID. The following entries of the probe sequence are shifted back, so
+         * no tombstone is left behind.
+         *
+         * @param key The songID.
+         */
+        void remove(final int key) {
+            final int mask = mKeys.length - 1;
+            int slot = hash(key) & mask;
+
+            while (mKeys[slot] != EMPTY && mKeys[slot] != key) {
+                slot = slot + 1 & mask;
+            }
+
+            if (key >= 0 && mKeys[slot] == key) {
+                int hole = slot;
+
+                for (int next = hole + 1 & mask; mKeys[next] != EMPTY; next = next + 1 & mask) {
+                    final int home = hash(mKeys[next]) & mask;
+
+                    /** Move the entry unless its home slot lies cyclically in (hole, next]. */
+                    if (hole <= next ? home <= hole || home > next : home <= hole && home > next) {
+                        mKeys[hole] = mKeys[next];
+                        mValues[hole] = mValues[next];
+                        hole = next;
+                    }
+                }
+                mKeys[hole] = EMPTY;
+                mSize--;
+            }
+        }
     }
 }
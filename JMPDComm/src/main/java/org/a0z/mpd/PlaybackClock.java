@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class extrapolates the elapsed time of the current track from the last status, with a
+ * monotonic clock, so the track position can be displayed at any rate without querying the media
+ * server. The clock is synchronized upon every status update, which the {@link MPDStatusMonitor}
+ * only requests upon idle events.
+ */
+public final class PlaybackClock {
+
+    /** The drift beyond which the synchronized position is considered a discontinuity. */
+    private static final long DRIFT_TOLERANCE = 1500L;
+
+    private static final long MILLIS_PER_SECOND = TimeUnit.SECONDS.toMillis(1L);
+
+    /** The elapsed time as of the last synchronization, in milliseconds. */
+    private long mElapsedTime;
+
+    private int mSongId = -1;
+
+    private int mState = MPDStatus.STATE_UNKNOWN;
+
+    /** The {@link System#nanoTime()} of the last synchronization. */
+    private long mSyncTime;
+
+    /** The current track length, in milliseconds, 0 if unknown. */
+    private long mTotalTime;
+
+    PlaybackClock() {
+        super();
+    }
+
+    /**
+     * Extrapolates the elapsed time. This must be called with the clock lock held.
+     *
+     * @param now The current {@link System#nanoTime()}.
+     * @return The extrapolated elapsed time, in milliseconds.
+     */
+    private long extrapolate(final long now) {
+        long elapsedTime = mElapsedTime;
+
+        if (mState == MPDStatus.STATE_PLAYING) {
+            elapsedTime += TimeUnit.NANOSECONDS.toMillis(now - mSyncTime);
+
+            if (mTotalTime > 0L && elapsedTime > mTotalTime) {
+                elapsedTime = mTotalTime;
+            }
+        }
+
+        return elapsedTime;
+    }
+
+    /**
+     * Retrieves the extrapolated elapsed time of the current track.
+     *
+     * @return The elapsed time, in seconds.
+     */
+    public long getElapsedTime() {
+        return getElapsedTimeMillis() / MILLIS_PER_SECOND;
+    }
+
+    /**
+     * Retrieves the extrapolated elapsed time of the current track.
+     *
+     * @return The elapsed time, in milliseconds.
+     */
+    public synchronized long getElapsedTimeMillis() {
+        return extrapolate(System.nanoTime());
+    }
+
+    /**
+     * Retrieves the playback state as of the last synchronization.
+     *
+     * @return The playback state, see the STATE fields of {@link MPDStatus}.
+     */
+    public synchronized int getState() {
+        return mState;
+    }
+
+    /**
+     * Retrieves the current track length.
+     *
+     * @return The track length, in seconds, 0 if unknown.
+     */
+    public synchronized long getTotalTime() {
+        return mTotalTime / MILLIS_PER_SECOND;
+    }
+
+    /**
+     * Checks whether the clock is running, which is while the media server is playing.
+     *
+     * @return True if the elapsed time advances, false otherwise.
+     */
+    public synchronized boolean isRunning() {
+        return mState == MPDStatus.STATE_PLAYING;
+    }
+
+    /**
+     * Synchronizes the clock with a status freshly updated from the media server.
+     *
+     * @param status The status, as of now.
+     * @return True if the position did not follow the extrapolation, such as upon seek, track
+     * or state change, false if the clock was only corrected.
+     */
+    synchronized boolean sync(final MPDStatus status) {
+        final long now = System.nanoTime();
+        final float elapsedTimeHighResolution = status.getElapsedTimeHighResolution();
+        final long elapsedTime;
+
+        /** The high resolution elapsed time is sent by MPD 0.16 and later. */
+        if (elapsedTimeHighResolution > 0.0f) {
+            elapsedTime = (long) (elapsedTimeHighResolution * (float) MILLIS_PER_SECOND);
+        } else {
+            elapsedTime = status.getElapsedTime() * MILLIS_PER_SECOND;
+        }
+
+        final boolean isDiscontinuous = mSongId != status.getSongId() ||
+                !status.isState(mState) ||
+                Math.abs(extrapolate(now) - elapsedTime) > DRIFT_TOLERANCE;
+
+        mElapsedTime = elapsedTime;
+        mSongId = status.getSongId();
+        mState = status.getState();
+        mSyncTime = now;
+        mTotalTime = status.getTotalTime() * MILLIS_PER_SECOND;
+
+        return isDiscontinuous;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "PlaybackClock{" +
+                "mElapsedTime=" + mElapsedTime +
+                ", mSongId=" + mSongId +
+                ", mState=" + mState +
+                ", mTotalTime=" + mTotalTime +
+                '}';
+    }
+}
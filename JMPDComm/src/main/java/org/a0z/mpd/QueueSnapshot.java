@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd;
+
+import org.a0z.mpd.item.Music;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * An immutable snapshot of the playlist queue, tagged with the playlist version it reflects.
+ * Snapshots are published as a whole, so a reader always sees a consistent queue without any
+ * locking. The queue is stored in fixed size chunks, and a new snapshot shares every chunk the
+ * playlist changes did not touch with the previous one, so a small change to a large queue only
+ * copies the chunk table and the changed chunks.
+ */
+public final class QueueSnapshot extends AbstractList<Music> implements RandomAccess {
+
+    /** The snapshot of an empty queue, of an unknown playlist version. */
+    static final QueueSnapshot EMPTY = new QueueSnapshot(new Music[0][], 0, -1);
+
+    /** The number of queue entries per chunk, as a power of two. */
+    private static final int CHUNK_SHIFT = 8;
+
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    /** The chunks, a null chunk holds no entry. */
+    private final Music[][] mChunks;
+
+    private final int mSize;
+
+    private final int mVersion;
+
+    private QueueSnapshot(final Music[][] chunks, final int size, final int version) {
+        super();
+
+        mChunks = chunks;
+        mSize = size;
+        mVersion = version;
+    }
+
+    /**
+     * Starts the next snapshot from this one.
+     *
+     * @return A builder holding the entries of this snapshot.
+     */
+    Builder edit() {
+        return new Builder(this);
+    }
+
+    @Override
+    public Music get(final int location) {
+        if (location < 0 || location >= mSize) {
+            throw new IndexOutOfBoundsException("Index: " + location + " Size: " + mSize);
+        }
+
+        final Music[] chunk = mChunks[location >>> CHUNK_SHIFT];
+        return chunk == null ? null : chunk[location & CHUNK_MASK];
+    }
+
+    /**
+     * Retrieves the playlist version this snapshot reflects.
+     *
+     * @return The playlist version, -1 if unknown.
+     */
+    public int getVersion() {
+        return mVersion;
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * This class builds the next snapshot, copying a chunk of the previous snapshot upon its
+     * first change only.
+     */
+    static final class Builder {
+
+        private Music[][] mChunks;
+
+        /** Whether each chunk belongs to this builder, rather than to the previous snapshot. */
+        private boolean[] mOwned;
+
+        private int mSize;
+
+        private Builder(final QueueSnapshot snapshot) {
+            super();
+
+            mChunks = snapshot.mChunks.clone();
+            mOwned = new boolean[mChunks.length];
+            mSize = snapshot.mSize;
+        }
+
+        /**
+         * Builds the snapshot, this builder must not be used afterwards.
+         *
+         * @param version The playlist version the snapshot reflects.
+         * @return The snapshot.
+         */
+        QueueSnapshot build(final int version) {
+            return new QueueSnapshot(mChunks, mSize, version);
+        }
+
+        /**
+         * Grows the chunk table to hold at least {@code count} chunks.
+         *
+         * @param count The required number of chunks.
+         */
+        private void ensureChunks(final int count) {
+            if (count > mChunks.length) {
+                final int length = Math.max(count, mChunks.length + (mChunks.length >> 1));
+
+                mChunks = Arrays.copyOf(mChunks, length);
+                mOwned = Arrays.copyOf(mOwned, length);
+            }
+        }
+
+        /**
+         * Retrieves a chunk to be changed, copying it if shared with the previous snapshot.
+         *
+         * @param index The chunk index.
+         * @return The chunk, owned by this builder.
+         */
+        private Music[] edit(final int index) {
+            ensureChunks(index + 1);
+            if (!mOwned[index]) {
+                final Music[] chunk = mChunks[index];
+
+                mChunks[index] = chunk == null ? new Music[CHUNK_SIZE] : chunk.clone();
+                mOwned[index] = true;
+            }
+
+            return mChunks[index];
+        }
+
+        /**
+         * Sets the entry at a position, growing the queue if the position is beyond its end.
+         *
+         * @param location The queue position.
+         * @param music    The entry.
+         */
+        void set(final int location, final Music music) {
+            edit(location >>> CHUNK_SHIFT)[location & CHUNK_MASK] = music;
+            if (location >= mSize) {
+                mSize = location + 1;
+            }
+        }
+
+        /**
+         * Sets the queue size, truncating or growing the queue with empty entries.
+         *
+         * @param size The queue size.
+         */
+        void setSize(final int size) {
+            if (size < mSize) {
+                final int chunks = size + CHUNK_MASK >>> CHUNK_SHIFT;
+
+                /** Drop the entries past the end, they must not show if the queue grows back. */
+                if ((size & CHUNK_MASK) != 0) {
+                    Arrays.fill(edit(chunks - 1), size & CHUNK_MASK, CHUNK_SIZE, null);
+                }
+                Arrays.fill(mChunks, chunks, mChunks.length, null);
+                Arrays.fill(mOwned, chunks, mOwned.length, false);
+            } else {
+                ensureChunks(size + CHUNK_MASK >>> CHUNK_SHIFT);
+            }
+            mSize = size;
+        }
+
+        /**
+         * Retrieves the queue size.
+         *
+         * @return The queue size.
+         */
+        int size() {
+            return mSize;
+        }
+    }
+}
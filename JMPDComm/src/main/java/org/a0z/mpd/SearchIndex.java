@@ -0,0 +1,795 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd;
+
+import org.a0z.mpd.exception.MPDException;
+import org.a0z.mpd.item.Music;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * A local inverted index of the media server database tags, for search as you type without a
+ * media server round trip. The tags are folded, without diacritics and case, then split in words;
+ * a query matches a track if each of its words is the prefix of a word of the track tags. Results
+ * are ranked by the tags matched, and exact word matches rank higher than prefix matches.
+ *
+ * <p>The index is built by walking the database once, then updated from the directories
+ * modified since, upon the next {@link #refresh(MPD)} following a {@code database} change, and
+ * from the directories whose song count changed. The index can be searched while it is
+ * refreshed.</p>
+ */
+public final class SearchIndex {
+
+    /** The combining diacritical marks, stripped once the text is decomposed. */
+    private static final Pattern BLOCK_IN_COMBINING_DIACRITICAL_MARKS =
+            Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+
+    private static final boolean DEBUG = false;
+
+    private static final int FIELD_ALBUM = 3;
+
+    private static final int FIELD_ALBUM_ARTIST = 2;
+
+    private static final int FIELD_ARTIST = 1;
+
+    /** The number of bits of a posting holding the field. */
+    private static final int FIELD_BITS = 3;
+
+    private static final int FIELD_COMPOSER = 4;
+
+    private static final int FIELD_GENRE = 5;
+
+    private static final int FIELD_MASK = (1 << FIELD_BITS) - 1;
+
+    private static final int FIELD_TITLE = 0;
+
+    /** The rank of a match by field, doubled for exact word matches. */
+    private static final int[] FIELD_WEIGHTS = {5, 4, 4, 3, 2, 1};
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final String TAG = "SearchIndex";
+
+    /** Serializes the refreshes, which do not block searches until their changes are applied. */
+    private final Object mRefreshLock = new Object();
+
+    /** Guards the index store. */
+    private final ReadWriteLock mStoreLock = new ReentrantReadWriteLock();
+
+    /** The media server database update time the index is current with. */
+    private Date mDbUpdate;
+
+    /** Whether the media server database changed since the last refresh. */
+    private volatile boolean mIsStale;
+
+    /** The media server indexed, as its address and port. */
+    private String mServer;
+
+    /** The index, null until built. */
+    private volatile Store mStore;
+
+    SearchIndex() {
+        super();
+    }
+
+    /**
+     * Folds text for comparison: diacritics are removed and the text is lower cased.
+     *
+     * @param text The text to fold.
+     * @return The folded text.
+     */
+    public static String fold(final CharSequence text) {
+        final String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+
+        return BLOCK_IN_COMBINING_DIACRITICAL_MARKS.matcher(decomposed).replaceAll("")
+                .toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Checks whether text matches a query the way the index does: each word of the query must be
+     * the prefix of a word of the text, regardless of diacritics and case.
+     *
+     * @param text  The text to match.
+     * @param query The query.
+     * @return True if the text matches the query, false otherwise.
+     */
+    public static boolean matches(final CharSequence text, final CharSequence query) {
+        final Collection<String> words = tokenize(text);
+        boolean matches = true;
+
+        for (final String term : tokenize(query)) {
+            boolean found = false;
+
+            for (final String word : words) {
+                if (word.startsWith(term)) {
+                    found = true;
+                    break;
+                }
+            }
+
+            if (!found) {
+                matches = false;
+                break;
+            }
+        }
+
+        return matches;
+    }
+
+    /**
+     * Splits text in folded words.
+     *
+     * @param text The text to split.
+     * @return The distinct words of the text, in order.
+     */
+    private static Collection<String> tokenize(final CharSequence text) {
+        final Collection<String> words = new LinkedHashSet<>();
+
+        for (final String word : NON_WORD.split(fold(text))) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+
+        return words;
+    }
+
+    /**
+     * Drops the index, as upon connection to another media server.
+     */
+    public void clear() {
+        mStoreLock.writeLock().lock();
+        try {
+            mStore = null;
+            mDbUpdate = null;
+        } finally {
+            mStoreLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Marks the index as outdated, so the next {@link #refresh(MPD)} updates it. This is called
+     * upon every {@code database} change.
+     */
+    void invalidate() {
+        mIsStale = true;
+    }
+
+    /**
+     * Checks whether the index is built and current with the media server database.
+     *
+     * @return True if the index needs no {@link #refresh(MPD)}, false otherwise.
+     */
+    public boolean isCurrent() {
+        return mStore != null && !mIsStale;
+    }
+
+    /**
+     * Checks whether the index has been built, and may be searched.
+     *
+     * @return True if the index was built, false otherwise.
+     */
+    public boolean isReady() {
+        return mStore != null;
+    }
+
+    /**
+     * Builds the index anew, from the whole database.
+     *
+     * @param mpd The media server to index.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    private void rebuild(final MPD mpd) throws IOException, MPDException {
+        final Store store = new Store();
+
+        mpd.walkDatabase(new DatabaseVisitor() {
+            @Override
+            public boolean onDirectory(final String path, final String lastModified) {
+                return true;
+            }
+
+            @Override
+            public void onMusic(final Music music) {
+                store.add(music);
+            }
+        });
+
+        if (DEBUG) {
+            Log.debug(TAG, "Built the index: " + store);
+        }
+
+        mStoreLock.writeLock().lock();
+        try {
+            mStore = store;
+        } finally {
+            mStoreLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Builds the index, or updates it if the media server database changed since. If the media
+     * server does not report the modified directories, or the song counts of its directories,
+     * the index is built anew.
+     *
+     * @param mpd The media server to index.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    public void refresh(final MPD mpd) throws IOException, MPDException {
+        synchronized (mRefreshLock) {
+            if (mStore == null || mIsStale) {
+                mIsStale = false;
+                mpd.updateStatistics();
+
+                final Date dbUpdate = mpd.getStatistics().getDbUpdate();
+
+                if (mStore == null || mDbUpdate == null || !updateFrom(mpd, mDbUpdate) ||
+                        !updateFromSongCounts(mpd)) {
+                    rebuild(mpd);
+                }
+                mDbUpdate = dbUpdate;
+            }
+        }
+    }
+
+    /**
+     * Searches the index.
+     *
+     * @param query The words to search, each matching the prefix of a tag word.
+     * @param limit The maximum number of results.
+     * @return The matching tracks, best match first, empty if the index was not built.
+     */
+    public List<Music> search(final CharSequence query, final int limit) {
+        final Collection<String> terms = tokenize(query);
+        final List<Music> result;
+
+        mStoreLock.readLock().lock();
+        try {
+            if (mStore == null || terms.isEmpty()) {
+                result = Collections.emptyList();
+            } else {
+                result = mStore.search(terms, limit);
+            }
+        } finally {
+            mStoreLock.readLock().unlock();
+        }
+
+        return result;
+    }
+
+    /**
+     * Sets the media server about to be connected to, the index is dropped if it is another
+     * media server than the indexed one.
+     *
+     * @param address The media server address.
+     * @param port    The media server port.
+     */
+    void setServer(final InetAddress address, final int port) {
+        final String server = address.getHostAddress() + ':' + port;
+
+        synchronized (mRefreshLock) {
+            if (!server.equals(mServer)) {
+                clear();
+                mServer = server;
+            }
+        }
+    }
+
+    /**
+     * Updates the index from the directories holding music modified since the last refresh. The
+     * directories are walked before the index is locked.
+     *
+     * @param mpd   The media server to index.
+     * @param since The database update time of the last refresh.
+     * @return True if the index was updated, false if the modified directories are not known.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    private boolean updateFrom(final MPD mpd, final Date since) throws IOException, MPDException {
+        final Set<String> modified = mpd.listModifiedDirectories(since);
+        boolean updated = false;
+
+        if (modified != null && !modified.contains("")) {
+            /** Walking a directory walks its subdirectories, keep the topmost directories. */
+            final List<String> roots = new ArrayList<>();
+            for (final String path : new TreeSet<>(modified)) {
+                if (roots.isEmpty() || !path.startsWith(roots.get(roots.size() - 1) + '/')) {
+                    roots.add(path);
+                }
+            }
+
+            final List<Music> music = new ArrayList<>();
+            for (final String root : roots) {
+                mpd.walkDatabase(root, new DatabaseVisitor() {
+                    @Override
+                    public boolean onDirectory(final String path, final String lastModified) {
+                        return true;
+                    }
+
+                    @Override
+                    public void onMusic(final Music item) {
+                        music.add(item);
+                    }
+                });
+            }
+
+            mStoreLock.writeLock().lock();
+            try {
+                for (final String root : roots) {
+                    mStore.removeDirectory(root);
+                }
+                for (final Music item : music) {
+                    mStore.add(item);
+                }
+                mStore.compact();
+            } finally {
+                mStoreLock.writeLock().unlock();
+            }
+
+            if (DEBUG) {
+                Log.debug(TAG, "Updated " + roots.size() + " directories: " + mStore);
+            }
+            updated = true;
+        }
+
+        return updated;
+    }
+
+    /**
+     * Updates the index for the tracks removed from or moved to directories which were not
+     * modified, which {@link MPD#listModifiedDirectories(Date)} does not report. The song counts
+     * of the directories, subdirectories included, are compared with the media server one
+     * directory level at a time, from the top level down, only below the directories whose song
+     * count differs, which are indexed again. Tracks moved between subdirectories of a directory
+     * whose song count stays the same are indexed upon the next rebuild.
+     *
+     * @param mpd The media server to index.
+     * @return True if the index was updated, false if the song counts are not known.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     * @see MPD#getDirectorySongCounts(Collection)
+     */
+    private boolean updateFromSongCounts(final MPD mpd) throws IOException, MPDException {
+        Collection<String> parents = Collections.singleton("");
+        boolean updated = true;
+        int directories = 0;
+
+        while (updated && !parents.isEmpty()) {
+            final Set<String> listed = new HashSet<>();
+            final List<Music> music = new ArrayList<>();
+
+            /** The tracks of the parents are indexed again, their subdirectories are counted. */
+            for (final String parent : parents) {
+                mpd.walkDatabase(parent, new DatabaseVisitor() {
+                    @Override
+                    public boolean onDirectory(final String path, final String lastModified) {
+                        listed.add(path);
+                        return false;
+                    }
+
+                    @Override
+                    public void onMusic(final Music item) {
+                        music.add(item);
+                    }
+                });
+            }
+
+            final Map<String, Long> songCounts = mpd.getDirectorySongCounts(listed);
+            if (songCounts == null) {
+                updated = false;
+            } else {
+                final Map<String, Long> indexedSongCounts;
+
+                mStoreLock.writeLock().lock();
+                try {
+                    for (final String parent : parents) {
+                        mStore.removeFiles(parent);
+                        for (final String path : mStore.getSubdirectories(parent)) {
+                            if (!listed.contains(path)) {
+                                mStore.removeDirectory(path);
+                            }
+                        }
+                    }
+                    for (final Music item : music) {
+                        mStore.add(item);
+                    }
+                    mStore.compact();
+                    indexedSongCounts = mStore.getSongCounts(listed);
+                } finally {
+                    mStoreLock.writeLock().unlock();
+                }
+
+                directories += listed.size();
+                parents = new ArrayList<>();
+                for (final String path : listed) {
+                    if (!songCounts.get(path).equals(indexedSongCounts.get(path))) {
+                        parents.add(path);
+                    }
+                }
+            }
+        }
+
+        if (DEBUG) {
+            Log.debug(TAG, "Counted the songs of " + directories + " directories: " + mStore);
+        }
+
+        return updated;
+    }
+
+    /** A growable list of primitive integers. */
+    private static final class IntList {
+
+        private int[] mValues = new int[2];
+
+        private int mSize;
+
+        IntList() {
+            super();
+        }
+
+        void add(final int value) {
+            if (mSize == mValues.length) {
+                mValues = Arrays.copyOf(mValues, mSize << 1);
+            }
+            mValues[mSize] = value;
+            mSize++;
+        }
+
+        int get(final int index) {
+            return mValues[index];
+        }
+
+        int size() {
+            return mSize;
+        }
+    }
+
+    /**
+     * The index data. Removed tracks leave a hole in the document list, and their postings are
+     * skipped when searching, until the store is compacted.
+     */
+    private static final class Store {
+
+        /** The document IDs by the directory holding the tracks. */
+        private final NavigableMap<String, IntList> mDirectories = new TreeMap<>();
+
+        /** The indexed tracks, by document ID, null once removed. */
+        private final List<Music> mDocuments = new ArrayList<>();
+
+        /** The words of the tags already split, tags are shared by many tracks. */
+        private final Map<String, Collection<String>> mTagWords = new HashMap<>();
+
+        /** The postings by word, each the document ID shifted left of the field. */
+        private final NavigableMap<String, IntList> mWords = new TreeMap<>();
+
+        private int mRemoved;
+
+        Store() {
+            super();
+        }
+
+        private static IntList getList(final Map<String, IntList> map, final String key) {
+            IntList list = map.get(key);
+
+            if (list == null) {
+                list = new IntList();
+                map.put(key, list);
+            }
+
+            return list;
+        }
+
+        /**
+         * Adds a track to the index.
+         *
+         * @param music The track to add.
+         */
+        void add(final Music music) {
+            final int document = mDocuments.size();
+
+            mDocuments.add(music);
+            getList(mDirectories, music.getPath()).add(document);
+
+            addField(document, FIELD_TITLE, music.getTitle(), false);
+            addField(document, FIELD_ARTIST, music.getArtist(), true);
+            addField(document, FIELD_ALBUM_ARTIST, music.getAlbumArtist(), true);
+            addField(document, FIELD_ALBUM, music.getAlbum(), true);
+            addField(document, FIELD_COMPOSER, music.getComposer(), true);
+            addField(document, FIELD_GENRE, music.getGenre(), true);
+        }
+
+        /**
+         * Adds the postings of a tag.
+         *
+         * @param document The document ID of the track.
+         * @param field    The tag field.
+         * @param value    The tag value, may be null.
+         * @param isShared Whether the value is shared by many tracks, so its words are kept.
+         */
+        private void addField(final int document, final int field, final String value,
+                final boolean isShared) {
+            if (value != null && !value.isEmpty()) {
+                Collection<String> words = null;
+
+                if (isShared) {
+                    words = mTagWords.get(value);
+                }
+                if (words == null) {
+                    words = tokenize(value);
+                    if (isShared) {
+                        mTagWords.put(value, words);
+                    }
+                }
+
+                final int posting = document << FIELD_BITS | field;
+                for (final String word : words) {
+                    getList(mWords, word).add(posting);
+                }
+            }
+        }
+
+        /**
+         * Rebuilds the store without the removed tracks, once they are the majority.
+         */
+        void compact() {
+            if (mRemoved > mDocuments.size() - mRemoved) {
+                final List<Music> documents = new ArrayList<>(mDocuments);
+
+                mDirectories.clear();
+                mDocuments.clear();
+                mWords.clear();
+                mRemoved = 0;
+                for (final Music music : documents) {
+                    if (music != null) {
+                        add(music);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Counts the tracks of directories, subdirectories included.
+         *
+         * @param paths The directory paths.
+         * @return The number of tracks of each directory, by directory path.
+         */
+        Map<String, Long> getSongCounts(final Collection<String> paths) {
+            final Map<String, Long> songCounts = new HashMap<>(paths.size());
+
+            for (final String path : paths) {
+                final IntList documents = mDirectories.get(path);
+                long songs = documents == null ? 0L : (long) documents.size();
+
+                for (final IntList subdirectory :
+                        mDirectories.subMap(path + '/', true, path + '0', false).values()) {
+                    songs += (long) subdirectory.size();
+                }
+                songCounts.put(path, Long.valueOf(songs));
+            }
+
+            return songCounts;
+        }
+
+        /**
+         * Retrieves the subdirectories of a directory holding tracks, or whose own
+         * subdirectories do.
+         *
+         * @param path The directory path, an empty string for the root directory.
+         * @return The subdirectory paths.
+         */
+        Collection<String> getSubdirectories(final String path) {
+            final Collection<String> subdirectories = new HashSet<>();
+            final String prefix;
+            final Collection<String> descendants;
+
+            if (path.isEmpty()) {
+                prefix = path;
+                descendants = mDirectories.keySet();
+            } else {
+                prefix = path + '/';
+                descendants = mDirectories.subMap(prefix, true, path + '0', false).keySet();
+            }
+
+            for (final String descendant : descendants) {
+                if (descendant.length() > prefix.length()) {
+                    final int index = descendant.indexOf('/', prefix.length());
+
+                    subdirectories.add(index == -1 ? descendant :
+                            descendant.substring(0, index));
+                }
+            }
+
+            return subdirectories;
+        }
+
+        /**
+         * Removes tracks from the store.
+         *
+         * @param documents The document IDs of the tracks, may be null.
+         */
+        private void remove(final IntList documents) {
+            if (documents != null) {
+                for (int i = 0; i < documents.size(); i++) {
+                    if (mDocuments.set(documents.get(i), null) != null) {
+                        mRemoved++;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Removes the tracks of a directory and its subdirectories.
+         *
+         * @param path The directory path.
+         */
+        void removeDirectory(final String path) {
+            final Collection<IntList> removed = new ArrayList<>();
+
+            removed.add(mDirectories.remove(path));
+            /** '0' follows '/', this is every subdirectory. */
+            final Map<String, IntList> subdirectories =
+                    mDirectories.subMap(path + '/', true, path + '0', false);
+            removed.addAll(subdirectories.values());
+            subdirectories.clear();
+
+            for (final IntList documents : removed) {
+                remove(documents);
+            }
+        }
+
+        /**
+         * Removes the tracks of a directory, but not of its subdirectories.
+         *
+         * @param path The directory path, an empty string for the root directory.
+         */
+        void removeFiles(final String path) {
+            remove(mDirectories.remove(path));
+        }
+
+        /**
+         * Searches the store.
+         *
+         * @param terms The folded words to search.
+         * @param limit The maximum number of results.
+         * @return The matching tracks, best match first.
+         */
+        List<Music> search(final Collection<String> terms, final int limit) {
+            final int size = mDocuments.size();
+            final int[] matched = new int[size];
+            final int[] scores = new int[size];
+            final int[] termScores = new int[size];
+            IntList touched = new IntList();
+            int termCount = 0;
+
+            for (final String term : terms) {
+                final IntList termTouched = new IntList();
+
+                for (final Map.Entry<String, IntList> entry :
+                        mWords.subMap(term, true, term + Character.MAX_VALUE, false).entrySet()) {
+                    final int multiplier = term.equals(entry.getKey()) ? 2 : 1;
+                    final IntList postings = entry.getValue();
+
+                    for (int i = 0; i < postings.size(); i++) {
+                        final int posting = postings.get(i);
+                        final int document = posting >>> FIELD_BITS;
+
+                        if (matched[document] == termCount) {
+                            final int score = FIELD_WEIGHTS[posting & FIELD_MASK] * multiplier;
+
+                            if (termScores[document] == 0) {
+                                termTouched.add(document);
+                            }
+                            termScores[document] = Math.max(termScores[document], score);
+                        }
+                    }
+                }
+
+                for (int i = 0; i < termTouched.size(); i++) {
+                    final int document = termTouched.get(i);
+
+                    scores[document] += termScores[document];
+                    termScores[document] = 0;
+                    matched[document]++;
+                }
+                touched = termTouched;
+                termCount++;
+            }
+
+            final List<Integer> documents = new ArrayList<>(touched.size());
+            for (int i = 0; i < touched.size(); i++) {
+                final int document = touched.get(i);
+
+                if (mDocuments.get(document) != null) {
+                    documents.add(Integer.valueOf(document));
+                }
+            }
+
+            /** Best score first, then in database order. */
+            Collections.sort(documents, new Comparator<Integer>() {
+                @Override
+                public int compare(final Integer lhs, final Integer rhs) {
+                    int result = Integer.compare(scores[rhs.intValue()], scores[lhs.intValue()]);
+
+                    if (result == 0) {
+                        result = lhs.compareTo(rhs);
+                    }
+
+                    return result;
+                }
+            });
+
+            final int count = Math.min(limit, documents.size());
+            final List<Music> result = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                result.add(mDocuments.get(documents.get(i).intValue()));
+            }
+
+            return result;
+        }
+
+        /**
+         * Retrieves the number of indexed tracks.
+         *
+         * @return The number of tracks, without the removed tracks.
+         */
+        int size() {
+            return mDocuments.size() - mRemoved;
+        }
+
+        @Override
+        public String toString() {
+            return "Store{" +
+                    "documents=" + size() +
+                    ", removed=" + mRemoved +
+                    ", words=" + mWords.size() +
+                    '}';
+        }
+    }
+}
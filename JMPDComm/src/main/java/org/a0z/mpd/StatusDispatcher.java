@@ -0,0 +1,390 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd;
+
+import org.a0z.mpd.event.StatusChangeListener;
+import org.a0z.mpd.event.TrackPositionListener;
+
+import java.util.concurrent.Executor;
+
+/**
+ * This class dispatches the events found by the {@link MPDStatusMonitor} to its listeners. With
+ * an {@link Executor}, the listeners are called on the executor, so slow listeners do not delay
+ * the monitor. Events posted while a dispatch is pending are coalesced: each kind of event is
+ * dispatched once, with the previous value from the first event and the current value from the
+ * last one. Without an executor, the listeners are called on the posting thread. The statuses
+ * posted are handed to the listeners as is, they must not be changed once posted.
+ */
+final class StatusDispatcher implements Runnable {
+
+    private static final int CONNECTION_STATE = 1;
+
+    private static final int LIBRARY_STATE = 1 << 1;
+
+    private static final int PLAYLIST = 1 << 2;
+
+    private static final int RANDOM = 1 << 3;
+
+    private static final int REPEAT = 1 << 4;
+
+    private static final int STATE = 1 << 5;
+
+    private static final int STICKER = 1 << 6;
+
+    private static final String TAG = "StatusDispatcher";
+
+    private static final int TRACK = 1 << 7;
+
+    private static final int TRACK_POSITION = 1 << 8;
+
+    private static final int VOLUME = 1 << 9;
+
+    /** The events, in the order they are dispatched. */
+    private static final int[] DISPATCH_ORDER = {CONNECTION_STATE, PLAYLIST, TRACK,
+            TRACK_POSITION, STATE, VOLUME, REPEAT, RANDOM, LIBRARY_STATE, STICKER};
+
+    /** The executor to call the listeners on, null to call them on the posting thread. */
+    private final Executor mExecutor;
+
+    private final Iterable<StatusChangeListener> mStatusChangeListeners;
+
+    private final Iterable<TrackPositionListener> mTrackPositionListeners;
+
+    /** The events waiting to be dispatched. */
+    private Events mPending = new Events();
+
+    /** Whether a dispatch is running or waiting to run. */
+    private boolean mScheduled;
+
+    StatusDispatcher(final Executor executor,
+            final Iterable<StatusChangeListener> statusChangeListeners,
+            final Iterable<TrackPositionListener> trackPositionListeners) {
+        super();
+
+        mExecutor = executor;
+        mStatusChangeListeners = statusChangeListeners;
+        mTrackPositionListeners = trackPositionListeners;
+    }
+
+    /**
+     * Calls a status change listener for one event.
+     *
+     * @param listener The listener to call.
+     * @param event    The event.
+     * @param events   The events holding the event values.
+     */
+    private static void notify(final StatusChangeListener listener, final int event,
+            final Events events) {
+        final MPDStatus status = events.mStatus;
+
+        switch (event) {
+            case CONNECTION_STATE:
+                listener.connectionStateChanged(events.mConnected, events.mConnectionLost);
+                break;
+            case PLAYLIST:
+                listener.playlistChanged(status, events.mOldPlaylistVersion);
+                break;
+            case TRACK:
+                listener.trackChanged(status, events.mOldTrack);
+                break;
+            case STATE:
+                listener.stateChanged(status, events.mOldState);
+                break;
+            case VOLUME:
+                listener.volumeChanged(status, events.mOldVolume);
+                break;
+            case REPEAT:
+                listener.repeatChanged(events.mRepeat);
+                break;
+            case RANDOM:
+                listener.randomChanged(events.mRandom);
+                break;
+            case LIBRARY_STATE:
+                listener.libraryStateChanged(events.mUpdating, events.mDbChanged);
+                break;
+            case STICKER:
+                listener.stickerChanged(status);
+                break;
+            default:
+                break;
+        }
+    }
+
+    void connectionStateChanged(final boolean connected, final boolean connectionLost) {
+        final boolean schedule;
+
+        synchronized (this) {
+            mPending.mConnected = connected;
+            mPending.mConnectionLost |= connectionLost;
+            schedule = post(CONNECTION_STATE);
+        }
+
+        dispatch(schedule);
+    }
+
+    /**
+     * Calls the listeners for the events, in the order the events are found by the monitor,
+     * logging rather than propagating listener failures so a failing listener does not stop the
+     * dispatch.
+     *
+     * @param events The events to dispatch.
+     */
+    private void dispatch(final Events events) {
+        for (final int event : DISPATCH_ORDER) {
+            if (!events.isPending(event)) {
+                continue;
+            }
+
+            if (event == TRACK_POSITION) {
+                for (final TrackPositionListener listener : mTrackPositionListeners) {
+                    try {
+                        listener.trackPositionChanged(events.mStatus);
+                    } catch (final RuntimeException e) {
+                        Log.error(TAG, "Track position listener failed.", e);
+                    }
+                }
+            } else {
+                for (final StatusChangeListener listener : mStatusChangeListeners) {
+                    try {
+                        notify(listener, event, events);
+                    } catch (final RuntimeException e) {
+                        Log.error(TAG, "Status change listener failed.", e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts a dispatch, if one needs to be started.
+     *
+     * @param schedule True if a dispatch needs to be started.
+     */
+    private void dispatch(final boolean schedule) {
+        if (schedule) {
+            if (mExecutor == null) {
+                run();
+            } else {
+                try {
+                    mExecutor.execute(this);
+                } catch (final RuntimeException e) {
+                    /**
+                     * The dispatch will not run, clear the flag so the next event schedules a new
+                     * one, the pending events are kept for it.
+                     */
+                    synchronized (this) {
+                        mScheduled = false;
+                    }
+                    Log.error(TAG, "Failed to schedule the status dispatch.", e);
+                }
+            }
+        }
+    }
+
+    void libraryStateChanged(final boolean updating, final boolean dbChanged) {
+        final boolean schedule;
+
+        synchronized (this) {
+            mPending.mUpdating = updating;
+            mPending.mDbChanged |= dbChanged;
+            schedule = post(LIBRARY_STATE);
+        }
+
+        dispatch(schedule);
+    }
+
+    void playlistChanged(final MPDStatus mpdStatus, final int oldPlaylistVersion) {
+        final boolean schedule;
+
+        synchronized (this) {
+            if (!mPending.isPending(PLAYLIST)) {
+                mPending.mOldPlaylistVersion = oldPlaylistVersion;
+            }
+            mPending.mStatus = mpdStatus;
+            schedule = post(PLAYLIST);
+        }
+
+        dispatch(schedule);
+    }
+
+    /**
+     * Adds an event to the pending events. This must be called with the dispatcher lock held.
+     *
+     * @param event The event.
+     * @return True if a dispatch needs to be started, false if one is already pending.
+     */
+    private boolean post(final int event) {
+        final boolean schedule = !mScheduled;
+
+        mPending.mEvents |= event;
+        mScheduled = true;
+
+        return schedule;
+    }
+
+    void randomChanged(final boolean random) {
+        final boolean schedule;
+
+        synchronized (this) {
+            mPending.mRandom = random;
+            schedule = post(RANDOM);
+        }
+
+        dispatch(schedule);
+    }
+
+    void repeatChanged(final boolean repeating) {
+        final boolean schedule;
+
+        synchronized (this) {
+            mPending.mRepeat = repeating;
+            schedule = post(REPEAT);
+        }
+
+        dispatch(schedule);
+    }
+
+    /**
+     * Dispatches the pending events, until no event is pending.
+     */
+    @Override
+    public void run() {
+        Events events;
+
+        do {
+            synchronized (this) {
+                events = mPending;
+                mPending = new Events();
+                if (events.mEvents == 0) {
+                    mScheduled = false;
+                }
+            }
+
+            if (events.mEvents != 0) {
+                dispatch(events);
+            }
+        } while (events.mEvents != 0);
+    }
+
+    void stateChanged(final MPDStatus mpdStatus, final int oldState) {
+        final boolean schedule;
+
+        synchronized (this) {
+            if (!mPending.isPending(STATE)) {
+                mPending.mOldState = oldState;
+            }
+            mPending.mStatus = mpdStatus;
+            schedule = post(STATE);
+        }
+
+        dispatch(schedule);
+    }
+
+    void stickerChanged(final MPDStatus mpdStatus) {
+        final boolean schedule;
+
+        synchronized (this) {
+            mPending.mStatus = mpdStatus;
+            schedule = post(STICKER);
+        }
+
+        dispatch(schedule);
+    }
+
+    void trackChanged(final MPDStatus mpdStatus, final int oldTrack) {
+        final boolean schedule;
+
+        synchronized (this) {
+            if (!mPending.isPending(TRACK)) {
+                mPending.mOldTrack = oldTrack;
+            }
+            mPending.mStatus = mpdStatus;
+            schedule = post(TRACK);
+        }
+
+        dispatch(schedule);
+    }
+
+    void trackPositionChanged(final MPDStatus status) {
+        final boolean schedule;
+
+        synchronized (this) {
+            mPending.mStatus = status;
+            schedule = post(TRACK_POSITION);
+        }
+
+        dispatch(schedule);
+    }
+
+    void volumeChanged(final MPDStatus mpdStatus, final int oldVolume) {
+        final boolean schedule;
+
+        synchronized (this) {
+            if (!mPending.isPending(VOLUME)) {
+                mPending.mOldVolume = oldVolume;
+            }
+            mPending.mStatus = mpdStatus;
+            schedule = post(VOLUME);
+        }
+
+        dispatch(schedule);
+    }
+
+    /** This class holds the coalesced events waiting for one dispatch. */
+    private static final class Events {
+
+        private boolean mConnected;
+
+        private boolean mConnectionLost;
+
+        private boolean mDbChanged;
+
+        /** The pending events, as a bit set. */
+        private int mEvents;
+
+        private int mOldPlaylistVersion;
+
+        private int mOldState;
+
+        private int mOldTrack;
+
+        private int mOldVolume;
+
+        private boolean mRandom;
+
+        private boolean mRepeat;
+
+        private MPDStatus mStatus;
+
+        private boolean mUpdating;
+
+        boolean isPending(final int event) {
+            return (mEvents & event) != 0;
+        }
+    }
+}
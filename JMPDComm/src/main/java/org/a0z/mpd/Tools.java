@@ -41,6 +41,15 @@ public final class Tools {
 
     public static final int VALUE = 1;
 
+    /** The number of cached response keys, this must be a power of two. */
+    private static final int RESPONSE_KEY_CACHE_SIZE = 256;
+
+    /**
+     * The response key cache. This is not synchronized, {@code String}s are immutable and a lost
+     * update only costs an allocation.
+     */
+    private static final String[] RESPONSE_KEYS = new String[RESPONSE_KEY_CACHE_SIZE];
+
     private Tools() {
         super();
     }
@@ -87,6 +96,33 @@ public final class Tools {
         return result;
     }
 
+    /**
+     * Retrieves the key of a media server response line. The media server uses a small set of
+     * keys, so they are cached rather than allocated for every line, a colliding key simply
+     * replaces the cached one.
+     *
+     * @param line           The media server response line.
+     * @param delimiterIndex The index of the key/value delimiter in the {@code line}.
+     * @return The key of the response line.
+     */
+    public static String getResponseKey(final String line, final int delimiterIndex) {
+        int hash = 0;
+
+        for (int i = 0; i < delimiterIndex; i++) {
+            hash = 31 * hash + line.charAt(i);
+        }
+
+        final int index = (hash ^ hash >>> 16) & RESPONSE_KEY_CACHE_SIZE - 1;
+        String key = RESPONSE_KEYS[index];
+
+        if (key == null || key.length() != delimiterIndex || !line.startsWith(key)) {
+            key = line.substring(0, delimiterIndex);
+            RESPONSE_KEYS[index] = key;
+        }
+
+        return key;
+    }
+
     /**
      * Gets the hash value from the specified string.
      *
@@ -260,7 +296,7 @@ public final class Tools {
                     line);
         }
 
-        result[0] = line.substring(0, delimiterIndex);
+        result[0] = getResponseKey(line, delimiterIndex);
 
         /** Skip ': ' */
         result[1] = line.substring(delimiterIndex + 2);
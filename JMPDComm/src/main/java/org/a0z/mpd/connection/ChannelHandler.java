@@ -0,0 +1,389 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd.connection;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class handles the non-blocking socket channel of one {@link MPDConnectionNioSocket}. The
+ * channel is only read and written from the {@link ChannelMultiplexer} I/O thread, response lines
+ * are decoded there and handed to the command caller through a queue.
+ */
+final class ChannelHandler {
+
+    /** The charset of the MPD protocol. */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /** Line queue size which pauses reading from the socket until the caller catches up. */
+    private static final int HIGH_WATER_MARK = 8192;
+
+    /** Line queue size which resumes reading from the socket. */
+    private static final int LOW_WATER_MARK = 1024;
+
+    /** Size of the socket read buffer. */
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    /** Identity marker queued after the last line once the channel has been closed. */
+    @SuppressWarnings("RedundantStringConstructorCall")
+    private static final String END_OF_STREAM = new String("");
+
+    /** The socket channel handled by this object. */
+    private final SocketChannel mChannel;
+
+    /** The number of lines in {@link #mLines}, tracked for flow control. */
+    private final AtomicInteger mLineCount = new AtomicInteger();
+
+    /** Lines decoded from the channel, waiting for the command caller. */
+    private final BlockingQueue<String> mLines = new LinkedBlockingQueue<>();
+
+    /** The multiplexer running the I/O for this channel. */
+    private final ChannelMultiplexer mMultiplexer;
+
+    /** Encoded commands waiting to be written to the channel. */
+    private final Queue<ByteBuffer> mOutbound = new ConcurrentLinkedQueue<>();
+
+    /** The socket read buffer, only used from the I/O thread. */
+    private final ByteBuffer mReadBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+
+    /**
+     * True if reading has been paused because the caller is not consuming lines. This is only
+     * cleared by compare and set, by whichever of the I/O thread or the caller sees the line
+     * count drop to the low water mark first.
+     */
+    private final AtomicBoolean mReadPaused = new AtomicBoolean();
+
+    /** The exception which closed the channel, null if the channel was closed normally. */
+    private volatile IOException mCloseCause = null;
+
+    /** The selection key of the channel, only used from the I/O thread. */
+    private SelectionKey mKey = null;
+
+    /** The bytes of the line currently being received, only used from the I/O thread. */
+    private byte[] mLineBuffer = new byte[256];
+
+    /** The length of the line currently being received, only used from the I/O thread. */
+    private int mLineLength = 0;
+
+    private ChannelHandler(final ChannelMultiplexer multiplexer, final SocketChannel channel) {
+        super();
+
+        mMultiplexer = multiplexer;
+        mChannel = channel;
+    }
+
+    /**
+     * Opens a non-blocking connection to the media server.
+     *
+     * @param multiplexer The multiplexer which will run the I/O for the channel.
+     * @param address     The host/port pair of the media server.
+     * @return The handler of the channel being connected.
+     * @throws IOException Thrown if the channel could not be opened.
+     */
+    static ChannelHandler open(final ChannelMultiplexer multiplexer,
+            final InetSocketAddress address) throws IOException {
+        final SocketChannel channel = SocketChannel.open();
+        final ChannelHandler handler = new ChannelHandler(multiplexer, channel);
+
+        try {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            final boolean connected = channel.connect(address);
+
+            multiplexer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    handler.register(connected);
+                }
+            });
+        } catch (final IOException e) {
+            channel.close();
+            throw e;
+        }
+
+        return handler;
+    }
+
+    /**
+     * Closes the channel, waking up any caller waiting for a line.
+     *
+     * @param cause The exception to report to callers, null if closed normally.
+     */
+    void close(final IOException cause) {
+        if (mCloseCause == null) {
+            mCloseCause = cause;
+        }
+
+        try {
+            mChannel.close();
+        } catch (final IOException ignored) {
+        }
+
+        mLines.add(END_OF_STREAM);
+    }
+
+    /**
+     * Appends the bytes of a received line, splitting complete lines out to the line queue.
+     *
+     * @param buffer The buffer, ready to be read, holding the bytes received.
+     */
+    private void decode(final ByteBuffer buffer) {
+        while (buffer.hasRemaining()) {
+            final byte b = buffer.get();
+
+            if (b == '\n') {
+                mLines.add(new String(mLineBuffer, 0, mLineLength, CHARSET));
+                mLineCount.incrementAndGet();
+                mLineLength = 0;
+            } else {
+                if (mLineLength == mLineBuffer.length) {
+                    mLineBuffer = Arrays.copyOf(mLineBuffer, mLineLength << 1);
+                }
+                mLineBuffer[mLineLength] = b;
+                mLineLength++;
+            }
+        }
+    }
+
+    SocketChannel getChannel() {
+        return mChannel;
+    }
+
+    Socket getSocket() {
+        return mChannel.socket();
+    }
+
+    /**
+     * Handles the readiness of the channel. This is called from the I/O thread.
+     *
+     * @param key The selection key of the channel.
+     */
+    void handle(final SelectionKey key) {
+        try {
+            if (key.isConnectable() && mChannel.finishConnect()) {
+                updateInterest();
+            }
+
+            if (key.isValid() && key.isReadable()) {
+                read();
+            }
+
+            if (key.isValid() && key.isWritable()) {
+                write();
+            }
+        } catch (final CancelledKeyException ignored) {
+            close(null);
+        } catch (final IOException e) {
+            close(e);
+        }
+    }
+
+    boolean isOpen() {
+        return mChannel.isOpen();
+    }
+
+    /**
+     * Reads from the channel until it would block, or until the lines waiting to be consumed
+     * reach the high water mark. This is called from the I/O thread.
+     *
+     * @throws IOException Thrown upon a communication error with the server.
+     */
+    private void read() throws IOException {
+        int count;
+
+        /** Stop at the high water mark, the rest stays in the socket buffer until resumed. */
+        do {
+            count = mChannel.read(mReadBuffer);
+            mReadBuffer.flip();
+            decode(mReadBuffer);
+            mReadBuffer.clear();
+        } while (count > 0 && mLineCount.get() < HIGH_WATER_MARK);
+
+        if (count == -1) {
+            close(null);
+        } else if (mLineCount.get() >= HIGH_WATER_MARK) {
+            mReadPaused.set(true);
+            updateInterest();
+
+            /**
+             * The caller may have consumed the lines down to the low water mark before seeing
+             * the pause, resume reading here then.
+             */
+            if (mLineCount.get() <= LOW_WATER_MARK && mReadPaused.compareAndSet(true, false)) {
+                updateInterest();
+            }
+        }
+    }
+
+    /**
+     * Waits for the next line of the media server response.
+     *
+     * @param timeout The maximum time to wait, in milliseconds, 0 to wait indefinitely.
+     * @return The line read, without the line terminator, null if the end of the stream has been
+     * reached.
+     * @throws IOException Thrown if the timeout elapsed or the channel was closed by an error.
+     */
+    String readLine(final int timeout) throws IOException {
+        final String line;
+
+        try {
+            if (timeout == 0) {
+                line = mLines.take();
+            } else {
+                line = mLines.poll((long) timeout, TimeUnit.MILLISECONDS);
+            }
+        } catch (final InterruptedException e) {
+            throw new IOException(e);
+        }
+
+        if (line == null) {
+            throw new SocketTimeoutException("Read timed out after " + timeout + "ms.");
+        }
+
+        //noinspection StringEquality
+        if (line == END_OF_STREAM) {
+            /** Leave the marker for any other caller. */
+            mLines.add(END_OF_STREAM);
+
+            if (mCloseCause != null) {
+                throw mCloseCause;
+            }
+
+            return null;
+        }
+
+        if (mLineCount.decrementAndGet() <= LOW_WATER_MARK &&
+                mReadPaused.compareAndSet(true, false)) {
+            mMultiplexer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    updateInterest();
+                }
+            });
+        }
+
+        return line;
+    }
+
+    /**
+     * Registers the channel with the multiplexer. This is called from the I/O thread.
+     *
+     * @param connected True if the channel connected immediately.
+     */
+    private void register(final boolean connected) {
+        try {
+            if (connected) {
+                mKey = mMultiplexer.register(this, SelectionKey.OP_READ);
+                updateInterest();
+            } else {
+                mKey = mMultiplexer.register(this, SelectionKey.OP_CONNECT);
+            }
+        } catch (final IOException e) {
+            close(e);
+        }
+    }
+
+    /**
+     * Sets the interest of the channel from the current state. This is called from the I/O
+     * thread.
+     */
+    private void updateInterest() {
+        if (mKey != null && mKey.isValid() && mChannel.isConnected()) {
+            int interest = 0;
+
+            if (!mReadPaused.get()) {
+                interest |= SelectionKey.OP_READ;
+            }
+
+            if (!mOutbound.isEmpty()) {
+                interest |= SelectionKey.OP_WRITE;
+            }
+
+            mKey.interestOps(interest);
+        }
+    }
+
+    /**
+     * Writes the queued commands to the channel until it would block. This is called from the
+     * I/O thread.
+     *
+     * @throws IOException Thrown upon a communication error with the server.
+     */
+    private void write() throws IOException {
+        for (ByteBuffer buffer = mOutbound.peek(); buffer != null; buffer = mOutbound.peek()) {
+            mChannel.write(buffer);
+
+            if (buffer.hasRemaining()) {
+                break;
+            }
+
+            mOutbound.poll();
+        }
+
+        updateInterest();
+    }
+
+    /**
+     * Queues a command for the I/O thread to write to the channel.
+     *
+     * @param command The command string to send to the media server.
+     * @throws IOException Thrown if the channel has been closed.
+     */
+    void write(final String command) throws IOException {
+        if (!mChannel.isOpen()) {
+            if (mCloseCause == null) {
+                throw new EOFException("Connection closed.");
+            }
+            throw mCloseCause;
+        }
+
+        mOutbound.add(CHARSET.encode(command));
+        mMultiplexer.execute(new Runnable() {
+            @Override
+            public void run() {
+                updateInterest();
+            }
+        });
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd.connection;
+
+import org.a0z.mpd.Log;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * This class runs a single I/O thread which multiplexes the socket channels of any number of
+ * {@link MPDConnectionNioSocket} connections with a {@link Selector}. All socket reads and writes
+ * are done on this thread, command callers only wait for the response lines to be decoded.
+ */
+public final class ChannelMultiplexer implements Runnable {
+
+    /** The debug flag to enable or disable debug logging output. */
+    private static final boolean DEBUG = false;
+
+    private static final String TAG = "ChannelMultiplexer";
+
+    /** The multiplexer shared by connections which were not given one. */
+    private static ChannelMultiplexer sDefault = null;
+
+    /** The selector used to wait for socket channel readiness. */
+    private final Selector mSelector;
+
+    /** Tasks to run on the I/O thread prior to the next select. */
+    private final Queue<Runnable> mTasks = new ConcurrentLinkedQueue<>();
+
+    /** The I/O thread. */
+    private final Thread mThread;
+
+    /** Set to true to stop the I/O thread at the next opportunity. */
+    private volatile boolean mShutdown = false;
+
+    /**
+     * Creates and starts a new multiplexer I/O thread.
+     *
+     * @param name The name of the I/O thread.
+     * @throws IOException Thrown if the selector could not be opened.
+     */
+    public ChannelMultiplexer(final String name) throws IOException {
+        super();
+
+        mSelector = Selector.open();
+        mThread = new Thread(this, name);
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+    /**
+     * Retrieves the multiplexer shared by all connections which were not given one, starting it
+     * if necessary.
+     *
+     * @return The shared multiplexer.
+     * @throws IOException Thrown if the selector could not be opened.
+     */
+    public static synchronized ChannelMultiplexer getDefault() throws IOException {
+        if (sDefault == null || sDefault.mShutdown) {
+            sDefault = new ChannelMultiplexer(TAG);
+        }
+
+        return sDefault;
+    }
+
+    /**
+     * Queues a task to be run on the I/O thread and wakes the I/O thread up.
+     *
+     * @param task The task to run.
+     */
+    void execute(final Runnable task) {
+        mTasks.add(task);
+        mSelector.wakeup();
+    }
+
+    /**
+     * Checks if the current thread is the I/O thread of this multiplexer.
+     *
+     * @return True if called from the I/O thread, false otherwise.
+     */
+    boolean isIOThread() {
+        return Thread.currentThread() == mThread;
+    }
+
+    /**
+     * Registers a channel handler with this multiplexer. This must be called from the I/O thread.
+     *
+     * @param handler  The handler of the channel to register.
+     * @param interest The initial interest set of the channel.
+     * @return The selection key of the registered channel.
+     * @throws IOException Thrown if the channel is closed.
+     */
+    SelectionKey register(final ChannelHandler handler, final int interest) throws IOException {
+        return handler.getChannel().register(mSelector, interest, handler);
+    }
+
+    /** The I/O thread loop. */
+    @Override
+    public void run() {
+        while (!mShutdown) {
+            try {
+                runTasks();
+                mSelector.select();
+
+                final Iterator<SelectionKey> iterator = mSelector.selectedKeys().iterator();
+                while (iterator.hasNext()) {
+                    final SelectionKey key = iterator.next();
+                    iterator.remove();
+
+                    ((ChannelHandler) key.attachment()).handle(key);
+                }
+            } catch (final ClosedSelectorException ignored) {
+                break;
+            } catch (final IOException e) {
+                Log.error(TAG, "Failed to select.", e);
+            } catch (final RuntimeException e) {
+                /** Never let one misbehaving channel stop the I/O for the others. */
+                Log.error(TAG, "Unexpected exception in the I/O thread.", e);
+            }
+        }
+
+        if (DEBUG) {
+            Log.debug(TAG, "I/O thread stopped.");
+        }
+
+        for (final SelectionKey key : mSelector.keys()) {
+            ((ChannelHandler) key.attachment()).close(new IOException("Multiplexer shut down."));
+        }
+
+        try {
+            mSelector.close();
+        } catch (final IOException e) {
+            Log.error(TAG, "Failed to close the selector.", e);
+        }
+    }
+
+    /** Runs all tasks queued for the I/O thread. */
+    private void runTasks() {
+        for (Runnable task = mTasks.poll(); task != null; task = mTasks.poll()) {
+            task.run();
+        }
+    }
+
+    /** Stops the I/O thread, closing every channel still registered. */
+    public void shutdown() {
+        mShutdown = true;
+        mSelector.wakeup();
+    }
+}
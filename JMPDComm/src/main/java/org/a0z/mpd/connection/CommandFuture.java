@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.a0z.mpd.connection;
+
+import org.a0z.mpd.MPDCommand;
+import org.a0z.mpd.exception.MPDException;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class is the pending result of a command sent with
+ * {@link MPDConnection#sendCommandAsync(MPDCommand)}. If the result is requested before the
+ * command has been sent, the pipeline holding the command is sent on request. This is also the
+ * shared result of a read-only command processed on behalf of identical concurrent commands.
+ */
+final class CommandFuture implements Future<List<String>> {
+
+    /** The command to be processed. */
+    private final MPDCommand mCommand;
+
+    /** The connection the command was submitted to. */
+    private final MPDConnection mConnection;
+
+    /** Released once the command has been processed. */
+    private final CountDownLatch mDone = new CountDownLatch(1);
+
+    /**
+     * Whether the command waits in a pipeline nobody has asked to send yet, cleared once the
+     * pipeline is requested, so it is only requested once.
+     */
+    private final AtomicBoolean mUnsent = new AtomicBoolean();
+
+    /** The exception resulting from the command, if any. */
+    private volatile Exception mException;
+
+    /** The response to the command, if successful. */
+    private volatile List<String> mResult;
+
+    CommandFuture(final MPDConnection connection, final MPDCommand command) {
+        super();
+
+        mConnection = connection;
+        mCommand = command;
+    }
+
+    /**
+     * Waits for the command to be processed by another thread, without sending the pipeline.
+     *
+     * @return The response to the command.
+     * @throws InterruptedException Thrown if interrupted while waiting.
+     * @throws ExecutionException   Thrown if processing resulted in an exception, the exception
+     *                              is the cause.
+     */
+    List<String> await() throws InterruptedException, ExecutionException {
+        mDone.await();
+
+        return getResult();
+    }
+
+    /**
+     * Pipelined commands may already be in transit, they cannot be cancelled.
+     *
+     * @param mayInterruptIfRunning Ignored.
+     * @return Always false.
+     */
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    @Override
+    public List<String> get() throws InterruptedException, ExecutionException {
+        if (mUnsent.compareAndSet(true, false)) {
+            mConnection.executePipeline();
+        }
+
+        mDone.await();
+
+        return getResult();
+    }
+
+    @Override
+    public List<String> get(final long timeout, final TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        if (mUnsent.compareAndSet(true, false)) {
+            mConnection.executePipeline();
+        }
+
+        if (!mDone.await(timeout, unit)) {
+            throw new TimeoutException("Timed out waiting for the response to: " + mCommand);
+        }
+
+        return getResult();
+    }
+
+    MPDCommand getCommand() {
+        return mCommand;
+    }
+
+    /**
+     * Retrieves the result of the processed command.
+     *
+     * @return The response to the command.
+     * @throws ExecutionException Thrown if processing resulted in an exception, the exception is
+     *                            the cause.
+     */
+    private List<String> getResult() throws ExecutionException {
+        if (mException != null) {
+            throw new ExecutionException(mException);
+        }
+
+        return mResult;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public boolean isDone() {
+        return mDone.getCount() == 0L;
+    }
+
+    void setException(final IOException exception) {
+        mException = exception;
+        mDone.countDown();
+    }
+
+    void setException(final MPDException exception) {
+        mException = exception;
+        mDone.countDown();
+    }
+
+    void setResult(final List<String> result) {
+        mResult = Collections.unmodifiableList(result);
+        mDone.countDown();
+    }
+
+    /**
+     * Marks the command as sent, or about to be, so requesting its result does not request the
+     * pipeline.
+     */
+    void setSent() {
+        mUnsent.set(false);
+    }
+
+    /**
+     * Marks the command as waiting in a pipeline which is only sent once a result is requested.
+     */
+    void setUnsent() {
+        mUnsent.set(true);
+    }
+}
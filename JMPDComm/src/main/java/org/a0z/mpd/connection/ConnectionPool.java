@@ -0,0 +1,436 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd.connection;
+
+import org.a0z.mpd.Log;
+import org.a0z.mpd.MPDCommand;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class pools the sockets of a {@link MPDConnectionMultiSocket}. A socket is leased to a
+ * command processing thread for the duration of one command, or one pipeline, then returned to
+ * the pool, so sockets outlive the threads processing the commands. The pool keeps a minimum
+ * number of connections open, warmed up upon connection, and closes the connections idle for
+ * longer than the idle timeout beyond this minimum. A connection idle for a while is probed with
+ * a {@code ping} before it is leased again. A lease waits for a connection to be returned rather
+ * than exceed the maximum pool size. Idle connections are evicted upon lease and return, the pool
+ * runs no thread of its own.
+ */
+public final class ConnectionPool {
+
+    /** The debug flag to enable or disable debug logging output. */
+    private static final boolean DEBUG = false;
+
+    /** The idle time after which a connection is probed before being leased again. */
+    private static final long PROBE_INTERVAL = TimeUnit.SECONDS.toNanos(5L);
+
+    private static final String TAG = "ConnectionPool";
+
+    /** The idle connections, the most recently used first. */
+    private final Deque<Transport> mIdle = new ArrayDeque<>();
+
+    /** The idle time after which a connection is evicted, in nanoseconds. */
+    private final long mIdleTimeout;
+
+    /** The maximum number of connections open at one time. */
+    private final int mMaxSize;
+
+    /** The number of connections kept open, even if idle. */
+    private final int mMinSize;
+
+    /** The number of connections currently leased. */
+    private int mActiveCount;
+
+    private long mCreatedCount;
+
+    private long mEvictedCount;
+
+    /** Incremented upon {@link #clear()}, connections leased before are closed upon return. */
+    private int mGeneration;
+
+    private long mProbeFailureCount;
+
+    private long mReusedCount;
+
+    /**
+     * The constructor method.
+     *
+     * @param minSize     The number of connections kept open, even if idle.
+     * @param maxSize     The maximum number of connections open at one time.
+     * @param idleTimeout The idle time, in milliseconds, after which a connection is closed.
+     */
+    ConnectionPool(final int minSize, final int maxSize, final long idleTimeout) {
+        super();
+
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size, minimum: " + minSize +
+                    " maximum: " + maxSize);
+        }
+
+        mMinSize = minSize;
+        mMaxSize = maxSize;
+        mIdleTimeout = TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+    }
+
+    /**
+     * Leases a connection. An idle connection is reused if alive, otherwise a new, unconnected,
+     * transport is returned for the caller to connect. If the pool is at its maximum size, this
+     * waits for a connection to be returned.
+     *
+     * @return A leased transport, to be returned with {@link #release(Transport)}.
+     */
+    Transport acquire() {
+        Transport result = null;
+
+        while (result == null) {
+            final Transport transport = lease();
+
+            /** The probe runs outside of the pool lock, a new transport is not connected yet. */
+            if (transport.mSocket == null || transport.isAlive()) {
+                result = transport;
+            } else {
+                discard(transport);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Closes every idle connection, the connections currently leased are closed upon return.
+     */
+    synchronized void clear() {
+        mGeneration++;
+        for (final Transport transport : mIdle) {
+            transport.close();
+        }
+        mIdle.clear();
+    }
+
+    /**
+     * Creates a new, unconnected, transport and leases it.
+     *
+     * @return The new transport.
+     */
+    private synchronized Transport create() {
+        mActiveCount++;
+        mCreatedCount++;
+
+        if (DEBUG) {
+            Log.debug(TAG, "New connection, pool size: " + (mActiveCount + mIdle.size()));
+        }
+
+        return new Transport(mGeneration);
+    }
+
+    /**
+     * Closes a leased connection which failed its probe.
+     *
+     * @param transport The leased transport.
+     */
+    private synchronized void discard(final Transport transport) {
+        transport.close();
+        mActiveCount--;
+        mProbeFailureCount++;
+        notifyAll();
+    }
+
+    /**
+     * Closes the connections idle for longer than the idle timeout, beyond the minimum pool size.
+     * This must be called with the pool lock held.
+     *
+     * @param now The current {@link System#nanoTime()}.
+     */
+    private void evictExpired(final long now) {
+        final Iterator<Transport> iterator = mIdle.descendingIterator();
+
+        while (iterator.hasNext() && mActiveCount + mIdle.size() > mMinSize) {
+            final Transport transport = iterator.next();
+
+            if (now - transport.mLastUsed < mIdleTimeout) {
+                break;
+            }
+
+            transport.close();
+            iterator.remove();
+            mEvictedCount++;
+        }
+    }
+
+    /**
+     * Retrieves the number of connections currently leased.
+     *
+     * @return The number of connections currently leased.
+     */
+    public synchronized int getActiveCount() {
+        return mActiveCount;
+    }
+
+    /**
+     * Retrieves the number of connections created since the pool was created.
+     *
+     * @return The number of connections created.
+     */
+    public synchronized long getCreatedCount() {
+        return mCreatedCount;
+    }
+
+    /**
+     * Retrieves the number of connections closed for being idle for longer than the idle timeout.
+     *
+     * @return The number of connections evicted.
+     */
+    public synchronized long getEvictedCount() {
+        return mEvictedCount;
+    }
+
+    /**
+     * Retrieves the number of idle connections.
+     *
+     * @return The number of idle connections.
+     */
+    public synchronized int getIdleCount() {
+        return mIdle.size();
+    }
+
+    /**
+     * Retrieves the maximum number of connections open at one time.
+     *
+     * @return The maximum pool size.
+     */
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Retrieves the number of connections kept open, even if idle.
+     *
+     * @return The minimum pool size.
+     */
+    public int getMinSize() {
+        return mMinSize;
+    }
+
+    /**
+     * Retrieves the number of idle connections found closed by the media server, or failing the
+     * {@code ping} probe, upon lease.
+     *
+     * @return The number of failed probes.
+     */
+    public synchronized long getProbeFailureCount() {
+        return mProbeFailureCount;
+    }
+
+    /**
+     * Retrieves the number of leases served with an idle connection.
+     *
+     * @return The number of connections reused.
+     */
+    public synchronized long getReusedCount() {
+        return mReusedCount;
+    }
+
+    /**
+     * Retrieves the number of connections missing to reach the minimum pool size.
+     *
+     * @return The number of connections to warm up.
+     */
+    synchronized int getWarmUpCount() {
+        return Math.max(0, mMinSize - mActiveCount - mIdle.size());
+    }
+
+    /**
+     * Leases the most recently used idle connection, or a new transport if none is idle, waiting
+     * for a connection to be returned if the pool is at its maximum size.
+     *
+     * @return The leased transport.
+     */
+    private synchronized Transport lease() {
+        boolean interrupted = false;
+
+        evictExpired(System.nanoTime());
+        while (mIdle.isEmpty() && mActiveCount >= mMaxSize) {
+            try {
+                wait();
+            } catch (final InterruptedException ignored) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        Transport transport = mIdle.pollFirst();
+        if (transport == null) {
+            transport = create();
+        } else {
+            mActiveCount++;
+            mReusedCount++;
+        }
+
+        return transport;
+    }
+
+    /**
+     * Returns a leased connection to the pool. Connections not connected, or leased before the
+     * last {@link #clear()}, are closed.
+     *
+     * @param transport The leased transport.
+     */
+    synchronized void release(final Transport transport) {
+        final long now = System.nanoTime();
+
+        mActiveCount--;
+        if (transport.mGeneration == mGeneration && transport.isConnected()) {
+            transport.mLastUsed = now;
+            mIdle.addFirst(transport);
+        } else {
+            transport.close();
+        }
+        evictExpired(now);
+        notifyAll();
+    }
+
+    /**
+     * Leases a new transport to warm up, if the pool holds less than its minimum size.
+     *
+     * @return A new transport to connect then return, null if the pool is warm.
+     */
+    synchronized Transport reserve() {
+        final Transport transport;
+
+        if (mActiveCount + mIdle.size() < mMinSize) {
+            transport = create();
+        } else {
+            transport = null;
+        }
+
+        return transport;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ConnectionPool{" +
+                "mActiveCount=" + mActiveCount +
+                ", mIdleCount=" + mIdle.size() +
+                ", mMinSize=" + mMinSize +
+                ", mMaxSize=" + mMaxSize +
+                ", mCreatedCount=" + mCreatedCount +
+                ", mReusedCount=" + mReusedCount +
+                ", mEvictedCount=" + mEvictedCount +
+                ", mProbeFailureCount=" + mProbeFailureCount +
+                '}';
+    }
+
+    /**
+     * This class holds the socket and streams of one pooled connection. Its fields are only used
+     * by the thread currently leasing it, or by the pool while it is idle.
+     */
+    static final class Transport {
+
+        /** The pool generation this transport was created in. */
+        private final int mGeneration;
+
+        BufferedReader mInputStream;
+
+        OutputStreamWriter mOutputStream;
+
+        Socket mSocket;
+
+        /** The number of nested leases held by the leasing thread. */
+        int mHolds;
+
+        /** The {@link System#nanoTime()} this transport was last returned to the pool. */
+        private long mLastUsed;
+
+        Transport(final int generation) {
+            super();
+
+            mGeneration = generation;
+        }
+
+        /** Closes the socket, if open, ignoring any error. */
+        void close() {
+            if (mSocket != null) {
+                try {
+                    mSocket.close();
+                } catch (final IOException e) {
+                    if (DEBUG) {
+                        Log.debug(TAG, "Failed to close pooled connection.", e);
+                    }
+                }
+                mSocket = null;
+            }
+        }
+
+        /**
+         * Checks whether the connection is alive, probing it with a {@code ping} if it has been
+         * idle for longer than the probe interval.
+         *
+         * @return True if the connection can be reused, false otherwise.
+         */
+        boolean isAlive() {
+            boolean isAlive = isConnected();
+
+            if (isAlive && System.nanoTime() - mLastUsed >= PROBE_INTERVAL) {
+                try {
+                    mOutputStream.write(MPDCommand.MPD_CMD_PING + MPDCommand.MPD_CMD_NEWLINE);
+                    mOutputStream.flush();
+
+                    final String line = mInputStream.readLine();
+                    isAlive = line != null && line.startsWith(MPDConnection.MPD_RESPONSE_OK);
+                } catch (final IOException e) {
+                    if (DEBUG) {
+                        Log.debug(TAG, "Pooled connection probe failed.", e);
+                    }
+                    isAlive = false;
+                }
+            }
+
+            return isAlive;
+        }
+
+        /**
+         * Checks the socket for an open connection.
+         *
+         * @return True if the socket is connected, false otherwise.
+         */
+        boolean isConnected() {
+            return mSocket != null && mSocket.isConnected() && !mSocket.isClosed();
+        }
+    }
+}
@@ -0,0 +1,391 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd.connection;
+
+import org.a0z.mpd.MPDCommand;
+import org.a0z.mpd.MPDStatusMonitor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link ResponseCache} holding the responses to the database, stored playlist and sticker
+ * queries, such as {@code list}, {@code find}, {@code count} and {@code lsinfo}, evicting the
+ * least recently used responses beyond a size in bytes. The responses are invalidated upon the
+ * {@code database}, {@code stored_playlist} and {@code sticker} idle subsystem changes, which
+ * requires a {@link MPDStatusMonitor} subscribed to these, and upon the commands sent through the
+ * connection which modify them.
+ */
+public class LruResponseCache implements ResponseCache {
+
+    /** The responses depending on the song database. */
+    private static final int DATABASE = 1;
+
+    /** The approximate size, in bytes, of a cached response beyond its lines. */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    /** The approximate size, in bytes, of a line of a cached response beyond its characters. */
+    private static final int LINE_OVERHEAD = 48;
+
+    /** The queries cached, with the subsystems their responses depend on. */
+    private static final Map<String, Integer> READ_COMMANDS = new HashMap<>();
+
+    /** The responses depending on the sticker database. */
+    private static final int STICKER = 1 << 2;
+
+    private static final String STICKER_COMMAND = "sticker";
+
+    /** The responses depending on the stored playlists. */
+    private static final int STORED_PLAYLIST = 1 << 1;
+
+    /** The commands modifying the stored playlists, the sticker commands are handled apart. */
+    private static final Map<String, Integer> WRITE_COMMANDS = new HashMap<>();
+
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** The maximum size of the cached responses, in bytes. */
+    private final long mMaxSize;
+
+    private long mHitCount;
+
+    private long mMissCount;
+
+    /** The approximate size of the cached responses, in bytes. */
+    private long mSize;
+
+    private int mVersion;
+
+    static {
+        READ_COMMANDS.put(MPDCommand.MPD_CMD_COUNT, Integer.valueOf(DATABASE));
+        READ_COMMANDS.put(MPDCommand.MPD_CMD_FIND, Integer.valueOf(DATABASE));
+        READ_COMMANDS.put(MPDCommand.MPD_CMD_LIST_TAG, Integer.valueOf(DATABASE));
+        READ_COMMANDS.put(MPDCommand.MPD_CMD_SEARCH, Integer.valueOf(DATABASE));
+        /** The root directory listing includes the stored playlists. */
+        READ_COMMANDS.put(MPDCommand.MPD_CMD_LSDIR, Integer.valueOf(DATABASE | STORED_PLAYLIST));
+        READ_COMMANDS.put(MPDCommand.MPD_CMD_LISTPLAYLISTS, Integer.valueOf(STORED_PLAYLIST));
+        READ_COMMANDS.put(MPDCommand.MPD_CMD_PLAYLIST_INFO, Integer.valueOf(STORED_PLAYLIST));
+
+        WRITE_COMMANDS.put(MPDCommand.MPD_CMD_PLAYLIST_ADD, Integer.valueOf(STORED_PLAYLIST));
+        WRITE_COMMANDS.put(MPDCommand.MPD_CMD_PLAYLIST_DEL, Integer.valueOf(STORED_PLAYLIST));
+        WRITE_COMMANDS.put(MPDCommand.MPD_CMD_PLAYLIST_MOVE, Integer.valueOf(STORED_PLAYLIST));
+        WRITE_COMMANDS.put("playlistclear", Integer.valueOf(STORED_PLAYLIST));
+        WRITE_COMMANDS.put("rename", Integer.valueOf(STORED_PLAYLIST));
+        WRITE_COMMANDS.put("rm", Integer.valueOf(STORED_PLAYLIST));
+        WRITE_COMMANDS.put("save", Integer.valueOf(STORED_PLAYLIST));
+    }
+
+    /**
+     * The constructor method.
+     *
+     * @param maxSize The maximum size of the cached responses, in bytes.
+     */
+    public LruResponseCache(final long maxSize) {
+        super();
+
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Retrieves the subsystems the response to a command depends on.
+     *
+     * @param command The command sent.
+     * @param key     The command, as sent.
+     * @return The subsystems, 0 if the response is not to be cached.
+     */
+    private static int getReadDependencies(final MPDCommand command, final String key) {
+        final int dependencies;
+        final Integer value = READ_COMMANDS.get(command.getCommand());
+
+        if (value != null) {
+            dependencies = value.intValue();
+        } else if (key.startsWith(STICKER_COMMAND)) {
+            switch (getStickerAction(key)) {
+                case "find":
+                case "get":
+                case "list":
+                    dependencies = STICKER;
+                    break;
+                default:
+                    dependencies = 0;
+                    break;
+            }
+        } else {
+            dependencies = 0;
+        }
+
+        return dependencies;
+    }
+
+    /**
+     * Retrieves the action of a sticker command line, such as {@code get} or {@code set}, which
+     * may or may not be quoted.
+     *
+     * @param line The command line, starting with the sticker command.
+     * @return The sticker action, empty if none.
+     */
+    private static String getStickerAction(final String line) {
+        int start = STICKER_COMMAND.length();
+
+        while (start < line.length() && (line.charAt(start) == ' ' || line.charAt(start) == '"')) {
+            start++;
+        }
+
+        int end = start;
+        while (end < line.length() && Character.isLetter(line.charAt(end))) {
+            end++;
+        }
+
+        return line.substring(start, end);
+    }
+
+    /**
+     * Retrieves the subsystems modified by one command line, which may be part of a command list.
+     *
+     * @param line The command line.
+     * @return The subsystems modified, 0 if none.
+     */
+    private static int getWriteDependencies(final String line) {
+        final int delimiterIndex = line.indexOf(' ');
+        final String command;
+        int dependencies = 0;
+
+        if (delimiterIndex == -1) {
+            command = line;
+        } else {
+            command = line.substring(0, delimiterIndex);
+        }
+
+        final Integer value = WRITE_COMMANDS.get(command);
+        if (value != null) {
+            dependencies = value.intValue();
+        } else if (STICKER_COMMAND.equals(command)) {
+            final String action = getStickerAction(line);
+
+            if ("set".equals(action) || "delete".equals(action)) {
+                dependencies = STICKER;
+            }
+        }
+
+        return dependencies;
+    }
+
+    /**
+     * Estimates the memory used by a cached response.
+     *
+     * @param key      The command, as sent.
+     * @param response The response.
+     * @return The approximate size, in bytes.
+     */
+    private static long sizeOf(final String key, final List<String> response) {
+        long size = (long) (ENTRY_OVERHEAD + (key.length() << 1));
+
+        for (final String line : response) {
+            size += (long) (LINE_OVERHEAD + (line.length() << 1));
+        }
+
+        return size;
+    }
+
+    @Override
+    public synchronized void clear() {
+        mVersion++;
+        mEntries.clear();
+        mSize = 0L;
+    }
+
+    @Override
+    public synchronized List<String> get(final MPDCommand command) {
+        final String key = command.toString();
+        List<String> result = null;
+
+        if (getReadDependencies(command, key) != 0) {
+            final Entry entry = mEntries.get(key);
+
+            if (entry == null) {
+                mMissCount++;
+            } else {
+                mHitCount++;
+                /** Callers are free to modify the response they get. */
+                result = new ArrayList<>(entry.mResponse);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Retrieves the number of responses served from the cache.
+     *
+     * @return The number of cache hits.
+     */
+    public synchronized long getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Retrieves the number of cacheable commands which had to be sent to the media server.
+     *
+     * @return The number of cache misses.
+     */
+    public synchronized long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Retrieves the approximate memory used by the cached responses.
+     *
+     * @return The approximate size, in bytes.
+     */
+    public synchronized long getSize() {
+        return mSize;
+    }
+
+    @Override
+    public synchronized int getVersion() {
+        return mVersion;
+    }
+
+    @Override
+    public void invalidate(final MPDCommand command) {
+        final String baseCommand = command.getCommand();
+        int dependencies = 0;
+
+        /** A command list is sent as one command holding every line of the list. */
+        if (baseCommand.indexOf(MPDCommand.MPD_CMD_NEWLINE) == -1) {
+            dependencies = getWriteDependencies(command.toString().trim());
+        } else {
+            for (final String line : baseCommand.split("\n")) {
+                dependencies |= getWriteDependencies(line);
+            }
+        }
+
+        if (dependencies != 0) {
+            invalidate(dependencies);
+        }
+    }
+
+    /**
+     * Removes the cached responses depending on any of the subsystems.
+     *
+     * @param dependencies The changed subsystems.
+     */
+    private synchronized void invalidate(final int dependencies) {
+        final Iterator<Entry> iterator = mEntries.values().iterator();
+
+        mVersion++;
+        while (iterator.hasNext()) {
+            final Entry entry = iterator.next();
+
+            if ((entry.mDependencies & dependencies) != 0) {
+                mSize -= entry.mSize;
+                iterator.remove();
+            }
+        }
+    }
+
+    @Override
+    public void invalidate(final String subsystem) {
+        switch (subsystem) {
+            case MPDStatusMonitor.IDLE_DATABASE:
+                invalidate(DATABASE);
+                break;
+            case MPDStatusMonitor.IDLE_STICKER:
+                invalidate(STICKER);
+                break;
+            case MPDStatusMonitor.IDLE_STORED_PLAYLIST:
+                invalidate(STORED_PLAYLIST);
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public synchronized void put(final MPDCommand command, final List<String> response,
+            final int version) {
+        final String key = command.toString();
+        final int dependencies = getReadDependencies(command, key);
+
+        if (dependencies != 0 && version == mVersion) {
+            final long size = sizeOf(key, response);
+
+            if (size <= mMaxSize) {
+                final Entry previous = mEntries.put(key,
+                        new Entry(new ArrayList<>(response), dependencies, size));
+
+                if (previous != null) {
+                    mSize -= previous.mSize;
+                }
+                mSize += size;
+
+                final Iterator<Entry> iterator = mEntries.values().iterator();
+                while (mSize > mMaxSize) {
+                    mSize -= iterator.next().mSize;
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "LruResponseCache{" +
+                "mEntries=" + mEntries.size() +
+                ", mSize=" + mSize +
+                ", mMaxSize=" + mMaxSize +
+                ", mHitCount=" + mHitCount +
+                ", mMissCount=" + mMissCount +
+                ", mVersion=" + mVersion +
+                '}';
+    }
+
+    /** This class holds one cached response. */
+    private static final class Entry {
+
+        /** The subsystems the response depends on. */
+        private final int mDependencies;
+
+        private final List<String> mResponse;
+
+        /** The approximate size of the response, in bytes. */
+        private final long mSize;
+
+        Entry(final List<String> response, final int dependencies, final long size) {
+            super();
+
+            mResponse = Collections.unmodifiableList(response);
+            mDependencies = dependencies;
+            mSize = size;
+        }
+    }
+}
@@ -31,14 +31,12 @@ import org.a0z.mpd.Log;
 import org.a0z.mpd.MPDCommand;
 import org.a0z.mpd.MPDStatusMonitor;
 import org.a0z.mpd.Tools;
+import org.a0z.mpd.exception.InvalidResponseException;
 import org.a0z.mpd.exception.MPDException;
 import org.a0z.mpd.subsystem.Reflection;
 
-import java.io.BufferedReader;
 import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
@@ -47,8 +45,13 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -60,13 +63,16 @@ public abstract class MPDConnection {
 
     static final String MPD_RESPONSE_OK = "OK";
 
-    private static final int CONNECTION_TIMEOUT = 10000;
+    static final int CONNECTION_TIMEOUT = 10000;
 
     /** The debug flag to enable or disable debug logging output. */
     private static final boolean DEBUG = false;
 
-    /** Default buffer size for the socket. */
-    private static final int DEFAULT_BUFFER_SIZE = 1024;
+    /**
+     * Maximum number of commands written back-to-back before reading the responses. This keeps
+     * the responses the media server has to buffer for this connection reasonable.
+     */
+    private static final int MAX_PIPELINE_LENGTH = 64;
 
     /** Maximum number of times to attempt command processing. */
     private static final int MAX_REQUEST_RETRY = 3;
@@ -81,12 +87,21 @@ public abstract class MPDConnection {
     /** The {@code ExecutorService} used to process commands. */
     private final ThreadPoolExecutor mExecutor;
 
+    /** The read-only commands being processed, by command string, shared by identical ones. */
+    private final ConcurrentMap<String, CommandFuture> mInFlight = new ConcurrentHashMap<>();
+
     /** The lock for this connection. */
     private final Object mLock = new Object();
 
+    /** Commands sent with {@link #sendCommandAsync(MPDCommand)}, waiting to be written. */
+    private final Queue<CommandFuture> mPipeline = new ConcurrentLinkedQueue<>();
+
     /** The command communication timeout. */
     private final int mReadWriteTimeout;
 
+    /** The cache of responses to the commands sent, null if responses are not cached. */
+    private volatile ResponseCache mResponseCache;
+
     private final String mTag;
 
     /** If set to true, this will cancel any processing commands at next opportunity. */
@@ -104,6 +119,22 @@ public abstract class MPDConnection {
     /** The host/port pair used to connect to the media server. */
     private InetSocketAddress mSocketAddress;
 
+    /**
+     * The constructor method for connections which process commands on the calling thread. This
+     * method does not connect to the server.
+     *
+     * @param readWriteTimeout The read write timeout for this connection.
+     * @param tag              The debug log identifier for this connection.
+     * @see #connect(java.net.InetAddress, int, String)
+     */
+    MPDConnection(final int readWriteTimeout, final String tag) {
+        super();
+
+        mReadWriteTimeout = readWriteTimeout;
+        mExecutor = null;
+        mTag = tag;
+    }
+
     /**
      * The constructor method. This method does not connect to the server.
      *
@@ -115,8 +146,13 @@ public abstract class MPDConnection {
         super();
 
         mReadWriteTimeout = readWriteTimeout;
-        mExecutor = new ThreadPoolExecutor(1, maxConnections, (long) mReadWriteTimeout,
-                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+        /**
+         * The queue is unbounded, so the executor never grows beyond its core pool; let the core
+         * pool reach the maximum number of connections and time out instead.
+         */
+        mExecutor = new ThreadPoolExecutor(maxConnections, maxConnections,
+                (long) mReadWriteTimeout, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>());
         mExecutor.prestartCoreThread();
         if (maxConnections > 1) {
             mTag = "MPDConnectionMultiSocket";
@@ -139,6 +175,7 @@ public abstract class MPDConnection {
     public final void connect(final InetAddress host, final int port, final String password)
             throws IOException, MPDException {
         innerDisconnect();
+        invalidateResponses();
 
         mCancelled = false;
         mPassword = password;
@@ -160,8 +197,32 @@ public abstract class MPDConnection {
 
         mIsConnected = true;
         mMPDVersion = commandResult.getMPDVersion();
+        warmUp();
+    }
+
+    /**
+     * Leases the transport to the calling thread before processing commands. Calls may be
+     * nested, each call must be matched by a call to {@link #releaseTransport()}. This does
+     * nothing unless the transport is pooled.
+     */
+    void acquireTransport() {
     }
 
+    /**
+     * Closes the transport to the media server, if open.
+     *
+     * @throws IOException Thrown if there is a problem closing the socket.
+     */
+    abstract void closeTransport() throws IOException;
+
+    /**
+     * Opens the transport to the media server.
+     *
+     * @return The first line sent by the media server upon connection, null if none was sent.
+     * @throws IOException Thrown upon a communication error with the server.
+     */
+    abstract String connectTransport() throws IOException;
+
     /**
      * The method to disconnect from the current connected server.
      *
@@ -172,6 +233,66 @@ public abstract class MPDConnection {
         innerDisconnect();
     }
 
+    /**
+     * Runs a task on the command processor executor.
+     *
+     * @param task The task to run.
+     */
+    final void execute(final Runnable task) {
+        mExecutor.execute(task);
+    }
+
+    /**
+     * Processes the command by setting up the command processor executor. Commands sent from a
+     * thread of the executor are processed in place to avoid deadlock.
+     *
+     * @param command The command to be processed.
+     * @param handler The handler to stream the response to, null to return it as a list.
+     * @return The result of the processed command.
+     * @throws IOException Thrown if the command processor could not be run.
+     */
+    CommandResult execute(final MPDCommand command, final ResponseHandler handler)
+            throws IOException {
+        final CommandResult result;
+
+        onSend(command);
+
+        // Bypass thread pool queue if the thread already comes from the pool to avoid deadlock.
+        if (Thread.currentThread().getName().startsWith(POOL_THREAD_NAME_PREFIX)) {
+            result = runCommand(command, handler);
+        } else {
+            try {
+                result = mExecutor.submit(new CommandProcessor(command, handler)).get();
+                // Spam the log with the largest pool size
+                //Log.debug(mTag, "Largest pool size: " + mExecutor.getLargestPoolSize());
+            } catch (final ExecutionException | InterruptedException e) {
+                throw new IOException(e);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Sends the commands waiting in the pipeline. Commands sent from a thread of the executor are
+     * processed in place, otherwise this returns as soon as the pipeline has been handed to the
+     * executor.
+     */
+    void executePipeline() {
+        final Runnable pipelineProcessor = new Runnable() {
+            @Override
+            public void run() {
+                processPipeline();
+            }
+        };
+
+        if (Thread.currentThread().getName().startsWith(POOL_THREAD_NAME_PREFIX)) {
+            pipelineProcessor.run();
+        } else {
+            execute(pipelineProcessor);
+        }
+    }
+
     /**
      * The current connected media server host.
      *
@@ -196,8 +317,6 @@ public abstract class MPDConnection {
         return mSocketAddress.getPort();
     }
 
-    protected abstract InputStreamReader getInputStream();
-
     /**
      * The current MPD protocol version.
      */
@@ -205,10 +324,62 @@ public abstract class MPDConnection {
         return mMPDVersion.clone();
     }
 
-    protected abstract OutputStreamWriter getOutputStream();
+    /**
+     * The read write timeout for this connection.
+     *
+     * @return The read write timeout, in milliseconds, 0 for no timeout.
+     */
+    final int getReadWriteTimeout() {
+        return mReadWriteTimeout;
+    }
 
     protected abstract Socket getSocket();
 
+    /**
+     * The host/port pair used to connect to the media server.
+     *
+     * @return The host/port pair, null if the connection endpoint has not yet been established.
+     */
+    final InetSocketAddress getSocketAddress() {
+        return mSocketAddress;
+    }
+
+    /**
+     * This is the low level media server connection method.
+     *
+     * @return The initial response from the connection.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    final String innerConnect() throws IOException, MPDException {
+        final String line;
+
+        // Always release existing socket if any before creating a new one
+        if (getSocket() != null) {
+            try {
+                innerDisconnect();
+            } catch (final IOException ignored) {
+            }
+        }
+
+        line = connectTransport();
+
+        if (line == null) {
+            throw new IOException("No response from server.");
+        }
+
+        /** Protocol says OK will begin the session, otherwise assume IO error. */
+        if (!line.startsWith(MPD_RESPONSE_OK)) {
+            throw new IOException("Bogus response from server.");
+        }
+
+        if (mPassword != null) {
+            sendCommand(MPDCommand.MPD_CMD_PASSWORD, mPassword);
+        }
+
+        return line;
+    }
+
     /**
      * A low level disconnect method for the socket(s).
      *
@@ -217,10 +388,34 @@ public abstract class MPDConnection {
     private void innerDisconnect() throws IOException {
         mIsConnected = false;
         synchronized (mLock) {
-            if (getSocket() != null) {
-                getSocket().close();
-                setSocket(null);
-            }
+            closeTransport();
+        }
+    }
+
+    /**
+     * Removes every response from the response cache, if any. This is to be called when changes
+     * may have been missed, such as upon connection.
+     */
+    public void invalidateResponses() {
+        final ResponseCache responseCache = mResponseCache;
+
+        if (responseCache != null) {
+            responseCache.clear();
+        }
+    }
+
+    /**
+     * Removes the responses depending on a changed idle subsystem from the response cache, if
+     * any.
+     *
+     * @param subsystem The changed idle subsystem, see the IDLE fields of
+     *                  {@link MPDStatusMonitor}.
+     */
+    public void invalidateResponses(final String subsystem) {
+        final ResponseCache responseCache = mResponseCache;
+
+        if (responseCache != null) {
+            responseCache.invalidate(subsystem);
         }
     }
 
@@ -243,6 +438,37 @@ public abstract class MPDConnection {
         return mIsConnected;
     }
 
+    /**
+     * Checks the transport for an open connection to the media server.
+     *
+     * @return True if the transport is connected, false otherwise.
+     */
+    abstract boolean isTransportConnected();
+
+    /**
+     * This method is a place to specify if a ACK is not actually an error message we don't
+     * consider to be a fatal error.
+     *
+     * @param command The command which resulted in the message.
+     * @param message The message to check.
+     * @return True if the message indicates a non-fatal error, false otherwise.
+     */
+    private boolean isNonfatalACK(final MPDCommand command, final String message) {
+        final boolean isNonfatalACK;
+        final int errorCode = MPDException.getAckErrorCode(message);
+
+        if (command.isErrorNonfatal(errorCode)) {
+            isNonfatalACK = true;
+            if (DEBUG) {
+                Log.debug(mTag, "Non-fatal ACK emitted, exception suppressed: " + message);
+            }
+        } else {
+            isNonfatalACK = false;
+        }
+
+        return isNonfatalACK;
+    }
+
     /**
      * Checks the media server version for support of a feature. This does not check micro version
      * as new features shouldn't be added during stable releases.
@@ -264,6 +490,50 @@ public abstract class MPDConnection {
         return result;
     }
 
+    /**
+     * Called before a command is sent. A command which may modify the media server state stops
+     * identical read-only commands from sharing the responses of those already in flight, and
+     * invalidates the cached responses it may modify.
+     *
+     * @param command The command about to be sent.
+     */
+    private void onSend(final MPDCommand command) {
+        final ResponseCache responseCache = mResponseCache;
+
+        if (!MPDCommand.isReadOnly(command.getCommand())) {
+            mInFlight.clear();
+        }
+
+        if (responseCache != null) {
+            responseCache.invalidate(command);
+        }
+    }
+
+    /**
+     * Processes the command, then caches the response if there is a response cache.
+     *
+     * @param command       The command to be processed.
+     * @param responseCache The response cache, null if none.
+     * @return The response to the processed command.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    private List<String> processAndCache(final MPDCommand command,
+            final ResponseCache responseCache) throws IOException, MPDException {
+        final List<String> result;
+
+        if (responseCache == null) {
+            result = processCommand(command).getResult();
+        } else {
+            final int version = responseCache.getVersion();
+
+            result = processCommand(command).getResult();
+            responseCache.put(command, result, version);
+        }
+
+        return result;
+    }
+
     /**
      * Processes the command by setting up the command processor executor.
      *
@@ -274,20 +544,21 @@ public abstract class MPDConnection {
      */
     private CommandResult processCommand(final MPDCommand command)
             throws IOException, MPDException {
-        final CommandResult result;
+        return processCommand(command, null);
+    }
 
-        // Bypass thread pool queue if the thread already comes from the pool to avoid deadlock.
-        if (Thread.currentThread().getName().startsWith(POOL_THREAD_NAME_PREFIX)) {
-            result = new CommandProcessor(command).call();
-        } else {
-            try {
-                result = mExecutor.submit(new CommandProcessor(command)).get();
-                // Spam the log with the largest pool size
-                //Log.debug(mTag, "Largest pool size: " + mExecutor.getLargestPoolSize());
-            } catch (final ExecutionException | InterruptedException e) {
-                throw new IOException(e);
-            }
-        }
+    /**
+     * Processes the command by setting up the command processor executor.
+     *
+     * @param command The command to be processed.
+     * @param handler The handler to stream the response to, null to return it as a list.
+     * @return The response to the processed command.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    private CommandResult processCommand(final MPDCommand command,
+            final ResponseHandler handler) throws IOException, MPDException {
+        final CommandResult result = execute(command, handler);
 
         if (result.getResult() == null) {
             if (result.isIOExceptionLast() == null) {
@@ -312,7 +583,286 @@ public abstract class MPDConnection {
     }
 
     /**
-     * Communicates with the server by sending a command and receiving the response.
+     * Reads one line of the media server response from the transport.
+     *
+     * @return The line read, without the line terminator, null if the end of the stream has been
+     * reached.
+     * @throws IOException Thrown upon a communication error with the server.
+     */
+    abstract String readLine() throws IOException;
+
+    /**
+     * Sends the commands waiting in the pipeline, back-to-back, then reads the responses in the
+     * order the commands were written. This must be called with exclusive use of the transport.
+     * Upon communication error, the commands left without response are processed one at a time,
+     * so they get the usual retries, unless they are not retryable.
+     */
+    final void processPipeline() {
+        final List<CommandFuture> pipeline = new ArrayList<>(MAX_PIPELINE_LENGTH);
+
+        acquireTransport();
+        try {
+            for (CommandFuture future = mPipeline.poll(); future != null;
+                    future = mPipeline.poll()) {
+                future.setSent();
+                pipeline.add(future);
+
+                if (pipeline.size() == MAX_PIPELINE_LENGTH) {
+                    processPipeline(pipeline);
+                    pipeline.clear();
+                }
+            }
+
+            if (!pipeline.isEmpty()) {
+                processPipeline(pipeline);
+            }
+        } finally {
+            releaseTransport();
+        }
+    }
+
+    /**
+     * Sends the pipelined commands, back-to-back, then reads the responses in the order the
+     * commands were written.
+     *
+     * @param pipeline The commands to send.
+     */
+    private void processPipeline(final List<CommandFuture> pipeline) {
+        final int size = pipeline.size();
+        int index = 0;
+
+        /**
+         * Connection establishment, including the password, belongs to the command processor;
+         * let it send the first command if the transport is not connected.
+         */
+        if (mCancelled || !isTransportConnected()) {
+            processPipelined(pipeline.get(index));
+            index++;
+        }
+
+        if (index < size && !mCancelled && isTransportConnected()) {
+            final StringBuilder commands = new StringBuilder();
+
+            for (int i = index; i < size; i++) {
+                final MPDCommand command = pipeline.get(i).getCommand();
+
+                onSend(command);
+                commands.append(command);
+            }
+
+            try {
+                write(commands.toString());
+                for (; index < size; index++) {
+                    final CommandFuture future = pipeline.get(index);
+
+                    try {
+                        future.setResult(readResponse(future.getCommand()));
+                    } catch (final MPDException e) {
+                        future.setException(e);
+                    }
+                }
+            } catch (final IOException e) {
+                /** The transport state is unknown, drop it so the next command reconnects. */
+                try {
+                    innerDisconnect();
+                } catch (final IOException ignored) {
+                }
+
+                for (; index < size; index++) {
+                    final CommandFuture future = pipeline.get(index);
+
+                    if (MPDCommand.isRetryable(future.getCommand().getCommand())) {
+                        processPipelined(future);
+                    } else {
+                        future.setException(e);
+                    }
+                }
+            }
+        }
+
+        for (; index < size; index++) {
+            processPipelined(pipeline.get(index));
+        }
+    }
+
+    /**
+     * Processes one pipelined command with the command processor.
+     *
+     * @param future The pipelined command to process.
+     */
+    private void processPipelined(final CommandFuture future) {
+        try {
+            future.setResult(processCommand(future.getCommand()).getResult());
+        } catch (final IOException e) {
+            future.setException(e);
+        } catch (final MPDException e) {
+            future.setException(e);
+        }
+    }
+
+    /**
+     * Processes a read-only command, or waits for the response to an identical command already
+     * in flight, rather than sending a duplicate.
+     *
+     * @param command       The read-only command to be processed.
+     * @param responseCache The response cache, null if none.
+     * @return The response to the processed command.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    private List<String> processShared(final MPDCommand command,
+            final ResponseCache responseCache) throws IOException, MPDException {
+        final String key = command.toString();
+        final CommandFuture future = new CommandFuture(this, command);
+        final CommandFuture inFlight = mInFlight.putIfAbsent(key, future);
+        final List<String> result;
+
+        if (inFlight == null) {
+            try {
+                result = processAndCache(command, responseCache);
+                /** The caller is free to modify the response while others copy it. */
+                future.setResult(new ArrayList<>(result));
+            } catch (final IOException e) {
+                future.setException(e);
+                throw e;
+            } catch (final MPDException e) {
+                future.setException(e);
+                throw e;
+            } finally {
+                mInFlight.remove(key, future);
+            }
+        } else {
+            try {
+                /** Callers are free to modify the response they get. */
+                result = new ArrayList<>(inFlight.await());
+            } catch (final InterruptedException e) {
+                throw new IOException(e);
+            } catch (final ExecutionException e) {
+                if (e.getCause() instanceof MPDException) {
+                    throw (MPDException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Reads the media server response to one command, after the command has been written.
+     *
+     * @param command The command the response is read for.
+     * @return A String list of responses.
+     * @throws IOException  Thrown if there was a problem reading from from the media server.
+     * @throws MPDException Thrown if there was a server side error with the command that was
+     *                      sent.
+     */
+    private List<String> readResponse(final MPDCommand command)
+            throws MPDException, IOException {
+        final List<String> result = new ArrayList<>();
+
+        boolean serverDataRead = false;
+        for (String line = readLine(); line != null; line = readLine()) {
+            serverDataRead = true;
+
+            if (line.startsWith(MPD_RESPONSE_OK)) {
+                break;
+            }
+
+            if (line.startsWith(MPD_RESPONSE_ERR)) {
+                if (isNonfatalACK(command, line)) {
+                    break;
+                }
+
+                throw new MPDException(line);
+            }
+            result.add(line);
+        }
+
+        if (!serverDataRead) {
+            // Close socket if there is no response...
+            // Something is wrong (e.g. MPD shutdown..)
+            throw new EOFException("Connection lost");
+        }
+        return result;
+    }
+
+    /**
+     * Reads the media server response to one command, after the command has been written, and
+     * streams it to the handler one key/value pair at a time. If the handler fails, the rest of
+     * the response is skipped before its exception is rethrown.
+     *
+     * @param command The command the response is read for.
+     * @param handler The handler to stream the response to.
+     * @throws IOException  Thrown if there was a problem reading from from the media server.
+     * @throws MPDException Thrown if there was a server side error with the command that was
+     *                      sent.
+     */
+    private void readResponse(final MPDCommand command, final ResponseHandler handler)
+            throws MPDException, IOException {
+        boolean serverDataRead = false;
+
+        try {
+            handler.onStart();
+            for (String line = readLine(); line != null; line = readLine()) {
+                serverDataRead = true;
+
+                if (line.startsWith(MPD_RESPONSE_OK)) {
+                    break;
+                }
+
+                if (line.startsWith(MPD_RESPONSE_ERR)) {
+                    if (isNonfatalACK(command, line)) {
+                        break;
+                    }
+
+                    throw new MPDException(line);
+                }
+
+                final int delimiterIndex = line.indexOf(':');
+                if (delimiterIndex == -1) {
+                    throw new InvalidResponseException("Failed to parse server response key " +
+                            "for line: " + line);
+                }
+
+                /** Skip ': ' */
+                handler.onPair(Tools.getResponseKey(line, delimiterIndex),
+                        line.substring(delimiterIndex + 2));
+            }
+        } catch (final RuntimeException e) {
+            /** The next command must not read the rest of this response. */
+            skipResponse();
+            throw e;
+        }
+
+        if (!serverDataRead) {
+            throw new EOFException("Connection lost");
+        }
+        handler.onEnd();
+    }
+
+    /**
+     * Returns the transport leased with {@link #acquireTransport()}. This does nothing unless the
+     * transport is pooled.
+     */
+    void releaseTransport() {
+    }
+
+    /**
+     * Processes the command on the calling thread.
+     *
+     * @param command The command to be processed.
+     * @param handler The handler to stream the response to, null to return it as a list.
+     * @return The result of the processed command.
+     */
+    final CommandResult runCommand(final MPDCommand command, final ResponseHandler handler) {
+        return new CommandProcessor(command, handler).call();
+    }
+
+    /**
+     * Communicates with the server by sending a command and receiving the response. A read-only
+     * command sent while an identical one is in flight waits for the response to the latter
+     * rather than being sent again.
      *
      * @param command The command to be sent to the server.
      * @return The result from the command sent to the server.
@@ -320,7 +870,22 @@ public abstract class MPDConnection {
      * @throws MPDException Thrown if an error occurs as a result of command execution.
      */
     public List<String> sendCommand(final MPDCommand command) throws IOException, MPDException {
-        return processCommand(command).getResult();
+        final ResponseCache responseCache = mResponseCache;
+        List<String> result = null;
+
+        if (responseCache != null) {
+            result = responseCache.get(command);
+        }
+
+        if (result == null) {
+            if (MPDCommand.isReadOnly(command.getCommand())) {
+                result = processShared(command, responseCache);
+            } else {
+                result = processAndCache(command, responseCache);
+            }
+        }
+
+        return result;
     }
 
     /**
@@ -354,11 +919,102 @@ public abstract class MPDConnection {
         return sendCommand(new MPDCommand(command, nonfatalErrors, args));
     }
 
-    protected abstract void setInputStream(InputStreamReader inputStream);
+    /**
+     * Communicates with the server by sending a command and streaming the response to a handler
+     * as it is read, so the response is never held in memory as a whole. The handler is called on
+     * the thread processing the command, which may not be the calling thread; this method
+     * returns once the handler has received the entire response.
+     *
+     * @param command The command to be sent to the server.
+     * @param handler The handler to stream the response to.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    public void sendCommand(final MPDCommand command, final ResponseHandler handler)
+            throws IOException, MPDException {
+        processCommand(command, handler);
+    }
+
+    /**
+     * Sends a command to the server without waiting for the response. Commands sent this way are
+     * pipelined: they are written back-to-back and their responses read in the order they were
+     * sent, which hides the round trip latency to the media server for all but the first
+     * command. Where the connection has no executor, the pipeline is sent once a result is first
+     * requested from any of the returned {@code Future}s.
+     *
+     * <p>Upon failure, the {@link java.util.concurrent.ExecutionException} thrown by
+     * {@link Future#get()} is caused by the {@code IOException} or {@code MPDException} which
+     * would have been thrown by {@link #sendCommand(MPDCommand)}.</p>
+     *
+     * @param command The command to be sent to the server.
+     * @return The pending result from the command sent to the server.
+     */
+    public Future<List<String>> sendCommandAsync(final MPDCommand command) {
+        final CommandFuture future = new CommandFuture(this, command);
+
+        if (mExecutor == null) {
+            future.setUnsent();
+        }
+        mPipeline.add(future);
+        if (mExecutor != null) {
+            executePipeline();
+        }
+
+        return future;
+    }
+
+    /**
+     * Sets the cache of responses to the commands sent with {@link #sendCommand(MPDCommand)}.
+     * The cache is kept consistent with the commands sent through this connection, and relies on
+     * {@link #invalidateResponses(String)} for the changes made by other clients.
+     *
+     * @param responseCache The response cache, null to disable caching.
+     */
+    public void setResponseCache(final ResponseCache responseCache) {
+        mResponseCache = responseCache;
+    }
 
-    protected abstract void setOutputStream(OutputStreamWriter outputStream);
+    /**
+     * Reads the rest of the media server response to one command, up to and including the final
+     * OK or ACK line, and drops it. The transport is closed if the response can not be read to
+     * the end, as its state is then unknown.
+     */
+    private void skipResponse() {
+        boolean isSkipped = false;
+
+        try {
+            for (String line = readLine(); line != null; line = readLine()) {
+                if (line.startsWith(MPD_RESPONSE_OK) || line.startsWith(MPD_RESPONSE_ERR)) {
+                    isSkipped = true;
+                    break;
+                }
+            }
+        } catch (final IOException e) {
+            Log.warning(mTag, "Failed to skip the rest of a response.", e);
+        }
+
+        if (!isSkipped) {
+            try {
+                innerDisconnect();
+            } catch (final IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Opens the transports ahead of the first commands, once connected. This does nothing unless
+     * the transport is pooled.
+     */
+    void warmUp() {
+    }
 
-    protected abstract void setSocket(Socket socket);
+    /**
+     * Writes a command string to the transport.
+     *
+     * @param command The command string to send to the media server.
+     * @throws IOException Thrown upon error transferring command to media server.
+     */
+    abstract void write(final String command) throws IOException;
 
     /** This class communicates with the server by sending the command and processing the result. */
     private class CommandProcessor implements Callable<CommandResult> {
@@ -366,10 +1022,14 @@ public abstract class MPDConnection {
         /** The command to be processed. */
         private final MPDCommand mCommand;
 
-        CommandProcessor(final MPDCommand mpdCommand) {
+        /** The handler to stream the response to, null to read the response to a list. */
+        private final ResponseHandler mHandler;
+
+        CommandProcessor(final MPDCommand mpdCommand, final ResponseHandler handler) {
             super();
 
             mCommand = mpdCommand;
+            mHandler = handler;
         }
 
         /**
@@ -379,58 +1039,15 @@ public abstract class MPDConnection {
          */
         @Override
         public final CommandResult call() {
-            int retryCount = 0;
-            final CommandResult result = new CommandResult();
-            boolean isCommandSent = false;
-            final String baseCommand = mCommand.getCommand();
-
-            while (result.getResult() == null && retryCount < MAX_REQUEST_RETRY && !mCancelled) {
-                try {
-                    if (getSocket() == null || !getSocket().isConnected() ||
-                            getSocket().isClosed()) {
-                        result.setConnectionResult(innerConnect());
-                    }
-
-                    write();
-                    isCommandSent = true;
-                    result.setResult(read());
-                } catch (final EOFException ex0) {
-                    handleFailure(result, ex0);
-
-                    // Do not fail when the IDLE response has not been read (to improve connection
-                    // failure robustness). Just send the "changed playlist" result to force the MPD
-                    // status to be refreshed.
-                    if (MPDCommand.MPD_CMD_IDLE.equals(baseCommand)) {
-                        result.setResult(Collections.singletonList(
-                                "changed: " + MPDStatusMonitor.IDLE_PLAYLIST));
-                    }
-                } catch (final IOException e) {
-                    handleFailure(result, e);
-                } catch (final MPDException ex1) {
-                    // Avoid getting in an infinite loop if an error occurred in the password cmd
-                    if (ex1.mErrorCode == MPDException.ACK_ERROR_PASSWORD ||
-                            ex1.mErrorCode == MPDException.ACK_ERROR_PERMISSION) {
-                        result.setException(ex1);
-                    } else {
-                        handleFailure(result, ex1);
-                    }
-                }
+            final CommandResult result;
 
-                /** On successful send of non-retryable command, break out. */
-                if (!MPDCommand.isRetryable(baseCommand) && isCommandSent) {
-                    break;
-                }
-
-                retryCount++;
+            acquireTransport();
+            try {
+                result = process();
+            } finally {
+                releaseTransport();
             }
 
-            if (!mCancelled) {
-                if (result.getResult() == null) {
-                    logError(result, baseCommand, retryCount);
-                } else {
-                    mIsConnected = true;
-                }
-            }
             return result;
         }
 
@@ -458,48 +1075,6 @@ public abstract class MPDConnection {
             }
         }
 
-        /**
-         * This is the low level media server connection method.
-         *
-         * @return The initial response from the connection.
-         * @throws IOException  Thrown upon a communication error with the server.
-         * @throws MPDException Thrown if an error occurs as a result of command execution.
-         */
-        private String innerConnect() throws IOException, MPDException {
-            final String line;
-
-            // Always release existing socket if any before creating a new one
-            if (getSocket() != null) {
-                try {
-                    innerDisconnect();
-                } catch (final IOException ignored) {
-                }
-            }
-
-            setSocket(new Socket());
-            getSocket().setSoTimeout(mReadWriteTimeout);
-            getSocket().connect(mSocketAddress, CONNECTION_TIMEOUT);
-            setInputStream(new InputStreamReader(getSocket().getInputStream(), "UTF-8"));
-            final BufferedReader in = new BufferedReader(getInputStream(), DEFAULT_BUFFER_SIZE);
-            setOutputStream(new OutputStreamWriter(getSocket().getOutputStream(), "UTF-8"));
-            line = in.readLine();
-
-            if (line == null) {
-                throw new IOException("No response from server.");
-            }
-
-            /** Protocol says OK will begin the session, otherwise assume IO error. */
-            if (!line.startsWith(MPD_RESPONSE_OK)) {
-                throw new IOException("Bogus response from server.");
-            }
-
-            if (mPassword != null) {
-                sendCommand(MPDCommand.MPD_CMD_PASSWORD, mPassword);
-            }
-
-            return line;
-        }
-
         /**
          * Used after a server error, sleeps for a small time then tries to reconnect.
          *
@@ -526,29 +1101,6 @@ public abstract class MPDConnection {
             return failureHandled;
         }
 
-        /**
-         * This method is a place to specify if a ACK is not actually an error message we don't
-         * consider to be a fatal error.
-         *
-         * @param message The message to check.
-         * @return True if the message indicates a non-fatal error, false otherwise.
-         */
-        private boolean isNonfatalACK(final String message) {
-            final boolean isNonfatalACK;
-            final int errorCode = MPDException.getAckErrorCode(message);
-
-            if (mCommand.isErrorNonfatal(errorCode)) {
-                isNonfatalACK = true;
-                if (DEBUG) {
-                    Log.debug(mTag, "Non-fatal ACK emitted, exception suppressed: " + message);
-                }
-            } else {
-                isNonfatalACK = false;
-            }
-
-            return isNonfatalACK;
-        }
-
         private void logError(final CommandResult result, final String baseCommand,
                 final int retryCount) {
             final StringBuilder stringBuilder = new StringBuilder(50);
@@ -574,41 +1126,84 @@ public abstract class MPDConnection {
         }
 
         /**
-         * Read the server response after a {@code write()} to the server.
+         * Sends the command, with retries, over the transport leased to the calling thread.
          *
-         * @return A String list of responses.
-         * @throws IOException  Thrown if there was a problem reading from from the media
-         *                      server.
-         * @throws MPDException Thrown if there was a server side error with the command that
-         *                      was sent.
+         * @return A {@code CommandResult} from the processed command.
          */
-        private List<String> read() throws MPDException, IOException {
-            final List<String> result = new ArrayList<>();
-            final BufferedReader in = new BufferedReader(getInputStream(), DEFAULT_BUFFER_SIZE);
+        private CommandResult process() {
+            int retryCount = 0;
+            final CommandResult result = new CommandResult();
+            boolean isCommandSent = false;
+            final String baseCommand = mCommand.getCommand();
 
-            boolean serverDataRead = false;
-            for (String line = in.readLine(); line != null; line = in.readLine()) {
-                serverDataRead = true;
+            while (result.getResult() == null && retryCount < MAX_REQUEST_RETRY && !mCancelled) {
+                try {
+                    if (!isTransportConnected()) {
+                        result.setConnectionResult(innerConnect());
+                    }
 
-                if (line.startsWith(MPD_RESPONSE_OK)) {
+                    write();
+                    isCommandSent = true;
+                    result.setResult(read());
+                } catch (final EOFException ex0) {
+                    handleFailure(result, ex0);
+
+                    // Do not fail when the IDLE response has not been read (to improve connection
+                    // failure robustness). Just send the "changed playlist" result to force the MPD
+                    // status to be refreshed.
+                    if (MPDCommand.MPD_CMD_IDLE.equals(baseCommand)) {
+                        result.setResult(Collections.singletonList(
+                                "changed: " + MPDStatusMonitor.IDLE_PLAYLIST));
+                    }
+                } catch (final IOException e) {
+                    handleFailure(result, e);
+                } catch (final MPDException ex1) {
+                    // Avoid getting in an infinite loop if an error occurred in the password cmd
+                    if (ex1.mErrorCode == MPDException.ACK_ERROR_PASSWORD ||
+                            ex1.mErrorCode == MPDException.ACK_ERROR_PERMISSION) {
+                        result.setException(ex1);
+                    } else {
+                        handleFailure(result, ex1);
+                    }
+                }
+
+                /** On successful send of non-retryable command, break out. */
+                if (!MPDCommand.isRetryable(baseCommand) && isCommandSent) {
                     break;
                 }
 
-                if (line.startsWith(MPD_RESPONSE_ERR)) {
-                    if (isNonfatalACK(line)) {
-                        break;
-                    }
+                retryCount++;
+            }
 
-                    throw new MPDException(line);
+            if (!mCancelled) {
+                if (result.getResult() == null) {
+                    logError(result, baseCommand, retryCount);
+                } else {
+                    mIsConnected = true;
                 }
-                result.add(line);
             }
+            return result;
+        }
 
-            if (!serverDataRead) {
-                // Close socket if there is no response...
-                // Something is wrong (e.g. MPD shutdown..)
-                throw new EOFException("Connection lost");
+        /**
+         * Read the server response after a {@code write()} to the server.
+         *
+         * @return A String list of responses, empty if the response was streamed to the handler.
+         * @throws IOException  Thrown if there was a problem reading from from the media
+         *                      server.
+         * @throws MPDException Thrown if there was a server side error with the command that
+         *                      was sent.
+         */
+        private List<String> read() throws MPDException, IOException {
+            final List<String> result;
+
+            if (mHandler == null) {
+                result = readResponse(mCommand);
+            } else {
+                readResponse(mCommand, mHandler);
+                result = Collections.emptyList();
             }
+
             return result;
         }
 
@@ -622,8 +1217,7 @@ public abstract class MPDConnection {
 
             // Uncomment for extreme command debugging
             //Log.debug(mTag, "Sending MPDCommand : " + cmdString);
-            getOutputStream().write(cmdString);
-            getOutputStream().flush();
+            MPDConnection.this.write(cmdString);
         }
     }
 }
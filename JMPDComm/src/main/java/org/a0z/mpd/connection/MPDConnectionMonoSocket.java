@@ -27,16 +27,16 @@
 
 package org.a0z.mpd.connection;
 
-import java.io.InputStreamReader;
+import java.io.BufferedReader;
 import java.io.OutputStreamWriter;
 import java.net.Socket;
 
 /**
  * Class representing a connection to MPD Server.
  */
-public class MPDConnectionMonoSocket extends MPDConnection {
+public class MPDConnectionMonoSocket extends MPDConnectionStreamSocket {
 
-    private InputStreamReader mInputStream;
+    private BufferedReader mInputStream;
 
     private OutputStreamWriter mOutputStream;
 
@@ -47,7 +47,7 @@ public class MPDConnectionMonoSocket extends MPDConnection {
     }
 
     @Override
-    public InputStreamReader getInputStream() {
+    public BufferedReader getInputStream() {
         return mInputStream;
     }
 
@@ -62,7 +62,7 @@ public class MPDConnectionMonoSocket extends MPDConnection {
     }
 
     @Override
-    public void setInputStream(final InputStreamReader inputStream) {
+    public void setInputStream(final BufferedReader inputStream) {
         mInputStream = inputStream;
     }
 
@@ -27,52 +27,188 @@
 
 package org.a0z.mpd.connection;
 
-import java.io.InputStreamReader;
+import org.a0z.mpd.Log;
+import org.a0z.mpd.exception.MPDException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.net.Socket;
 
 /**
- * Class representing a connection to MPD Server.
+ * Class representing a connection to MPD Server, processing commands on a pool of threads. The
+ * sockets are kept in a {@link ConnectionPool}, each command leases one for as long as it is
+ * processed, so a burst of commands processed in parallel reuses open, authenticated sockets.
  */
-public class MPDConnectionMultiSocket extends MPDConnection {
+public class MPDConnectionMultiSocket extends MPDConnectionStreamSocket {
+
+    /** The idle time after which a pooled connection is closed, below the media server's own. */
+    private static final long DEFAULT_IDLE_TIMEOUT = 30000L;
 
-    private static final ThreadLocal<InputStreamReader> INPUT_STREAM = new ThreadLocal<>();
+    private static final String TAG = "MPDConnectionMultiSocket";
 
-    private static final ThreadLocal<OutputStreamWriter> OUTPUT_STREAM = new ThreadLocal<>();
+    /** The pool of connections to the media server. */
+    private final ConnectionPool mPool;
 
-    private static final ThreadLocal<Socket> SOCKET = new ThreadLocal<>();
+    /** The connection leased by each thread, for as long as it processes commands. */
+    private final ThreadLocal<ConnectionPool.Transport> mTransport = new ThreadLocal<>();
 
+    /**
+     * The constructor method. This method does not connect to the server. One connection is
+     * kept open once connected.
+     *
+     * @param readWriteTimeout The read write timeout for this connection.
+     * @param maxConnection    Maximum number of sockets to allow running at one time.
+     */
     public MPDConnectionMultiSocket(final int readWriteTimeout, final int maxConnection) {
+        this(readWriteTimeout, 1, maxConnection);
+    }
+
+    /**
+     * The constructor method. This method does not connect to the server.
+     *
+     * @param readWriteTimeout The read write timeout for this connection.
+     * @param minConnection    Number of sockets opened upon connection and kept open, even idle.
+     * @param maxConnection    Maximum number of sockets to allow running at one time, this should
+     *                         stay within the media server {@code max_connections}.
+     */
+    public MPDConnectionMultiSocket(final int readWriteTimeout, final int minConnection,
+            final int maxConnection) {
         super(readWriteTimeout, maxConnection);
+
+        mPool = new ConnectionPool(minConnection, maxConnection, DEFAULT_IDLE_TIMEOUT);
     }
 
     @Override
-    public InputStreamReader getInputStream() {
-        return INPUT_STREAM.get();
+    void acquireTransport() {
+        ConnectionPool.Transport transport = mTransport.get();
+
+        if (transport == null) {
+            transport = mPool.acquire();
+            mTransport.set(transport);
+        }
+        transport.mHolds++;
+    }
+
+    /**
+     * Closes the transport leased to the calling thread, or every pooled transport if called
+     * outside of command processing.
+     *
+     * @throws IOException Thrown if there is a problem closing the socket.
+     */
+    @Override
+    void closeTransport() throws IOException {
+        if (mTransport.get() == null) {
+            mPool.clear();
+        } else {
+            super.closeTransport();
+        }
+    }
+
+    @Override
+    public BufferedReader getInputStream() {
+        final ConnectionPool.Transport transport = mTransport.get();
+        final BufferedReader result;
+
+        if (transport == null) {
+            result = null;
+        } else {
+            result = transport.mInputStream;
+        }
+
+        return result;
     }
 
     @Override
     public OutputStreamWriter getOutputStream() {
-        return OUTPUT_STREAM.get();
+        final ConnectionPool.Transport transport = mTransport.get();
+        final OutputStreamWriter result;
+
+        if (transport == null) {
+            result = null;
+        } else {
+            result = transport.mOutputStream;
+        }
+
+        return result;
+    }
+
+    /**
+     * Retrieves the connection pool, to inquire about its metrics.
+     *
+     * @return The connection pool.
+     */
+    public ConnectionPool getPool() {
+        return mPool;
     }
 
     @Override
     protected Socket getSocket() {
-        return SOCKET.get();
+        final ConnectionPool.Transport transport = mTransport.get();
+        final Socket result;
+
+        if (transport == null) {
+            result = null;
+        } else {
+            result = transport.mSocket;
+        }
+
+        return result;
+    }
+
+    @Override
+    void releaseTransport() {
+        final ConnectionPool.Transport transport = mTransport.get();
+
+        transport.mHolds--;
+        if (transport.mHolds == 0) {
+            mTransport.remove();
+            mPool.release(transport);
+        }
     }
 
     @Override
-    public void setInputStream(final InputStreamReader inputStream) {
-        INPUT_STREAM.set(inputStream);
+    public void setInputStream(final BufferedReader inputStream) {
+        mTransport.get().mInputStream = inputStream;
     }
 
     @Override
     public void setOutputStream(final OutputStreamWriter outputStream) {
-        OUTPUT_STREAM.set(outputStream);
+        mTransport.get().mOutputStream = outputStream;
     }
 
     @Override
     protected void setSocket(final Socket socket) {
-        SOCKET.set(socket);
+        mTransport.get().mSocket = socket;
+    }
+
+    /**
+     * Opens and authenticates the pooled connections up to the minimum pool size, on the command
+     * processor threads, so the first commands do not wait for the connection establishment.
+     */
+    @Override
+    void warmUp() {
+        final Runnable warmUp = new Runnable() {
+            @Override
+            public void run() {
+                final ConnectionPool.Transport transport = mPool.reserve();
+
+                if (transport != null) {
+                    transport.mHolds++;
+                    mTransport.set(transport);
+                    try {
+                        innerConnect();
+                    } catch (final IOException | MPDException e) {
+                        Log.error(TAG, "Failed to warm up pooled connection.", e);
+                    } finally {
+                        releaseTransport();
+                    }
+                }
+            }
+        };
+
+        for (int i = mPool.getWarmUpCount(); i > 0; i--) {
+            execute(warmUp);
+        }
     }
 }
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd.connection;
+
+import org.a0z.mpd.MPDCommand;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * Class representing a connection to MPD Server using a non-blocking socket channel. The channel
+ * I/O is run by a {@link ChannelMultiplexer}, so many connections, to one or several media
+ * servers, share a single I/O thread rather than using a thread per socket. Commands are
+ * processed one at a time, on the calling thread. Pipelined commands are sent by the first thread
+ * requesting one of their results.
+ */
+public class MPDConnectionNioSocket extends MPDConnection {
+
+    private static final String TAG = "MPDConnectionNioSocket";
+
+    /** Serializes the commands sent over the channel. */
+    private final Object mCommandLock = new Object();
+
+    private final ChannelMultiplexer mMultiplexer;
+
+    private volatile ChannelHandler mChannel;
+
+    /**
+     * Creates a connection using the shared {@link ChannelMultiplexer}.
+     *
+     * @param readWriteTimeout The read write timeout for this connection, 0 for no timeout.
+     * @throws IOException Thrown if the shared multiplexer could not be started.
+     */
+    public MPDConnectionNioSocket(final int readWriteTimeout) throws IOException {
+        this(readWriteTimeout, ChannelMultiplexer.getDefault());
+    }
+
+    /**
+     * Creates a connection using the given {@link ChannelMultiplexer}.
+     *
+     * @param readWriteTimeout The read write timeout for this connection, 0 for no timeout.
+     * @param multiplexer      The multiplexer to run the channel I/O with.
+     */
+    public MPDConnectionNioSocket(final int readWriteTimeout,
+            final ChannelMultiplexer multiplexer) {
+        super(readWriteTimeout, TAG);
+
+        mMultiplexer = multiplexer;
+    }
+
+    @Override
+    void closeTransport() {
+        final ChannelHandler channel = mChannel;
+
+        if (channel != null) {
+            channel.close(null);
+            mChannel = null;
+        }
+    }
+
+    @Override
+    String connectTransport() throws IOException {
+        final ChannelHandler channel = ChannelHandler.open(mMultiplexer, getSocketAddress());
+
+        mChannel = channel;
+        return channel.readLine(CONNECTION_TIMEOUT);
+    }
+
+    @Override
+    CommandResult execute(final MPDCommand command, final ResponseHandler handler)
+            throws IOException {
+        if (mMultiplexer.isIOThread()) {
+            throw new IllegalStateException("Commands cannot be sent from the I/O thread.");
+        }
+
+        synchronized (mCommandLock) {
+            return runCommand(command, handler);
+        }
+    }
+
+    /**
+     * Sends the commands waiting in the pipeline on the calling thread, as this transport has no
+     * executor.
+     */
+    @Override
+    void executePipeline() {
+        if (mMultiplexer.isIOThread()) {
+            throw new IllegalStateException("Commands cannot be sent from the I/O thread.");
+        }
+
+        synchronized (mCommandLock) {
+            processPipeline();
+        }
+    }
+
+    /**
+     * Retrieves the channel handler of the current transport.
+     *
+     * @return The channel handler.
+     * @throws EOFException Thrown if the transport has been closed.
+     */
+    private ChannelHandler getChannel() throws EOFException {
+        final ChannelHandler channel = mChannel;
+
+        if (channel == null) {
+            throw new EOFException("Connection closed.");
+        }
+
+        return channel;
+    }
+
+    @Override
+    protected Socket getSocket() {
+        final ChannelHandler channel = mChannel;
+        final Socket socket;
+
+        if (channel == null) {
+            socket = null;
+        } else {
+            socket = channel.getSocket();
+        }
+
+        return socket;
+    }
+
+    @Override
+    boolean isTransportConnected() {
+        final ChannelHandler channel = mChannel;
+
+        return channel != null && channel.isOpen();
+    }
+
+    @Override
+    String readLine() throws IOException {
+        return getChannel().readLine(getReadWriteTimeout());
+    }
+
+    @Override
+    void write(final String command) throws IOException {
+        getChannel().write(command);
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd.connection;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.Socket;
+
+/**
+ * Class representing a connection to MPD Server over a blocking socket, read and written through
+ * its streams.
+ */
+abstract class MPDConnectionStreamSocket extends MPDConnection {
+
+    /** Default buffer size for the socket. */
+    private static final int DEFAULT_BUFFER_SIZE = 1024;
+
+    MPDConnectionStreamSocket(final int readWriteTimeout, final int maxConnections) {
+        super(readWriteTimeout, maxConnections);
+    }
+
+    /**
+     * Closes the transport to the media server, if open.
+     *
+     * @throws IOException Thrown if there is a problem closing the socket.
+     */
+    @Override
+    void closeTransport() throws IOException {
+        if (getSocket() != null) {
+            getSocket().close();
+            setSocket(null);
+        }
+    }
+
+    /**
+     * Opens the transport to the media server.
+     *
+     * @return The first line sent by the media server upon connection, null if none was sent.
+     * @throws IOException Thrown upon a communication error with the server.
+     */
+    @Override
+    String connectTransport() throws IOException {
+        setSocket(new Socket());
+        getSocket().setSoTimeout(getReadWriteTimeout());
+        getSocket().connect(getSocketAddress(), CONNECTION_TIMEOUT);
+        setInputStream(new BufferedReader(
+                new InputStreamReader(getSocket().getInputStream(), "UTF-8"),
+                DEFAULT_BUFFER_SIZE));
+        setOutputStream(new OutputStreamWriter(getSocket().getOutputStream(), "UTF-8"));
+
+        return getInputStream().readLine();
+    }
+
+    protected abstract BufferedReader getInputStream();
+
+    protected abstract OutputStreamWriter getOutputStream();
+
+    /**
+     * Checks the transport for an open connection to the media server.
+     *
+     * @return True if the transport is connected, false otherwise.
+     */
+    @Override
+    boolean isTransportConnected() {
+        return getSocket() != null && getSocket().isConnected() && !getSocket().isClosed();
+    }
+
+    /**
+     * Reads one line of the media server response from the transport.
+     *
+     * @return The line read, without the line terminator, null if the end of the stream has been
+     * reached.
+     * @throws IOException Thrown upon a communication error with the server.
+     */
+    @Override
+    String readLine() throws IOException {
+        return getInputStream().readLine();
+    }
+
+    protected abstract void setInputStream(BufferedReader inputStream);
+
+    protected abstract void setOutputStream(OutputStreamWriter outputStream);
+
+    protected abstract void setSocket(Socket socket);
+
+    /**
+     * Writes a command string to the transport.
+     *
+     * @param command The command string to send to the media server.
+     * @throws IOException Thrown upon error transferring command to media server.
+     */
+    @Override
+    void write(final String command) throws IOException {
+        getOutputStream().write(command);
+        getOutputStream().flush();
+    }
+}
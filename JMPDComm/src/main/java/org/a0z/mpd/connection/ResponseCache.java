@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd.connection;
+
+import org.a0z.mpd.MPDCommand;
+
+import java.util.List;
+
+/**
+ * A cache of media server responses, keyed by the command sent. A response is cached if the
+ * cache accepts the command, and served until the cache is invalidated for an idle subsystem the
+ * response depends on.
+ *
+ * @see MPDConnection#setResponseCache(ResponseCache)
+ */
+public interface ResponseCache {
+
+    /**
+     * Removes every response from the cache.
+     */
+    void clear();
+
+    /**
+     * Retrieves a cached response.
+     *
+     * @param command The command to retrieve the response to.
+     * @return The cached response, null if the response is not cached.
+     */
+    List<String> get(MPDCommand command);
+
+    /**
+     * Retrieves the current cache version, incremented upon every invalidation.
+     *
+     * @return The current cache version.
+     */
+    int getVersion();
+
+    /**
+     * Removes the cached responses which may be modified by a command about to be sent, such as
+     * {@code save} for the stored playlist listings.
+     *
+     * @param command The command about to be sent.
+     */
+    void invalidate(MPDCommand command);
+
+    /**
+     * Removes the cached responses depending on an idle subsystem which has changed.
+     *
+     * @param subsystem The changed idle subsystem, see the IDLE fields of
+     *                  {@link org.a0z.mpd.MPDStatusMonitor}.
+     */
+    void invalidate(String subsystem);
+
+    /**
+     * Caches a response, if the cache accepts the command and has not been invalidated since the
+     * command was sent.
+     *
+     * @param command  The command sent.
+     * @param response The response to the command.
+     * @param version  The cache version, as of before the command was sent.
+     */
+    void put(MPDCommand command, List<String> response, int version);
+}
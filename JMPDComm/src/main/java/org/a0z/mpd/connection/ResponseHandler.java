@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.a0z.mpd.connection;
+
+/**
+ * A consumer of media server responses, which receives the response one key/value pair at a time
+ * as it is read from the connection, rather than as a list of lines once it has been entirely
+ * read. This allows large responses to be processed without holding them in memory.
+ *
+ * @see MPDConnection#sendCommand(org.a0z.mpd.MPDCommand, ResponseHandler)
+ */
+public interface ResponseHandler {
+
+    /**
+     * Called once the response has been entirely read.
+     */
+    void onEnd();
+
+    /**
+     * Called for every key/value pair of the response, in the order received.
+     *
+     * @param key   The response key, such as {@code file} or {@code Artist}.
+     * @param value The value for the {@code key}.
+     */
+    void onPair(String key, String value);
+
+    /**
+     * Called before the first pair of the response. This is called again if the command is
+     * retried after a communication error, in which case any pair received since the previous
+     * call should be discarded.
+     */
+    void onStart();
+}
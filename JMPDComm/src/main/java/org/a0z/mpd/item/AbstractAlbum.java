@@ -220,6 +220,24 @@ public abstract class AbstractAlbum extends Item {
         return mName;
     }
 
+    /**
+     * Returns the identity of the name of this album, its name and the name of its artist.
+     *
+     * @return The name key of this album.
+     */
+    @Override
+    Object getNameKey() {
+        final String artistName;
+
+        if (mArtist == null) {
+            artistName = null;
+        } else {
+            artistName = mArtist.getName();
+        }
+
+        return Arrays.asList(mName, artistName);
+    }
+
     public String getPath() {
         return mPath;
     }
@@ -27,17 +27,14 @@
 
 package org.a0z.mpd.item;
 
-import org.a0z.mpd.Log;
 import org.a0z.mpd.Tools;
+import org.a0z.mpd.exception.InvalidResponseException;
 
-import java.util.ArrayList;
+import java.text.Collator;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import static org.a0z.mpd.Tools.KEY;
 import static org.a0z.mpd.Tools.VALUE;
@@ -88,15 +85,11 @@ public abstract class AbstractMusic extends Item implements FilesystemTreeEntry
                 }
             };
 
-    /**
-     * The date response has it's own delimiter.
-     */
-    private static final Pattern DATE_DELIMITER = Pattern.compile("\\D+");
-
     /** The maximum number of key/value pairs for a music item response. */
     private static final int MUSIC_ATTRIBUTES = 30;
 
-    private static final String TAG = "Music";
+    /** The offset of the title, name and full path part of the sort key. */
+    private static final int SORT_KEY_TEXT_OFFSET = SortKeys.INT_LENGTH * 3;
 
     private static final int UNDEFINED_INT = -1;
 
@@ -118,6 +111,9 @@ public abstract class AbstractMusic extends Item implements FilesystemTreeEntry
 
     final String mName;
 
+    /** The key of the name of this track among other items, see {@link #getNameSortKey()}. */
+    private volatile byte[] mNameSortKey;
+
     final int mSongId;
 
     final int mSongPos;
@@ -179,128 +175,13 @@ public abstract class AbstractMusic extends Item implements FilesystemTreeEntry
     }
 
     static Music build(final Collection<String> response) {
-        String album = null;
-        String artist = null;
-        String albumArtist = null;
-        String composer = null;
-        String fullPath = null;
-        int disc = UNDEFINED_INT;
-        long date = -1L;
-        String genre = null;
-        long time = -1L;
-        String title = null;
-        int totalTracks = UNDEFINED_INT;
-        int track = UNDEFINED_INT;
-        int songId = UNDEFINED_INT;
-        int songPos = UNDEFINED_INT;
-        String name = null;
+        final MusicBuilder builder = new MusicBuilder();
 
         for (final String[] pair : Tools.splitResponse(response)) {
-
-            switch (pair[KEY]) {
-                case "file":
-                    fullPath = pair[VALUE];
-                    if (!fullPath.isEmpty() && fullPath.contains("://")) {
-                        final int pos = fullPath.indexOf('#');
-                        if (pos > 1) {
-                            name = fullPath.substring(pos + 1, fullPath.length());
-                            fullPath = fullPath.substring(0, pos);
-                        }
-                    }
-                    break;
-                case "Album":
-                    album = pair[VALUE];
-                    break;
-                case "AlbumArtist":
-                    albumArtist = pair[VALUE];
-                    break;
-                case "Artist":
-                    artist = pair[VALUE];
-                    break;
-                case "Composer":
-                    composer = pair[VALUE];
-                    break;
-                case "Date":
-                    try {
-                        final Matcher matcher = DATE_DELIMITER.matcher(pair[VALUE]);
-                        date = Long.parseLong(matcher.replaceAll(""));
-                    } catch (final NumberFormatException e) {
-                        Log.warning(TAG, "Not a valid date.", e);
-                    }
-                    break;
-                case "Disc":
-                    final int discIndex = pair[VALUE].indexOf('/');
-
-                    try {
-                        if (discIndex == -1) {
-                            disc = Integer.parseInt(pair[VALUE]);
-                        } else {
-                            disc = Integer.parseInt(pair[VALUE].substring(0, discIndex));
-                        }
-                    } catch (final NumberFormatException e) {
-                        Log.warning(TAG, "Not a valid disc number.", e);
-                    }
-                    break;
-                case "Genre":
-                    genre = pair[VALUE];
-                    break;
-                case "Id":
-                    try {
-                        songId = Integer.parseInt(pair[VALUE]);
-                    } catch (final NumberFormatException e) {
-                        Log.error(TAG, "Not a valid song ID.", e);
-                    }
-                    break;
-                case "Name":
-                    /**
-                     * name may already be assigned to the stream name in file conditional
-                     */
-                    if (name == null) {
-                        name = pair[VALUE];
-                    }
-                    break;
-                case "Pos":
-                    try {
-                        songPos = Integer.parseInt(pair[VALUE]);
-                    } catch (final NumberFormatException e) {
-                        Log.error(TAG, "Not a valid song position.", e);
-                    }
-                    break;
-                case "Time":
-                    try {
-                        time = Long.parseLong(pair[VALUE]);
-                    } catch (final NumberFormatException e) {
-                        Log.error(TAG, "Not a valid time number.", e);
-                    }
-                    break;
-                case "Title":
-                    title = pair[VALUE];
-                    break;
-                case "Track":
-                    final int trackIndex = pair[VALUE].indexOf('/');
-
-                    try {
-                        if (trackIndex == -1) {
-                            track = Integer.parseInt(pair[VALUE]);
-                        } else {
-                            track = Integer.parseInt(pair[VALUE].substring(0, trackIndex));
-                            totalTracks = Integer.parseInt(pair[VALUE].substring(trackIndex + 1));
-                        }
-                    } catch (final NumberFormatException e) {
-                        Log.warning(TAG, "Not a valid track number.", e);
-                    }
-                    break;
-                default:
-                    /**
-                     * Ignore everything else, there are a lot of
-                     * uninteresting blocks the server might send.
-                     */
-                    break;
-            }
+            builder.onPair(pair[KEY], pair[VALUE]);
         }
 
-        return new Music(album, artist, albumArtist, composer, fullPath, disc, date, genre,
-                time, title, totalTracks, track, songId, songPos, name);
+        return builder.build();
     }
 
     /**
@@ -334,51 +215,35 @@ public abstract class AbstractMusic extends Item implements FilesystemTreeEntry
         return result;
     }
 
-    private static int compareString(final String lhs, final String rhs) {
-        final int result;
-
-        if (lhs == null && rhs == null) {
-            result = 0;
-        } else if (lhs == null) {
-            result = -1; // lhs < rhs
-        } else if (rhs == null) {
-            result = 1;  // lhs > rhs
-        } else {
-            result = lhs.compareToIgnoreCase(rhs);
-        }
-
-        return result;
-    }
-
     public static List<Music> getMusicFromList(final Collection<String> response,
             final boolean sort) {
-        final Collection<String> lineCache = new ArrayList<>(MUSIC_ATTRIBUTES);
         final int size = response.size();
-        final List<Music> result;
+        final MusicBuilder builder;
 
         /** This list can be pretty sizable, it's good to give a low estimate of it's size. */
         if (size > MUSIC_ATTRIBUTES) {
-            result = new ArrayList<>(size / MUSIC_ATTRIBUTES);
+            builder = new MusicBuilder(size / MUSIC_ATTRIBUTES);
         } else {
-            result = new ArrayList<>(0);
+            builder = new MusicBuilder();
         }
 
         for (final String line : response) {
-            if (line.startsWith("file: ")) {
-                if (!lineCache.isEmpty()) {
-                    result.add(build(lineCache));
-                    lineCache.clear();
-                }
+            final int delimiterIndex = line.indexOf(':');
+
+            if (delimiterIndex == -1) {
+                throw new InvalidResponseException("Failed to parse server response key for " +
+                        "line: " + line);
             }
-            lineCache.add(line);
-        }
 
-        if (!lineCache.isEmpty()) {
-            result.add(build(lineCache));
+            /** Skip ': ' */
+            builder.onPair(Tools.getResponseKey(line, delimiterIndex),
+                    line.substring(delimiterIndex + 2));
         }
+        builder.onEnd();
 
+        final List<Music> result = builder.getMusic();
         if (sort) {
-            Collections.sort(result);
+            ItemSorter.sort(result);
         }
 
         return result;
@@ -423,6 +288,33 @@ public abstract class AbstractMusic extends Item implements FilesystemTreeEntry
         return result;
     }
 
+    /**
+     * Builds the sort key of this track, the song ID, disc and track numbers followed by the
+     * title, name and full path keys, in the order of {@link #compareTo(Item)}.
+     *
+     * @param collator The collator comparing the words of the key.
+     * @return The sort key of this track.
+     */
+    @Override
+    byte[] buildSortKey(final Collator collator) {
+        final byte[] title = SortKeys.fieldKey(collator, getTitle());
+        final byte[] name = SortKeys.fieldKey(collator, mName);
+        final byte[] path = SortKeys.fieldKey(collator, mFullPath);
+        final byte[] key = new byte[SORT_KEY_TEXT_OFFSET + title.length + name.length +
+                path.length];
+        int offset = SORT_KEY_TEXT_OFFSET;
+
+        SortKeys.putInt(key, 0, mSongId);
+        SortKeys.putInt(key, SortKeys.INT_LENGTH, mDisc);
+        SortKeys.putInt(key, SortKeys.INT_LENGTH * 2, mTrack);
+        for (final byte[] field : new byte[][]{title, name, path}) {
+            System.arraycopy(field, 0, key, offset, field.length);
+            offset += field.length;
+        }
+
+        return key;
+    }
+
     /**
      * Defines a natural order to this object and another.
      *
@@ -438,37 +330,22 @@ public abstract class AbstractMusic extends Item implements FilesystemTreeEntry
         if (another instanceof AbstractMusic) {
             final AbstractMusic om = (AbstractMusic) another;
 
-            /** songId overrides every other sorting method. It's used for playlists/queue. */
-            compareResult = compareIntegers(true, mSongId, om.mSongId);
-
             if (withTrackNumber) {
-                if (compareResult == 0) {
-                    /** Order by the disc number. */
-                    compareResult = compareIntegers(true, mDisc, om.mDisc);
-                }
+                /** The key orders by song ID, disc, track, title, name and full path. */
+                compareResult = SortKeys.compare(getSortKey(), om.getSortKey());
+            } else {
+                /** songId overrides every other sorting method. It's used for playlists/queue. */
+                compareResult = compareIntegers(true, mSongId, om.mSongId);
 
                 if (compareResult == 0) {
-                    /** Order by track number. */
-                    compareResult = compareIntegers(true, mTrack, om.mTrack);
+                    /** Skip the disc and track number part of the keys. */
+                    compareResult = SortKeys.compare(getSortKey(), SORT_KEY_TEXT_OFFSET,
+                            om.getSortKey(), SORT_KEY_TEXT_OFFSET);
                 }
             }
-
-            if (compareResult == 0) {
-                /** Order by song title (getTitle() fallback on file names). */
-                compareResult = compareString(getTitle(), om.getTitle());
-            }
-
-            if (compareResult == 0) {
-                /** Order by name (this is helpful for streams). */
-                compareResult = compareString(mName, om.mName);
-            }
-
-            if (compareResult == 0) {
-                /** As a last resort, order by the full path. */
-                compareResult = compareString(mFullPath, om.mFullPath);
-            }
         } else {
-            compareResult = super.compareTo(another);
+            /** This key is not the Music one, order by the name like other items. */
+            compareResult = SortKeys.compare(getNameSortKey(), another.getNameSortKey());
         }
 
         return compareResult;
@@ -669,6 +546,24 @@ public abstract class AbstractMusic extends Item implements FilesystemTreeEntry
         return name;
     }
 
+    /**
+     * Returns the key of the {@link #sortText()} of this track, the key other items compare it
+     * by, rather than the track key.
+     *
+     * @return The name sort key of this track.
+     */
+    @Override
+    byte[] getNameSortKey() {
+        byte[] nameSortKey = mNameSortKey;
+
+        if (nameSortKey == null) {
+            nameSortKey = SortKeys.itemKey(Collator.getInstance(), sortText());
+            mNameSortKey = nameSortKey;
+        }
+
+        return nameSortKey;
+    }
+
     /**
      * Retrieves file's parent directory
      *
@@ -28,7 +28,7 @@
 package org.a0z.mpd.item;
 
 import java.text.Collator;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
 import java.util.MissingResourceException;
@@ -36,34 +36,56 @@ import java.util.ResourceBundle;
 
 public abstract class Item implements Comparable<Item> {
 
-    /*
-     * Merge item lists, for example received by album artist and artist
-     * requests. Sorted lists required!
+    /** The natural order key of this item, built once, see {@link #getSortKey(Collator)}. */
+    private volatile byte[] mSortKey;
+
+    /**
+     * Compares two items by their natural order keys. Tracks compare by their track key and
+     * other items by their name key, a track and another item both compare by their name key,
+     * see {@link #getNameSortKey()}.
+     *
+     * @param lhs The first item.
+     * @param rhs The second item.
+     * @return A negative integer, zero, or a positive integer as the first item is less than,
+     * equal to, or greater than the second.
+     */
+    static int compareSortKeys(final Item lhs, final Item rhs) {
+        final int result;
+
+        if (lhs instanceof AbstractMusic == rhs instanceof AbstractMusic) {
+            result = SortKeys.compare(lhs.getSortKey(), rhs.getSortKey());
+        } else {
+            result = SortKeys.compare(lhs.getNameSortKey(), rhs.getNameSortKey());
+        }
+
+        return result;
+    }
+
+    /**
+     * Merges item lists, for example received by album artist and artist requests, in linear
+     * time. The artists which are album artists too are only kept as album artists.
+     *
+     * @param albumArtists The album artist items, sorted.
+     * @param artists      The artist items, sorted.
+     * @param <T>          The type of items.
+     * @return A new sorted list of the merged items.
      */
     public static <T extends Item> List<T> merged(final List<T> albumArtists,
             final List<T> artists) {
-        int jStart = albumArtists.size() - 1;
-        // remove "" from albumArtists, because the Unknown
-        // AlbumArtist would fall back to an Artist, the "Unknown"
-        // Entry must come from the Artists.
-        for (int j = jStart; j >= 0; j--) { // album artists
-            if (albumArtists.get(j).getName().equals("")) {
-                albumArtists.remove(j);
-                jStart--;
+        final List<T> namedAlbumArtists = new ArrayList<>(albumArtists.size());
+
+        /**
+         * Remove "" from albumArtists, because the Unknown AlbumArtist would fall back to an
+         * Artist, the "Unknown" Entry must come from the Artists.
+         */
+        for (final T albumArtist : albumArtists) {
+            if (!"".equals(albumArtist.getName())) {
+                namedAlbumArtists.add(albumArtist);
             }
         }
-        for (int i = artists.size() - 1; i >= 0; i--) { // artists
-            for (int j = jStart; j >= 0; j--) { // album artists
-                if (albumArtists.get(j).doesNameExist(artists.get(i))) {
-                    jStart = j;
-                    artists.remove(i);
-                    break;
-                }
-            }
-        }
-        artists.addAll(albumArtists);
-        Collections.sort(artists);
-        return artists;
+
+        return ItemJoins.mergeSorted(ItemJoins.withoutNames(artists, namedAlbumArtists),
+                namedAlbumArtists);
     }
 
     /**
@@ -76,24 +98,18 @@ public abstract class Item implements Comparable<Item> {
      */
     @Override
     public int compareTo(final Item another) {
-        final int comparisonResult;
-        final String sorted = sortText();
-        final String anotherSorted = another.sortText();
-
-        // sort "" behind everything else
-        if (sorted == null || sorted.isEmpty()) {
-            if (anotherSorted == null || anotherSorted.isEmpty()) {
-                comparisonResult = 0;
-            } else {
-                comparisonResult = 1;
-            }
-        } else if (anotherSorted == null || anotherSorted.isEmpty()) {
-            comparisonResult = -1;
-        } else {
-            comparisonResult = Collator.getInstance().compare(sorted, anotherSorted);
-        }
+        return compareSortKeys(this, another);
+    }
 
-        return comparisonResult;
+    /**
+     * Builds the natural order key of this item, the key of the {@link #sortText()}, with
+     * empty names sorting behind everything else.
+     *
+     * @param collator The collator comparing the words of the key.
+     * @return The sort key of this item.
+     */
+    byte[] buildSortKey(final Collator collator) {
+        return SortKeys.itemKey(collator, sortText());
     }
 
     public boolean doesNameExist(final Item o) {
@@ -109,6 +125,60 @@ public abstract class Item implements Comparable<Item> {
 
     public abstract String getName();
 
+    /**
+     * Returns the identity of the name of this item, two items with equal, non null, name keys
+     * have the same name as defined by {@link #doesNameExist(Item)}.
+     *
+     * @return The name key of this item.
+     */
+    Object getNameKey() {
+        return getName();
+    }
+
+    /**
+     * Returns the natural order key of the {@link #sortText()} of this item, which orders it
+     * among items of another kind.
+     *
+     * @return The name sort key of this item.
+     */
+    byte[] getNameSortKey() {
+        return getSortKey();
+    }
+
+    /**
+     * Returns the natural order key of this item, building it with the default locale collator
+     * the first time.
+     *
+     * @return The sort key of this item.
+     */
+    final byte[] getSortKey() {
+        byte[] sortKey = mSortKey;
+
+        if (sortKey == null) {
+            sortKey = getSortKey(Collator.getInstance());
+        }
+
+        return sortKey;
+    }
+
+    /**
+     * Returns the natural order key of this item, building it the first time. Items only compare
+     * by these keys, which is much faster than comparing their names with a {@code Collator}.
+     *
+     * @param collator The collator building the key, if not built yet.
+     * @return The sort key of this item.
+     */
+    final byte[] getSortKey(final Collator collator) {
+        byte[] sortKey = mSortKey;
+
+        if (sortKey == null) {
+            sortKey = buildSortKey(collator);
+            mSortKey = sortKey;
+        }
+
+        return sortKey;
+    }
+
     public boolean isUnknown() {
         final String name = getName();
 
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd.item;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Utility class joining item lists by name in linear time, hashing the
+ * {@link Item#getNameKey()} of the items, or merging lists sorted by {@link ItemSorter}.
+ */
+public final class ItemJoins {
+
+    /**
+     * This is a utility class (static methods only), don't instantiate.
+     */
+    private ItemJoins() {
+        super();
+    }
+
+    /**
+     * Indexes items by name, two items have the same name if {@link Item#doesNameExist(Item)}.
+     *
+     * @param items The items to index.
+     * @param <T>   The type of items.
+     * @return The first item of each name, by name key.
+     */
+    public static <T extends Item> Map<Object, T> indexByName(final Collection<T> items) {
+        final Map<Object, T> index = new HashMap<>(items.size());
+
+        for (final T item : items) {
+            final Object nameKey = item.getNameKey();
+
+            if (!index.containsKey(nameKey)) {
+                index.put(nameKey, item);
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Merges two lists sorted in their natural order into a new sorted list.
+     *
+     * @param lhs The first sorted list, its items come first when equal.
+     * @param rhs The second sorted list.
+     * @param <T> The type of items.
+     * @return A new list holding the items of both lists, sorted.
+     */
+    public static <T extends Item> List<T> mergeSorted(final List<? extends T> lhs,
+            final List<? extends T> rhs) {
+        final int lhsSize = lhs.size();
+        final int rhsSize = rhs.size();
+        final List<T> merged = new ArrayList<>(lhsSize + rhsSize);
+        int left = 0;
+        int right = 0;
+
+        while (left < lhsSize && right < rhsSize) {
+            final T lhsItem = lhs.get(left);
+            final T rhsItem = rhs.get(right);
+
+            if (rhsItem.compareTo(lhsItem) < 0) {
+                merged.add(rhsItem);
+                right++;
+            } else {
+                merged.add(lhsItem);
+                left++;
+            }
+        }
+        merged.addAll(lhs.subList(left, lhsSize));
+        merged.addAll(rhs.subList(right, rhsSize));
+
+        return merged;
+    }
+
+    /**
+     * Returns the key of an item in the map of {@link #indexByName(Collection)}.
+     *
+     * @param item The item.
+     * @return The name key of the item.
+     */
+    public static Object nameKey(final Item item) {
+        return item.getNameKey();
+    }
+
+    /**
+     * Returns the items which have no name in common with any of the excluded items.
+     *
+     * @param items    The items to filter.
+     * @param excluded The items whose names are excluded.
+     * @param <T>      The type of items.
+     * @return A new list of the items of {@code items} with a name which does not exist in
+     * {@code excluded}, in order.
+     */
+    public static <T extends Item> List<T> withoutNames(final Collection<T> items,
+            final Collection<? extends Item> excluded) {
+        final Set<Object> excludedNames = new HashSet<>(excluded.size());
+        final List<T> result = new ArrayList<>(items.size());
+
+        for (final Item item : excluded) {
+            excludedNames.add(item.getNameKey());
+        }
+
+        for (final T item : items) {
+            if (!excludedNames.contains(item.getNameKey())) {
+                result.add(item);
+            }
+        }
+
+        return result;
+    }
+}
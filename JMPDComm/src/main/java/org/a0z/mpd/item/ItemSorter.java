@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd.item;
+
+import org.a0z.mpd.Log;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class sorts item lists by their natural order keys, which are built once per item rather
+ * than parsing both names on every comparison. Large lists are split in runs which are keyed and
+ * sorted by several threads, then merged.
+ */
+public final class ItemSorter {
+
+    /** Lists with at least this many items are sorted by several threads. */
+    static final int PARALLEL_THRESHOLD = 8192;
+
+    private static final boolean DEBUG = false;
+
+    /** Compares items by their sort keys, which must have been built beforehand. */
+    private static final Comparator<Item> KEY_ORDER = new Comparator<Item>() {
+        @Override
+        public int compare(final Item lhs, final Item rhs) {
+            return Item.compareSortKeys(lhs, rhs);
+        }
+    };
+
+    private static final String TAG = "ItemSorter";
+
+    /** The number of runs of a parallel sort, one for each processor. */
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    /** The lazily started sort threads, they time out when idle. */
+    private static ThreadPoolExecutor sExecutor;
+
+    /**
+     * This is a utility class (static methods only), don't instantiate.
+     */
+    private ItemSorter() {
+        super();
+    }
+
+    /**
+     * Waits for all tasks to complete.
+     *
+     * @param futures The tasks to wait for.
+     * @throws ExecutionException   If a task threw an exception.
+     * @throws InterruptedException If the current thread was interrupted while waiting.
+     */
+    private static void await(final Iterable<Future<?>> futures)
+            throws ExecutionException, InterruptedException {
+        for (final Future<?> future : futures) {
+            future.get();
+        }
+    }
+
+    /**
+     * Builds the sort keys of a range of items with a single collator.
+     *
+     * @param items The items.
+     * @param from  The index of the first item of the range.
+     * @param to    The index after the last item of the range.
+     */
+    private static void buildKeys(final Item[] items, final int from, final int to) {
+        final Collator collator = Collator.getInstance();
+
+        for (int i = from; i < to; i++) {
+            items[i].getSortKey(collator);
+        }
+    }
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (sExecutor == null) {
+            sExecutor = new ThreadPoolExecutor(THREADS, THREADS, 30L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, TAG);
+
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            sExecutor.allowCoreThreadTimeOut(true);
+        }
+
+        return sExecutor;
+    }
+
+    /**
+     * Merges two adjacent sorted ranges, the items of the left range come first when equal.
+     *
+     * @param source The array holding the ranges.
+     * @param target The array to merge the ranges to, at the same indices.
+     * @param from   The index of the first item of the left range.
+     * @param middle The index of the first item of the right range.
+     * @param to     The index after the last item of the right range.
+     */
+    private static void merge(final Item[] source, final Item[] target, final int from,
+            final int middle, final int to) {
+        int left = from;
+        int right = middle;
+
+        for (int i = from; i < to; i++) {
+            if (right == to || left < middle && KEY_ORDER.compare(source[right],
+                    source[left]) >= 0) {
+                target[i] = source[left];
+                left++;
+            } else {
+                target[i] = source[right];
+                right++;
+            }
+        }
+    }
+
+    /**
+     * Sorts a list of items in their natural order, like {@link Collections#sort(List)} but
+     * building each item sort key only once, and using several threads for large lists. This
+     * sort is stable.
+     *
+     * @param items The list to sort.
+     * @param <T>   The type of items.
+     */
+    public static <T extends Item> void sort(final List<T> items) {
+        final int size = items.size();
+        boolean isSorted = false;
+
+        if (size >= PARALLEL_THRESHOLD && THREADS > 1) {
+            try {
+                sortParallel(items);
+                isSorted = true;
+            } catch (final ExecutionException e) {
+                Log.error(TAG, "Parallel sort failed, sorting sequentially.", e);
+            } catch (final InterruptedException e) {
+                Log.error(TAG, "Interrupted during parallel sort, sorting sequentially.", e);
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (!isSorted) {
+            final Item[] array = items.toArray(new Item[size]);
+
+            buildKeys(array, 0, size);
+            Collections.sort(items, KEY_ORDER);
+        }
+    }
+
+    /**
+     * Sorts one run of items for each processor in parallel then merges the runs, pairs of runs
+     * being merged in parallel, until one is left.
+     *
+     * @param items The list to sort.
+     * @param <T>   The type of items.
+     * @throws ExecutionException   If a sort task threw an exception.
+     * @throws InterruptedException If the current thread was interrupted while waiting.
+     */
+    private static <T extends Item> void sortParallel(final List<T> items)
+            throws ExecutionException, InterruptedException {
+        final long startTime = System.nanoTime();
+        final ThreadPoolExecutor executor = getExecutor();
+        final int size = items.size();
+        final int[] bounds = new int[THREADS + 1];
+        final Collection<Future<?>> futures = new ArrayList<>(THREADS);
+        Item[] source = items.toArray(new Item[size]);
+        Item[] target = new Item[size];
+
+        for (int run = 0; run <= THREADS; run++) {
+            bounds[run] = (int) ((long) size * (long) run / (long) THREADS);
+        }
+
+        for (int run = 0; run < THREADS; run++) {
+            final Item[] array = source;
+            final int from = bounds[run];
+            final int to = bounds[run + 1];
+
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    buildKeys(array, from, to);
+                    Arrays.sort(array, from, to, KEY_ORDER);
+                }
+            }));
+        }
+        await(futures);
+
+        for (int width = 1; width < THREADS; width *= 2) {
+            futures.clear();
+
+            for (int run = 0; run < THREADS; run += width * 2) {
+                final Item[] mergeSource = source;
+                final Item[] mergeTarget = target;
+                final int from = bounds[run];
+                final int middle = bounds[Math.min(run + width, THREADS)];
+                final int to = bounds[Math.min(run + width * 2, THREADS)];
+
+                futures.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        merge(mergeSource, mergeTarget, from, middle, to);
+                    }
+                }));
+            }
+            await(futures);
+
+            final Item[] merged = target;
+            target = source;
+            source = merged;
+        }
+
+        final ListIterator<T> iterator = items.listIterator();
+        for (final Item item : source) {
+            iterator.next();
+            @SuppressWarnings("unchecked")
+            final T sorted = (T) item;
+            iterator.set(sorted);
+        }
+
+        if (DEBUG) {
+            Log.debug(TAG, "Sorted " + size + " items in " +
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + "ms.");
+        }
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package org.a0z.mpd.item;
+
+import org.a0z.mpd.Log;
+import org.a0z.mpd.connection.ResponseHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class builds {@link Music} items from a media server response, one key/value pair at a
+ * time. A new item begins with every {@code file} key. By default, built items are collected to
+ * a list; override {@link #onMusic(Music)} to process them as they are built instead, which
+ * allows responses of any size to be processed in constant memory. Tag values shared by many
+ * items, such as artist names, are pooled, so the items share one instance of each.
+ */
+public class MusicBuilder implements ResponseHandler {
+
+    /**
+     * The date response has it's own delimiter.
+     */
+    private static final Pattern DATE_DELIMITER = Pattern.compile("\\D+");
+
+    private static final String TAG = "MusicBuilder";
+
+    private static final int UNDEFINED_INT = -1;
+
+    /** The items built, if collected. */
+    private final List<Music> mMusic;
+
+    private String mAlbum;
+
+    private String mAlbumArtist;
+
+    private String mArtist;
+
+    private String mComposer;
+
+    private long mDate;
+
+    private int mDisc;
+
+    private String mFullPath;
+
+    private String mGenre;
+
+    /** Whether a pair has been received since the last item was built. */
+    private boolean mIsPending;
+
+    private String mName;
+
+    private int mSongId;
+
+    private int mSongPos;
+
+    private long mTime;
+
+    private String mTitle;
+
+    private int mTotalTracks;
+
+    private int mTrack;
+
+    /**
+     * Constructs a {@code MusicBuilder} which collects the built items.
+     */
+    public MusicBuilder() {
+        this(0);
+    }
+
+    /**
+     * Constructs a {@code MusicBuilder} which collects the built items.
+     *
+     * @param capacity The estimated number of items to be built.
+     */
+    public MusicBuilder(final int capacity) {
+        super();
+
+        mMusic = new ArrayList<>(capacity);
+        clear();
+    }
+
+    /**
+     * Builds a copy of a play queue item, moved to another position of the play queue.
+     *
+     * @param music   The play queue item.
+     * @param songPos The new position of the item in the play queue.
+     * @return The moved item.
+     */
+    public static Music build(final Music music, final int songPos) {
+        return new Music(music.mAlbum, music.mArtist, music.mAlbumArtist, music.mComposer,
+                music.mFullPath, music.mDisc, music.mDate, music.mGenre, music.mTime,
+                music.mTitle, music.mTotalTracks, music.mTrack, music.mSongId, songPos,
+                music.mName);
+    }
+
+    /**
+     * Builds the item from the pairs received since the last item was built.
+     *
+     * @return The built item.
+     */
+    Music build() {
+        final Music music = new Music(mAlbum, mArtist, mAlbumArtist, mComposer, mFullPath, mDisc,
+                mDate, mGenre, mTime, mTitle, mTotalTracks, mTrack, mSongId, mSongPos, mName);
+
+        clear();
+
+        return music;
+    }
+
+    /**
+     * Resets the item attributes.
+     */
+    private void clear() {
+        mAlbum = null;
+        mAlbumArtist = null;
+        mArtist = null;
+        mComposer = null;
+        mDate = -1L;
+        mDisc = UNDEFINED_INT;
+        mFullPath = null;
+        mGenre = null;
+        mIsPending = false;
+        mName = null;
+        mSongId = UNDEFINED_INT;
+        mSongPos = UNDEFINED_INT;
+        mTime = -1L;
+        mTitle = null;
+        mTotalTracks = UNDEFINED_INT;
+        mTrack = UNDEFINED_INT;
+    }
+
+    /**
+     * Retrieves the collected items.
+     *
+     * @return The items built, in response order, empty if {@link #onMusic(Music)} has been
+     * overridden.
+     */
+    public List<Music> getMusic() {
+        return mMusic;
+    }
+
+    @Override
+    public void onEnd() {
+        if (mIsPending) {
+            onMusic(build());
+        }
+    }
+
+    /**
+     * Called for every item built. By default, this adds the item to the collected items.
+     *
+     * @param music The item built.
+     */
+    protected void onMusic(final Music music) {
+        mMusic.add(music);
+    }
+
+    @Override
+    public void onPair(final String key, final String value) {
+        if (mIsPending && "file".equals(key)) {
+            onMusic(build());
+        }
+
+        mIsPending = true;
+        switch (key) {
+            case "file":
+                mFullPath = value;
+                if (!mFullPath.isEmpty() && mFullPath.contains("://")) {
+                    final int pos = mFullPath.indexOf('#');
+                    if (pos > 1) {
+                        mName = mFullPath.substring(pos + 1, mFullPath.length());
+                        mFullPath = mFullPath.substring(0, pos);
+                    }
+                }
+                break;
+            case "Album":
+                mAlbum = TagPool.intern(value);
+                break;
+            case "AlbumArtist":
+                mAlbumArtist = TagPool.intern(value);
+                break;
+            case "Artist":
+                mArtist = TagPool.intern(value);
+                break;
+            case "Composer":
+                mComposer = TagPool.intern(value);
+                break;
+            case "Date":
+                try {
+                    final Matcher matcher = DATE_DELIMITER.matcher(value);
+                    mDate = Long.parseLong(matcher.replaceAll(""));
+                } catch (final NumberFormatException e) {
+                    Log.warning(TAG, "Not a valid date.", e);
+                }
+                break;
+            case "Disc":
+                final int discIndex = value.indexOf('/');
+
+                try {
+                    if (discIndex == -1) {
+                        mDisc = Integer.parseInt(value);
+                    } else {
+                        mDisc = Integer.parseInt(value.substring(0, discIndex));
+                    }
+                } catch (final NumberFormatException e) {
+                    Log.warning(TAG, "Not a valid disc number.", e);
+                }
+                break;
+            case "Genre":
+                mGenre = TagPool.intern(value);
+                break;
+            case "Id":
+                try {
+                    mSongId = Integer.parseInt(value);
+                } catch (final NumberFormatException e) {
+                    Log.error(TAG, "Not a valid song ID.", e);
+                }
+                break;
+            case "Name":
+                /**
+                 * name may already be assigned to the stream name in file conditional
+                 */
+                if (mName == null) {
+                    mName = value;
+                }
+                break;
+            case "Pos":
+                try {
+                    mSongPos = Integer.parseInt(value);
+                } catch (final NumberFormatException e) {
+                    Log.error(TAG, "Not a valid song position.", e);
+                }
+                break;
+            case "Time":
+                try {
+                    mTime = Long.parseLong(value);
+                } catch (final NumberFormatException e) {
+                    Log.error(TAG, "Not a valid time number.", e);
+                }
+                break;
+            case "Title":
+                mTitle = value;
+                break;
+            case "Track":
+                final int trackIndex = value.indexOf('/');
+
+                try {
+                    if (trackIndex == -1) {
+                        mTrack = Integer.parseInt(value);
+                    } else {
+                        mTrack = Integer.parseInt(value.substring(0, trackIndex));
+                        mTotalTracks = Integer.parseInt(value.substring(trackIndex + 1));
+                    }
+                } catch (final NumberFormatException e) {
+                    Log.warning(TAG, "Not a valid track number.", e);
+                }
+                break;
+            default:
+                /**
+                 * Ignore everything else, there are a lot of
+                 * uninteresting blocks the server might send.
+                 */
+                break;
+        }
+    }
+
+    @Override
+    public void onStart() {
+        clear();
+        mMusic.clear();
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd.item;
+
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Utility class building natural order sort keys, byte arrays which compare, unsigned and byte by
+ * byte, like their source strings compare with
+ * {@link StringComparators#compareNatural(Collator, String, String)}.
+ *
+ * <p>A key is a sequence of segments followed by {@link #END}. A text segment is
+ * {@link #TEXT} and the escaped collation key of the text up to the next digit, terminated by
+ * {@link #END}. A number segment is {@link #NUMBER}, the count of significant digits and the
+ * significant digits, which orders numbers by value and before words. The counts of leading
+ * zeros of the numbers follow the key, as they only break ties.</p>
+ */
+final class SortKeys {
+
+    /** The key of an empty text, it sorts behind every other {@link #naturalKey} key. */
+    static final byte[] EMPTY = {(byte) 0xFF};
+
+    /** The length of an integer encoded by {@link #putInt(byte[], int, int)}. */
+    static final int INT_LENGTH = 4;
+
+    /** Terminates a key or a text segment, sorts before anything else. */
+    private static final byte END = 0;
+
+    /** Escapes {@link #END} and itself within the collation key of a text segment. */
+    private static final byte ESCAPE = 1;
+
+    /** Precedes the key of a field which is not null, see {@link #fieldKey}. */
+    private static final byte NOT_NULL = 1;
+
+    private static final byte NUMBER = 1;
+
+    private static final byte TEXT = 2;
+
+    /**
+     * This is a utility class (static methods only), don't instantiate.
+     */
+    private SortKeys() {
+        super();
+    }
+
+    /**
+     * Appends a byte to a key buffer, growing it as needed.
+     *
+     * @param key    The key buffer.
+     * @param length The length of the key so far.
+     * @param value  The byte to append.
+     * @return The key buffer, {@code key} or a larger copy of it.
+     */
+    private static byte[] append(final byte[] key, final int length, final int value) {
+        final byte[] result;
+
+        if (length == key.length) {
+            result = Arrays.copyOf(key, length * 2 + 16);
+        } else {
+            result = key;
+        }
+        result[length] = (byte) value;
+
+        return result;
+    }
+
+    /**
+     * Compares two keys as sequences of unsigned bytes.
+     *
+     * @param lhs The first key.
+     * @param rhs The second key.
+     * @return A negative integer, zero, or a positive integer as the first key is less than,
+     * equal to, or greater than the second.
+     */
+    static int compare(final byte[] lhs, final byte[] rhs) {
+        return compare(lhs, 0, rhs, 0);
+    }
+
+    /**
+     * Compares the tails of two keys as sequences of unsigned bytes.
+     *
+     * @param lhs       The first key.
+     * @param lhsOffset The index of the first byte of {@code lhs} to compare.
+     * @param rhs       The second key.
+     * @param rhsOffset The index of the first byte of {@code rhs} to compare.
+     * @return A negative integer, zero, or a positive integer as the first key is less than,
+     * equal to, or greater than the second.
+     */
+    static int compare(final byte[] lhs, final int lhsOffset, final byte[] rhs,
+            final int rhsOffset) {
+        final int lhsLength = lhs.length - lhsOffset;
+        final int rhsLength = rhs.length - rhsOffset;
+        final int length = Math.min(lhsLength, rhsLength);
+        int result = 0;
+
+        for (int i = 0; i < length && result == 0; i++) {
+            result = (lhs[lhsOffset + i] & 0xFF) - (rhs[rhsOffset + i] & 0xFF);
+        }
+
+        if (result == 0) {
+            result = lhsLength - rhsLength;
+        }
+
+        return result;
+    }
+
+    /**
+     * Builds the key of a field compared case insensitively, where null sorts before any text.
+     *
+     * @param collator The collator comparing the words of the field.
+     * @param text     The field value, may be null.
+     * @return The key of the field.
+     */
+    static byte[] fieldKey(final Collator collator, final String text) {
+        final byte[] key;
+
+        if (text == null) {
+            key = new byte[]{END};
+        } else {
+            final byte[] naturalKey = naturalKey(collator, text.toLowerCase(Locale.getDefault()));
+
+            key = new byte[naturalKey.length + 1];
+            key[0] = NOT_NULL;
+            System.arraycopy(naturalKey, 0, key, 1, naturalKey.length);
+        }
+
+        return key;
+    }
+
+    /**
+     * Builds the key of an item name, an empty or null name sorts behind all others.
+     *
+     * @param collator The collator comparing the words of the name.
+     * @param name     The name, usually {@link Item#sortText()}.
+     * @return The key of the name.
+     */
+    static byte[] itemKey(final Collator collator, final String name) {
+        final byte[] key;
+
+        if (name == null || name.isEmpty()) {
+            key = EMPTY;
+        } else {
+            key = naturalKey(collator, name);
+        }
+
+        return key;
+    }
+
+    /**
+     * Builds the natural order key of a text.
+     *
+     * @param collator The collator comparing the words of the text.
+     * @param text     The text.
+     * @return The key of the text.
+     */
+    static byte[] naturalKey(final Collator collator, final String text) {
+        final int textLength = text.length();
+        byte[] key = new byte[textLength * 3 + 4];
+        byte[] zeroCounts = new byte[0];
+        int length = 0;
+        int zeroCountsLength = 0;
+        int index = 0;
+
+        while (index < textLength) {
+            final int start = index;
+
+            if (Character.isDigit(text.charAt(index))) {
+                while (index < textLength && text.charAt(index) == '0') {
+                    index++;
+                }
+                final int significant = index;
+                while (index < textLength && Character.isDigit(text.charAt(index))) {
+                    index++;
+                }
+                final int digits = index - significant;
+                final int zeros = significant - start;
+
+                key = append(key, length++, NUMBER);
+                key = append(key, length++, digits >>> 8);
+                key = append(key, length++, digits);
+                for (int i = significant; i < index; i++) {
+                    key = append(key, length++, Character.digit(text.charAt(i), 10));
+                }
+                zeroCounts = append(zeroCounts, zeroCountsLength++, zeros >>> 8);
+                zeroCounts = append(zeroCounts, zeroCountsLength++, zeros);
+            } else {
+                do {
+                    index++;
+                } while (index < textLength && !Character.isDigit(text.charAt(index)));
+
+                key = append(key, length++, TEXT);
+                for (final byte b : collator.getCollationKey(text.substring(start, index))
+                        .toByteArray()) {
+                    if (b == END || b == ESCAPE) {
+                        key = append(key, length++, ESCAPE);
+                        key = append(key, length++, b + 1);
+                    } else {
+                        key = append(key, length++, b);
+                    }
+                }
+                key = append(key, length++, END);
+            }
+        }
+        key = append(key, length++, END);
+
+        /** Leading zeros only break ties, like in compareNatural(). */
+        final byte[] result = Arrays.copyOf(key, length + zeroCountsLength);
+        System.arraycopy(zeroCounts, 0, result, length, zeroCountsLength);
+
+        return result;
+    }
+
+    /**
+     * Encodes an integer so that the encodings compare like the integers.
+     *
+     * @param key    The key buffer, {@link #INT_LENGTH} bytes are written to it.
+     * @param offset The index to write the integer to.
+     * @param value  The integer.
+     */
+    static void putInt(final byte[] key, final int offset, final int value) {
+        final int flipped = value ^ Integer.MIN_VALUE;
+
+        key[offset] = (byte) (flipped >>> 24);
+        key[offset + 1] = (byte) (flipped >>> 16);
+        key[offset + 2] = (byte) (flipped >>> 8);
+        key[offset + 3] = (byte) flipped;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2004 Felipe Gustavo de Almeida
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * All Rights Reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice,this list of conditions and the following disclaimer.
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in the
+ *    documentation and/or other materials provided with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE AUTHOR AND CONTRIBUTORS ``AS IS'' AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE AUTHOR OR CONTRIBUTORS BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF
+ * THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.a0z.mpd.item;
+
+/**
+ * A bounded pool of tag values, such as artist or genre names. A large response repeats the same
+ * few thousand tag values over and over; pooling them has every {@link Music} item share one
+ * instance of each, so the duplicates are garbage as soon as they are parsed instead of being
+ * held for as long as the items are.
+ *
+ * <p>The pool is two-way set associative and lossy: a value missing from its set replaces the
+ * least recently pooled one, so the pool never holds more than {@link #POOL_SIZE} values and
+ * never needs clearing. It is not synchronized, as {@code String}s are immutable and a lost
+ * update only costs a duplicate.</p>
+ */
+final class TagPool {
+
+    /** The number of pooled values, this must be a power of two. */
+    private static final int POOL_SIZE = 8192;
+
+    /** The pooled values, sets are pairs of slots, the most recently pooled first. */
+    private static final String[] POOL = new String[POOL_SIZE];
+
+    private TagPool() {
+        super();
+    }
+
+    /**
+     * Retrieves the pooled instance of a tag value, pooling it if not pooled yet.
+     *
+     * @param value The tag value, may be null.
+     * @return The pooled instance equal to {@code value}, null if {@code value} is null.
+     */
+    static String intern(final String value) {
+        String result = value;
+
+        if (value != null) {
+            final int hash = value.hashCode();
+            final int index = (hash ^ hash >>> 16) & POOL_SIZE - 2;
+            final String first = POOL[index];
+
+            if (value.equals(first)) {
+                result = first;
+            } else {
+                final String second = POOL[index + 1];
+
+                if (value.equals(second)) {
+                    result = second;
+                } else {
+                    POOL[index + 1] = first;
+                    POOL[index] = value;
+                }
+            }
+        }
+
+        return result;
+    }
+}
@@ -42,6 +42,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.a0z.mpd.Tools.KEY;
 import static org.a0z.mpd.Tools.VALUE;
@@ -49,7 +51,9 @@ import static org.a0z.mpd.Tools.VALUE;
 /**
  * A class to manage the <A HREF="http://www.musicpd.org/doc/protocol/stickers.html">sticker</A>
  * subsystem of the <A HREF="http://www.musicpd.org/doc/protocol">MPD protocol</A>. This will query
- * the sticker database on the connected media server.
+ * the sticker database on the connected media server. Ratings are read from an index of every
+ * rating sticker, loaded with one command, updated in place upon the changes made through this
+ * class and kept until another client changes a sticker.
  */
 public class Sticker {
 
@@ -144,6 +148,15 @@ public class Sticker {
     /** The connection to the server. */
     private final MPDConnection mConnection;
 
+    /** Incremented upon every invalidation, so an index loaded meanwhile is not kept. */
+    private final AtomicInteger mIndexGeneration = new AtomicInteger();
+
+    /** The number of sticker changes sent by this client, not yet reported by the server. */
+    private final AtomicInteger mPendingChanges = new AtomicInteger();
+
+    /** The rating sticker values by track path, null until loaded. */
+    private volatile Map<String, String> mRatings;
+
     /**
      * The constructor to get a sticker manager.
      *
@@ -204,8 +217,8 @@ public class Sticker {
         onlyMusicSupported(entry);
 
         if (isAvailable()) {
-            mConnection.sendCommand(CMD_ACTION_DELETE, CMD_STICKER_TYPE_SONG, entry.getFullPath(),
-                    sticker);
+            sendChange(entry.getFullPath(), sticker, null, CMD_ACTION_DELETE,
+                    CMD_STICKER_TYPE_SONG, entry.getFullPath(), sticker);
         } else {
             Log.debug(TAG, STICKERS_NOT_AVAILABLE);
         }
@@ -227,25 +240,21 @@ public class Sticker {
 
         final Map<Music, Map<String, String>> foundStickers;
         if (isAvailable()) {
-            final List<String> response =
-                    mConnection.sendCommand(CMD_ACTION_FIND, entry.getFullPath(), name);
+            final List<String> response = mConnection.sendCommand(CMD_ACTION_FIND,
+                    CMD_STICKER_TYPE_SONG, entry.getFullPath(), name);
 
             /** Generate a map used to create the result. */
             final Map<String, Music> musicPair = getMusicPair(response);
             foundStickers = new HashMap<>(musicPair.size());
-            final Map<String, String> currentTrackStickers = new HashMap<>();
-            Music currentMusic = null;
+            Map<String, String> currentTrackStickers = null;
 
             for (final String[] sticker : Tools.splitResponse(response)) {
                 if (CMD_RESPONSE_FILE.equals(sticker[KEY])) {
-                    /** Clear the old map, start new! */
-                    if (!foundStickers.isEmpty()) {
-                        foundStickers.put(currentMusic, currentTrackStickers);
-                        currentTrackStickers.clear();
-                    }
-
-                    currentMusic = musicPair.get(sticker[VALUE]);
-                } else if (CMD_RESPONSE_STICKER.equals(sticker[KEY])) {
+                    /** Start a new map for every track. */
+                    currentTrackStickers = new HashMap<>();
+                    foundStickers.put(musicPair.get(sticker[VALUE]), currentTrackStickers);
+                } else if (CMD_RESPONSE_STICKER.equals(sticker[KEY]) &&
+                        currentTrackStickers != null) {
                     final int delimiterIndex = sticker[VALUE].indexOf('=');
                     final String stickerKey = sticker[VALUE].substring(0, delimiterIndex);
                     final String stickerValue = sticker[VALUE].substring(delimiterIndex + 1);
@@ -261,6 +270,40 @@ public class Sticker {
         return foundStickers;
     }
 
+    /**
+     * Searches the whole media server sticker database for a sticker, with one command.
+     *
+     * @param name The name to search the stickers for.
+     * @return A map of the sticker values by track path, empty if stickers are not available.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    public Map<String, String> findAll(final String name) throws IOException, MPDException {
+        final Map<String, String> foundStickers;
+
+        if (isAvailable()) {
+            final List<String> response = mConnection.sendCommand(CMD_ACTION_FIND,
+                    CMD_STICKER_TYPE_SONG, "", name);
+            final String prefix = name + '=';
+            String fullPath = null;
+
+            foundStickers = new HashMap<>(response.size() / 2);
+            for (final String[] sticker : Tools.splitResponse(response)) {
+                if (CMD_RESPONSE_FILE.equals(sticker[KEY])) {
+                    fullPath = sticker[VALUE];
+                } else if (CMD_RESPONSE_STICKER.equals(sticker[KEY]) && fullPath != null &&
+                        sticker[VALUE].startsWith(prefix)) {
+                    foundStickers.put(fullPath, sticker[VALUE].substring(prefix.length()));
+                }
+            }
+        } else {
+            Log.debug(TAG, STICKERS_NOT_AVAILABLE);
+            foundStickers = Collections.emptyMap();
+        }
+
+        return foundStickers;
+    }
+
     /**
      * Reads the sticker value for this entry.
      *
@@ -324,14 +367,16 @@ public class Sticker {
     }
 
     /**
-     * Retrieves rating of a entry.
+     * Retrieves rating of a entry, from the rating index.
      *
      * @return rating of entry.
      * @throws IOException  Thrown upon a communication error with the server.
      * @throws MPDException Thrown if an error occurs as a result of command execution.
      */
     public int getRating(final FilesystemTreeEntry entry) throws IOException, MPDException {
-        final String rating = get(entry, RATING_STICKER);
+        onlyMusicSupported(entry);
+
+        final String rating = getRatings().get(entry.getFullPath());
         int resultRating;
 
         try {
@@ -352,6 +397,40 @@ public class Sticker {
         return resultRating;
     }
 
+    /**
+     * Retrieves the rating index, loading it if it was invalidated.
+     *
+     * @return The rating sticker values by track path.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    private Map<String, String> getRatings() throws IOException, MPDException {
+        Map<String, String> ratings = mRatings;
+
+        if (ratings == null) {
+            final int generation = mIndexGeneration.get();
+
+            ratings = new ConcurrentHashMap<>(findAll(RATING_STICKER));
+
+            /** Keep the index unless a sticker changed while it was loaded. */
+            if (mIndexGeneration.get() == generation) {
+                mRatings = ratings;
+            }
+        }
+
+        return ratings;
+    }
+
+    /**
+     * Drops the rating index, which is loaded again once a rating is next retrieved. This is
+     * called upon sticker changes made by other clients, and upon reconnection.
+     */
+    public void invalidateIndex() {
+        mIndexGeneration.incrementAndGet();
+        mPendingChanges.set(0);
+        mRatings = null;
+    }
+
     /**
      * Checks to see if stickers are available on the current media server.
      *
@@ -407,6 +486,54 @@ public class Sticker {
         return stickers;
     }
 
+    /**
+     * Handles a sticker change reported by the media server. The changes made through this class
+     * are already applied to the rating index, which is only dropped if no such change is
+     * pending. The server reports the changes made meanwhile together, so a change made by
+     * another client at the same time as one of ours is only picked up upon the next drop.
+     */
+    public void onStickerChanged() {
+        if (mPendingChanges.getAndSet(0) <= 0) {
+            invalidateIndex();
+        }
+    }
+
+    /**
+     * Sends a sticker change, then applies it to the rating index. The change is counted as
+     * pending before it is sent, as the server may report it before the response is read.
+     *
+     * @param fullPath The path of the track the sticker belongs to.
+     * @param sticker  The changed sticker key, null if every sticker of the track is deleted.
+     * @param value    The new sticker value, null if the sticker is deleted.
+     * @param command  The sticker command.
+     * @param args     The sticker command arguments.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    private void sendChange(final String fullPath, final String sticker, final String value,
+            final String command, final String... args) throws IOException, MPDException {
+        mPendingChanges.incrementAndGet();
+        try {
+            mConnection.sendCommand(command, args);
+        } catch (final IOException | MPDException e) {
+            mPendingChanges.decrementAndGet();
+            throw e;
+        }
+
+        if (sticker == null || RATING_STICKER.equals(sticker)) {
+            final Map<String, String> ratings = mRatings;
+
+            if (ratings == null) {
+                /** An index being loaded may predate this change, do not keep it. */
+                mIndexGeneration.incrementAndGet();
+            } else if (value == null) {
+                ratings.remove(fullPath);
+            } else {
+                ratings.put(fullPath, value);
+            }
+        }
+    }
+
     /**
      * Add a sticker key-value pair.
      *
@@ -421,8 +548,8 @@ public class Sticker {
         onlyMusicSupported(entry);
 
         if (isAvailable()) {
-            mConnection.sendCommand(CMD_ACTION_SET, CMD_STICKER_TYPE_SONG, entry.getFullPath(),
-                    sticker, value);
+            sendChange(entry.getFullPath(), sticker, value, CMD_ACTION_SET, CMD_STICKER_TYPE_SONG,
+                    entry.getFullPath(), sticker, value);
         } else {
             Log.debug(TAG, STICKERS_NOT_AVAILABLE);
         }
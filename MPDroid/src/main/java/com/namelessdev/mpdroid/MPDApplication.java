@@ -175,6 +175,7 @@ public class MPDApplication extends Application implements
                         MPDStatusMonitor.IDLE_PLAYER,
                         MPDStatusMonitor.IDLE_PLAYLIST,
                         MPDStatusMonitor.IDLE_STICKER,
+                        MPDStatusMonitor.IDLE_STORED_PLAYLIST,
                         MPDStatusMonitor.IDLE_UPDATE
                 });
             }
@@ -23,6 +23,7 @@ import com.namelessdev.mpdroid.library.SimpleLibraryActivity;
 import com.namelessdev.mpdroid.tools.Tools;
 import com.namelessdev.mpdroid.views.SearchResultDataBinder;
 
+import org.a0z.mpd.SearchIndex;
 import org.a0z.mpd.exception.MPDException;
 import org.a0z.mpd.item.Album;
 import org.a0z.mpd.item.Artist;
@@ -56,6 +57,9 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class SearchActivity extends MPDroidActivity implements OnMenuItemClickListener,
         AsyncExecListener, OnItemClickListener, ActionBar.TabListener {
@@ -79,6 +83,15 @@ public class SearchActivity extends MPDroidActivity implements OnMenuItemClickLi
 
     private static final String TAG = "SearchActivity";
 
+    /**
+     * Refreshes the local search index, which walks the database, on its own thread rather than
+     * the media server worker thread, so it does not delay the other jobs.
+     */
+    private static final ExecutorService sIndexExecutor = Executors.newSingleThreadExecutor();
+
+    /** Whether the local search index is being refreshed. */
+    private static final AtomicBoolean sIsIndexing = new AtomicBoolean();
+
     private final ArrayList<Album> mAlbumResults;
 
     private final ArrayList<Artist> mArtistResults;
@@ -132,6 +145,28 @@ public class SearchActivity extends MPDroidActivity implements OnMenuItemClickLi
         mSongResults = new ArrayList<>();
     }
 
+    /**
+     * Checks whether a result value matches the search keywords: the way the local search index
+     * matches if the results come from it, as a substring as the media server does otherwise.
+     *
+     * @param value     The lower cased result value.
+     * @param search    The lower cased search keywords.
+     * @param isIndexed Whether the results come from the local search index.
+     * @return True if the value matches the search keywords, false otherwise.
+     */
+    private static boolean matches(final String value, final String search,
+            final boolean isIndexed) {
+        final boolean matches;
+
+        if (isIndexed) {
+            matches = SearchIndex.matches(value, search);
+        } else {
+            matches = value.contains(search);
+        }
+
+        return matches;
+    }
+
     protected void add(final Artist artist, final Album album, final boolean replace,
             final boolean play) {
         String note = null;
@@ -186,14 +221,23 @@ public class SearchActivity extends MPDroidActivity implements OnMenuItemClickLi
 
     protected void asyncUpdate() {
         final String finalSearch = mSearchKeywords.toLowerCase();
+        final SearchIndex searchIndex = mApp.oMPDAsyncHelper.oMPD.getSearchIndex();
+        final boolean isIndexed = searchIndex.isReady();
 
         List<Music> arrayMusic = null;
 
-        try {
-            arrayMusic = mApp.oMPDAsyncHelper.oMPD.search("any", finalSearch);
-        } catch (final IOException | MPDException e) {
-            Log.e(TAG, "MPD search failure.", e);
+        if (isIndexed) {
+            arrayMusic = searchIndex.search(finalSearch, Integer.MAX_VALUE);
+        } else {
+            try {
+                arrayMusic = mApp.oMPDAsyncHelper.oMPD.search("any", finalSearch);
+            } catch (final IOException | MPDException e) {
+                Log.e(TAG, "MPD search failure.", e);
 
+            }
+        }
+        if (!searchIndex.isCurrent()) {
+            refreshSearchIndex(searchIndex);
         }
 
         if (arrayMusic == null) {
@@ -207,7 +251,8 @@ public class SearchActivity extends MPDroidActivity implements OnMenuItemClickLi
         String tmpValue;
         boolean valueFound;
         for (final Music music : arrayMusic) {
-            if (music.getTitle() != null && music.getTitle().toLowerCase().contains(finalSearch)) {
+            if (music.getTitle() != null &&
+                    matches(music.getTitle().toLowerCase(), finalSearch, isIndexed)) {
                 mSongResults.add(music);
             }
             valueFound = false;
@@ -219,7 +264,7 @@ public class SearchActivity extends MPDroidActivity implements OnMenuItemClickLi
                 final String name = artist.getName();
                 if (name != null) {
                     tmpValue = name.toLowerCase();
-                    if (tmpValue.contains(finalSearch)) {
+                    if (matches(tmpValue, finalSearch, isIndexed)) {
                         for (final Artist artistItem : mArtistResults) {
                             final String artistItemName = artistItem.getName();
                             if (artistItemName != null &&
@@ -240,7 +285,7 @@ public class SearchActivity extends MPDroidActivity implements OnMenuItemClickLi
                 final String albumName = album.getName();
                 if (albumName != null) {
                     tmpValue = albumName.toLowerCase();
-                    if (tmpValue.contains(finalSearch)) {
+                    if (matches(tmpValue, finalSearch, isIndexed)) {
                         for (final Album albumItem : mAlbumResults) {
                             final String albumItemName = albumItem.getName();
                             if (albumItemName.equalsIgnoreCase(tmpValue)) {
@@ -257,7 +302,10 @@ public class SearchActivity extends MPDroidActivity implements OnMenuItemClickLi
 
         Collections.sort(mArtistResults);
         Collections.sort(mAlbumResults);
-        Collections.sort(mSongResults, Music.COMPARE_WITHOUT_TRACK_NUMBER);
+        if (!isIndexed) {
+            /** The search index results are ranked. */
+            Collections.sort(mSongResults, Music.COMPARE_WITHOUT_TRACK_NUMBER);
+        }
 
         runOnUiThread(new Runnable() {
             @Override
@@ -520,6 +568,29 @@ public class SearchActivity extends MPDroidActivity implements OnMenuItemClickLi
     public void onTabUnselected(final ActionBar.Tab tab, final FragmentTransaction ft) {
     }
 
+    /**
+     * Builds or updates the local search index in the background, so the following searches do
+     * not need a media server round trip.
+     *
+     * @param searchIndex The search index to refresh.
+     */
+    private void refreshSearchIndex(final SearchIndex searchIndex) {
+        if (sIsIndexing.compareAndSet(false, true)) {
+            sIndexExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        searchIndex.refresh(mApp.oMPDAsyncHelper.oMPD);
+                    } catch (final IOException | MPDException e) {
+                        Log.e(TAG, "Failed to refresh the search index.", e);
+                    } finally {
+                        sIsIndexing.set(false);
+                    }
+                }
+            });
+        }
+    }
+
     private void setContextForObject(final Object object) {
         if (object instanceof Music) {
             mAddString = R.string.addSong;
@@ -16,7 +16,6 @@
 
 package com.namelessdev.mpdroid.cover;
 
-import com.namelessdev.mpdroid.MPDApplication;
 import com.namelessdev.mpdroid.helpers.AlbumInfo;
 import com.namelessdev.mpdroid.helpers.CoverManager;
 
@@ -28,80 +27,34 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 
-import static com.namelessdev.mpdroid.helpers.CoverManager.getCoverFileName;
-
+/**
+ * The cover retriever of the on-disk cover cache, see {@link CoverDiskCache}.
+ */
 public class CachedCover implements ICoverRetriever {
 
-    private static final String FOLDER_SUFFIX = "/covers/";
-
     private static final String TAG = "CachedCover";
 
-    private final MPDApplication mApp = MPDApplication.getInstance();
+    private final CoverDiskCache mCache = CoverDiskCache.getInstance();
 
     public void clear() {
-        delete(null);
-    }
-
-    public void delete(final AlbumInfo albumInfo) {
-        final File[] files = getAllCachedCoverFiles();
-
-        if (files != null) {
-            for (final File file : files) {
-                // No need to take care of subfolders, there won't be any.
-                // (Or at least any that MPDroid cares about)
-                if (albumInfo != null && getCoverFileName(albumInfo).equals(file.getName())) {
-                    Log.d(TAG, "Deleting cover : " + file.getName());
-                }
-                if (albumInfo == null || getCoverFileName(albumInfo).equals(file.getName())) {
-                    file.delete();
-                }
-            }
-        }
-    }
-
-    public String getAbsoluteCoverFolderPath() {
-        final File cacheDir = mApp.getExternalCacheDir();
-        if (cacheDir == null) {
-            return null;
+        if (mCache != null) {
+            mCache.clear();
         }
-        return cacheDir.getAbsolutePath() + FOLDER_SUFFIX;
     }
 
-    public String getAbsolutePathForSong(final AlbumInfo albumInfo) {
-        final File cacheDir = mApp.getExternalCacheDir();
-        if (cacheDir == null) {
-            return null;
-        }
-        return getAbsoluteCoverFolderPath() + getCoverFileName(albumInfo);
-    }
-
-    /**
-     * Just as the name says, gets a list of all cached cover files.
-     *
-     * @return A array of cached cover files.
-     */
-    private File[] getAllCachedCoverFiles() {
-        final String cacheFolderPath = getAbsoluteCoverFolderPath();
-        File[] result = null;
-
-        if (cacheFolderPath != null) {
-            final File cacheFolder = new File(cacheFolderPath);
-            if (cacheFolder.exists()) {
-                result = cacheFolder.listFiles();
-            }
+    public void delete(final AlbumInfo albumInfo) {
+        if (albumInfo == null) {
+            clear();
+        } else if (mCache != null) {
+            mCache.remove(albumInfo.getKey());
         }
-
-        return result;
     }
 
     public long getCacheUsage() {
         long size = 0L;
-        final File[] files = getAllCachedCoverFiles();
 
-        if (files != null) {
-            for (final File file : files) {
-                size += file.length();
-            }
+        if (mCache != null) {
+            size = mCache.getSize();
         }
 
         return size;
@@ -111,10 +64,10 @@ public class CachedCover implements ICoverRetriever {
     public String[] getCoverUrl(final AlbumInfo albumInfo) throws Exception {
         final String storageState = Environment.getExternalStorageState();
         // If there is no external storage available, don't bother
-        if (Environment.MEDIA_MOUNTED_READ_ONLY.equals(storageState)
-                || Environment.MEDIA_MOUNTED.equals(storageState)) {
-            final String url = getAbsolutePathForSong(albumInfo);
-            if (new File(url).exists()) {
+        if (mCache != null && (Environment.MEDIA_MOUNTED_READ_ONLY.equals(storageState)
+                || Environment.MEDIA_MOUNTED.equals(storageState))) {
+            final String url = mCache.getCoverPath(albumInfo.getKey());
+            if (url != null) {
                 return new String[]{
                         url
                 };
@@ -139,11 +92,19 @@ public class CachedCover implements ICoverRetriever {
             Log.e(TAG, "No writable external storage, not saving cover to cache");
             return;
         }
+        if (mCache == null) {
+            return;
+        }
+        final String key = albumInfo.getKey();
+        final File temporary = mCache.beginWrite(key);
+        if (temporary == null) {
+            return;
+        }
         FileOutputStream out = null;
+        boolean success = false;
         try {
-            new File(getAbsoluteCoverFolderPath()).mkdirs();
-            out = new FileOutputStream(getAbsolutePathForSong(albumInfo));
-            cover.compress(Bitmap.CompressFormat.JPEG, 95, out);
+            out = new FileOutputStream(temporary);
+            success = cover.compress(Bitmap.CompressFormat.JPEG, 95, out);
         } catch (final Exception e) {
             if (CoverManager.DEBUG) {
                 Log.e(TAG, "Cache cover write failure.", e);
@@ -154,8 +115,10 @@ public class CachedCover implements ICoverRetriever {
                     out.close();
                 } catch (final IOException e) {
                     Log.e(TAG, "Cannot close cover stream.", e);
+                    success = false;
                 }
             }
+            mCache.commitWrite(key, temporary, success);
         }
     }
 
@@ -0,0 +1,652 @@
+/*
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.namelessdev.mpdroid.cover;
+
+import com.namelessdev.mpdroid.MPDApplication;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The on-disk cover cache, bounded by a byte budget and evicting the least recently used covers
+ * first. The cache index is kept in memory and persisted in an append-only journal, which is
+ * replayed on first use, so the cover folder is never listed past the first start. Covers are
+ * written to a temporary file and renamed in place once complete, a cover file is therefore
+ * either absent or whole.
+ *
+ * <pre>
+ * header:  MAGIC, then VERSION, one per line
+ * records: CLEAN key size    a cover file of this size has been written
+ *          DIRTY key         a cover file is being written
+ *          READ key          a cover file has been read
+ *          REMOVE key        a cover file and its URL have been removed
+ *          URL key url       the URL the cover was downloaded from
+ * </pre>
+ *
+ * Keys are album keys, they never contain whitespace. The journal is compacted once the
+ * redundant records outnumber the live ones.
+ */
+public final class CoverDiskCache {
+
+    /** The default cache budget, in bytes. */
+    public static final long DEFAULT_MAX_SIZE = 128L * 1024L * 1024L;
+
+    private static final String CLEAN = "CLEAN";
+
+    private static final String COVER_SUFFIX = ".jpg";
+
+    private static final boolean DEBUG = false;
+
+    private static final String DIRTY = "DIRTY";
+
+    private static final String FOLDER_SUFFIX = "/covers/";
+
+    private static final String JOURNAL_FILE_NAME = "covers.journal";
+
+    private static final String MAGIC = "MPDroid cover journal";
+
+    /** The number of redundant records tolerated before the journal is compacted. */
+    private static final int MIN_REDUNDANT_RECORDS = 2000;
+
+    private static final String READ = "READ";
+
+    private static final String REMOVE = "REMOVE";
+
+    private static final String TAG = "CoverDiskCache";
+
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private static final String URL = "URL";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** The current journal format version, increment upon any format change. */
+    private static final String VERSION = "1";
+
+    private static CoverDiskCache sInstance = null;
+
+    private final File mDirectory;
+
+    /** The cover file sizes, by album key, in access order. */
+    private final LinkedHashMap<String, Long> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final File mJournalFile;
+
+    private final long mMaxSize;
+
+    /** The album keys of the cover files being written. */
+    private final Set<String> mPendingWrites = new HashSet<>();
+
+    /** The cover URLs, by album key. */
+    private final Map<String, String> mUrls = new HashMap<>();
+
+    private Writer mJournal = null;
+
+    private boolean mOpen = false;
+
+    private int mRedundantRecords = 0;
+
+    private long mSize = 0L;
+
+    CoverDiskCache(final File directory, final long maxSize) {
+        super();
+
+        mDirectory = directory;
+        mJournalFile = new File(directory, JOURNAL_FILE_NAME);
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Gets the cover cache of the external cache folder.
+     *
+     * @return The cover cache, null if the external cache folder is not available.
+     */
+    public static synchronized CoverDiskCache getInstance() {
+        if (sInstance == null) {
+            final File cacheDir = MPDApplication.getInstance().getExternalCacheDir();
+
+            if (cacheDir != null) {
+                sInstance = new CoverDiskCache(new File(cacheDir.getAbsolutePath()
+                        + FOLDER_SUFFIX), DEFAULT_MAX_SIZE);
+            }
+        }
+
+        return sInstance;
+    }
+
+    private static boolean isValidKey(final String key) {
+        boolean isValid = key != null && !key.isEmpty();
+
+        if (isValid) {
+            for (int i = 0; i < key.length(); i++) {
+                if (Character.isWhitespace(key.charAt(i))) {
+                    isValid = false;
+                    break;
+                }
+            }
+        }
+
+        return isValid;
+    }
+
+    /**
+     * Adopts the cover files of a cover folder without a journal, oldest first, and removes
+     * leftover temporary files. This is only needed once, when upgrading from an unindexed
+     * cover folder.
+     */
+    private void adoptCoverFiles() {
+        final File[] files = mDirectory.listFiles();
+
+        if (files != null) {
+            final Map<File, Long> lastModified = new HashMap<>(files.length);
+
+            /** Each lastModified() is a file system call, read them once, not on every compare. */
+            for (final File file : files) {
+                lastModified.put(file, Long.valueOf(file.lastModified()));
+            }
+
+            Arrays.sort(files, new Comparator<File>() {
+                @Override
+                public int compare(final File lhs, final File rhs) {
+                    final long lhsModified = lastModified.get(lhs).longValue();
+                    final long rhsModified = lastModified.get(rhs).longValue();
+
+                    return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+                }
+            });
+
+            for (final File file : files) {
+                final String name = file.getName();
+
+                if (name.endsWith(TEMPORARY_SUFFIX)) {
+                    file.delete();
+                } else if (name.endsWith(COVER_SUFFIX)) {
+                    final String key =
+                            name.substring(0, name.length() - COVER_SUFFIX.length());
+
+                    if (isValidKey(key)) {
+                        final long size = file.length();
+
+                        mEntries.put(key, Long.valueOf(size));
+                        mSize += size;
+                    }
+                }
+            }
+        }
+
+        if (DEBUG) {
+            Log.d(TAG, "Adopted " + mEntries.size() + " cover files, " + mSize + " bytes.");
+        }
+    }
+
+    private void appendRecord(final String record, final String key, final String value) {
+        if (mJournal != null) {
+            try {
+                mJournal.write(record);
+                mJournal.write(' ');
+                mJournal.write(key);
+                if (value != null) {
+                    mJournal.write(' ');
+                    mJournal.write(value);
+                }
+                mJournal.write('\n');
+                mJournal.flush();
+                mRedundantRecords++;
+            } catch (final IOException e) {
+                Log.e(TAG, "Failed to append to the cover journal.", e);
+                closeJournal();
+            }
+        }
+    }
+
+    /**
+     * Starts writing a cover file. The cover has to be written to the returned temporary file,
+     * then committed with {@link #commitWrite(String, File, boolean)}.
+     *
+     * @param key The album key of the cover.
+     * @return The temporary file to write the cover to, null if the cache is unavailable or if
+     * the cover is already being written.
+     */
+    public synchronized File beginWrite(final String key) {
+        File temporary = null;
+
+        if (isValidKey(key) && open() && mPendingWrites.add(key)) {
+            appendRecord(DIRTY, key, null);
+            temporary = new File(mDirectory, key + COVER_SUFFIX + TEMPORARY_SUFFIX);
+        }
+
+        return temporary;
+    }
+
+    /**
+     * Removes every file from the cover folder, including those unknown to the cache, and starts
+     * a new journal.
+     */
+    public synchronized void clear() {
+        closeJournal();
+
+        final File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                if (!file.delete()) {
+                    Log.w(TAG, "Failed to delete " + file + '.');
+                }
+            }
+        }
+
+        mEntries.clear();
+        mUrls.clear();
+        mSize = 0L;
+        mOpen = false;
+        open();
+    }
+
+    private void closeJournal() {
+        if (mJournal != null) {
+            try {
+                mJournal.close();
+            } catch (final IOException e) {
+                Log.e(TAG, "Failed to close the cover journal.", e);
+            }
+            mJournal = null;
+        }
+    }
+
+    /**
+     * Completes a cover file write started with {@link #beginWrite(String)}. The cover file is
+     * renamed in place and recorded if the write succeeded, discarded otherwise. Least recently
+     * used covers are then evicted until the cache fits its budget.
+     *
+     * @param key       The album key of the cover.
+     * @param temporary The temporary file returned by {@link #beginWrite(String)}.
+     * @param success   Whether the temporary file has been completely written.
+     */
+    public synchronized void commitWrite(final String key, final File temporary,
+            final boolean success) {
+        if (mPendingWrites.remove(key)) {
+            final Long previousSize = mEntries.get(key);
+
+            final File coverFile = getCoverFile(key);
+
+            if (success && temporary.renameTo(coverFile)) {
+                final long size = coverFile.length();
+
+                if (previousSize != null) {
+                    mSize -= previousSize.longValue();
+                }
+                mEntries.put(key, Long.valueOf(size));
+                mSize += size;
+                appendRecord(CLEAN, key, Long.toString(size));
+                trimToSize();
+            } else {
+                Log.w(TAG, "Failed to write the cover file for " + key + '.');
+                temporary.delete();
+
+                /** Resolve the DIRTY record, the previous cover file is left untouched. */
+                if (previousSize == null) {
+                    appendRecord(REMOVE, key, null);
+                } else {
+                    appendRecord(CLEAN, key, previousSize.toString());
+                }
+            }
+
+            compactIfNeeded();
+        }
+    }
+
+    private void compactIfNeeded() {
+        if (mRedundantRecords >= MIN_REDUNDANT_RECORDS
+                && mRedundantRecords >= mEntries.size() + mUrls.size()) {
+            closeJournal();
+            writeJournal();
+        }
+    }
+
+    private File getCoverFile(final String key) {
+        return new File(mDirectory, key + COVER_SUFFIX);
+    }
+
+    /**
+     * Gets the cover file of an album and marks it as the most recently used.
+     *
+     * @param key The album key of the cover.
+     * @return The absolute path to the cover file, null if the cover is not in cache.
+     */
+    public synchronized String getCoverPath(final String key) {
+        String path = null;
+
+        if (open() && mEntries.get(key) != null) {
+            appendRecord(READ, key, null);
+            path = getCoverFile(key).getAbsolutePath();
+            compactIfNeeded();
+        }
+
+        return path;
+    }
+
+    /**
+     * Gets the URL a cover was downloaded from.
+     *
+     * @param key The album key of the cover.
+     * @return The cover URL, null if none has been recorded.
+     */
+    public synchronized String getCoverUrl(final String key) {
+        String url = null;
+
+        if (open()) {
+            url = mUrls.get(key);
+        }
+
+        return url;
+    }
+
+    /**
+     * Gets the total size of the cached cover files.
+     *
+     * @return The cache usage, in bytes.
+     */
+    public synchronized long getSize() {
+        open();
+        return mSize;
+    }
+
+    /**
+     * Opens the cache, if not open yet. As this replays the journal, or indexes the cover folder
+     * on the first start, this is best called off the UI thread before the cache is used.
+     *
+     * @return True if the cache is usable, false otherwise.
+     */
+    public synchronized boolean isAvailable() {
+        return open();
+    }
+
+    /**
+     * Opens the cache, replaying the journal if one exists or indexing the cover folder
+     * otherwise.
+     *
+     * @return True if the cache is usable, false otherwise.
+     */
+    private boolean open() {
+        if (!mOpen) {
+            if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+                Log.w(TAG, "Cover folder unavailable: " + mDirectory);
+            } else {
+                if (!readJournal()) {
+                    mEntries.clear();
+                    mUrls.clear();
+                    mSize = 0L;
+                    adoptCoverFiles();
+                    trimToSize();
+                    writeJournal();
+                } else {
+                    openJournal();
+                    compactIfNeeded();
+                }
+                mOpen = true;
+            }
+        }
+
+        return mOpen;
+    }
+
+    private void openJournal() {
+        try {
+            mJournal = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(mJournalFile, true), UTF_8));
+        } catch (final IOException e) {
+            Log.e(TAG, "Failed to open the cover journal.", e);
+        }
+    }
+
+    /**
+     * Records the URL a cover was downloaded from.
+     *
+     * @param key The album key of the cover.
+     * @param url The cover URL.
+     */
+    public synchronized void putCoverUrl(final String key, final String url) {
+        if (isValidKey(key) && url != null && url.indexOf('\n') == -1 && open()
+                && !url.equals(mUrls.put(key, url))) {
+            appendRecord(URL, key, url);
+            compactIfNeeded();
+        }
+    }
+
+    /**
+     * Replays the journal into the in-memory index.
+     *
+     * @return True if the journal was read, false if it is missing or unreadable.
+     */
+    private boolean readJournal() {
+        final Set<String> dirtyKeys = new HashSet<>();
+        BufferedReader reader = null;
+        int records = 0;
+        boolean isRead = false;
+
+        /** TODO: After minSdkVersion="19" use try-with-resources here. */
+        try {
+            reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(mJournalFile), UTF_8));
+
+            if (MAGIC.equals(reader.readLine()) && VERSION.equals(reader.readLine())) {
+                String line;
+
+                while ((line = reader.readLine()) != null) {
+                    readRecord(line, dirtyKeys);
+                    records++;
+                }
+                isRead = true;
+            }
+        } catch (final IOException e) {
+            if (DEBUG) {
+                Log.d(TAG, "Failed to read the cover journal.", e);
+            }
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (final IOException e) {
+                    Log.e(TAG, "Failed to close the cover journal.", e);
+                }
+            }
+        }
+
+        if (isRead) {
+            mSize = 0L;
+            for (final Long size : mEntries.values()) {
+                mSize += size.longValue();
+            }
+
+            /**
+             * A write was interrupted. Only its temporary file may be incomplete, the cover file
+             * is renamed in place whole, so it is either the one of the previous CLEAN record or
+             * the new one, which was renamed before its CLEAN record could be appended.
+             */
+            for (final String key : dirtyKeys) {
+                final File coverFile = getCoverFile(key);
+                final Long size = mEntries.remove(key);
+
+                new File(mDirectory, key + COVER_SUFFIX + TEMPORARY_SUFFIX).delete();
+                if (size != null) {
+                    mSize -= size.longValue();
+                }
+                if (coverFile.isFile()) {
+                    final long coverSize = coverFile.length();
+
+                    mEntries.put(key, Long.valueOf(coverSize));
+                    mSize += coverSize;
+                }
+            }
+
+            mRedundantRecords = records - mEntries.size() - mUrls.size();
+            if (!dirtyKeys.isEmpty()) {
+                /** The DIRTY records have to be resolved in the journal. */
+                mRedundantRecords = Integer.MAX_VALUE;
+            }
+        }
+
+        return isRead;
+    }
+
+    /**
+     * Applies a journal record to the in-memory index, ignoring truncated or unknown records.
+     *
+     * @param line      The journal record.
+     * @param dirtyKeys The keys of the writes which have not been completed yet.
+     */
+    private void readRecord(final String line, final Set<String> dirtyKeys) {
+        final int keyStart = line.indexOf(' ') + 1;
+        final int keyEnd = line.indexOf(' ', keyStart);
+
+        if (keyStart > 0) {
+            final String record = line.substring(0, keyStart - 1);
+            final String key;
+
+            if (keyEnd == -1) {
+                key = line.substring(keyStart);
+            } else {
+                key = line.substring(keyStart, keyEnd);
+            }
+
+            if (CLEAN.equals(record) && keyEnd != -1) {
+                try {
+                    mEntries.put(key, Long.valueOf(line.substring(keyEnd + 1)));
+                    dirtyKeys.remove(key);
+                } catch (final NumberFormatException ignored) {
+                }
+            } else if (DIRTY.equals(record)) {
+                dirtyKeys.add(key);
+            } else if (READ.equals(record)) {
+                /** Only moves the entry to the most recently used end. */
+                mEntries.get(key);
+            } else if (REMOVE.equals(record)) {
+                mEntries.remove(key);
+                mUrls.remove(key);
+                dirtyKeys.remove(key);
+            } else if (URL.equals(record) && keyEnd != -1) {
+                mUrls.put(key, line.substring(keyEnd + 1));
+            }
+        }
+    }
+
+    /**
+     * Removes the cover file and the cover URL of an album.
+     *
+     * @param key The album key of the cover.
+     */
+    public synchronized void remove(final String key) {
+        if (open()) {
+            final Long size = mEntries.remove(key);
+            final boolean hadUrl = mUrls.remove(key) != null;
+
+            if (size != null) {
+                if (DEBUG) {
+                    Log.d(TAG, "Deleting cover : " + key);
+                }
+                getCoverFile(key).delete();
+                mSize -= size.longValue();
+            }
+
+            if (size != null || hadUrl) {
+                appendRecord(REMOVE, key, null);
+                compactIfNeeded();
+            }
+        }
+    }
+
+    /** Evicts the least recently used cover files until the cache fits its budget. */
+    private void trimToSize() {
+        final Iterator<Map.Entry<String, Long>> iterator = mEntries.entrySet().iterator();
+
+        while (mSize > mMaxSize && iterator.hasNext()) {
+            final Map.Entry<String, Long> entry = iterator.next();
+            final String key = entry.getKey();
+
+            if (!mPendingWrites.contains(key)) {
+                getCoverFile(key).delete();
+                mSize -= entry.getValue().longValue();
+                iterator.remove();
+                mUrls.remove(key);
+                appendRecord(REMOVE, key, null);
+            }
+        }
+    }
+
+    /**
+     * Writes a compacted journal holding only the live records, then atomically replaces the
+     * current journal with it.
+     */
+    private void writeJournal() {
+        final File temporary = new File(mDirectory, JOURNAL_FILE_NAME + TEMPORARY_SUFFIX);
+        Writer writer = null;
+        boolean isWritten = false;
+
+        /** TODO: After minSdkVersion="19" use try-with-resources here. */
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(temporary), UTF_8));
+            writer.write(MAGIC + '\n' + VERSION + '\n');
+            for (final String key : mPendingWrites) {
+                writer.write(DIRTY + ' ' + key + '\n');
+            }
+            for (final Map.Entry<String, Long> entry : mEntries.entrySet()) {
+                writer.write(CLEAN + ' ' + entry.getKey() + ' ' + entry.getValue() + '\n');
+            }
+            for (final Map.Entry<String, String> entry : mUrls.entrySet()) {
+                writer.write(URL + ' ' + entry.getKey() + ' ' + entry.getValue() + '\n');
+            }
+            writer.close();
+            writer = null;
+            isWritten = temporary.renameTo(mJournalFile);
+        } catch (final IOException e) {
+            Log.e(TAG, "Failed to write the cover journal.", e);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (final IOException e) {
+                    Log.e(TAG, "Failed to close the cover journal.", e);
+                }
+            }
+        }
+
+        if (isWritten) {
+            mRedundantRecords = 0;
+        } else {
+            temporary.delete();
+        }
+        openJournal();
+    }
+}
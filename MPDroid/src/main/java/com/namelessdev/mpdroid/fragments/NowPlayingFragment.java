@@ -28,6 +28,7 @@ import com.namelessdev.mpdroid.library.SimpleLibraryActivity;
 
 import org.a0z.mpd.MPDCommand;
 import org.a0z.mpd.MPDStatus;
+import org.a0z.mpd.PlaybackClock;
 import org.a0z.mpd.Tools;
 import org.a0z.mpd.event.StatusChangeListener;
 import org.a0z.mpd.event.TrackPositionListener;
@@ -68,7 +69,6 @@ import android.widget.SeekBar;
 import android.widget.TextView;
 
 import java.io.IOException;
-import java.util.Date;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -958,10 +958,11 @@ public class NowPlayingFragment extends Fragment implements StatusChangeListener
         }
     }
 
-    private void startPosTimer(final long start, final long total) {
+    private void startPosTimer() {
         stopPosTimer();
         mPosTimer = new Timer();
-        final TimerTask posTimerTask = new PosTimerTask(start, total);
+        final TimerTask posTimerTask =
+                new PosTimerTask(mApp.oMPDAsyncHelper.oMPD.getPlaybackClock());
         mPosTimer.scheduleAtFixedRate(posTimerTask, 0L, DateUtils.SECOND_IN_MILLIS);
     }
 
@@ -1006,13 +1007,11 @@ public class NowPlayingFragment extends Fragment implements StatusChangeListener
             mTrackSeekBar.setProgress(0);
             mTrackSeekBar.setEnabled(false);
         } else {
-            final long elapsedTime = status.getElapsedTime();
-
             if (status.isState(MPDStatus.STATE_PLAYING)) {
-                startPosTimer(elapsedTime, totalTime);
+                startPosTimer();
             } else {
                 stopPosTimer();
-                updateTrackProgress(elapsedTime, totalTime);
+                updateTrackProgress(status.getElapsedTime(), totalTime);
             }
 
             mTrackSeekBar.setMax((int) totalTime);
@@ -1206,33 +1205,21 @@ public class NowPlayingFragment extends Fragment implements StatusChangeListener
     }
 
     /**
-     * This class runs a timer to keep the time elapsed since last track elapsed time updated for
-     * the purpose of keeping the track progress up to date without continual server polling.
+     * This class runs a timer to keep the track progress up to date from the playback clock,
+     * without continual server polling.
      */
     private class PosTimerTask extends TimerTask {
 
-        private final long mTimerStartTime;
-
-        private long mElapsedTime = 0L;
-
-        private long mStartTrackTime = 0L;
+        private final PlaybackClock mPlaybackClock;
 
-        private long mTotalTrackTime = 0L;
-
-        private PosTimerTask(final long start, final long total) {
+        private PosTimerTask(final PlaybackClock playbackClock) {
             super();
-            mStartTrackTime = start;
-            mTotalTrackTime = total;
-            mTimerStartTime = new Date().getTime();
+            mPlaybackClock = playbackClock;
         }
 
         @Override
         public void run() {
-            final long elapsedSinceTimerStart = new Date().getTime() - mTimerStartTime;
-
-            mElapsedTime = mStartTrackTime + elapsedSinceTimerStart / DateUtils.SECOND_IN_MILLIS;
-
-            updateTrackProgress(mElapsedTime, mTotalTrackTime);
+            updateTrackProgress(mPlaybackClock.getElapsedTime(), mPlaybackClock.getTotalTime());
         }
     }
 
@@ -20,25 +20,18 @@ import com.namelessdev.mpdroid.MPDApplication;
 import com.namelessdev.mpdroid.R;
 import com.namelessdev.mpdroid.tools.Tools;
 
+import org.a0z.mpd.DatabaseVisitor;
 import org.a0z.mpd.exception.MPDException;
 import org.a0z.mpd.item.Music;
 
 import android.util.Log;
 
-import java.io.BufferedOutputStream;
-import java.io.DataInput;
-import java.io.DataOutput;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -46,24 +39,31 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 public class AlbumCache {
 
-    static final boolean GZIP = false;
-
     private static final String TAG = "AlbumCache";
 
     protected static AlbumCache sInstance = null;
 
-    protected Map<String, AlbumDetails> mAlbumDetails; // "artist///album" ->
+    // "artist///album" -> , null until read from mFile
+    protected Map<String, AlbumDetails> mAlbumDetails;
 
     // list of albumname, artist, albumartist including ""
     protected Set<List<String>> mAlbumSet;
 
+    // media server database update time of the last refresh
+    protected Date mDbUpdate = null;
+
+    // directory path -> what the directory contributes to the album details and album set,
+    // null until read from mFile
+    protected Map<String, DirectoryDetails> mDirectories;
+
     protected boolean mEnabled = true;
 
+    // the loaded cache file, album details are looked up in it until read entirely
+    protected AlbumCacheFile mFile = null;
+
     protected File mFilesDir;
 
     protected Date mLastUpdate = null;
@@ -100,6 +100,11 @@ public class AlbumCache {
         return sInstance;
     }
 
+    protected static String getParentPath(final String path) {
+        final int index = path.lastIndexOf('/');
+        return index == -1 ? "" : path.substring(0, index);
+    }
+
     protected static Set<String> getKeysByValue(final Map<String, Set<String>> map,
             final String val) {
         final Set<String> result = new HashSet<>();
@@ -113,6 +118,70 @@ public class AlbumCache {
         return result;
     }
 
+    /**
+     * Adds a music entry to an album details map.
+     *
+     * @param albumDetails The album details map.
+     * @param albumCode    The album code of the music entry.
+     * @param music        The music entry to add.
+     */
+    private static void addAlbumDetails(final Map<String, AlbumDetails> albumDetails,
+            final String albumCode, final Music music) {
+        final AlbumDetails details;
+        if (albumDetails.containsKey(albumCode)) {
+            details = albumDetails.get(albumCode);
+        } else {
+            details = new AlbumDetails();
+            albumDetails.put(albumCode, details);
+        }
+        if (details.mPath == null) {
+            details.mPath = music.getPath();
+        }
+        // if (details.times == null)
+        // details.times = new ArrayList<Long>();
+        // details.times.add((Long)m.getTime());
+        details.mNumTracks += 1;
+        details.mTotalTime += music.getTime();
+        if (details.mDate == 0) {
+            details.mDate = music.getDate();
+        }
+    }
+
+    /**
+     * Adds a music entry to the album details, the album set and the details of its directory.
+     *
+     * @param music The music entry to add.
+     */
+    protected void addMusic(final Music music) {
+        final String albumArtist = music.getAlbumArtist();
+        final String artist = music.getArtist();
+        String album = music.getAlbum();
+        if (album == null) {
+            album = "";
+        }
+        final List<String> albumInfo = Arrays.asList
+                (album, artist == null ? "" : artist,
+                        albumArtist == null ? "" : albumArtist);
+        final DirectoryDetails directory = getDirectoryDetails(music.getPath());
+        mAlbumSet.add(albumInfo);
+        directory.mAlbumSet.add(albumInfo);
+
+        final boolean isAlbumArtist = albumArtist != null && !albumArtist.isEmpty();
+        final String thisAlbum =
+                albumCode(isAlbumArtist ? albumArtist : artist, album, isAlbumArtist);
+        addAlbumDetails(mAlbumDetails, thisAlbum, music);
+        addAlbumDetails(directory.mAlbumDetails, thisAlbum, music);
+    }
+
+    protected void addUniqueAlbum(final List<String> ai) {
+        final String album = ai.get(2);
+        if (album != null && album.isEmpty()) { // no albumartist
+            mUniqueAlbumSet.add(Arrays.asList(ai.get(0), ai.get(1), ""));
+        } else { // with albumartist set artist to ""
+            mUniqueAlbumSet.add(Arrays.asList(ai.get(0), "", ai.get(2)));
+        }
+    }
+
     public String cacheInfo() {
         return "AlbumCache: " +
                 mAlbumSet.size() + " album/artist combinations, " +
@@ -141,7 +210,17 @@ public class AlbumCache {
 
     public AlbumDetails getAlbumDetails(final String artist, final String album,
             final boolean isAlbumArtist) {
-        return mAlbumDetails.get(albumCode(artist, album, isAlbumArtist));
+        return getAlbumDetails(albumCode(artist, album, isAlbumArtist));
+    }
+
+    protected synchronized AlbumDetails getAlbumDetails(final String albumCode) {
+        final AlbumDetails details;
+        if (mAlbumDetails == null && mFile != null) {
+            details = mFile.getAlbumDetails(albumCode);
+        } else {
+            details = mAlbumDetails.get(albumCode);
+        }
+        return details;
     }
 
     public Set<List<String>> getAlbumSet() {
@@ -183,15 +262,61 @@ public class AlbumCache {
     public String getDirByArtistAlbum(final String artist, final String album,
             final boolean isAlbumArtist) {
         final String albumCode = albumCode(artist, album, isAlbumArtist);
-        final String result = mAlbumDetails.get(albumCode).mPath;
+        final String result = getAlbumDetails(albumCode).mPath;
         Log.d(TAG, "key " + albumCode + " - " + result);
         return result;
     }
 
+    /**
+     * Retrieves the details of a directory, created if not yet known.
+     *
+     * @param path The directory path.
+     * @return The details of the directory.
+     */
+    protected DirectoryDetails getDirectoryDetails(final String path) {
+        DirectoryDetails directory = mDirectories.get(path);
+        if (directory == null) {
+            directory = new DirectoryDetails();
+            mDirectories.put(path, directory);
+        }
+        return directory;
+    }
+
     protected String getFilename() {
         return mServer + '_' + mPort;
     }
 
+    /**
+     * Counts the cached songs of directories, subdirectories included.
+     *
+     * @param paths The directory paths.
+     * @return The number of cached songs of each directory, by directory path.
+     */
+    protected Map<String, Long> getSongCounts(final Collection<String> paths) {
+        final Map<String, Long> songCounts = new HashMap<>(paths.size());
+        for (final String path : paths) {
+            songCounts.put(path, Long.valueOf(0L));
+        }
+
+        for (final Map.Entry<String, DirectoryDetails> entry : mDirectories.entrySet()) {
+            long numTracks = 0L;
+            for (final AlbumDetails details : entry.getValue().mAlbumDetails.values()) {
+                numTracks += details.mNumTracks;
+            }
+            if (numTracks > 0L) {
+                String path = entry.getKey();
+                while (!path.isEmpty()) {
+                    final Long count = songCounts.get(path);
+                    if (count != null) {
+                        songCounts.put(path, Long.valueOf(count.longValue() + numTracks));
+                    }
+                    path = getParentPath(path);
+                }
+            }
+        }
+        return songCounts;
+    }
+
     public Set<List<String>> getUniqueAlbumSet() {
         return mUniqueAlbumSet;
     }
@@ -202,28 +327,27 @@ public class AlbumCache {
         return (null != mLastUpdate && null != mpdlast && mLastUpdate.after(mpdlast));
     }
 
+    /*
+     * maps the cache file, only the album set is read, the album details and the directories
+     * are read from the mapping when needed
+     */
     protected synchronized boolean load() {
-        final File file = new File(mFilesDir, getFilename() + (GZIP ? ".gz" : ""));
+        final File file = new File(mFilesDir, getFilename());
         if (!file.exists()) {
             return false;
         }
         Log.d(TAG, "Loading " + file);
-        final ObjectInputStream restore;
         boolean loadedOk = false;
         try {
-            if (GZIP) {
-                restore = new ObjectInputStream(new GZIPInputStream
-                        (new FileInputStream(file)));
-            } else {
-                restore = new ObjectInputStream(new FileInputStream(file));
-            }
-            mLastUpdate = (Date) restore.readObject();
-            mAlbumDetails = (Map<String, AlbumDetails>) restore.readObject();
-            mAlbumSet = (Set<List<String>>) restore.readObject();
-            restore.close();
+            final AlbumCacheFile cacheFile = AlbumCacheFile.map(file);
+            mAlbumSet = cacheFile.readAlbumSet();
+            mLastUpdate = cacheFile.getLastUpdate();
+            mDbUpdate = cacheFile.getDbUpdate();
+            mAlbumDetails = null;
+            mDirectories = null;
+            mFile = cacheFile;
             makeUniqueAlbumSet();
             loadedOk = true;
-        } catch (final FileNotFoundException ignored) {
         } catch (final Exception e) {
             Log.e(TAG, "Exception.", e);
         }
@@ -235,15 +359,25 @@ public class AlbumCache {
         return loadedOk;
     }
 
+    /*
+     * reads the album details and the directories the loaded cache file has not been read for
+     */
+    protected void loadAll() {
+        if (mFile != null) {
+            if (mAlbumDetails == null) {
+                mAlbumDetails = mFile.readAlbumDetails();
+            }
+            if (mDirectories == null) {
+                mDirectories = mFile.readDirectories();
+            }
+            mFile = null;
+        }
+    }
+
     protected void makeUniqueAlbumSet() {
         mUniqueAlbumSet = new HashSet<>(mAlbumSet.size());
         for (final List<String> ai : mAlbumSet) {
-            final String album = ai.get(2);
-            if (album != null && album.isEmpty()) { // no albumartist
-                mUniqueAlbumSet.add(Arrays.asList(ai.get(0), ai.get(1), ""));
-            } else { // with albumartist set artist to ""
-                mUniqueAlbumSet.add(Arrays.asList(ai.get(0), "", ai.get(2)));
-            }
+            addUniqueAlbum(ai);
         }
     }
 
@@ -270,68 +404,64 @@ public class AlbumCache {
             return true;
         }
         Log.d(TAG, "Cache is NOT up to date. fetching ...");
+        final Date dbUpdate = mMPD.getStatistics().getDbUpdate();
         mLastUpdate = Calendar.getInstance().getTime();
 
         Tools.notifyUser(R.string.updatingLocalAlbumCacheNote);
 
         final Date oldUpdate = mLastUpdate;
-        mAlbumDetails = new HashMap<>();
-        mAlbumSet = new HashSet<>();
+        boolean refreshed = false;
+
+        if (!force && mDbUpdate != null && (mDirectories != null || mFile != null)) {
+            try {
+                loadAll();
+                refreshed = refreshIncrementally();
+            } catch (final IOException | MPDException | RuntimeException e) {
+                Log.e(TAG, "Incremental refresh failed, refreshing entirely.", e);
+            }
+        }
 
-        final List<Music> allmusic;
-        try {
-            allmusic = mMPD.listAllInfo();
-            Log.d(TAG, "allmusic " + allmusic.size());
-        } catch (final IOException | MPDException e) {
-            mEnabled = false;
-            mLastUpdate = null;
-            updateConnection();
-            Log.d(TAG, "disabled AlbumCache", e);
-            Tools.notifyUser(
-                    "Error with the 'listallinfo' command. Probably you have to adjust your server's 'max_output_buffer_size'"
-            );
-            return false;
+        if (!refreshed) {
+            mFile = null;
+            mAlbumDetails = new HashMap<>();
+            mAlbumSet = new HashSet<>();
+            mDirectories = new HashMap<>();
+
+            try {
+                mMPD.walkDatabase(new DatabaseVisitor() {
+                    @Override
+                    public boolean onDirectory(final String path, final String lastModified) {
+                        getDirectoryDetails(path).mLastModified = lastModified;
+                        return true;
+                    }
+
+                    @Override
+                    public void onMusic(final Music music) {
+                        addMusic(music);
+                    }
+                });
+            } catch (final IOException | MPDException e) {
+                mEnabled = false;
+                mLastUpdate = null;
+                updateConnection();
+                Log.d(TAG, "disabled AlbumCache", e);
+                Tools.notifyUser("Error reading the database from the server.");
+                return false;
+            } catch (final RuntimeException e) {
+                Tools.notifyUser("Error updating Album Cache");
+                mLastUpdate = oldUpdate;
+                Log.e(TAG, "Error updating Album Cache.", e);
+                return false;
+            }
+            makeUniqueAlbumSet();
         }
 
         try {
-            for (final Music music : allmusic) {
-                final String albumArtist = music.getAlbumArtist();
-                final String artist = music.getArtist();
-                String album = music.getAlbum();
-                if (album == null) {
-                    album = "";
-                }
-                final List<String> albumInfo = Arrays.asList
-                        (album, artist == null ? "" : artist,
-                                albumArtist == null ? "" : albumArtist);
-                mAlbumSet.add(albumInfo);
-
-                final boolean isAlbumArtist = albumArtist != null && !albumArtist.isEmpty();
-                final String thisAlbum =
-                        albumCode(isAlbumArtist ? albumArtist : artist, album, isAlbumArtist);
-                final AlbumDetails details;
-                if (mAlbumDetails.containsKey(thisAlbum)) {
-                    details = mAlbumDetails.get(thisAlbum);
-                } else {
-                    details = new AlbumDetails();
-                    mAlbumDetails.put(thisAlbum, details);
-                }
-                if (details.mPath == null) {
-                    details.mPath = music.getPath();
-                }
-                // if (details.times == null)
-                // details.times = new ArrayList<Long>();
-                // details.times.add((Long)m.getTime());
-                details.mNumTracks += 1;
-                details.mTotalTime += music.getTime();
-                if (details.mDate == 0) {
-                    details.mDate = music.getDate();
-                }
-            }
+            mDbUpdate = dbUpdate;
             Log.d(TAG, "albumDetails: " + mAlbumDetails.size());
             Log.d(TAG, "albumSet: " + mAlbumSet.size());
-            makeUniqueAlbumSet();
             Log.d(TAG, "uniqueAlbumSet: " + mUniqueAlbumSet.size());
+            Log.d(TAG, "directories: " + mDirectories.size());
             if (!save()) {
                 mLastUpdate = oldUpdate;
                 return false;
@@ -345,8 +475,235 @@ public class AlbumCache {
         return true;
     }
 
+    /**
+     * Re-scans only the directories which changed since the last refresh, then patches the album
+     * details, the album set and the unique album set in place. Directories holding music
+     * modified since the previous database update are re-scanned, as are their subdirectories
+     * which are new or have a new {@code Last-Modified} time; subdirectories which disappeared
+     * are removed. Removed or moved music is not reported as modified: it is found by comparing
+     * the song count of directories, subdirectories included, with the server, from the top
+     * level down, only below the directories whose song count changed, which are re-scanned.
+     * Music moved between subdirectories of a directory whose song count stays the same is
+     * picked up by the next full refresh.
+     *
+     * @return True if the cache was patched, false if it could not be, and needs a full refresh.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    protected boolean refreshIncrementally() throws IOException, MPDException {
+        final Set<String> modified = mMPD.listModifiedDirectories(mDbUpdate);
+        if (modified == null) {
+            Log.d(TAG, "Incremental refresh not supported by the server.");
+            return false;
+        }
+        Log.d(TAG, "modified directories: " + modified.size());
+
+        final Set<String> rescanned = new HashSet<>();
+        final Set<String> listed = new HashSet<>();
+        final Set<String> staleAlbums = new HashSet<>();
+        final Set<List<String>> removedAlbums = new HashSet<>();
+        final DatabaseVisitor visitor = new DatabaseVisitor() {
+            @Override
+            public boolean onDirectory(final String path, final String lastModified) {
+                final DirectoryDetails known = mDirectories.get(path);
+                final boolean rescan = !rescanned.contains(path) && (known == null ||
+                        known.mLastModified == null ||
+                        !known.mLastModified.equals(lastModified));
+
+                listed.add(path);
+                if (rescan) {
+                    removeDirectory(path, staleAlbums, removedAlbums);
+                    getDirectoryDetails(path).mLastModified = lastModified;
+                    rescanned.add(path);
+                }
+                return rescan;
+            }
+
+            @Override
+            public void onMusic(final Music music) {
+                addMusic(music);
+            }
+        };
+
+        /** The root directory lists the top level directories, which are always counted. */
+        rescanDirectory("", visitor, rescanned, staleAlbums, removedAlbums);
+        for (final String path : modified) {
+            rescanDirectory(path, visitor, rescanned, staleAlbums, removedAlbums);
+        }
+
+        Set<String> parents = Collections.singleton("");
+        int counted = 0;
+        while (!parents.isEmpty()) {
+            removeUnlistedDirectories(listed, rescanned, staleAlbums, removedAlbums);
+
+            /** The parents were re-scanned, so their subdirectories still exist. */
+            final Set<String> directories = new HashSet<>();
+            for (final String path : mDirectories.keySet()) {
+                if (!path.isEmpty() && parents.contains(getParentPath(path))) {
+                    directories.add(path);
+                }
+            }
+
+            final Map<String, Long> songCounts = mMPD.getDirectorySongCounts(directories);
+            if (songCounts == null) {
+                Log.d(TAG, "Directory song counts not supported by the server.");
+                return false;
+            }
+
+            final Map<String, Long> cachedSongCounts = getSongCounts(directories);
+            counted += directories.size();
+            parents = new HashSet<>();
+            for (final String path : directories) {
+                if (!songCounts.get(path).equals(cachedSongCounts.get(path))) {
+                    rescanDirectory(path, visitor, rescanned, staleAlbums, removedAlbums);
+                    parents.add(path);
+                }
+            }
+        }
+
+        /** Albums which lost their path or date to a re-scanned directory take another one. */
+        for (final String albumCode : staleAlbums) {
+            final AlbumDetails details = mAlbumDetails.get(albumCode);
+            if (details != null && (details.mPath == null || details.mDate == 0)) {
+                for (final DirectoryDetails directory : mDirectories.values()) {
+                    final AlbumDetails partial = directory.mAlbumDetails.get(albumCode);
+                    if (partial != null) {
+                        if (details.mPath == null) {
+                            details.mPath = partial.mPath;
+                        }
+                        if (details.mDate == 0) {
+                            details.mDate = partial.mDate;
+                        }
+                        if (details.mPath != null && details.mDate != 0) {
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+
+        /** Albums still listed by another directory stay in the album set. */
+        if (!removedAlbums.isEmpty()) {
+            for (final DirectoryDetails directory : mDirectories.values()) {
+                removedAlbums.removeAll(directory.mAlbumSet);
+            }
+            mAlbumSet.removeAll(removedAlbums);
+            makeUniqueAlbumSet();
+        } else {
+            for (final String path : rescanned) {
+                final DirectoryDetails directory = mDirectories.get(path);
+                if (directory != null) {
+                    for (final List<String> ai : directory.mAlbumSet) {
+                        addUniqueAlbum(ai);
+                    }
+                }
+            }
+        }
+
+        Log.d(TAG, "re-scanned " + rescanned.size() + " directories, counted the songs of " +
+                counted + " directories");
+        return true;
+    }
+
+    /**
+     * Removes what a directory contributes to the album details and the album set.
+     *
+     * @param path          The directory path.
+     * @param staleAlbums   The album codes which lost their path or date to the directory.
+     * @param removedAlbums The album set entries the directory contributed, which may need
+     *                      removal from the album set.
+     */
+    protected void removeDirectory(final String path, final Set<String> staleAlbums,
+            final Set<List<String>> removedAlbums) {
+        final DirectoryDetails directory = mDirectories.remove(path);
+        if (directory == null) {
+            return;
+        }
+
+        for (final Map.Entry<String, AlbumDetails> entry : directory.mAlbumDetails.entrySet()) {
+            final AlbumDetails details = mAlbumDetails.get(entry.getKey());
+            final AlbumDetails partial = entry.getValue();
+            if (details != null) {
+                details.mNumTracks -= partial.mNumTracks;
+                details.mTotalTime -= partial.mTotalTime;
+                if (details.mNumTracks <= 0) {
+                    mAlbumDetails.remove(entry.getKey());
+                } else {
+                    if (path.equals(details.mPath)) {
+                        details.mPath = null;
+                        staleAlbums.add(entry.getKey());
+                    }
+                    if (details.mDate == partial.mDate) {
+                        details.mDate = 0;
+                        staleAlbums.add(entry.getKey());
+                    }
+                }
+            }
+        }
+        removedAlbums.addAll(directory.mAlbumSet);
+    }
+
+    /**
+     * Removes the subdirectories which are no longer listed by a re-scanned directory, with
+     * their own subdirectories.
+     *
+     * @param listed        The directories listed by the re-scanned directories.
+     * @param rescanned     The re-scanned directories.
+     * @param staleAlbums   The album codes which lost their path or date to a removed directory.
+     * @param removedAlbums The album set entries the removed directories contributed.
+     */
+    protected void removeUnlistedDirectories(final Set<String> listed,
+            final Set<String> rescanned, final Set<String> staleAlbums,
+            final Set<List<String>> removedAlbums) {
+        final List<String> removed = new ArrayList<>();
+        for (final String path : mDirectories.keySet()) {
+            if (!path.isEmpty() && !listed.contains(path) &&
+                    rescanned.contains(getParentPath(path))) {
+                removed.add(path);
+            }
+        }
+        for (final String path : removed) {
+            final String prefix = path + '/';
+            final List<String> subtree = new ArrayList<>();
+            for (final String subdirectory : mDirectories.keySet()) {
+                if (subdirectory.equals(path) || subdirectory.startsWith(prefix)) {
+                    subtree.add(subdirectory);
+                }
+            }
+            for (final String subdirectory : subtree) {
+                removeDirectory(subdirectory, staleAlbums, removedAlbums);
+            }
+        }
+    }
+
+    /**
+     * Re-scans a directory, unless already re-scanned: its music is read again, as are its
+     * subdirectories which the visitor selects.
+     *
+     * @param path          The directory path.
+     * @param visitor       The visitor re-scanning the database entries.
+     * @param rescanned     The re-scanned directories.
+     * @param staleAlbums   The album codes which lost their path or date to the directory.
+     * @param removedAlbums The album set entries the directory contributed.
+     * @throws IOException  Thrown upon a communication error with the server.
+     * @throws MPDException Thrown if an error occurs as a result of command execution.
+     */
+    protected void rescanDirectory(final String path, final DatabaseVisitor visitor,
+            final Set<String> rescanned, final Set<String> staleAlbums,
+            final Set<List<String>> removedAlbums) throws IOException, MPDException {
+        if (!rescanned.contains(path)) {
+            final DirectoryDetails known = mDirectories.get(path);
+            removeDirectory(path, staleAlbums, removedAlbums);
+            if (known != null) {
+                getDirectoryDetails(path).mLastModified = known.mLastModified;
+            }
+            rescanned.add(path);
+            mMPD.walkDatabase(path, visitor);
+        }
+    }
+
     protected synchronized boolean save() {
-        final File file = new File(mFilesDir, getFilename() + (GZIP ? ".gz" : ""));
+        final File file = new File(mFilesDir, getFilename());
         Log.d(TAG, "Saving to " + file);
         final File backupfile = new File(file.getAbsolutePath() + ".bak");
         if (file.exists()) {
@@ -355,20 +712,11 @@ public class AlbumCache {
             }
             file.renameTo(backupfile);
         }
-        final ObjectOutputStream save;
         boolean error = false;
         try {
-            if (GZIP) {
-                save = new ObjectOutputStream(new GZIPOutputStream
-                        (new FileOutputStream(file)));
-            } else {
-                save = new ObjectOutputStream(new BufferedOutputStream
-                        (new FileOutputStream(file)));
-            }
-            save.writeObject(mLastUpdate);
-            save.writeObject(mAlbumDetails);
-            save.writeObject(mAlbumSet);
-            save.close();
+            loadAll();
+            AlbumCacheFile.write(file, mLastUpdate, mDbUpdate, mAlbumDetails, mAlbumSet,
+                    mDirectories);
             Log.d(TAG, "saved to " + file);
         } catch (final Exception e) {
             error = true;
@@ -419,9 +767,18 @@ public class AlbumCache {
         return true;
     }
 
-    static class AlbumDetails implements Serializable {
+    static class DirectoryDetails {
 
-        private static final long serialVersionUID = 2465675380232237273L;
+        // what the music of this directory alone contributes to the album details
+        final Map<String, AlbumDetails> mAlbumDetails = new HashMap<>();
+
+        // list of albumname, artist, albumartist of the music of this directory
+        final Set<List<String>> mAlbumSet = new HashSet<>();
+
+        String mLastModified = null;
+    }
+
+    static class AlbumDetails {
 
         long mDate = 0;
 
@@ -431,23 +788,6 @@ public class AlbumCache {
         String mPath = null;
 
         long mTotalTime = 0;
-
-        private void readObject(final DataInput in)
-                throws IOException, ClassNotFoundException {
-            mPath = in.readUTF();
-            // times = (List<Long>)in.readObject();
-            mNumTracks = in.readLong();
-            mTotalTime = in.readLong();
-            mDate = in.readLong();
-        }
-
-        private void writeObject(final DataOutput out) throws IOException {
-            out.writeUTF(mPath);
-            // out.writeObject(times);
-            out.writeLong(mNumTracks);
-            out.writeLong(mTotalTime);
-            out.writeLong(mDate);
-        }
     }
 
 }
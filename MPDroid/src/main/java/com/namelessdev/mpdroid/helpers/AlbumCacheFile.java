@@ -0,0 +1,438 @@
+/*
+ * Copyright (C) 2010-2014 The MPDroid Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.namelessdev.mpdroid.helpers;
+
+import com.namelessdev.mpdroid.helpers.AlbumCache.AlbumDetails;
+import com.namelessdev.mpdroid.helpers.AlbumCache.DirectoryDetails;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The on-disk format of the {@link AlbumCache}, a versioned binary file which is memory mapped
+ * when loaded. Every string is stored once in a string table and referenced by index, album
+ * details are fixed-width records sorted by album code, so a single album can be looked up by
+ * binary search without decoding the rest of the file. Strings are only decoded when first
+ * used.
+ *
+ * <pre>
+ * header:        int magic, int version, long last update, long database update
+ * string table:  int count, int[count] offsets, then for each string: int length, UTF-8 bytes
+ * album details: int count, then sorted by album code: int code, int path, long tracks,
+ *                long total time, long date
+ * album set:     int count, then for each: int album, int artist, int album artist
+ * directories:   int count, then for each: int path, int last modified, int album count,
+ *                album details records, int album set count, album set records
+ * </pre>
+ *
+ * A string index of -1 stands for null.
+ */
+final class AlbumCacheFile {
+
+    /** The file magic number, {@code MPDC}. */
+    private static final int MAGIC = 0x4D504443;
+
+    /** The size of an album details record, in bytes. */
+    private static final int ALBUM_DETAILS_SIZE = 32;
+
+    private static final int NO_STRING = -1;
+
+    private static final long NO_TIME = -1L;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** The current file format version, increment upon any format change. */
+    private static final int VERSION = 1;
+
+    /** The position of the first album details record. */
+    private final int mAlbumDetailsPosition;
+
+    /** The position of the album set count. */
+    private final int mAlbumSetPosition;
+
+    private final MappedByteBuffer mBuffer;
+
+    private final Date mDbUpdate;
+
+    private final Date mLastUpdate;
+
+    /** The position of the first string offset. */
+    private final int mStringOffsetsPosition;
+
+    /** The position of the first string. */
+    private final int mStringsPosition;
+
+    /** The strings decoded so far, so every string is decoded, and held, only once. */
+    private final String[] mStrings;
+
+    private AlbumCacheFile(final MappedByteBuffer buffer) throws IOException {
+        super();
+
+        mBuffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported album cache file format.");
+        }
+        mLastUpdate = toDate(buffer.getLong(8));
+        mDbUpdate = toDate(buffer.getLong(16));
+
+        final int stringCount = buffer.getInt(24);
+        mStrings = new String[stringCount];
+        mStringOffsetsPosition = 28;
+        mStringsPosition = mStringOffsetsPosition + stringCount * 4;
+
+        final int stringsSize;
+        if (stringCount == 0) {
+            stringsSize = 0;
+        } else {
+            final int lastOffset = mStringsPosition + buffer.getInt(mStringsPosition - 4);
+            stringsSize = lastOffset + 4 + buffer.getInt(lastOffset) - mStringsPosition;
+        }
+
+        final int albumDetailsCountPosition = mStringsPosition + stringsSize;
+        mAlbumDetailsPosition = albumDetailsCountPosition + 4;
+        mAlbumSetPosition = mAlbumDetailsPosition +
+                buffer.getInt(albumDetailsCountPosition) * ALBUM_DETAILS_SIZE;
+    }
+
+    /**
+     * Memory maps an album cache file.
+     *
+     * @param file The album cache file.
+     * @return The mapped album cache file.
+     * @throws IOException Thrown if the file could not be mapped, or is not in a supported
+     *                     format.
+     */
+    static AlbumCacheFile map(final File file) throws IOException {
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+
+        try {
+            final FileChannel channel = randomAccessFile.getChannel();
+            return new AlbumCacheFile(channel.map(FileChannel.MapMode.READ_ONLY, 0L,
+                    channel.size()));
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private static Date toDate(final long time) {
+        return time == NO_TIME ? null : new Date(time);
+    }
+
+    private static long toTime(final Date date) {
+        return date == null ? NO_TIME : date.getTime();
+    }
+
+    /**
+     * Writes an album cache file.
+     *
+     * @param file         The file to write.
+     * @param lastUpdate   The last cache update time.
+     * @param dbUpdate     The media server database update time of the last cache update.
+     * @param albumDetails The album details.
+     * @param albumSet     The album set.
+     * @param directories  The details of every directory.
+     * @throws IOException Thrown if the file could not be written.
+     */
+    static void write(final File file, final Date lastUpdate, final Date dbUpdate,
+            final Map<String, AlbumDetails> albumDetails, final Set<List<String>> albumSet,
+            final Map<String, DirectoryDetails> directories) throws IOException {
+        final StringTable strings = new StringTable();
+        final List<String> albumCodes = new ArrayList<>(albumDetails.keySet());
+
+        /** Index every string first, the string table comes before any reference. */
+        Collections.sort(albumCodes);
+        strings.index(albumCodes);
+        for (final AlbumDetails details : albumDetails.values()) {
+            strings.index(details.mPath);
+        }
+        for (final List<String> albumInfo : albumSet) {
+            strings.index(albumInfo);
+        }
+        for (final Map.Entry<String, DirectoryDetails> entry : directories.entrySet()) {
+            final DirectoryDetails directory = entry.getValue();
+
+            strings.index(entry.getKey());
+            strings.index(directory.mLastModified);
+            strings.index(directory.mAlbumDetails.keySet());
+            for (final AlbumDetails details : directory.mAlbumDetails.values()) {
+                strings.index(details.mPath);
+            }
+            for (final List<String> albumInfo : directory.mAlbumSet) {
+                strings.index(albumInfo);
+            }
+        }
+
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(toTime(lastUpdate));
+            out.writeLong(toTime(dbUpdate));
+            strings.write(out);
+
+            out.writeInt(albumCodes.size());
+            for (final String albumCode : albumCodes) {
+                writeAlbumDetails(out, strings, albumCode, albumDetails.get(albumCode));
+            }
+
+            writeAlbumSet(out, strings, albumSet);
+
+            out.writeInt(directories.size());
+            for (final Map.Entry<String, DirectoryDetails> entry : directories.entrySet()) {
+                final DirectoryDetails directory = entry.getValue();
+
+                out.writeInt(strings.get(entry.getKey()));
+                out.writeInt(strings.get(directory.mLastModified));
+                out.writeInt(directory.mAlbumDetails.size());
+                for (final Map.Entry<String, AlbumDetails> details :
+                        directory.mAlbumDetails.entrySet()) {
+                    writeAlbumDetails(out, strings, details.getKey(), details.getValue());
+                }
+                writeAlbumSet(out, strings, directory.mAlbumSet);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void writeAlbumDetails(final DataOutputStream out, final StringTable strings,
+            final String albumCode, final AlbumDetails details) throws IOException {
+        out.writeInt(strings.get(albumCode));
+        out.writeInt(strings.get(details.mPath));
+        out.writeLong(details.mNumTracks);
+        out.writeLong(details.mTotalTime);
+        out.writeLong(details.mDate);
+    }
+
+    private static void writeAlbumSet(final DataOutputStream out, final StringTable strings,
+            final Set<List<String>> albumSet) throws IOException {
+        out.writeInt(albumSet.size());
+        for (final List<String> albumInfo : albumSet) {
+            for (int i = 0; i < 3; i++) {
+                out.writeInt(strings.get(albumInfo.get(i)));
+            }
+        }
+    }
+
+    /**
+     * Looks up the details of one album, without decoding any other album.
+     *
+     * @param albumCode The album code.
+     * @return The album details, null if not found.
+     */
+    AlbumDetails getAlbumDetails(final String albumCode) {
+        final int count = mBuffer.getInt(mAlbumDetailsPosition - 4);
+        int low = 0;
+        int high = count - 1;
+        AlbumDetails result = null;
+
+        while (low <= high) {
+            final int middle = low + high >>> 1;
+            final int position = mAlbumDetailsPosition + middle * ALBUM_DETAILS_SIZE;
+            final int compare = getString(mBuffer.getInt(position)).compareTo(albumCode);
+
+            if (compare < 0) {
+                low = middle + 1;
+            } else if (compare > 0) {
+                high = middle - 1;
+            } else {
+                result = readAlbumDetails(position);
+                break;
+            }
+        }
+
+        return result;
+    }
+
+    Date getDbUpdate() {
+        return mDbUpdate;
+    }
+
+    Date getLastUpdate() {
+        return mLastUpdate;
+    }
+
+    /**
+     * Decodes a string of the string table, once.
+     *
+     * @param index The string index.
+     * @return The string, null for {@link #NO_STRING}.
+     */
+    private String getString(final int index) {
+        String string = null;
+
+        if (index != NO_STRING) {
+            string = mStrings[index];
+            if (string == null) {
+                final int position = mStringsPosition +
+                        mBuffer.getInt(mStringOffsetsPosition + index * 4);
+                final byte[] bytes = new byte[mBuffer.getInt(position)];
+                final ByteBuffer duplicate = mBuffer.duplicate();
+
+                duplicate.position(position + 4);
+                duplicate.get(bytes);
+                string = new String(bytes, UTF_8);
+                mStrings[index] = string;
+            }
+        }
+
+        return string;
+    }
+
+    /**
+     * Decodes every album details record.
+     *
+     * @return The album details, by album code.
+     */
+    Map<String, AlbumDetails> readAlbumDetails() {
+        final int count = mBuffer.getInt(mAlbumDetailsPosition - 4);
+        final Map<String, AlbumDetails> albumDetails = new HashMap<>(count);
+
+        for (int i = 0; i < count; i++) {
+            final int position = mAlbumDetailsPosition + i * ALBUM_DETAILS_SIZE;
+            albumDetails.put(getString(mBuffer.getInt(position)), readAlbumDetails(position));
+        }
+
+        return albumDetails;
+    }
+
+    private AlbumDetails readAlbumDetails(final int position) {
+        final AlbumDetails details = new AlbumDetails();
+
+        details.mPath = getString(mBuffer.getInt(position + 4));
+        details.mNumTracks = mBuffer.getLong(position + 8);
+        details.mTotalTime = mBuffer.getLong(position + 16);
+        details.mDate = mBuffer.getLong(position + 24);
+
+        return details;
+    }
+
+    /**
+     * Decodes the album set.
+     *
+     * @return The album set.
+     */
+    Set<List<String>> readAlbumSet() {
+        return readAlbumSet(mAlbumSetPosition);
+    }
+
+    private Set<List<String>> readAlbumSet(final int position) {
+        final int count = mBuffer.getInt(position);
+        final Set<List<String>> albumSet = new HashSet<>(count);
+
+        for (int i = 0; i < count; i++) {
+            final int record = position + 4 + i * 12;
+            albumSet.add(Arrays.asList(getString(mBuffer.getInt(record)),
+                    getString(mBuffer.getInt(record + 4)),
+                    getString(mBuffer.getInt(record + 8))));
+        }
+
+        return albumSet;
+    }
+
+    /**
+     * Decodes the details of every directory.
+     *
+     * @return The details of every directory, by directory path.
+     */
+    Map<String, DirectoryDetails> readDirectories() {
+        int position = mAlbumSetPosition + 4 + mBuffer.getInt(mAlbumSetPosition) * 12;
+        final int count = mBuffer.getInt(position);
+        final Map<String, DirectoryDetails> directories = new HashMap<>(count);
+
+        position += 4;
+        for (int i = 0; i < count; i++) {
+            final DirectoryDetails directory = new DirectoryDetails();
+            final String path = getString(mBuffer.getInt(position));
+            final int albumCount = mBuffer.getInt(position + 8);
+
+            directory.mLastModified = getString(mBuffer.getInt(position + 4));
+            position += 12;
+            for (int j = 0; j < albumCount; j++) {
+                directory.mAlbumDetails.put(getString(mBuffer.getInt(position)),
+                        readAlbumDetails(position));
+                position += ALBUM_DETAILS_SIZE;
+            }
+            directory.mAlbumSet.addAll(readAlbumSet(position));
+            position += 4 + mBuffer.getInt(position) * 12;
+            directories.put(path, directory);
+        }
+
+        return directories;
+    }
+
+    /** This class deduplicates the strings written to the file. */
+    private static final class StringTable {
+
+        private final Map<String, Integer> mIndexes = new HashMap<>();
+
+        private final List<String> mStrings = new ArrayList<>();
+
+        int get(final String string) {
+            return string == null ? NO_STRING : mIndexes.get(string);
+        }
+
+        void index(final String string) {
+            if (string != null && !mIndexes.containsKey(string)) {
+                mIndexes.put(string, mStrings.size());
+                mStrings.add(string);
+            }
+        }
+
+        void index(final Iterable<String> strings) {
+            for (final String string : strings) {
+                index(string);
+            }
+        }
+
+        void write(final DataOutputStream out) throws IOException {
+            final List<byte[]> encoded = new ArrayList<>(mStrings.size());
+            int offset = 0;
+
+            out.writeInt(mStrings.size());
+            for (final String string : mStrings) {
+                final byte[] bytes = string.getBytes(UTF_8);
+
+                encoded.add(bytes);
+                out.writeInt(offset);
+                offset += 4 + bytes.length;
+            }
+            for (final byte[] bytes : encoded) {
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package com.namelessdev.mpdroid.helpers;
 
 import org.a0z.mpd.MPD;
+import org.a0z.mpd.connection.LruResponseCache;
 import org.a0z.mpd.exception.MPDException;
 import org.a0z.mpd.item.Album;
 import org.a0z.mpd.item.Artist;
@@ -39,6 +40,9 @@ import java.util.Set;
  */
 public class CachedMPD extends MPD {
 
+    /** The maximum size of the responses kept by the response cache, in bytes. */
+    private static final long RESPONSE_CACHE_SIZE = 2L * 1024L * 1024L;
+
     private final AlbumCache mCache;
 
     private boolean mIsEnabled = true;
@@ -51,6 +55,7 @@ public class CachedMPD extends MPD {
         super();
         mCache = AlbumCache.getInstance(this);
         mIsEnabled = isEnabled;
+        setResponseCache(new LruResponseCache(RESPONSE_CACHE_SIZE));
     }
 
     /**
@@ -18,6 +18,7 @@ package com.namelessdev.mpdroid.helpers;
 
 import com.namelessdev.mpdroid.MPDApplication;
 import com.namelessdev.mpdroid.cover.CachedCover;
+import com.namelessdev.mpdroid.cover.CoverDiskCache;
 import com.namelessdev.mpdroid.cover.DeezerCover;
 import com.namelessdev.mpdroid.cover.DiscogsCover;
 import com.namelessdev.mpdroid.cover.GracenoteCover;
@@ -54,7 +55,6 @@ import java.net.URL;
 import java.text.Normalizer;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -91,14 +91,15 @@ public final class CoverManager {
     private static final Pattern BLOCK_IN_COMBINING_DIACRITICAL_MARKS =
             Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
 
-    private static final String COVERS_FILE_NAME = "covers.bin";
-
     private static final String[] DISC_REFERENCES = {
             "disc", "cd", "disque"
     };
 
     private static final String FOLDER_SUFFIX = "/covers/";
 
+    /** The cover URLs used to be serialized here, they are now kept by the cover cache. */
+    private static final String LEGACY_COVERS_FILE_NAME = "covers.bin";
+
     private static final int MAX_REQUESTS = 20;
 
     private static final String TAG = "CoverManager";
@@ -135,8 +136,6 @@ public final class CoverManager {
 
     private ICoverRetriever[] mCoverRetrievers = null;
 
-    private Map<String, String> mCoverUrlMap = null;
-
     private Set<String> mNotFoundAlbumKeys;
 
     private MultiMap<String, String> mWrongCoverUrlMap = null;
@@ -146,6 +145,14 @@ public final class CoverManager {
         mRequestExecutor.submit(new RequestProcessorTask());
         setCoverRetrieversFromPreferences();
         initializeCoverData();
+
+        /** Opening the cover cache reads its journal, keep it off the calling thread. */
+        mCacheCoverFetchExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                importLegacyCovers();
+            }
+        });
     }
 
     /**
@@ -321,10 +328,6 @@ public final class CoverManager {
                 new LinkedBlockingQueue<Runnable>());
     }
 
-    public static String getCoverFileName(final AlbumInfo albumInfo) {
-        return albumInfo.getKey() + ".jpg";
-    }
-
     static String getCoverFolder() {
         final File cacheDir = sApp.getExternalCacheDir();
         if (cacheDir == null) {
@@ -333,6 +336,17 @@ public final class CoverManager {
         return cacheDir.getAbsolutePath() + FOLDER_SUFFIX;
     }
 
+    private static String getCoverUrl(final String albumKey) {
+        final CoverDiskCache coverCache = CoverDiskCache.getInstance();
+        String url = null;
+
+        if (coverCache != null) {
+            url = coverCache.getCoverUrl(albumKey);
+        }
+
+        return url;
+    }
+
     /**
      * This method takes a URL object and returns a HttpURLConnection object.
      *
@@ -380,28 +394,31 @@ public final class CoverManager {
     }
 
     /**
-     * Checks if device connected or connecting to wifi network
+     * Opens the cover cache, then moves the cover URLs from the serialized map of former versions
+     * to it.
      */
-    static boolean isWifi() {
-        final ConnectivityManager conMan = (ConnectivityManager) sApp
-                .getSystemService(Context.CONNECTIVITY_SERVICE);
-        // Get status of wifi connection
-        final NetworkInfo.State wifi = conMan.getNetworkInfo(1).getState();
+    private static void importLegacyCovers() {
+        final String coverFolder = getCoverFolder();
+        final CoverDiskCache coverCache = CoverDiskCache.getInstance();
+        ObjectInputStream objectInputStream = null;
 
-        return (wifi == NetworkInfo.State.CONNECTED || wifi == NetworkInfo.State.CONNECTING);
-    }
+        if (coverFolder == null || coverCache == null || !coverCache.isAvailable()) {
+            return;
+        }
 
-    private static Map<String, String> loadCovers() {
-        Map<String, String> wrongCovers = null;
-        ObjectInputStream objectInputStream = null;
+        final File file = new File(coverFolder, LEGACY_COVERS_FILE_NAME);
+        if (!file.exists()) {
+            return;
+        }
 
         try {
-            final File file = new File(getCoverFolder(), COVERS_FILE_NAME);
             objectInputStream = new ObjectInputStream(new FileInputStream(file));
-            wrongCovers = (Map<String, String>) objectInputStream.readObject();
+            final Map<String, String> covers = (Map<String, String>) objectInputStream.readObject();
+            for (final Map.Entry<String, String> entry : covers.entrySet()) {
+                coverCache.putCoverUrl(entry.getKey(), entry.getValue());
+            }
         } catch (final Exception e) {
             Log.e(TAG, "Cannot load cover history file.", e);
-            wrongCovers = new HashMap<>();
         } finally {
             if (objectInputStream != null) {
                 try {
@@ -413,7 +430,21 @@ public final class CoverManager {
             }
         }
 
-        return wrongCovers;
+        if (!file.delete()) {
+            Log.w(TAG, "Cannot delete cover history file.");
+        }
+    }
+
+    /**
+     * Checks if device connected or connecting to wifi network
+     */
+    static boolean isWifi() {
+        final ConnectivityManager conMan = (ConnectivityManager) sApp
+                .getSystemService(Context.CONNECTIVITY_SERVICE);
+        // Get status of wifi connection
+        final NetworkInfo.State wifi = conMan.getNetworkInfo(1).getState();
+
+        return (wifi == NetworkInfo.State.CONNECTED || wifi == NetworkInfo.State.CONNECTING);
     }
 
     private static MultiMap<String, String> loadWrongCovers() {
@@ -441,6 +472,14 @@ public final class CoverManager {
         return wrongCovers;
     }
 
+    private static void putCoverUrl(final String albumKey, final String url) {
+        final CoverDiskCache coverCache = CoverDiskCache.getInstance();
+
+        if (coverCache != null) {
+            coverCache.putCoverUrl(albumKey, url);
+        }
+    }
+
     static byte[] readBytes(final InputStream inputStream) throws IOException {
         try {
             // this dynamically extends to take the bytes you read
@@ -466,6 +505,17 @@ public final class CoverManager {
         }
     }
 
+    /**
+     * Removes the recorded cover URL of an album, along with its cached cover file.
+     */
+    private static void removeCoverUrl(final String albumKey) {
+        final CoverDiskCache coverCache = CoverDiskCache.getInstance();
+
+        if (coverCache != null) {
+            coverCache.remove(albumKey);
+        }
+    }
+
     // Remove disc references from albums (like CD1, disc02 ...)
     static String removeDiscReference(final String album) {
         String cleanedAlbum = album.toLowerCase();
@@ -559,7 +609,7 @@ public final class CoverManager {
         if (cachedCover != null) {
             cachedCover.delete(albumInfo);
         }
-        mCoverUrlMap.remove(albumInfo);
+        removeCoverUrl(albumInfo.getKey());
         mWrongCoverUrlMap.remove(albumInfo.getKey());
         mNotFoundAlbumKeys.remove(albumInfo.getKey());
     }
@@ -586,7 +636,6 @@ public final class CoverManager {
 
     private void initializeCoverData() {
         mWrongCoverUrlMap = loadWrongCovers();
-        mCoverUrlMap = loadCovers();
         mNotFoundAlbumKeys = new HashSet<>();
     }
 
@@ -641,7 +690,7 @@ public final class CoverManager {
             return;
         }
 
-        wrongUrl = mCoverUrlMap.get(albumInfo.getKey());
+        wrongUrl = getCoverUrl(albumInfo.getKey());
         // Do not blacklist cover if from local storage (url starts with /...)
         if (wrongUrl != null && !wrongUrl.startsWith("/")) {
             if (DEBUG) {
@@ -655,7 +704,7 @@ public final class CoverManager {
                 if (DEBUG) {
                     Log.d(TAG, "Removing blacklisted cover from cache : ");
                 }
-                mCoverUrlMap.remove(albumInfo.getKey());
+                removeCoverUrl(albumInfo.getKey());
                 cacheCoverRetriever.delete(albumInfo);
             }
         } else {
@@ -722,10 +771,6 @@ public final class CoverManager {
         logQueues();
     }
 
-    private void saveCovers() {
-        saveCovers(COVERS_FILE_NAME, mCoverUrlMap);
-    }
-
     private void saveWrongCovers() {
         saveCovers(WRONG_COVERS_FILE_NAME, mWrongCoverUrlMap);
     }
@@ -1007,7 +1052,7 @@ public final class CoverManager {
                                         coverBytes = getCoverBytes(coverUrls, mCoverInfo);
                                         if (coverBytes != null && coverBytes.length > 0) {
                                             if (!coverRetriever.isCoverLocal()) {
-                                                mCoverUrlMap.put(mCoverInfo.getKey(), coverUrls[0]);
+                                                putCoverUrl(mCoverInfo.getKey(), coverUrls[0]);
                                             }
                                             mCoverInfo.setCoverBytes(coverBytes);
                                             mRequests.addLast(mCoverInfo);
@@ -1159,7 +1204,6 @@ public final class CoverManager {
                     }
 
                     if (mRunningRequests.isEmpty()) {
-                        saveCovers();
                         saveWrongCovers();
                     }
 
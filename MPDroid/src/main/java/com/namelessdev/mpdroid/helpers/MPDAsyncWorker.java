@@ -37,6 +37,8 @@ import android.text.format.DateUtils;
 import android.util.Log;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Asynchronous worker thread-class for long during operations on JMPDComm.
@@ -76,6 +78,9 @@ public class MPDAsyncWorker implements Handler.Callback,
     /** A store for the current connection information. */
     private ConnectionInfo mConInfo = new ConnectionInfo();
 
+    /** The handler of the thread the status changes are dispatched on. */
+    private Handler mDispatchHandler;
+
     private String[] mIdleSubsystems;
 
     private MPDStatusMonitor mStatusMonitor;
@@ -245,25 +250,42 @@ public class MPDAsyncWorker implements Handler.Callback,
         }
     }
 
-    /** Starts the JMPDComm MPD Status Monitor. */
+    /**
+     * Starts the JMPDComm MPD Status Monitor. Status changes are dispatched on their own thread,
+     * coalesced while the listeners are busy, so the monitor never waits for the listeners and
+     * the dispatch never waits for a connection or another asynchronous job.
+     */
     private void startStatusMonitor() {
-        mStatusMonitor =
-                new MPDStatusMonitor(mMPD, DateUtils.SECOND_IN_MILLIS / 2L, mIdleSubsystems);
+        final Executor dispatchExecutor = new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                if (!mDispatchHandler.post(command)) {
+                    throw new RejectedExecutionException("Status dispatch thread has exited.");
+                }
+            }
+        };
+
+        mStatusMonitor = new MPDStatusMonitor(mMPD, DateUtils.SECOND_IN_MILLIS / 2L,
+                mIdleSubsystems, dispatchExecutor);
         mStatusMonitor.addStatusChangeListener(this);
         mStatusMonitor.addTrackPositionListener(this);
         mStatusMonitor.start();
     }
 
     /**
-     * Initiates the worker thread {@code Handler} in an off UI thread {@code Looper}.
+     * Initiates the worker thread {@code Handler} in an off UI thread {@code Looper}, and the
+     * status dispatch thread next to it.
      *
      * @return A {@code Handler} for this object.
      */
     final Handler startThread() {
         final HandlerThread handlerThread = new HandlerThread("MPDAsyncWorker");
+        final HandlerThread dispatchThread = new HandlerThread("MPDStatusDispatcher");
 
         handlerThread.start();
+        dispatchThread.start();
         mWorkerHandler = new Handler(handlerThread.getLooper(), this);
+        mDispatchHandler = new Handler(dispatchThread.getLooper());
 
         return mWorkerHandler;
     }
@@ -26,8 +26,6 @@ import android.media.RemoteControlClient;
 import android.os.Build;
 import android.text.format.DateUtils;
 
-import java.util.Date;
-
 /**
  * A simple class to enable Android's RemoteControlClient
  * seek bar. (Requires Android 4.3 and higher).
@@ -48,9 +46,9 @@ public class RemoteControlSeekBarHandler implements
     private long mLastKnownElapsed = 0L;
 
     /**
-     * Last time the status was refreshed, used for track position.
+     * Whether the status was refreshed, the track position is unknown until then.
      */
-    private long mLastStatusRefresh = 0L;
+    private boolean mIsPositionKnown = false;
 
     private int mPlaybackState = -1;
 
@@ -66,7 +64,7 @@ public class RemoteControlSeekBarHandler implements
 
     /**
      * Android's callback that queries us for the elapsed time. Here, we are guessing the
-     * elapsed time using the last time we updated the elapsed time and its value at the time.
+     * elapsed time using the playback clock, synchronized upon every status refresh.
      *
      * @return The guessed song position
      */
@@ -75,8 +73,9 @@ public class RemoteControlSeekBarHandler implements
         /** If we don't know the position, return a negative value as per the API spec */
         long result = -1L;
 
-        if (mLastStatusRefresh > 0L) {
-            result = mLastKnownElapsed + new Date().getTime() - mLastStatusRefresh;
+        if (mIsPositionKnown) {
+            result = MPDroidService.MPD_ASYNC_HELPER.oMPD.getPlaybackClock()
+                    .getElapsedTimeMillis();
         }
         return result;
     }
@@ -126,7 +125,7 @@ public class RemoteControlSeekBarHandler implements
      * @param elapsedTime The current track audio elapsed time.
      */
     final void updateSeekTime(final long elapsedTime) {
-        mLastStatusRefresh = new Date().getTime();
+        mIsPositionKnown = true;
         mLastKnownElapsed = elapsedTime * DateUtils.SECOND_IN_MILLIS;
         mRemoteControlClient.setPlaybackState(mPlaybackState, mLastKnownElapsed, 1.0f);
     }